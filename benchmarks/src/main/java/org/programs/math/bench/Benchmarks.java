@@ -0,0 +1,32 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs the benchmarks, like the main class of JMH, with the same options.
+ * <p>The GC profiler is always added, so the allocation rate and the bytes allocated by each operation are
+ *    reported next to the time. The forked JVMs get the Vector API module, which the batch evaluator needs.
+ * <p>Usage: {@code java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]}, like
+ *    {@code -rf json Lexer}.
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+        //private
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("--add-modules=jdk.incubator.vector")
+                .build();
+
+        new Runner(options).run();
+    }
+}
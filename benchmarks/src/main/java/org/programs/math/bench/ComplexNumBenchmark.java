@@ -0,0 +1,60 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.types.ComplexNum;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the arithmetic of {@link ComplexNum}, and each path of {@link ComplexNum#pow(ComplexNum)}:
+ *    powers of e, which skip the logarithm, and real and complex powers of other numbers.
+ * <p>The operands are fields of the state, so they are not constant folded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComplexNumBenchmark {
+    public ComplexNum a = new ComplexNum(3, -4);
+    public ComplexNum b = new ComplexNum(0.5, 2);
+    public ComplexNum real = new ComplexNum(1.5, 0);
+    public ComplexNum three = new ComplexNum(3, 0);
+    public ComplexNum e = ComplexNum.E;
+
+    @Benchmark
+    public ComplexNum add() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public ComplexNum multiply() {
+        return a.multiply(b);
+    }
+
+    @Benchmark
+    public ComplexNum divide() {
+        return a.divide(b);
+    }
+
+    @Benchmark
+    public ComplexNum powOfE() {
+        return e.pow(b);
+    }
+
+    @Benchmark
+    public ComplexNum powRealToInteger() {
+        return real.pow(three);
+    }
+
+    @Benchmark
+    public ComplexNum powComplex() {
+        return a.pow(b);
+    }
+
+    @Benchmark
+    public ComplexNum sqrt() {
+        return a.sqrt();
+    }
+}
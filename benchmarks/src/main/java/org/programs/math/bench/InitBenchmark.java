@@ -0,0 +1,25 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.MathEvaluator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the static initializer of {@link MathEvaluator}, which loads the built-in functions. A class
+ *    is initialized once, so each fork measures it a single time, in a fresh JVM.
+ * <p>{@link StartupBenchmark} measures the whole startup of a process, and the first evaluation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class InitBenchmark {
+    @Benchmark
+    public Class<?> initialize() throws ClassNotFoundException {
+        //A class literal doesn't initialize the class, this does
+        return Class.forName(MathEvaluator.class.getName());
+    }
+}
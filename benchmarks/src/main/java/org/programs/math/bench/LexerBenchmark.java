@@ -0,0 +1,42 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.extra.Result;
+import org.programs.math.lexer.Lexer;
+import org.programs.math.lexer.Token;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Lexer#lex()} on a short input, like one typed by a user, and on a long script.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+    static final String SHORT = "2x + sin(pi / 4) * |3 - 4i| // 2";
+
+    /**
+     * A line of a long script. It has all kinds of tokens.
+     */
+    static final String LINE = "fn f(x, y = 2.5) = sum(k = 1, 10, x^k / k!) + [1, 2; 3, 4] * [x, y] - ~y // 3;";
+
+    @Param({"short", "long"})
+    public String input;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = input.equals("short") ? SHORT : LINE.repeat(1000);
+    }
+
+    @Benchmark
+    public Result<List<Token<?>>, String> lex() {
+        return new Lexer(text).lex();
+    }
+}
@@ -0,0 +1,59 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.MathEvaluator;
+import org.programs.math.lexer.Lexer;
+import org.programs.math.nodes.Node;
+import org.programs.math.parser.Parser;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Value;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures {@link Node#visit(SymbolTable)} for each kind of node, on a small expression whose root is
+ *    that kind. The vectors and matrices are measured with {@link Node#evaluate(SymbolTable)}, since they
+ *    can't be visited.
+ * <p>The expressions are evaluated in the global scope of {@link MathEvaluator}, where the variable
+ *    {@code x} and the function {@code g} are defined.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NodeBenchmark {
+    private static final Map<String, String> EXPRESSIONS = Map.of(
+            "number", "2.5",
+            "identifier", "x",
+            "binary", "x * 3",
+            "unary", "-x",
+            "call", "g(x)",
+            "native", "sin(x)",
+            "sigma", "sum(k = 1, 4, x * k)",
+            "vector", "[x, 2x, 3]",
+            "matrix", "[x, 1; 2, x]"
+    );
+
+    @Param({"number", "identifier", "binary", "unary", "call", "native", "sigma", "vector", "matrix"})
+    public String node;
+
+    private Node root;
+    private SymbolTable st;
+    private boolean array;
+
+    @Setup
+    public void setup() {
+        MathEvaluator.evaluate("x = 0.5; fn g(y) = y^2 + 1");
+        st = MathEvaluator.symbolTable;
+        root = new Parser(new Lexer(EXPRESSIONS.get(node)).lex().result).parse().result.get(0);
+        array = node.equals("vector") || node.equals("matrix");
+    }
+
+    @Benchmark
+    public Value visit() {
+        return array ? root.evaluate(st) : root.visit(st);
+    }
+}
@@ -0,0 +1,70 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.extra.Result;
+import org.programs.math.lexer.Lexer;
+import org.programs.math.lexer.Token;
+import org.programs.math.nodes.Node;
+import org.programs.math.parser.Parser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures {@link Parser#parse()} on deep expressions, which are nested parentheses, and on wide ones,
+ *    which are long sums of products. The tokens are made once, so only the parser is measured.
+ * <p>The expressions have no assignments, so parsing them doesn't change the global identifiers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"deep", "wide"})
+    public String shape;
+
+    @Param({"16", "256"})
+    public int size;
+
+    private List<Token<?>> tokens;
+
+    @Setup
+    public void setup() {
+        String text = shape.equals("deep") ? deep(size) : wide(size);
+        tokens = new Lexer(text).lex().result;
+    }
+
+    @Benchmark
+    public Result<List<Node>, String> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    /**
+     * Makes {@code (1 + (2 * (3 - (... x))))}, nested {@code depth} times.
+     */
+    static String deep(int depth) {
+        String[] ops = {" + ", " * ", " - ", " / "};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('(').append(i + 1).append(ops[i % ops.length]);
+        }
+        sb.append('x');
+        return sb.append(")".repeat(depth)).toString();
+    }
+
+    /**
+     * Makes {@code 1x + 2x^2 + ... }, with {@code terms} terms.
+     */
+    static String wide(int terms) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= terms; i++) {
+            if (i > 1) {
+                sb.append(" + ");
+            }
+            sb.append(i).append(" * x^").append(i % 5);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,45 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.MathEvaluator;
+import org.programs.math.lexer.Lexer;
+import org.programs.math.nodes.Node;
+import org.programs.math.nodes.SigmaPiNode;
+import org.programs.math.parser.Parser;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the loops of {@link SigmaPiNode}, a sum and a product, for a few numbers of iterations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SigmaPiBenchmark {
+    @Param({"sum", "product"})
+    public String type;
+
+    @Param({"10", "1000", "100000"})
+    public int n;
+
+    private Node loop;
+    private SymbolTable st;
+
+    @Setup
+    public void setup() {
+        String text = type.equals("sum") ? "sum(k = 1, " + n + ", k^2 / (k + 1))"
+                                         : "product(k = 1, " + n + ", 1 + 1 / k^2)";
+        st = MathEvaluator.symbolTable;
+        loop = new Parser(new Lexer(text).lex().result).parse().result.get(0);
+    }
+
+    @Benchmark
+    public ComplexNum loop() {
+        return loop.visit(st);
+    }
+}
@@ -0,0 +1,99 @@
+package org.programs.math.bench;
+
+import org.programs.math.MathEvaluator;
+import org.programs.math.extra.Result;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Measures the startup of the evaluator in fresh JVMs: loading {@link MathEvaluator}, whose static
+ *    initializer loads the built-in functions, and the first evaluation.
+ * <p>Usage: {@code StartupBenchmark [runs] [budget]}. Each run starts a JVM with the same class path, and the
+ *    minimum and the median of each part are printed, in milliseconds. If a budget (in milliseconds) is
+ *    given, the benchmark fails when the median time to load {@link MathEvaluator} is over it.
+ */
+public final class StartupBenchmark {
+    private static final String PROBE = "--probe";
+
+    /**
+     * The expression evaluated first. It calls built-in functions, so some of them are loaded.
+     */
+    private static final String FIRST = "sqrt(2) + sin(1) + ln(10)";
+
+    private StartupBenchmark() {
+        //private
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ClassNotFoundException {
+        if (args.length == 1 && args[0].equals(PROBE)) {
+            probe();
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        double budget = args.length > 1 ? Double.parseDouble(args[1]) : Double.POSITIVE_INFINITY;
+
+        String java = ProcessHandle.current().info().command().orElse("java");
+        String classPath = System.getProperty("java.class.path");
+
+        long[] load = new long[runs], first = new long[runs], process = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process p = new ProcessBuilder(java, "-cp", classPath, StartupBenchmark.class.getName(), PROBE)
+                    .redirectErrorStream(true)
+                    .start();
+            String out = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8).strip();
+            if (p.waitFor() != 0) {
+                System.err.println("The probe failed: " + out);
+                System.exit(1);
+            }
+            process[i] = System.nanoTime() - start;
+
+            String[] times = out.split(" ");
+            load[i] = Long.parseLong(times[0]);
+            first[i] = Long.parseLong(times[1]);
+        }
+
+        report("load MathEvaluator", load);
+        report("first evaluation", first);
+        report("whole process", process);
+
+        double median = median(load) / 1e6;
+        if (median > budget) {
+            System.err.printf("Loading MathEvaluator took %.2f ms, over the budget of %.2f ms.%n", median, budget);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs in the started JVM, and prints the nanoseconds taken by each part.
+     */
+    private static void probe() throws ClassNotFoundException {
+        long start = System.nanoTime();
+        //A class literal doesn't initialize the class, this does
+        Class.forName(MathEvaluator.class.getName());
+        long mid = System.nanoTime();
+        Result<?, String> res = MathEvaluator.evaluate(FIRST);
+        long end = System.nanoTime();
+
+        if (res.isError()) {
+            System.out.println(res.error);
+            System.exit(1);
+        }
+        System.out.println((mid - start) + " " + (end - mid));
+    }
+
+    private static void report(String name, long[] nanos) {
+        long min = Arrays.stream(nanos).min().orElse(0);
+        System.out.printf("%-20s min %8.2f ms   median %8.2f ms%n", name, min / 1e6, median(nanos) / 1e6);
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+    }
+}
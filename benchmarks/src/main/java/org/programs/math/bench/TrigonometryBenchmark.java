@@ -0,0 +1,61 @@
+package org.programs.math.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.programs.math.extra.Trigonometry;
+import org.programs.math.types.ComplexNum;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the functions of {@link Trigonometry} in each {@link Trigonometry.AngleType}, on real
+ *    and complex arguments.
+ * <p>The angle type is global, so it is set for each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrigonometryBenchmark {
+    @Param({"DEGREES", "RADIANS", "GRADES"})
+    public Trigonometry.AngleType angleType;
+
+    public ComplexNum real = new ComplexNum(0.7, 0);
+    public ComplexNum complex = new ComplexNum(0.7, 0.3);
+
+    @Setup
+    public void setup() {
+        Trigonometry.setAngleType(angleType);
+    }
+
+    @Benchmark
+    public ComplexNum sin() {
+        return Trigonometry.sin(real);
+    }
+
+    @Benchmark
+    public ComplexNum sinComplex() {
+        return Trigonometry.sin(complex);
+    }
+
+    @Benchmark
+    public ComplexNum cos() {
+        return Trigonometry.cos(real);
+    }
+
+    @Benchmark
+    public ComplexNum tan() {
+        return Trigonometry.tan(real);
+    }
+
+    @Benchmark
+    public ComplexNum asin() {
+        return Trigonometry.asin(real);
+    }
+
+    @Benchmark
+    public ComplexNum atan() {
+        return Trigonometry.atan(real);
+    }
+}
@@ -0,0 +1,166 @@
+package org.programs.math.bench.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * <p>The expressions which a load test evaluates, grouped by category.
+ * <p>The default corpus has expressions like the ones users type, and generated ones: deep nesting, big
+ *    sums, trigonometry, vectors, and calls to a library of user functions. The library and the variables
+ *    the expressions use are defined once, before the load (see {@link Corpus#setup}).
+ * <p>None of the expressions assign or define anything, so they can be evaluated by many threads at the
+ *    same time. The sums and products are inside functions, since a loop at the top level stores its
+ *    variable in the global scope.
+ */
+final class Corpus {
+    /**
+     * The size of the library of user functions.
+     */
+    private static final int LIBRARY = 200;
+
+    /**
+     * The statements which define what the expressions use.
+     */
+    final List<String> setup;
+
+    /**
+     * The expressions, by their categories.
+     */
+    final Map<String, List<String>> expressions;
+
+    private Corpus(List<String> setup, Map<String, List<String>> expressions) {
+        this.setup = setup;
+        this.expressions = expressions;
+    }
+
+    /**
+     * Makes the default corpus.
+     * @param seed The seed of the generated expressions.
+     * @return The corpus.
+     */
+    static Corpus standard(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        List<String> setup = new ArrayList<>(List.of(
+                "x = 0.75; y = 2 - i; v = [1, 2, 3, 4]; m = [2, 1; 1, 3]",
+                "fn poly(t) = 3t^3 - 2t^2 + t - 7",
+                "fn hyp(a, b = 1) = sqrt(a^2 + b^2)",
+                "fn series(n) = sum(k = 1, n, k^2 / (k + 1))",
+                "fn fact(n) = product(k = 1, n, k)",
+                "fn wave(t) = sin(t) * cos(2t) + tan(t / 3)"
+        ));
+        //Chains of up to 10 calls, like libraries which build functions on others
+        for (int i = 0; i < LIBRARY; i++) {
+            String next = i % 10 == 0 ? "" : " + lib" + (i - 1) + "(t / 2)";
+            setup.add("fn lib" + i + "(t) = " + (i % 7 + 1) + "t^2 - " + (i % 5) + "t" + next);
+        }
+
+        Map<String, List<String>> expressions = new LinkedHashMap<>();
+        expressions.put("typed", List.of(
+                "2 + 3 * 4",
+                "(1 + 2i) * (3 - 4i)",
+                "2x + 3y",
+                "|3 + 4i| + 10 // 3",
+                "5! / 3!",
+                "poly(x) + hyp(3, 4)",
+                "sqrt(-4) + ln(10)",
+                "[1, 2, 3, 4] * x + v",
+                "m * [1, 2]",
+                "root(27, 3) + cbrt(8)"
+        ));
+        expressions.put("deep", List.of(deep(8, random), deep(32, random), deep(128, random)));
+        expressions.put("sum", List.of("series(100)", "series(1000)", "fact(20)", "sum(v) + product(v)"));
+        expressions.put("trig", List.of(
+                "sin(x) + cos(x)",
+                "tan(0.3) * sec(0.3)",
+                "asin(0.5) + acos(0.5) + atan(2)",
+                "sin(1 + i) * cos(y)",
+                "wave(x) + wave(2x)"
+        ));
+
+        List<String> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            calls.add("lib" + random.nextInt(LIBRARY) + "(" + (random.nextInt(100) / 10.0) + ")");
+        }
+        expressions.put("library", calls);
+
+        List<String> arithmetic = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            arithmetic.add(arithmetic(random, 3));
+        }
+        expressions.put("generated", arithmetic);
+
+        return new Corpus(setup, expressions);
+    }
+
+    /**
+     * Reads a corpus from a file. Each line is an expression, or a category and an expression separated
+     * by a tab. The lines which start with {@code @} are statements of the setup, and the ones which start
+     * with {@code #} are comments.
+     * @param file The file.
+     * @return The corpus.
+     * @throws IOException If it can't be read.
+     */
+    static Corpus read(Path file) throws IOException {
+        List<String> setup = new ArrayList<>();
+        Map<String, List<String>> expressions = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("@")) {
+                setup.add(line.substring(1));
+                continue;
+            }
+
+            int tab = line.indexOf('\t');
+            String category = tab < 0 ? "file" : line.substring(0, tab);
+            expressions.computeIfAbsent(category, c -> new ArrayList<>()).add(line.substring(tab + 1).strip());
+        }
+        return new Corpus(setup, expressions);
+    }
+
+    /**
+     * Makes an expression nested {@code depth} times, like {@code (1 + (x * (3 - ...)))}.
+     */
+    private static String deep(int depth, SplittableRandom random) {
+        String[] ops = {" + ", " * ", " - ", " / "};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('(').append(random.nextInt(1, 10)).append(ops[random.nextInt(ops.length)]);
+        }
+        sb.append('x');
+        return sb.append(")".repeat(depth)).toString();
+    }
+
+    /**
+     * Makes a random arithmetic expression of numbers, variables and functions.
+     */
+    private static String arithmetic(SplittableRandom random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            return switch (random.nextInt(4)) {
+                case 0 -> "x";
+                case 1 -> "y";
+                case 2 -> Integer.toString(random.nextInt(1, 100));
+                default -> random.nextInt(1, 10) + "." + random.nextInt(10);
+            };
+        }
+
+        String left = arithmetic(random, depth - 1), right = arithmetic(random, depth - 1);
+        return switch (random.nextInt(6)) {
+            case 0 -> "(" + left + " + " + right + ")";
+            case 1 -> "(" + left + " - " + right + ")";
+            case 2 -> left + " * " + right;
+            case 3 -> left + " / (" + right + " + 1)";
+            case 4 -> "sin(" + left + ") + " + right;
+            default -> "hyp(" + left + ", " + right + ")";
+        };
+    }
+}
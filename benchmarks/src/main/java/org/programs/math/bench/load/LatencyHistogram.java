@@ -0,0 +1,118 @@
+package org.programs.math.bench.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A histogram of latencies in nanoseconds, with buckets like the ones of HdrHistogram: the values below
+ *    {@code 2^BITS} have a bucket each, and above that, each power of two is split into {@code 2^(BITS - 1)}
+ *    buckets. So a value is known within 1/128 of itself, for any value, with a fixed number of buckets.
+ * <p>A histogram is not thread safe. Each thread records into its own, and they are added up afterwards.
+ */
+final class LatencyHistogram {
+    private static final int BITS = 8;
+    private static final int FULL = 1 << BITS, HALF = FULL >> 1;
+
+    private final long[] counts = new long[FULL + (Long.SIZE - BITS) * HALF];
+    private long count, total;
+    private long min = Long.MAX_VALUE, max;
+
+    /**
+     * Records a latency.
+     * @param nanos The latency, which is clamped to 0 if it is negative.
+     */
+    void record(long nanos) {
+        long v = Math.max(nanos, 0);
+        counts[index(v)]++;
+        count++;
+        total += v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Adds the latencies of another histogram to this one.
+     * @param other The other histogram.
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Returns the latency which the given percentage of the latencies are at or below. Like HdrHistogram,
+     * it is the highest value of its bucket, but never more than the maximum.
+     * @param percentile The percentage, from 0 to 100.
+     * @return The latency.
+     */
+    long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the buckets which have latencies, as pairs of the highest value of the bucket and its count.
+     * @return The buckets, from the lowest.
+     */
+    List<long[]> buckets() {
+        List<long[]> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                buckets.add(new long[] {highest(i), counts[i]});
+            }
+        }
+        return buckets;
+    }
+
+    private static int index(long v) {
+        if (v < FULL) {
+            return (int) v;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(v) - (BITS - 1);
+        return FULL + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+    }
+
+    /**
+     * Returns the highest value which falls in a bucket.
+     */
+    private static long highest(int index) {
+        if (index < FULL) {
+            return index;
+        }
+        int shift = (index - FULL) / HALF + 1;
+        long sub = (index - FULL) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
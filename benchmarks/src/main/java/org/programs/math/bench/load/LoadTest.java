@@ -0,0 +1,423 @@
+package org.programs.math.bench.load;
+
+import org.programs.math.MathEvaluator;
+import org.programs.math.extra.Result;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Replays a corpus of expressions (see {@link Corpus}) against {@link MathEvaluator#evaluate(String)} from
+ *    many threads, and reports the throughput, the latency percentiles of each category and of all of them,
+ *    and the allocations and garbage collections. Nothing is read from the network.
+ * <p>Usage: {@code LoadTest [--threads n] [--rate ops/s] [--duration s] [--warmup s] [--corpus file]
+ *    [--seed n] [--report file]}
+ * <p>Without a rate, each thread evaluates an expression as soon as the last one is done (a closed loop),
+ *    and a latency is the time of one evaluation. With a rate, the evaluations are scheduled at that rate
+ *    whatever the threads are doing (an open loop), and a latency is measured from when the evaluation
+ *    was scheduled, so the time it waited for a thread is counted too.
+ * <p>The report is written as JSON, so that the runs of different builds can be compared.
+ */
+public final class LoadTest {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final Corpus corpus;
+    private final int threads;
+    private final double rate;
+    private final long seed;
+
+    /**
+     * The categories, and the expressions of each, in the order of {@link Corpus#expressions}.
+     */
+    private final String[] categories;
+    private final String[][] expressions;
+
+    private LoadTest(Corpus corpus, int threads, double rate, long seed) {
+        this.corpus = corpus;
+        this.threads = threads;
+        this.rate = rate;
+        this.seed = seed;
+
+        categories = corpus.expressions.keySet().toArray(String[]::new);
+        expressions = new String[categories.length][];
+        for (int i = 0; i < categories.length; i++) {
+            expressions[i] = corpus.expressions.get(categories[i]).toArray(String[]::new);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        double rate = 0, duration = 10, warmup = 5;
+        long seed = 42;
+        Path corpusFile = null, report = null;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--rate" -> rate = Double.parseDouble(value);
+                    case "--duration" -> duration = Double.parseDouble(value);
+                    case "--warmup" -> warmup = Double.parseDouble(value);
+                    case "--corpus" -> corpusFile = Path.of(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--report" -> report = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (threads < 1 || rate < 0 || duration <= 0 || warmup < 0) {
+                throw new IllegalArgumentException("The numbers must be positive.");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadTest [--threads n] [--rate ops/s] [--duration s] [--warmup s] "
+                    + "[--corpus file] [--seed n] [--report file]");
+            System.exit(2);
+        }
+
+        Corpus corpus = corpusFile == null ? Corpus.standard(seed) : Corpus.read(corpusFile);
+        LoadTest test = new LoadTest(corpus, threads, rate, seed);
+        test.prepare();
+
+        if (warmup > 0) {
+            test.run(warmup);
+        }
+        Run run = test.run(duration);
+
+        String json = test.json(run);
+        if (report != null) {
+            Files.writeString(report, json);
+        }
+        System.out.println(test.summary(run));
+    }
+
+    /**
+     * Evaluates the setup of the corpus, and each expression once, so the ones which fail are known
+     * before the load.
+     */
+    private void prepare() {
+        for (String statement : corpus.setup) {
+            Result<?, String> res = MathEvaluator.evaluate(statement);
+            if (res.isError()) {
+                throw new IllegalStateException("The setup failed: " + statement + ": " + res.error);
+            }
+        }
+
+        for (int c = 0; c < categories.length; c++) {
+            for (String expression : expressions[c]) {
+                Result<?, String> res = MathEvaluator.evaluate(expression);
+                if (res.isError()) {
+                    System.err.println("Fails, and is counted as an error: " + expression + ": " + res.error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the load for some time.
+     * @param seconds The time.
+     * @return What was measured.
+     */
+    private Run run(double seconds) throws InterruptedException {
+        long duration = (long) (seconds * 1e9);
+        double interval = rate == 0 ? 0 : 1e9 / rate;
+        AtomicLong next = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(threads);
+        Worker[] workers = new Worker[threads];
+
+        GcSnapshot before = GcSnapshot.take();
+        long start = System.nanoTime() + 10_000_000; //Leaves time for the threads to start
+        long end = start + duration;
+
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Worker w = new Worker(new SplittableRandom(seed + t));
+            workers[t] = w;
+            ts[t] = new Thread(() -> {
+                ready.countDown();
+                w.run(start, end, interval, next);
+            }, "load-" + t);
+            ts[t].start();
+        }
+        ready.await();
+        for (Thread t : ts) {
+            t.join();
+        }
+        long finished = System.nanoTime();
+        GcSnapshot after = GcSnapshot.take();
+
+        Run run = new Run(categories.length, (finished - start) / 1e9, before, after);
+        for (Worker w : workers) {
+            for (int c = 0; c < categories.length; c++) {
+                run.latencies[c].add(w.latencies[c]);
+                run.errors[c] += w.errors[c];
+            }
+            run.allocated += w.allocated;
+        }
+        if (before.allocated < 0 || run.allocated < 0) {
+            run.allocated = -1;
+        } else {
+            //The other threads, like the ones which evaluate parts of expressions in parallel
+            run.allocated += after.allocated - before.allocated;
+        }
+        return run;
+    }
+
+    /**
+     * Evaluates expressions on one thread, and records their latencies.
+     */
+    private final class Worker {
+        private final SplittableRandom random;
+        private final LatencyHistogram[] latencies = new LatencyHistogram[categories.length];
+        private final long[] errors = new long[categories.length];
+
+        /**
+         * The bytes allocated by this thread during the run, or -1 if they are not known.
+         */
+        private long allocated = -1;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+            for (int c = 0; c < latencies.length; c++) {
+                latencies[c] = new LatencyHistogram();
+            }
+        }
+
+        void run(long start, long end, double interval, AtomicLong next) {
+            long before = GcSnapshot.allocatedByThisThread();
+            try {
+                evaluate(start, end, interval, next);
+            } finally {
+                long after = GcSnapshot.allocatedByThisThread();
+                allocated = before < 0 ? -1 : after - before;
+            }
+        }
+
+        private void evaluate(long start, long end, double interval, AtomicLong next) {
+            while (true) {
+                long scheduled;
+                if (interval == 0) {
+                    scheduled = Math.max(System.nanoTime(), start);
+                    waitUntil(scheduled);
+                } else {
+                    scheduled = start + (long) (next.getAndIncrement() * interval);
+                    waitUntil(scheduled);
+                }
+                if (scheduled >= end) {
+                    return;
+                }
+
+                int c = random.nextInt(categories.length);
+                String[] exprs = expressions[c];
+                Result<?, String> res = MathEvaluator.evaluate(exprs[random.nextInt(exprs.length)]);
+                latencies[c].record(System.nanoTime() - scheduled);
+                if (res.isError()) {
+                    errors[c]++;
+                }
+            }
+        }
+
+        private static void waitUntil(long time) {
+            long left;
+            while ((left = time - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(left);
+            }
+        }
+    }
+
+    /**
+     * The latencies and errors of each category, and the collections, of a run.
+     */
+    private static final class Run {
+        final LatencyHistogram[] latencies;
+        final long[] errors;
+        final double seconds;
+        final GcSnapshot before, after;
+
+        /**
+         * The bytes allocated by all the threads during the run, or -1 if they are not known.
+         */
+        long allocated;
+
+        Run(int categories, double seconds, GcSnapshot before, GcSnapshot after) {
+            latencies = new LatencyHistogram[categories];
+            for (int c = 0; c < categories; c++) {
+                latencies[c] = new LatencyHistogram();
+            }
+            errors = new long[categories];
+            this.seconds = seconds;
+            this.before = before;
+            this.after = after;
+        }
+
+        LatencyHistogram all() {
+            LatencyHistogram all = new LatencyHistogram();
+            for (LatencyHistogram h : latencies) {
+                all.add(h);
+            }
+            return all;
+        }
+
+        long errors() {
+            long n = 0;
+            for (long e : errors) {
+                n += e;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * The counts and times of the garbage collectors, and the bytes allocated by the live threads, at a
+     * moment. The threads which ended before it are not counted, so each worker counts its own
+     * allocations (see {@link GcSnapshot#allocatedByThisThread()}).
+     */
+    private record GcSnapshot(long allocated, Map<String, long[]> collectors) {
+        /**
+         * Returns the bytes allocated by the current thread so far, or -1 if the JVM doesn't count them.
+         */
+        static long allocatedByThisThread() {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+            return -1;
+        }
+
+        static GcSnapshot take() {
+            Map<String, long[]> collectors = new LinkedHashMap<>();
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collectors.put(gc.getName(), new long[] {gc.getCollectionCount(), gc.getCollectionTime()});
+            }
+
+            long allocated = -1;
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemoryEnabled()) {
+                allocated = 0;
+                for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                    allocated += Math.max(bytes, 0);
+                }
+            }
+            return new GcSnapshot(allocated, collectors);
+        }
+    }
+
+    private String summary(Run run) {
+        LatencyHistogram all = run.all();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%d threads, %s, %.1f s: %d evaluations, %.1f per second, %d errors%n",
+                threads, rate == 0 ? "closed loop" : String.format(Locale.ROOT, "%.1f per second scheduled", rate),
+                run.seconds, all.count(), all.count() / run.seconds, run.errors()));
+
+        sb.append(String.format(Locale.ROOT, "%-12s %10s %10s %10s %10s %10s %10s%n",
+                "category", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (int c = 0; c < categories.length; c++) {
+            line(sb, categories[c], run.latencies[c]);
+        }
+        line(sb, "all", all);
+
+        long allocated = run.allocated;
+        if (allocated >= 0) {
+            sb.append(String.format(Locale.ROOT, "allocated %.1f MB, %.0f bytes per evaluation%n",
+                    allocated / 1e6, (double) allocated / Math.max(all.count(), 1)));
+        }
+        for (Map.Entry<String, long[]> e : run.after.collectors.entrySet()) {
+            long[] b = run.before.collectors.get(e.getKey());
+            sb.append(String.format(Locale.ROOT, "%s: %d collections, %d ms%n",
+                    e.getKey(), e.getValue()[0] - b[0], e.getValue()[1] - b[1]));
+        }
+        return sb.toString();
+    }
+
+    private static void line(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(String.format(Locale.ROOT, "%-12s %10d", name, h.count()));
+        for (double p : PERCENTILES) {
+            sb.append(String.format(Locale.ROOT, " %10.1f", h.percentile(p) / 1e3));
+        }
+        sb.append(String.format(Locale.ROOT, " %10.1f%n", h.max() / 1e3));
+    }
+
+    /**
+     * Writes the report as JSON. The latencies are in nanoseconds.
+     */
+    private String json(Run run) {
+        LatencyHistogram all = run.all();
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"java\": ").append(string(System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.version"))).append(",\n");
+        sb.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        sb.append("  \"threads\": ").append(threads).append(",\n");
+        sb.append("  \"rate\": ").append(rate == 0 ? "null" : number(rate)).append(",\n");
+        sb.append("  \"seed\": ").append(seed).append(",\n");
+        sb.append("  \"seconds\": ").append(number(run.seconds)).append(",\n");
+        sb.append("  \"evaluations\": ").append(all.count()).append(",\n");
+        sb.append("  \"throughput\": ").append(number(all.count() / run.seconds)).append(",\n");
+        sb.append("  \"errors\": ").append(run.errors()).append(",\n");
+        sb.append("  \"latency\": ").append(histogram(all, "  ")).append(",\n");
+
+        sb.append("  \"categories\": {");
+        for (int c = 0; c < categories.length; c++) {
+            sb.append(c == 0 ? "\n" : ",\n");
+            sb.append("    ").append(string(categories[c])).append(": {\"errors\": ").append(run.errors[c])
+                    .append(", \"latency\": ").append(histogram(run.latencies[c], "    ")).append('}');
+        }
+        sb.append("\n  },\n");
+
+        long allocated = run.allocated;
+        sb.append("  \"allocated\": ").append(allocated < 0 ? "null" : allocated).append(",\n");
+        sb.append("  \"allocatedPerEvaluation\": ").append(allocated < 0 ? "null"
+                : number((double) allocated / Math.max(all.count(), 1))).append(",\n");
+        sb.append("  \"collectors\": {");
+        Iterator<Map.Entry<String, long[]>> it = run.after.collectors.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, long[]> e = it.next();
+            long[] b = run.before.collectors.get(e.getKey());
+            sb.append("\n    ").append(string(e.getKey())).append(": {\"count\": ").append(e.getValue()[0] - b[0])
+                    .append(", \"millis\": ").append(e.getValue()[1] - b[1]).append('}')
+                    .append(it.hasNext() ? "," : "");
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    private static String histogram(LatencyHistogram h, String indent) {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"count\": ").append(h.count())
+                .append(", \"min\": ").append(h.min())
+                .append(", \"mean\": ").append(number(h.mean()));
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            sb.append(", \"").append(PERCENTILE_NAMES[i]).append("\": ").append(h.percentile(PERCENTILES[i]));
+        }
+        sb.append(", \"max\": ").append(h.max());
+
+        //The buckets, as [highest value, count]
+        List<String> buckets = new ArrayList<>();
+        for (long[] b : h.buckets()) {
+            buckets.add("[" + b[0] + ", " + b[1] + "]");
+        }
+        sb.append(",\n").append(indent).append("  \"histogram\": [").append(String.join(", ", buckets)).append("]}");
+        return sb.toString();
+    }
+
+    private static String number(double d) {
+        return d == Math.rint(d) && Math.abs(d) < 1e15 ? Long.toString((long) d) : String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    private static String string(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
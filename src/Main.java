@@ -1,17 +1,103 @@
 import org.programs.math.MathEvaluator;
+import org.programs.math.batch.BatchEvaluator;
+import org.programs.math.batch.CsvEvaluator;
+import org.programs.math.eval.Explanation;
+import org.programs.math.eval.Profile;
+import org.programs.math.extra.Result;
+import org.programs.math.io.Library;
+import org.programs.math.io.LibraryWriter;
+import org.programs.math.io.ResultWriter;
+import org.programs.math.types.Func;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
 import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) {
         //TODO: This isn't final yet.
 
+        //Main --csv <expression> <input> <output> evaluates the expression for every row of the input
+        //The results are written as binary doubles if the output ends with .bin
+        if (args.length == 4 && args[0].equals("--csv")) {
+            ResultWriter.Format format = args[3].endsWith(".bin") ? ResultWriter.Format.BINARY
+                                                                 : ResultWriter.Format.TEXT;
+            System.out.println(
+                    MathEvaluator.prepare(args[1])
+                            .run(p -> CsvEvaluator.run(new BatchEvaluator(p), Path.of(args[2]), Path.of(args[3]),
+                                    format))
+            );
+            return;
+        }
+
+        //Main --snapshot <output> writes the built-in functions, already parsed, for a faster startup
+        //This runs at build time, the output is the resource MathEvaluator.SNAPSHOT
+        if (args.length == 2 && args[0].equals("--snapshot")) {
+            Result<Path, String> res = writeSnapshot(Path.of(args[1]));
+            System.out.println(res);
+            //Fails the build step which runs this
+            if (res.isError()) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        //Main --profile <expression> [output] shows where the time of the expression goes
+        //With an output, the stacks are written to it for flame graph tools instead
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--profile")) {
+            Result<Profile, String> res = MathEvaluator.profile(args[1]);
+            if (res.isError() || args.length == 2) {
+                System.out.println(res.isError() ? res : res.result.values + "\n\n" + res.result.report());
+                return;
+            }
+
+            try {
+                Files.writeString(Path.of(args[2]), res.result.collapsed());
+                System.out.println(res.result.values);
+            } catch (IOException e) {
+                System.out.println("Can't write the stacks: " + e.getMessage());
+            }
+            return;
+        }
+
+        //Main --exact keeps whole numbers exact, like 30! = 265252859812191058636308480000000
+        MathEvaluator.setExact(args.length == 1 && args[0].equals("--exact"));
+
         Scanner sc = new Scanner(System.in);
         System.out.print("Give good input: ");
         String line = sc.nextLine();
 
+        //:explain <expression> shows what would be done to evaluate it, without evaluating it
+        if (line.startsWith(":explain ")) {
+            Result<Explanation, String> res = MathEvaluator.explain(line.substring(":explain ".length()));
+            System.out.println(res.isError() ? res : res.result.report());
+            return;
+        }
+
         System.out.println(
                 MathEvaluator.evaluate(line)
         );
     }
+
+    private static Result<Path, String> writeSnapshot(Path output) {
+        try (InputStream in = MathEvaluator.class.getResourceAsStream(MathEvaluator.BUILT_INS)) {
+            byte[] source = Objects.requireNonNull(in, "BuiltIns.txt is missing.").readAllBytes();
+
+            Result<List<Func>, String> res = MathEvaluator.parseBuiltIns(source);
+            if (res.isError()) {
+                return Result.failure(res.error);
+            }
+
+            LibraryWriter writer = new LibraryWriter();
+            res.result.forEach(writer::add);
+            Files.write(output, writer.toBytes(Library.checksum(source)));
+            return Result.success(output);
+        } catch (IOException e) {
+            return Result.failure("Can't write the snapshot: " + e.getMessage());
+        }
+    }
 }
@@ -1,81 +1,482 @@
 package org.programs.math;
 
+import org.programs.math.eval.AdmissionPolicy;
+import org.programs.math.eval.Budget;
+import org.programs.math.eval.EvaluationContext;
+import org.programs.math.eval.Explanation;
+import org.programs.math.eval.PreparedExpression;
+import org.programs.math.eval.Profile;
+import org.programs.math.eval.Profiler;
+import org.programs.math.eval.StatementScheduler;
+import org.programs.math.eval.TierPolicy;
+import org.programs.math.events.Counters;
+import org.programs.math.events.EvaluateEvent;
+import org.programs.math.events.Events;
+import org.programs.math.events.LexEvent;
+import org.programs.math.events.ParseEvent;
 import org.programs.math.exceptions.BaseException;
 import org.programs.math.extra.Result;
+import org.programs.math.io.Library;
+import org.programs.math.io.LibraryWriter;
 import org.programs.math.lexer.Lexer;
-import org.programs.math.nodes.AssignmentNode;
+import org.programs.math.lexer.Token;
+import org.programs.math.metrics.Metrics;
+import org.programs.math.metrics.MetricsRegistry;
+import org.programs.math.nodes.FuncDefNode;
 import org.programs.math.nodes.Node;
 import org.programs.math.parser.Parser;
 import org.programs.math.parser.SymbolTable;
-import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Scanner;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 public final class MathEvaluator {
+    /**
+     * The resource with the definitions of the built-in functions.
+     */
+    public static final String BUILT_INS = "BuiltIns.txt";
+
+    /**
+     * The resource with the built-in functions already parsed, in the format of {@link Library}. It is made
+     * from {@link MathEvaluator#BUILT_INS} at build time, by {@code Main --snapshot}.
+     */
+    public static final String SNAPSHOT = "BuiltIns.bin";
+
     public static final SymbolTable symbolTable;
 
+    /**
+     * The admission policy of {@link MathEvaluator#evaluate(String)} and of scripts. It is {@code null} until
+     * one is set, which evaluates everything like {@link AdmissionPolicy#ALLOW_ALL} without loading it.
+     */
+    private static volatile AdmissionPolicy admission;
+
+    private static final MetricsRegistry.Timer EVALUATE = Metrics.timer(Metrics.EVALUATE);
+
     static {
         symbolTable = new SymbolTable();
         preload();
         SymbolTable.saveBuiltIns(symbolTable);
+
+        Metrics.gauge(Metrics.SYMBOLS, new SymbolGauge(false));
+        Metrics.gauge(Metrics.NAMES, new SymbolGauge(true));
     }
 
     private MathEvaluator() {
         //private
     }
 
+    /**
+     * Loads the built-in functions. If there is a snapshot made from the current definitions, it is attached
+     * to the symbol table, and each function is read from it when it is first looked up. Otherwise, the
+     * definitions are parsed.
+     */
     private static void preload() {
-        InputStream in = MathEvaluator.class.getResourceAsStream("BuiltIns.txt");
-        Objects.requireNonNull(in, "The file BuiltIns.txt is not provided with this package.");
-
-        try (Scanner sc = new Scanner(in)) {
-            String builtIn = getInput(sc);
-            Result<?, String> res = evaluate(builtIn);
-            if (res.isError()) {
-                throw new RuntimeException("Failed to load built ins: " + res.error);
+        byte[] source = resource(BUILT_INS);
+        Objects.requireNonNull(source, "The file BuiltIns.txt is not provided with this package.");
+
+        byte[] snapshot = resource(SNAPSHOT);
+        if (snapshot != null) {
+            Result<Library, String> res = Library.read(ByteBuffer.wrap(snapshot));
+            if (!res.isError() && res.result.checksum == Library.checksum(source)) {
+                symbolTable.attach(res.result, fn -> ((Func) fn).intrinsic());
+                return;
             }
         }
+
+        Result<List<Func>, String> res = parseBuiltIns(source);
+        if (res.isError()) {
+            throw new RuntimeException("Failed to load built ins: " + res.error);
+        }
+        for (Func fn : res.result) {
+            symbolTable.set(fn.name, fn.intrinsic());
+        }
     }
 
-    private static String getInput(Scanner sc) {
-        StringBuilder text = new StringBuilder();
+    /**
+     * Parses the definitions of the built-in functions, one per line.
+     * @param source The definitions, like the contents of {@link MathEvaluator#BUILT_INS}.
+     * @return The functions, or the error message.
+     */
+    public static Result<List<Func>, String> parseBuiltIns(byte[] source) {
+        String text = new String(source, StandardCharsets.UTF_8)
+                .lines()
+                .collect(Collectors.joining(";", "", ";"));
+
+        return new Lexer(text).lex()
+                .run(tokens -> new Parser(tokens).parse())
+                .run(nodes -> {
+                    List<Func> functions = new ArrayList<>();
+                    for (Node node : nodes) {
+                        if (!(node instanceof FuncDefNode def)) {
+                            return Result.failure("Only functions can be built in: " + node);
+                        }
+                        functions.add(def.fn);
+                    }
+                    return Result.success(functions);
+                });
+    }
 
-        while (sc.hasNextLine()) {
-            text
-                    .append(sc.nextLine())
-                    .append(';');
+    /**
+     * Reads a resource next to this class with one bulk read.
+     * @return The bytes, or {@code null} if there is no such resource.
+     */
+    private static byte[] resource(String name) {
+        try (InputStream in = MathEvaluator.class.getResourceAsStream(name)) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    /**
+     * Turns the exact mode on or off. In the exact mode, whole numbers keep all their digits.
+     * @param on {@code true} to turn it on.
+     * @see Rational
+     */
+    public static void setExact(boolean on) {
+        Rational.setExactMode(on);
+    }
+
+    /**
+     * Sets the policy which decides, from their estimated cost, if inputs are evaluated right away, on low
+     * priority threads, or not at all. It applies to {@link MathEvaluator#evaluate(String)} and to scripts,
+     * and {@link MathEvaluator#prepare(String)} fails for the inputs it rejects.
+     * @param policy The policy, {@link AdmissionPolicy#ALLOW_ALL} by default.
+     */
+    public static void setAdmission(AdmissionPolicy policy) {
+        admission = Objects.requireNonNull(policy);
+    }
 
-        return text.toString();
+    public static Result<List<Value>, String> evaluate(String input) {
+        return evaluate(input, false, false, null);
     }
 
-    public static Result<List<ComplexNum>, String> evaluate(String input) {
+    /**
+     * Evaluates the input like {@link MathEvaluator#evaluate(String)}, within a budget of steps and time.
+     * <p>The evaluation fails with a {@link org.programs.math.exceptions.BudgetExceededException} as soon as
+     *    it runs out of steps, passes the deadline, or the budget is cancelled from another thread. The
+     *    statements which were evaluated before keep their effects.
+     * @param input The input.
+     * @param budget The budget.
+     * @return The values of the statements, or the error message.
+     * @see Budget
+     */
+    public static Result<List<Value>, String> evaluate(String input, Budget budget) {
+        return evaluate(input, false, false, Objects.requireNonNull(budget));
+    }
+
+    /**
+     * Evaluates a script, like {@link MathEvaluator#evaluate(String)}, but the bodies of its functions are
+     * parsed when they are first called. Defining many functions and calling a few of them is fast, and
+     * the ones which are not called don't keep their syntax trees.
+     * <p>A syntax error in a body is reported when the function is called, unless the script is validated
+     *    first: then the bodies are all parsed before anything is evaluated, and the first error is reported,
+     *    like {@link MathEvaluator#evaluate(String)} does.
+     * @param script The script.
+     * @param validate Whether all the bodies are parsed before evaluating it.
+     * @return The values of the statements, or the error message.
+     */
+    public static Result<List<Value>, String> evaluateScript(String script, boolean validate) {
+        return evaluate(script, true, validate, null);
+    }
+
+    /**
+     * Lexes, parses and evaluates the input, recording an {@link EvaluateEvent} if it is slow enough.
+     * @param lazy Whether the bodies of the functions are parsed when they are first called.
+     * @param validate Whether the lazy bodies are all parsed before evaluating.
+     * @param budget The budget of the evaluation, or {@code null}.
+     */
+    private static Result<List<Value>, String> evaluate(String input, boolean lazy, boolean validate,
+                                                        Budget budget) {
+        EvaluateEvent event = Events.recording() ? new EvaluateEvent() : null;
+        Counters counters = event != null && event.isEnabled() ? Counters.start() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+
         Lexer lexer = new Lexer(input);
+        Result<List<Token<?>>, String> tokens = lex(lexer);
+        Result<List<Node>, String> nodes = tokens.run(t -> parse(lazy ? new Parser(t, lexer) : new Parser(t), t));
+        if (validate) {
+            nodes = nodes.run(MathEvaluator::validate);
+        }
 
-        return lexer.lex()
-                .run(tokens -> new Parser(tokens).parse())
-                .run(MathEvaluator::traverse);
+        Result<List<Value>, String> values;
+        try {
+            values = nodes.isError() ? Result.failure(nodes.error) : traverse(nodes.result, budget);
+        } finally {
+            if (counters != null) {
+                counters.stop();
+            }
+        }
+
+        EVALUATE.record(System.nanoTime() - start);
+        if (values.isError()) {
+            Metrics.error(Events.errorType(values.error));
+        }
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.inputLength = input.length();
+                event.tokenCount = tokens.isError() ? 0 : tokens.result.size();
+                event.statementCount = nodes.isError() ? 0 : nodes.result.size();
+                event.nodeCount = nodes.isError() ? 0 : Events.nodes(nodes.result);
+                event.resultType = values.isError() ? "none" : Events.type(values.result);
+                event.errorType = values.isError() ? Events.errorType(values.error) : null;
+                //A recording which started during the evaluation has nothing counted
+                if (counters != null) {
+                    event.iterations = counters.iterations();
+                    event.nativeCalls = counters.nativeCalls();
+                }
+                event.commit();
+            }
+        }
+        return values;
     }
 
-    private static Result<List<ComplexNum>, String> traverse(List<Node> nodes) {
+    /**
+     * Lexes the input, recording a {@link LexEvent} if it is slow enough.
+     */
+    private static Result<List<Token<?>>, String> lex(Lexer lexer) {
+        LexEvent event = Events.recording() ? new LexEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Result<List<Token<?>>, String> tokens = lexer.lex();
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.inputLength = lexer.text.length();
+                event.tokenCount = tokens.isError() ? 0 : tokens.result.size();
+                event.errorType = tokens.isError() ? Events.errorType(tokens.error) : null;
+                event.commit();
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Parses the tokens, recording a {@link ParseEvent} if it is slow enough.
+     */
+    private static Result<List<Node>, String> parse(Parser parser, List<Token<?>> tokens) {
+        ParseEvent event = Events.recording() ? new ParseEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Result<List<Node>, String> nodes = parser.parse();
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.tokenCount = tokens.size();
+                event.statementCount = nodes.isError() ? 0 : nodes.result.size();
+                event.nodeCount = nodes.isError() ? 0 : Events.nodes(nodes.result);
+                event.errorType = nodes.isError() ? Events.errorType(nodes.error) : null;
+                event.commit();
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Parses the bodies of the functions defined by the statements, in order.
+     * @return The statements, or the first syntax error.
+     */
+    private static Result<List<Node>, String> validate(List<Node> nodes) {
+        try {
+            for (Node node : nodes) {
+                if (node instanceof FuncDefNode def) {
+                    def.fn.body();
+                }
+            }
+            return Result.success(nodes);
+        } catch (BaseException e) {
+            return Result.failure(e.toString());
+        }
+    }
+
+    /**
+     * Lexes and parses the input once, so that it can be evaluated many times.
+     * The statements which are evaluated often are promoted to faster tiers on their own.
+     * @param input The input.
+     * @return The prepared expression, or the error message.
+     * @see PreparedExpression
+     */
+    public static Result<PreparedExpression, String> prepare(String input) {
+        return lex(new Lexer(input))
+                .run(tokens -> parse(new Parser(tokens), tokens))
+                .run(MathEvaluator::admit)
+                .run(nodes -> Result.success(new PreparedExpression(nodes, symbolTable, TierPolicy.DEFAULT)));
+    }
+
+    /**
+     * Checks that the admission policy doesn't reject the statements. The ones it would queue are prepared,
+     * since a prepared expression is evaluated by the threads of its caller.
+     */
+    private static Result<List<Node>, String> admit(List<Node> nodes) {
+        AdmissionPolicy policy = admission;
+        if (policy == null || policy == AdmissionPolicy.ALLOW_ALL) {
+            return Result.success(nodes);
+        }
+
         try {
-            List<ComplexNum> results =
-                    nodes.stream()
-                            .map(node -> {
-                                ComplexNum val = node.visit(symbolTable);
-                                if (node instanceof AssignmentNode) return null;
-                                else return val;
-                            })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
-
-            return Result.success(results);
+            policy.admit(nodes, symbolTable);
+            return Result.success(nodes);
         } catch (BaseException e) {
             return Result.failure(e.toString());
         }
     }
+
+    /**
+     * Evaluates the input like {@link MathEvaluator#evaluate(String)}, and measures where the time went.
+     * <p>Profiling is slower than evaluating, since every node is measured and nothing is compiled. The
+     *    report shows which parts of the input are worth making faster.
+     * @param input The input.
+     * @return The profile, with the values, or the error message.
+     * @see Profiler
+     */
+    public static Result<Profile, String> profile(String input) {
+        return lex(new Lexer(input))
+                .run(tokens -> parse(new Parser(tokens), tokens))
+                .run(nodes -> {
+                    try {
+                        return Result.success(Profiler.run(nodes, symbolTable));
+                    } catch (BaseException e) {
+                        return Result.failure(e.toString());
+                    }
+                });
+    }
+
+    /**
+     * Explains what would be done to evaluate the input, without evaluating it: the tree after each optimization,
+     * the compiled program, the estimated cost, the called functions and the tiers which would be used.
+     * @param input The input.
+     * @return The explanation, or the error message.
+     * @see Explanation
+     */
+    public static Result<Explanation, String> explain(String input) {
+        return lex(new Lexer(input))
+                .run(tokens -> parse(new Parser(tokens), tokens))
+                .run(nodes -> {
+                    try {
+                        return Result.success(Explanation.of(nodes, symbolTable));
+                    } catch (BaseException e) {
+                        return Result.failure(e.toString());
+                    }
+                });
+    }
+
+    /**
+     * Writes the functions and variables defined in this session (all but the built-in ones) to a library
+     * file, which can be imported by other sessions without parsing them again.
+     * @param file The file.
+     * @return The number of functions and variables written, or the error message.
+     * @see Library
+     */
+    public static Result<Integer, String> exportLibrary(Path file) {
+        LibraryWriter writer = new LibraryWriter();
+        List<String> names = new ArrayList<>(symbolTable.names());
+        Collections.sort(names);
+
+        int count = 0;
+        try {
+            for (String name : names) {
+                if (SymbolTable.isBuiltIn(name)) {
+                    continue;
+                }
+
+                Value v = symbolTable.get(name, true);
+                if (v instanceof Func fn) {
+                    //Functions whose bodies are not parsed yet are parsed here
+                    writer.add(fn);
+                } else {
+                    writer.add(name, v);
+                }
+                count++;
+            }
+        } catch (BaseException e) {
+            return Result.failure(e.toString());
+        }
+
+        try {
+            Files.write(file, writer.toBytes(0));
+            return Result.success(count);
+        } catch (IOException e) {
+            return Result.failure("Can't write the library: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Imports the functions and variables of a library file written by
+     * {@link MathEvaluator#exportLibrary(Path)}, replacing the ones with the same names.
+     * <p>The file is mapped into memory, and only its header is read. Each function or variable is read
+     *    when it is first used, so importing a large library is fast. The file should not be changed while
+     *    it is imported.
+     * @param file The file.
+     * @return The number of functions and variables imported, or the error message.
+     */
+    public static Result<Integer, String> importLibrary(Path file) {
+        return Library.open(file).run(library -> {
+            for (String name : SymbolTable.builtIns()) {
+                if (SymbolTable.isReserved(name) && library.contains(name)) {
+                    return Result.failure(name + " is a built in function/variable.");
+                }
+            }
+
+            symbolTable.attach(library, UnaryOperator.identity());
+            for (String name : SymbolTable.builtIns()) {
+                if (library.contains(name)) {
+                    SymbolTable.check(name);
+                }
+            }
+            return Result.success(library.size());
+        });
+    }
+
+    private static Result<List<Value>, String> traverse(List<Node> nodes, Budget budget) {
+        AdmissionPolicy policy = admission;
+        try {
+            EvaluationContext outer = budget == null ? null : budget.enter();
+            try {
+                return Result.success(policy == null ? StatementScheduler.run(nodes, symbolTable)
+                                                     : policy.evaluate(nodes, symbolTable));
+            } finally {
+                if (budget != null) {
+                    EvaluationContext.exit(outer);
+                }
+            }
+        } catch (BaseException e) {
+            return Result.failure(e.toString());
+        }
+    }
+
+    /**
+     * Reads the size of the global symbol table for {@link Metrics}. It is not a lambda, since each lambda
+     * created while the calculator starts adds milliseconds to the startup.
+     * @param names Whether the names of the libraries which are not loaded yet are counted too.
+     */
+    private record SymbolGauge(boolean names) implements LongSupplier {
+        @Override
+        public long getAsLong() {
+            return names ? symbolTable.names().size() : symbolTable.size();
+        }
+    }
 }
@@ -0,0 +1,201 @@
+package org.programs.math.batch;
+
+import org.programs.math.eval.DependencyGraph;
+import org.programs.math.eval.PreparedExpression;
+import org.programs.math.events.Events;
+import org.programs.math.events.OptimizeEvent;
+import org.programs.math.exceptions.BaseException;
+import org.programs.math.extra.Result;
+import org.programs.math.nodes.Node;
+import org.programs.math.parser.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Evaluates an expression for many rows of inputs at once, like evaluating it once per row after
+ *    assigning the inputs to global variables, only much faster.
+ * <p>The inputs are given as {@link Column}s, and the expression is evaluated one node at a time over
+ *    blocks of {@link BatchEvaluator#BLOCK} rows, with SIMD vectors where possible (see {@link Kernels}).
+ *    User defined functions are inlined. The results are written into a column too, without creating a
+ *    {@link org.programs.math.types.ComplexNum} for each row.
+ * <p>The results are the same as the ones of evaluating each row, except that a zero imaginary part may
+ *    have a different sign. If some rows fail, the error of one of them is reported.
+ * <p>Sums and products can be evaluated only if their bounds don't depend on the inputs. Assignments,
+ *    function definitions and recursive functions are not supported at all.
+ * <p>An evaluator can be used by many threads at the same time.
+ */
+public final class BatchEvaluator {
+    /**
+     * The number of rows evaluated together. The intermediate values of a block fit in the cache.
+     */
+    public static final int BLOCK = 1024;
+
+    /**
+     * The expression, or {@code null} if the prepared expression had more than one statement.
+     */
+    public final Node expression;
+
+    private final SymbolTable st;
+
+    /**
+     * Creates a batch evaluator.
+     * @param prepared The expression, which must be a single statement.
+     */
+    public BatchEvaluator(PreparedExpression prepared) {
+        this(prepared.nodes.size() == 1 ? prepared.nodes.get(0) : null, prepared.symbolTable);
+    }
+
+    /**
+     * Creates a batch evaluator for a parsed expression.
+     * @param expression The expression.
+     * @param st The global symbol table.
+     */
+    public BatchEvaluator(Node expression, SymbolTable st) {
+        this.expression = expression;
+        this.st = st;
+    }
+
+    /**
+     * Evaluates the expression for all the rows of the inputs, which must have the same length.
+     * @param inputs The inputs, by variable name.
+     * @return The results, or the error message.
+     */
+    public Result<Column, String> evaluate(Map<String, Column> inputs) {
+        int rows = -1;
+        for (Column c : inputs.values()) {
+            if (rows != -1 && c.length() != rows) {
+                return Result.failure("The input columns have different lengths.");
+            }
+            rows = c.length();
+        }
+
+        if (rows == -1) {
+            return Result.failure("There are no input columns.");
+        }
+
+        Column out = new Column(rows);
+        return evaluate(inputs, out);
+    }
+
+    /**
+     * Returns the names of the global variables and functions the expression reads. The inputs should
+     * be some of them.
+     * @return The names.
+     */
+    public Set<String> variables() {
+        if (expression == null) {
+            return Set.of();
+        }
+        return new DependencyGraph(List.of(expression), st).reads(0);
+    }
+
+    /**
+     * Evaluates the expression for the rows of the output column, reading as many rows of the inputs.
+     * @param inputs The inputs, by variable name.
+     * @param out The column to write the results into.
+     * @return The output column, or the error message.
+     */
+    public Result<Column, String> evaluate(Map<String, Column> inputs, Column out) {
+        try {
+            run(inputs, out);
+            return Result.success(out);
+        } catch (Failure e) {
+            return Result.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * Evaluates the expression for the rows of the output column.
+     * @param inputs The inputs, by variable name.
+     * @param out The column to write the results into.
+     * @throws Failure If the expression can't be evaluated, or a row fails.
+     */
+    void run(Map<String, Column> inputs, Column out) throws Failure {
+        if (expression == null) {
+            throw new Failure("Batch evaluation needs a single expression.", -1);
+        }
+
+        int rows = out.length();
+        if (out.im == null) {
+            throw new Failure("The output column has no imaginary parts.", -1);
+        }
+
+        List<String> names = new ArrayList<>(inputs.keySet());
+        Column[] columns = new Column[names.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = inputs.get(names.get(i));
+            if (columns[i].length() < rows) {
+                throw new Failure("The input column '" + names.get(i) + "' is shorter than the output.", -1);
+            }
+        }
+
+        Translator translator = new Translator(st, names);
+        Step root = null;
+        OptimizeEvent event = Events.optimizing();
+        try {
+            root = translator.expr(expression);
+        } catch (Translator.Unsupported e) {
+            throw new Failure("Can't evaluate in batch: " + e.node, -1);
+        } catch (BaseException e) {
+            throw new Failure(e.toString(), -1);
+        } finally {
+            Events.optimized(event, Events.TRANSLATE, expression, root != null);
+        }
+
+        Frame f = new Frame(BLOCK, translator.slots());
+        for (int i = 0; i < columns.length; i++) {
+            f.slots[i] = new Buffer(BLOCK);
+        }
+
+        try {
+            for (int base = 0; base < rows; base += BLOCK) {
+                int n = Math.min(BLOCK, rows - base);
+                f.base = base;
+                f.n = n;
+
+                for (int i = 0; i < columns.length; i++) {
+                    f.slots[i].load(columns[i], base, n);
+                }
+
+                Buffer result = root.eval(f);
+                System.arraycopy(result.re, 0, out.re, base, n);
+                if (result.real) {
+                    Arrays.fill(out.im, base, base + n, 0);
+                } else {
+                    System.arraycopy(result.im, 0, out.im, base, n);
+                }
+
+                if (root.fresh()) {
+                    f.release(result);
+                }
+            }
+        } catch (BaseException e) {
+            throw new Failure(e.toString(), f.row);
+        }
+    }
+
+    /**
+     * Thrown when a batch evaluation fails.
+     */
+    static final class Failure extends Exception {
+        /**
+         * The error, without the row.
+         */
+        final String error;
+
+        /**
+         * The failing row, or {@code -1} if the error doesn't depend on the rows.
+         */
+        final long row;
+
+        Failure(String error, long row) {
+            super(row == -1 ? error : error + " (row " + row + ")", null, false, false);
+            this.error = error;
+            this.row = row;
+        }
+    }
+}
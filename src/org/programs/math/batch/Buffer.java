@@ -0,0 +1,95 @@
+package org.programs.math.batch;
+
+import java.util.Arrays;
+
+/**
+ * <p>The values of one node for the rows of a block.
+ * <p>When all the values are real, the imaginary parts are not written at all, unless some operation
+ *    needs them (see {@link Buffer#im(int)}).
+ */
+final class Buffer {
+    final double[] re, im;
+
+    /**
+     * Whether all the imaginary parts are zero.
+     */
+    boolean real;
+
+    /**
+     * Whether {@link Buffer#im} holds the imaginary parts, even though they are zero.
+     */
+    private boolean filled;
+
+    Buffer(int size) {
+        re = new double[size];
+        im = new double[size];
+    }
+
+    /**
+     * Marks the values as real, after only the real parts were written.
+     */
+    void setReal() {
+        real = true;
+        filled = false;
+    }
+
+    /**
+     * Marks the values as complex, after both parts were written.
+     */
+    void setComplex() {
+        real = false;
+    }
+
+    /**
+     * Checks if the values are real, after both parts were written.
+     * @param n The number of rows.
+     */
+    void settle(int n) {
+        real = Kernels.zeros(im, n);
+        filled = true;
+    }
+
+    /**
+     * Returns the imaginary parts, writing the zeroes first if the values are real.
+     * @param n The number of rows.
+     * @return The imaginary parts.
+     */
+    double[] im(int n) {
+        if (real && !filled) {
+            Arrays.fill(im, 0, n, 0);
+            filled = true;
+        }
+        return im;
+    }
+
+    /**
+     * Copies the rows of a block from a column.
+     * @param c The column.
+     * @param from The first row.
+     * @param n The number of rows.
+     */
+    void load(Column c, int from, int n) {
+        System.arraycopy(c.re, from, re, 0, n);
+        if (c.im == null) {
+            setReal();
+        } else {
+            System.arraycopy(c.im, from, im, 0, n);
+            settle(n);
+        }
+    }
+
+    /**
+     * Copies the values of another buffer.
+     * @param b The other buffer.
+     * @param n The number of rows.
+     */
+    void copy(Buffer b, int n) {
+        System.arraycopy(b.re, 0, re, 0, n);
+        if (b.real) {
+            setReal();
+        } else {
+            System.arraycopy(b.im, 0, im, 0, n);
+            setComplex();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.programs.math.batch;
+
+import org.programs.math.types.ComplexNum;
+
+/**
+ * <p>A column of complex numbers, stored as two arrays of real and imaginary parts.
+ * <p>The imaginary parts of an input column may be {@code null}, if all the numbers are real.
+ * @see BatchEvaluator
+ */
+public final class Column {
+    /**
+     * The real parts.
+     */
+    public final double[] re;
+
+    /**
+     * The imaginary parts, or {@code null} if all the numbers are real.
+     */
+    public final double[] im;
+
+    /**
+     * Creates a column from the given parts. The arrays are used as they are, not copied.
+     * @param re The real parts.
+     * @param im The imaginary parts, or {@code null} if all the numbers are real.
+     * @throws IllegalArgumentException If the arrays have different lengths.
+     */
+    public Column(double[] re, double[] im) {
+        if (im != null && im.length != re.length) {
+            throw new IllegalArgumentException("The real and imaginary parts have different lengths.");
+        }
+
+        this.re = re;
+        this.im = im;
+    }
+
+    /**
+     * Creates a column of real numbers.
+     * @param re The numbers.
+     */
+    public Column(double[] re) {
+        this(re, null);
+    }
+
+    /**
+     * Creates a column of zeroes, to write results into.
+     * @param length The number of rows.
+     */
+    public Column(int length) {
+        this(new double[length], new double[length]);
+    }
+
+    /**
+     * Returns the number of rows.
+     * @return The length.
+     */
+    public int length() {
+        return re.length;
+    }
+
+    /**
+     * Returns the number of a row.
+     * @param row The row.
+     * @return The number.
+     */
+    public ComplexNum get(int row) {
+        return new ComplexNum(re[row], im == null ? 0 : im[row]);
+    }
+}
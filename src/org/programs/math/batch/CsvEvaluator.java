@@ -0,0 +1,385 @@
+package org.programs.math.batch;
+
+import org.programs.math.extra.Result;
+import org.programs.math.io.ResultWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Evaluates an expression for every row of a CSV file, and writes the results to another file, one per
+ *    line and in the same order.
+ * <p>The first line of the input names the columns. The columns whose names are read by the expression
+ *    (see {@link BatchEvaluator#variables()}) are bound to those variables, the others are skipped. The
+ *    cells must be real numbers, without quotes.
+ * <p>The input is memory mapped and split into chunks of about {@link CsvEvaluator#CHUNK} bytes, ending
+ *    at line breaks. The chunks are parsed straight from the bytes, without strings, and evaluated by a
+ *    {@link BatchEvaluator} in parallel. The results are written in order, while the next chunks are
+ *    still being evaluated.
+ * <p>The results are written by a {@link ResultWriter}, as text or as binary doubles.
+ * <p>Errors name the line of the input they are on, counting from 1 with the header and the blank lines.
+ */
+public final class CsvEvaluator {
+    /**
+     * The approximate size of a chunk, in bytes.
+     */
+    public static final int CHUNK = 8 << 20;
+
+    /**
+     * The exact powers of ten, for parsing numbers.
+     */
+    private static final double[] POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final BatchEvaluator evaluator;
+    private final ResultWriter.Format format;
+
+    /**
+     * The names of the columns of the input, and the variables bound to them (or {@code null}).
+     */
+    private String[] header;
+    private String[] bound;
+
+    private CsvEvaluator(BatchEvaluator evaluator, ResultWriter.Format format) {
+        this.evaluator = evaluator;
+        this.format = format;
+    }
+
+    /**
+     * Evaluates an expression for every row of a CSV file.
+     * @param evaluator The expression.
+     * @param input The CSV file.
+     * @param output The file to write the results to, as text. It is replaced if it exists.
+     * @return The number of rows, or the error message.
+     */
+    public static Result<Long, String> run(BatchEvaluator evaluator, Path input, Path output) {
+        return run(evaluator, input, output, ResultWriter.Format.TEXT);
+    }
+
+    /**
+     * Evaluates an expression for every row of a CSV file.
+     * @param evaluator The expression.
+     * @param input The CSV file.
+     * @param output The file to write the results to. It is replaced if it exists.
+     * @param format The format of the results.
+     * @return The number of rows, or the error message.
+     */
+    public static Result<Long, String> run(BatchEvaluator evaluator, Path input, Path output,
+                                           ResultWriter.Format format) {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            return new CsvEvaluator(evaluator, format).run(in, out);
+        } catch (IOException e) {
+            return Result.failure("IOException: " + e.getMessage());
+        }
+    }
+
+    private Result<Long, String> run(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long start = readHeader(in);
+        if (start < 0) {
+            return Result.failure("The input has no header.");
+        }
+
+        Set<String> variables = evaluator.variables();
+        bound = new String[header.length];
+        for (int i = 0; i < header.length; i++) {
+            if (variables.contains(header[i]) && !Arrays.asList(bound).contains(header[i])) {
+                bound[i] = header[i];
+            }
+        }
+
+        //A few chunks are evaluated ahead of the one being written, so memory use stays bounded
+        int ahead = ForkJoinPool.getCommonPoolParallelism() + 1;
+        ArrayDeque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+        //The header is the first line
+        long rows = 0, lines = 1, position = start;
+
+        while (position < size || !pending.isEmpty()) {
+            while (position < size && pending.size() < ahead) {
+                long end = lineEnd(in, Math.min(size, position + CHUNK), size);
+                long from = position;
+                pending.add(CompletableFuture.supplyAsync(() -> chunk(in, from, end)));
+                position = end;
+            }
+
+            Chunk chunk;
+            try {
+                chunk = pending.poll().join();
+            } catch (CompletionException e) {
+                for (CompletableFuture<Chunk> f : pending) {
+                    f.cancel(false);
+                }
+
+                if (e.getCause() instanceof ChunkFailure failure) {
+                    return Result.failure(failure.line == -1 ? failure.error
+                            : failure.error + " (line " + (lines + failure.line + 1) + ")");
+                }
+                throw e;
+            }
+
+            ByteBuffer b = ByteBuffer.wrap(chunk.text);
+            while (b.hasRemaining()) {
+                out.write(b);
+            }
+            rows += chunk.rows;
+            lines += chunk.lines;
+        }
+
+        return Result.success(rows);
+    }
+
+    /**
+     * Reads the names of the columns.
+     * @return The position of the first row, or {@code -1} if there is no header.
+     */
+    private long readHeader(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size == 0) {
+            return -1;
+        }
+
+        long end = lineEnd(in, 0, size);
+        ByteBuffer b = ByteBuffer.allocate((int) Math.min(end, Integer.MAX_VALUE));
+        in.read(b, 0);
+
+        String line = new String(b.array(), 0, b.position(), StandardCharsets.UTF_8).strip();
+        header = line.split(",", -1);
+        for (int i = 0; i < header.length; i++) {
+            header[i] = header[i].strip();
+        }
+        return end;
+    }
+
+    /**
+     * Finds the end of the line containing the byte before the given position, so that a chunk ending
+     * at the position ends at a line break.
+     * @return The position after the line break, or the size of the file.
+     */
+    private static long lineEnd(FileChannel in, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+        return findBreak(in, Math.max(0, position - 1), size);
+    }
+
+    private static long findBreak(FileChannel in, long from, long size) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8192);
+        long p = from;
+        while (p < size) {
+            b.clear();
+            int n = in.read(b, p);
+            if (n <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (b.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return size;
+    }
+
+    /**
+     * Parses, evaluates and formats the rows of a chunk.
+     */
+    private Chunk chunk(FileChannel in, long from, long to) {
+        //One bulk copy out of the mapping, the cells are then scanned as a plain array
+        byte[] b = new byte[(int) (to - from)];
+        try {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            mapped.get(0, b);
+        } catch (IOException e) {
+            throw new ChunkFailure("IOException: " + e.getMessage(), -1);
+        }
+
+        int length = b.length, cells = header.length;
+        double[][] values = new double[cells][];
+        for (int c = 0; c < cells; c++) {
+            if (bound[c] != null) {
+                values[c] = new double[1024];
+            }
+        }
+
+        //The line of the chunk each row is on, counting from 0
+        int[] lineOf = new int[1024];
+        int rows = 0, lines = 0, p = 0;
+        while (p < length) {
+            //Blank lines are skipped
+            if (b[p] == '\n' || b[p] == '\r' && p + 1 < length && b[p + 1] == '\n') {
+                p += b[p] == '\n' ? 1 : 2;
+                lines++;
+                continue;
+            }
+
+            if (rows == lineOf.length) {
+                lineOf = Arrays.copyOf(lineOf, rows * 2);
+            }
+            lineOf[rows] = lines;
+
+            for (int c = 0; c < cells; c++) {
+                int end = p;
+                while (end < length && b[end] != ',' && b[end] != '\n') {
+                    end++;
+                }
+
+                double[] column = values[c];
+                if (column != null) {
+                    if (rows == column.length) {
+                        column = values[c] = Arrays.copyOf(column, rows * 2);
+                    }
+                    column[rows] = parse(b, p, end, bound[c], lines);
+                }
+
+                boolean lineEnds = end >= length || b[end] == '\n';
+                p = end + 1;
+                if (lineEnds != (c == cells - 1)) {
+                    throw new ChunkFailure("Expected " + cells + " cells in the row.", lines);
+                }
+            }
+            rows++;
+            lines++;
+        }
+
+        Map<String, Column> inputs = new HashMap<>();
+        for (int c = 0; c < cells; c++) {
+            if (values[c] != null) {
+                inputs.put(bound[c], new Column(Arrays.copyOf(values[c], rows)));
+            }
+        }
+
+        Column out = new Column(rows);
+        try {
+            evaluator.run(inputs, out);
+        } catch (BatchEvaluator.Failure e) {
+            throw new ChunkFailure(e.error, e.row == -1 ? -1 : lineOf[(int) e.row]);
+        }
+
+        ResultWriter writer = new ResultWriter(format);
+        try {
+            writer.write(out, 0, rows);
+        } catch (IOException e) {
+            //Nothing is written to a channel, the results stay in memory
+            throw new UncheckedIOException(e);
+        }
+        return new Chunk(writer.bytes(), rows, lines);
+    }
+
+    /**
+     * Parses a number from the bytes of a cell, without creating a string unless it is unusual.
+     * <p>Numbers with at most 15 significant digits and small exponents are exact as {@code double}s,
+     *    so they are computed directly. The others are given to {@link Double#parseDouble(String)}.
+     */
+    private static double parse(byte[] b, int from, int to, String column, int line) {
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && (b[to - 1] == ' ' || b[to - 1] == '\r')) {
+            to--;
+        }
+
+        int p = from;
+        boolean negative = false;
+        if (p < to && (b[p] == '-' || b[p] == '+')) {
+            negative = b[p] == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean any = false, point = false;
+        for (; p < to; p++) {
+            byte c = b[p];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                if (digits <= 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (point) {
+                        scale--;
+                    }
+                } else if (!point) {
+                    scale++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+
+        if (p < to && any && (b[p] == 'e' || b[p] == 'E')) {
+            p++;
+            boolean negExp = false;
+            if (p < to && (b[p] == '-' || b[p] == '+')) {
+                negExp = b[p] == '-';
+                p++;
+            }
+
+            int exp = 0;
+            boolean expDigits = false;
+            for (; p < to && b[p] >= '0' && b[p] <= '9'; p++) {
+                exp = Math.min(exp * 10 + (b[p] - '0'), 10_000);
+                expDigits = true;
+            }
+            if (!expDigits) {
+                any = false;
+            }
+            scale += negExp ? -exp : exp;
+        }
+
+        if (any && p == to && digits <= 15 && Math.abs(scale) < POWERS.length) {
+            double x = scale >= 0 ? mantissa * POWERS[scale] : mantissa / POWERS[-scale];
+            return negative ? -x : x;
+        }
+
+        String s = new String(b, from, to - from, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw new ChunkFailure("Invalid number '" + s + "' in the column '" + column + "'.", line);
+        }
+    }
+
+    /**
+     * The formatted results of a chunk, and the number of lines it has, blank ones included.
+     */
+    private record Chunk(byte[] text, int rows, int lines) {
+    }
+
+    /**
+     * Thrown when a chunk can't be parsed or evaluated.
+     */
+    private static final class ChunkFailure extends RuntimeException {
+        private final String error;
+
+        /**
+         * The failing line of the chunk, counting from 0, or {@code -1}.
+         */
+        private final long line;
+
+        private ChunkFailure(String error, long line) {
+            super(error, null, false, false);
+            this.error = error;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.programs.math.batch;
+
+import org.programs.math.types.ComplexAccumulator;
+
+import java.util.ArrayDeque;
+
+/**
+ * <p>The state of one batch evaluation: the slots of the inputs, parameters and loop variables, and the
+ *    buffers which are free to hold intermediate values.
+ * <p>A frame is used by one thread only.
+ */
+final class Frame {
+    final int size;
+
+    /**
+     * The buffers bound to each slot. The first slots hold the inputs.
+     */
+    final Buffer[] slots;
+
+    private final ArrayDeque<Buffer> free = new ArrayDeque<>();
+
+    /**
+     * The first row of the current block, and the number of rows in it.
+     */
+    int base, n;
+
+    /**
+     * The row evaluated by the last scalar loop, which is the failing one if it throws.
+     */
+    int row;
+
+    /**
+     * Scratch register for the operations done one row at a time.
+     */
+    final ComplexAccumulator acc = new ComplexAccumulator();
+
+    Frame(int size, int slots) {
+        this.size = size;
+        this.slots = new Buffer[slots];
+    }
+
+    /**
+     * Takes a free buffer, or creates one.
+     * @return The buffer.
+     */
+    Buffer take() {
+        Buffer b = free.poll();
+        return b != null ? b : new Buffer(size);
+    }
+
+    /**
+     * Gives back a buffer taken earlier.
+     * @param b The buffer.
+     */
+    void release(Buffer b) {
+        free.push(b);
+    }
+}
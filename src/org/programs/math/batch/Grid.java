@@ -0,0 +1,193 @@
+package org.programs.math.batch;
+
+import org.programs.math.extra.Result;
+import org.programs.math.nodes.FuncCallNode;
+import org.programs.math.nodes.IdentifierNode;
+import org.programs.math.nodes.Node;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * <p>The values of an expression sampled over a real range, or over a rectangle of the complex plane.
+ * <p>The values are stored off heap, as pairs of little endian doubles (the real part, then the imaginary
+ *    part), one row of the grid after another. So they can be written to a binary file as they are, see
+ *    {@link Grid#write(Path)}.
+ * <p>The grid is split into tiles of about {@link Grid#TILE} points, which are evaluated in parallel by a
+ *    {@link BatchEvaluator}.
+ */
+public final class Grid {
+    /**
+     * The approximate number of points of a tile.
+     */
+    public static final int TILE = 1 << 16;
+
+    /**
+     * The number of points along the real axis, and along the imaginary axis.
+     */
+    public final int width, height;
+
+    /**
+     * The values, row by row. The imaginary parts grow from one row to the next.
+     */
+    public final ByteBuffer values;
+
+    private Grid(int width, int height, ByteBuffer values) {
+        this.width = width;
+        this.height = height;
+        this.values = values;
+    }
+
+    /**
+     * Returns the value at a point of the grid.
+     * @param x The index along the real axis.
+     * @param y The index along the imaginary axis.
+     * @return The value.
+     */
+    public ComplexNum get(int x, int y) {
+        int at = (y * width + x) * 2 * Double.BYTES;
+        return new ComplexNum(values.getDouble(at), values.getDouble(at + Double.BYTES));
+    }
+
+    /**
+     * Writes the values to a binary file.
+     * @param file The file. It is replaced if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer b = values.duplicate().clear();
+            while (b.hasRemaining()) {
+                out.write(b);
+            }
+        }
+    }
+
+    /**
+     * Samples an expression over a real range.
+     * @param evaluator The expression.
+     * @param var The variable of the expression which takes the points of the range.
+     * @param re The range.
+     * @return The grid, which has one row, or the error message.
+     */
+    public static Result<Grid, String> tabulate(BatchEvaluator evaluator, String var, Range re) {
+        return tabulate(evaluator, var, re, new Range(0, 0, 1));
+    }
+
+    /**
+     * Samples an expression over a rectangle of the complex plane.
+     * @param evaluator The expression.
+     * @param var The variable of the expression which takes the points of the rectangle.
+     * @param re The range of the real parts.
+     * @param im The range of the imaginary parts.
+     * @return The grid, or the error message.
+     */
+    public static Result<Grid, String> tabulate(BatchEvaluator evaluator, String var, Range re, Range im) {
+        long points = (long) re.points * im.points;
+        if (points * 2 * Double.BYTES > Integer.MAX_VALUE) {
+            return Result.failure("The grid has too many points.");
+        }
+
+        int width = re.points, size = (int) points;
+        ByteBuffer values = ByteBuffer.allocateDirect(size * 2 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        DoubleBuffer doubles = values.asDoubleBuffer();
+
+        //The tiles are whole rows, unless the rows are longer than a tile
+        int rowsPerTile = Math.max(1, TILE / width);
+        int tile = width * rowsPerTile;
+        int tiles = (size + tile - 1) / tile;
+
+        String error = IntStream.range(0, tiles)
+                .parallel()
+                .mapToObj(t -> tile(evaluator, var, re, im, doubles, t * tile, Math.min(size, (t + 1) * tile)))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+
+        if (error != null) {
+            return Result.failure(error);
+        }
+        return Result.success(new Grid(width, im.points, values));
+    }
+
+    /**
+     * Samples a function of one argument over a real range.
+     * @param fn The function. It is called by its name, so it must be the one defined in the symbol table.
+     * @param st The global symbol table.
+     * @param re The range.
+     * @return The grid, which has one row, or the error message.
+     */
+    public static Result<Grid, String> tabulate(Func fn, SymbolTable st, Range re) {
+        return tabulate(fn, st, re, new Range(0, 0, 1));
+    }
+
+    /**
+     * Samples a function of one argument over a rectangle of the complex plane.
+     * @param fn The function. It is called by its name, so it must be the one defined in the symbol table.
+     * @param st The global symbol table.
+     * @param re The range of the real parts.
+     * @param im The range of the imaginary parts.
+     * @return The grid, or the error message.
+     */
+    public static Result<Grid, String> tabulate(Func fn, SymbolTable st, Range re, Range im) {
+        if (st.get(fn.name, true) != fn) {
+            return Result.failure("The function '" + fn.name + "' is not the one defined with its name.");
+        }
+        if (fn.min > 1 || fn.max == 0) {
+            return Result.failure("The function '" + fn.name + "' doesn't take one argument.");
+        }
+
+        //The argument is an input named like the first parameter
+        String var = fn.parameters.get(0).name;
+        Node call = new FuncCallNode(fn.name, List.of(new IdentifierNode(var, true)));
+        return tabulate(new BatchEvaluator(call, st), var, re, im);
+    }
+
+    /**
+     * Evaluates the points of a tile.
+     * @return The error message, or {@code null} if the tile succeeded.
+     */
+    private static String tile(BatchEvaluator evaluator, String var, Range re, Range im, DoubleBuffer doubles,
+                               int from, int to) {
+        int n = to - from, width = re.points;
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            int p = from + i;
+            x[i] = re.at(p % width);
+            y[i] = im.at(p / width);
+        }
+
+        Column out = new Column(n);
+        try {
+            evaluator.run(Map.of(var, new Column(x, y)), out);
+        } catch (BatchEvaluator.Failure e) {
+            if (e.row == -1) {
+                return e.error;
+            }
+
+            int i = (int) e.row;
+            return e.error + " (at " + new ComplexNum(x[i], y[i]) + ")";
+        }
+
+        double[] interleaved = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            interleaved[2 * i] = out.re[i];
+            interleaved[2 * i + 1] = out.im[i];
+        }
+        doubles.put(2 * from, interleaved);
+        return null;
+    }
+}
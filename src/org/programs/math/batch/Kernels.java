@@ -0,0 +1,362 @@
+package org.programs.math.batch;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.programs.math.types.ComplexAccumulator;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+
+import java.util.Arrays;
+
+/**
+ * <p>The operations of the batch evaluator, over the rows of a block.
+ * <p>Addition, subtraction, multiplication, negation, conjugate and modulus are done with SIMD vectors.
+ *    Real operands only touch the real parts, as long as that gives the same result as the complex
+ *    formula (which is not the case for infinite or NaN factors, since {@code inf * 0} is NaN).
+ *    Division of real numbers is vectorized too, unless a divisor is zero or NaN, and so are the
+ *    intrinsics {@code Re}, {@code Im} and {@code sqrt} of real numbers which are not negative.
+ * <p>The other operations go one row at a time, with the same arithmetic as {@link ComplexNum}.
+ * <p>The output buffer may be one of the operands.
+ */
+final class Kernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private Kernels() {
+        //private
+    }
+
+    static void add(Buffer a, Buffer b, Buffer out, int n) {
+        add(a.re, b.re, out.re, n);
+        if (a.real && b.real) {
+            out.setReal();
+        } else {
+            add(a.im(n), b.im(n), out.im, n);
+            out.setComplex();
+        }
+    }
+
+    static void subtract(Buffer a, Buffer b, Buffer out, int n) {
+        subtract(a.re, b.re, out.re, n);
+        if (a.real && b.real) {
+            out.setReal();
+        } else {
+            subtract(a.im(n), b.im(n), out.im, n);
+            out.setComplex();
+        }
+    }
+
+    static void multiply(Buffer a, Buffer b, Buffer out, int n) {
+        if (a.real && b.real && finite(a.re, n) && finite(b.re, n)) {
+            multiply(a.re, b.re, out.re, n);
+            out.setReal();
+        } else {
+            multiply(a.re, a.im(n), b.re, b.im(n), out.re, out.im, n);
+            out.setComplex();
+        }
+    }
+
+    static void divide(Buffer a, Buffer b, Buffer out, int n, Frame f) {
+        if (a.real && b.real && divisible(b.re, n)) {
+            divide(a.re, b.re, out.re, n);
+            out.setReal();
+            return;
+        }
+
+        double[] ar = a.re, ai = a.im(n), br = b.re, bi = b.im(n);
+        ComplexAccumulator acc = f.acc;
+        for (int i = 0; i < n; i++) {
+            f.row = f.base + i;
+            acc.set(ar[i], ai[i]).divTo(br[i], bi[i]);
+            out.re[i] = acc.real;
+            out.im[i] = acc.imaginary;
+        }
+        out.settle(n);
+    }
+
+    static void intDivide(Buffer a, Buffer b, Buffer out, int n, Frame f) {
+        double[] ar = a.re, ai = a.im(n), br = b.re, bi = b.im(n);
+        ComplexAccumulator acc = f.acc;
+        for (int i = 0; i < n; i++) {
+            f.row = f.base + i;
+            acc.set(ar[i], ai[i]).divTo(br[i], bi[i]);
+            out.re[i] = (long) acc.real;
+            out.im[i] = (long) acc.imaginary;
+        }
+        out.settle(n);
+    }
+
+    static void pow(Buffer a, Buffer b, Buffer out, int n, Frame f) {
+        double[] ar = a.re, ai = a.im(n), br = b.re, bi = b.im(n);
+        ComplexAccumulator acc = f.acc;
+        for (int i = 0; i < n; i++) {
+            f.row = f.base + i;
+            acc.set(ar[i], ai[i]).powTo(br[i], bi[i]);
+            out.re[i] = acc.real;
+            out.im[i] = acc.imaginary;
+        }
+        out.settle(n);
+    }
+
+    static void negate(Buffer a, Buffer out, int n) {
+        negate(a.re, out.re, n);
+        if (a.real) {
+            out.setReal();
+        } else {
+            negate(a.im, out.im, n);
+            out.setComplex();
+        }
+    }
+
+    static void conjugate(Buffer a, Buffer out, int n) {
+        if (a != out) {
+            System.arraycopy(a.re, 0, out.re, 0, n);
+        }
+
+        if (a.real) {
+            out.setReal();
+        } else {
+            negate(a.im, out.im, n);
+            out.setComplex();
+        }
+    }
+
+    static void modulus(Buffer a, Buffer out, int n) {
+        modulus(a.re, a.im(n), out.re, n);
+        out.setReal();
+    }
+
+    static void factorial(Buffer a, Buffer out, int n, Frame f) {
+        double[] ar = a.re, ai = a.im(n);
+        for (int i = 0; i < n; i++) {
+            f.row = f.base + i;
+            ComplexNum z = new ComplexNum(ar[i], ai[i]).factorial();
+            out.re[i] = z.real;
+            out.im[i] = z.imaginary;
+        }
+        out.settle(n);
+    }
+
+    /**
+     * Calls a native function for each row.
+     * @param fn The function.
+     * @param a The first argument.
+     * @param b The second argument, or {@code null} if the function takes one.
+     */
+    static void callNative(Func fn, Buffer a, Buffer b, Buffer out, int n, Frame f) {
+        if (fn.isIntrinsic() && intrinsic(fn.name, a, out, n)) {
+            return;
+        }
+
+        double[] ar = a.re, ai = a.im(n);
+        double[] br = b == null ? null : b.re, bi = b == null ? null : b.im(n);
+        for (int i = 0; i < n; i++) {
+            f.row = f.base + i;
+            ComplexNum first = new ComplexNum(ar[i], ai[i]);
+            ComplexNum second = b == null ? null : new ComplexNum(br[i], bi[i]);
+            ComplexNum z = fn.callNative(first, second);
+            out.re[i] = z.real;
+            out.im[i] = z.imaginary;
+        }
+        out.settle(n);
+    }
+
+    /**
+     * Does the intrinsics which work on whole buffers: the projections {@code Re} and {@code Im}, and
+     * {@code sqrt} of real numbers which are not negative.
+     * @param name The name of the intrinsic.
+     * @return {@code false} if the intrinsic should be called for each row instead.
+     */
+    private static boolean intrinsic(String name, Buffer a, Buffer out, int n) {
+        switch (name) {
+            case "Re" -> {
+                if (a != out) {
+                    System.arraycopy(a.re, 0, out.re, 0, n);
+                }
+            }
+            case "Im" -> {
+                if (a.real) {
+                    Arrays.fill(out.re, 0, n, 0);
+                } else {
+                    System.arraycopy(a.im, 0, out.re, 0, n);
+                }
+            }
+            case "sqrt" -> {
+                if (!a.real || !nonNegative(a.re, n)) {
+                    return false;
+                }
+                sqrt(a.re, out.re, n);
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        out.setReal();
+        return true;
+    }
+
+    private static boolean nonNegative(double[] a, int n) {
+        for (int i = 0; i < n; i++) {
+            if (!(a[i] >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void sqrt(double[] a, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.SQRT).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    private static void add(double[] a, double[] b, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            x.add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    private static void subtract(double[] a, double[] b, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            x.sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
+
+    private static void multiply(double[] a, double[] b, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            x.mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
+
+    /**
+     * (a + bi)(c + di) = (ac - bd) + (ad + bc)i
+     */
+    private static void multiply(double[] ar, double[] ai, double[] br, double[] bi,
+                                 double[] outR, double[] outI, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, ar, i), b = DoubleVector.fromArray(SPECIES, ai, i);
+            DoubleVector c = DoubleVector.fromArray(SPECIES, br, i), d = DoubleVector.fromArray(SPECIES, bi, i);
+            a.mul(c).sub(b.mul(d)).intoArray(outR, i);
+            a.mul(d).add(b.mul(c)).intoArray(outI, i);
+        }
+        for (; i < n; i++) {
+            double a = ar[i], b = ai[i], c = br[i], d = bi[i];
+            outR[i] = a * c - b * d;
+            outI[i] = a * d + b * c;
+        }
+    }
+
+    private static void divide(double[] a, double[] b, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            x.div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] / b[i];
+        }
+    }
+
+    private static void negate(double[] a, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = -a[i];
+        }
+    }
+
+    /**
+     * |a + bi| = sqrt(a^2 + b^2)
+     */
+    private static void modulus(double[] re, double[] im, double[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, re, i), b = DoubleVector.fromArray(SPECIES, im, i);
+            a.mul(a).add(b.mul(b)).lanewise(VectorOperators.SQRT).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+        }
+    }
+
+    /**
+     * Checks if all the values are finite.
+     */
+    private static boolean finite(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            if (!DoubleVector.fromArray(SPECIES, a, i).test(VectorOperators.IS_FINITE).allTrue()) {
+                return false;
+            }
+        }
+        for (; i < n; i++) {
+            if (!Double.isFinite(a[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if no divisor is zero or NaN, so the imaginary parts of the quotients are all zero.
+     */
+    private static boolean divisible(double[] b, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, b, i);
+            VectorMask<Double> bad = x.compare(VectorOperators.EQ, 0).or(x.test(VectorOperators.IS_NAN));
+            if (bad.anyTrue()) {
+                return false;
+            }
+        }
+        for (; i < n; i++) {
+            if (b[i] == 0 || Double.isNaN(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if all the values are zero.
+     */
+    static boolean zeros(double[] a, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            if (!DoubleVector.fromArray(SPECIES, a, i).compare(VectorOperators.EQ, 0).allTrue()) {
+                return false;
+            }
+        }
+        for (; i < n; i++) {
+            if (a[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package org.programs.math.batch;
+
+/**
+ * Evenly spaced points of a real range, both ends included.
+ * @see Grid
+ */
+public final class Range {
+    /**
+     * The first point.
+     */
+    public final double from;
+
+    /**
+     * The last point.
+     */
+    public final double to;
+
+    /**
+     * The number of points.
+     */
+    public final int points;
+
+    /**
+     * Creates a range.
+     * @param from The first point.
+     * @param to The last point.
+     * @param points The number of points. If it is 1, the range is just the first point.
+     * @throws IllegalArgumentException If the number of points is not positive.
+     */
+    public Range(double from, double to, int points) {
+        if (points < 1) {
+            throw new IllegalArgumentException("A range needs at least one point.");
+        }
+
+        this.from = from;
+        this.to = to;
+        this.points = points;
+    }
+
+    /**
+     * Returns a point of the range.
+     * @param i The index of the point.
+     * @return The point.
+     */
+    public double at(int i) {
+        return points == 1 ? from : from + (to - from) * i / (points - 1);
+    }
+}
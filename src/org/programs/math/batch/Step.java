@@ -0,0 +1,260 @@
+package org.programs.math.batch;
+
+import org.programs.math.lexer.TokenType;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+
+import java.util.Arrays;
+
+import static org.programs.math.types.ComplexNum.REAL_UNIT;
+
+/**
+ * <p>A node of a statement translated for the batch evaluator, which evaluates the node for all the rows
+ *    of a block at once.
+ * <p>Some steps return a new buffer, which the caller must release, and others return a buffer they keep
+ *    (see {@link Step#fresh()}).
+ */
+abstract class Step {
+    /**
+     * Evaluates this node for the rows of the current block.
+     * @param f The frame.
+     * @return The values.
+     */
+    abstract Buffer eval(Frame f);
+
+    /**
+     * Checks if the buffers returned by this step belong to the caller.
+     * @return {@code true} if the caller must release them.
+     */
+    boolean fresh() {
+        return true;
+    }
+
+    /**
+     * A number.
+     */
+    static final class Const extends Step {
+        final ComplexNum value;
+        private Buffer buffer;
+
+        Const(ComplexNum value) {
+            this.value = value;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            if (buffer == null) {
+                //Filled once, all the blocks have the same size
+                buffer = new Buffer(f.size);
+                Arrays.fill(buffer.re, value.real);
+                Arrays.fill(buffer.im, value.imaginary);
+                buffer.settle(f.size);
+            }
+            return buffer;
+        }
+
+        @Override
+        boolean fresh() {
+            return false;
+        }
+    }
+
+    /**
+     * An input, a parameter or a loop variable.
+     */
+    static final class Slot extends Step {
+        final int index;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            return f.slots[index];
+        }
+
+        @Override
+        boolean fresh() {
+            return false;
+        }
+    }
+
+    static final class Binary extends Step {
+        private final Step left, right;
+        private final TokenType op;
+
+        Binary(Step left, TokenType op, Step right) {
+            this.left = left;
+            this.op = op;
+            this.right = right;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            Buffer a = left.eval(f), b = right.eval(f);
+            Buffer out = left.fresh() ? a : right.fresh() ? b : f.take();
+            int n = f.n;
+
+            switch (op) {
+                case PLUS -> Kernels.add(a, b, out, n);
+                case MINUS -> Kernels.subtract(a, b, out, n);
+                case MULTIPLY -> Kernels.multiply(a, b, out, n);
+                case DIVIDE -> Kernels.divide(a, b, out, n, f);
+                case INT_DIV -> Kernels.intDivide(a, b, out, n, f);
+                case POW -> Kernels.pow(a, b, out, n, f);
+                default -> throw new RuntimeException("This should never happen!");
+            }
+
+            if (right.fresh() && b != out) {
+                f.release(b);
+            }
+            return out;
+        }
+    }
+
+    static final class Unary extends Step {
+        private final Step operand;
+        private final TokenType op;
+
+        Unary(TokenType op, Step operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            Buffer a = operand.eval(f);
+            Buffer out = operand.fresh() ? a : f.take();
+            int n = f.n;
+
+            switch (op) {
+                case MINUS -> Kernels.negate(a, out, n);
+                case PIPE -> Kernels.modulus(a, out, n);
+                case FACTORIAL -> Kernels.factorial(a, out, n, f);
+                case COMPLEMENT -> Kernels.conjugate(a, out, n);
+                default -> throw new RuntimeException("This should never happen!");
+            }
+            return out;
+        }
+    }
+
+    /**
+     * A call of a native function.
+     */
+    static final class Native extends Step {
+        private final Func fn;
+        private final Step first, second;
+
+        Native(Func fn, Step first, Step second) {
+            this.fn = fn;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            Buffer a = first.eval(f), b = second == null ? null : second.eval(f);
+            Buffer out = f.take();
+            Kernels.callNative(fn, a, b, out, f.n, f);
+
+            if (first.fresh()) {
+                f.release(a);
+            }
+            if (second != null && second.fresh()) {
+                f.release(b);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * An inlined call of a user defined function. The arguments which aren't numbers or slots already
+     * are evaluated into slots first, then the body is evaluated.
+     */
+    static final class Call extends Step {
+        private final Step[] args;
+        private final int[] slots;
+        private final Step body;
+
+        Call(Step[] args, int[] slots, Step body) {
+            this.args = args;
+            this.slots = slots;
+            this.body = body;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            Buffer[] bound = new Buffer[args.length];
+            for (int i = 0; i < args.length; i++) {
+                bound[i] = args[i].eval(f);
+                f.slots[slots[i]] = bound[i];
+            }
+
+            Buffer result = body.eval(f);
+            boolean owned = body.fresh();
+            for (Buffer b : bound) {
+                if (b == result) {
+                    //The body is just a parameter, its buffer is handed over
+                    owned = true;
+                } else {
+                    f.release(b);
+                }
+            }
+
+            if (owned) {
+                return result;
+            }
+
+            Buffer copy = f.take();
+            copy.copy(result, f.n);
+            return copy;
+        }
+    }
+
+    /**
+     * A sum or product, whose bounds are the same for all the rows.
+     */
+    static final class Loop extends Step {
+        private final boolean sum;
+        private final int var;
+        private final ComplexNum initial, upto;
+        private final Step body;
+
+        Loop(boolean sum, int var, ComplexNum initial, ComplexNum upto, Step body) {
+            this.sum = sum;
+            this.var = var;
+            this.initial = initial;
+            this.upto = upto;
+            this.body = body;
+        }
+
+        @Override
+        Buffer eval(Frame f) {
+            int n = f.n;
+            Buffer result = f.take(), k = f.take();
+            Arrays.fill(result.re, 0, n, sum ? 0 : 1);
+            result.setReal();
+
+            for (ComplexNum i = initial; i.real <= upto.real; i = i.add(REAL_UNIT)) {
+                Arrays.fill(k.re, 0, n, i.real);
+                k.setReal();
+                f.slots[var] = k;
+
+                Buffer b = body.eval(f);
+                if (sum) {
+                    Kernels.add(result, b, result, n);
+                } else {
+                    Kernels.multiply(result, b, result, n);
+                }
+
+                if (body.fresh()) {
+                    f.release(b);
+                }
+            }
+
+            f.release(k);
+            return result;
+        }
+    }
+}
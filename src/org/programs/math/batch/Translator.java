@@ -0,0 +1,291 @@
+package org.programs.math.batch;
+
+import org.programs.math.exceptions.IdentifierExistsException;
+import org.programs.math.exceptions.InvalidArgsException;
+import org.programs.math.exceptions.NoSuchIdentifierException;
+import org.programs.math.exceptions.RTException;
+import org.programs.math.lexer.TokenType;
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Parameter;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
+
+import java.util.*;
+
+/**
+ * <p>Translates a statement into {@link Step}s, resolving the names in the same way as visiting it would.
+ * <p>The inputs are global variables, which hide the ones of the symbol table. User defined functions are
+ *    inlined, and the operations on numbers only are done right away. Errors which don't depend on the
+ *    rows (like an undefined name, or a wrong number of arguments) are thrown here.
+ */
+final class Translator {
+    private final SymbolTable st;
+
+    private final Map<String, Step> inputs = new HashMap<>();
+
+    /**
+     * The variables of the top level loops being translated. They live in the global scope while the loop runs.
+     */
+    private final Map<String, Step> globalLoops = new HashMap<>();
+
+    /**
+     * The parameters and loop variables of the function being inlined, or {@code null} at top level.
+     */
+    private Map<String, Step> locals;
+
+    /**
+     * The functions whose body is being inlined.
+     */
+    private final Set<Func> inlining = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int slots;
+
+    /**
+     * Creates a translator.
+     * @param st The global symbol table.
+     * @param inputs The names of the inputs, which get the first slots.
+     */
+    Translator(SymbolTable st, List<String> inputs) {
+        this.st = st;
+        for (String name : inputs) {
+            this.inputs.put(name, new Step.Slot(slots++));
+        }
+    }
+
+    /**
+     * Returns the number of slots used so far.
+     * @return The slot count.
+     */
+    int slots() {
+        return slots;
+    }
+
+    /**
+     * Translates an expression.
+     * @param node The expression.
+     * @return The step.
+     * @throws Unsupported If the expression can't be evaluated in batch.
+     */
+    Step expr(Node node) {
+        if (node instanceof NumberNode num) {
+            return constant(num.num);
+        }
+
+        if (node instanceof IdentifierNode id) {
+            return identifier(id);
+        }
+
+        if (node instanceof BinOpNode bin) {
+            Step l = expr(bin.left), r = expr(bin.right);
+            TokenType op = bin.op.tokenType;
+            if (l instanceof Step.Const a && r instanceof Step.Const b) {
+                return constant(operate(a.value, op, b.value));
+            }
+            return new Step.Binary(l, op, r);
+        }
+
+        if (node instanceof UnaryOpNode un) {
+            Step s = expr(un.node);
+            TokenType op = un.op.tokenType;
+            if (op != TokenType.MINUS && op != TokenType.PIPE && op != TokenType.FACTORIAL
+                    && op != TokenType.COMPLEMENT) {
+                //+x is x
+                return s;
+            }
+
+            if (s instanceof Step.Const c) {
+                return constant(new UnaryOpNode(un.op, new NumberNode(c.value)).visit(st));
+            }
+            return new Step.Unary(op, s);
+        }
+
+        if (node instanceof SigmaPiNode sp) {
+            return loop(sp);
+        }
+
+        if (node instanceof FuncCallNode call) {
+            return call(call);
+        }
+
+        throw new Unsupported(node);
+    }
+
+    private static ComplexNum operate(ComplexNum l, TokenType op, ComplexNum r) {
+        return switch (op) {
+            case PLUS -> l.add(r);
+            case MINUS -> l.subtract(r);
+            case MULTIPLY -> l.multiply(r);
+            case DIVIDE -> l.divide(r);
+            case INT_DIV -> l.intDivide(r);
+            case POW -> l.pow(r);
+            default -> throw new RuntimeException("This should never happen!");
+        };
+    }
+
+    /**
+     * Resolves a variable in the same way as {@link IdentifierNode#visit(SymbolTable)}.
+     */
+    private Step identifier(IdentifierNode id) {
+        String name = id.idName;
+        Step s = null;
+
+        if (!id.isGlobal) {
+            s = locals != null ? locals.get(name) : globalLoops.get(name);
+        }
+
+        //Fallback to global
+        if (s == null) {
+            s = globalLoops.get(name);
+        }
+        if (s == null) {
+            s = inputs.get(name);
+        }
+        if (s != null) {
+            return s;
+        }
+
+        Value v = Rational.demote(st.get(name, true));
+        if (v instanceof ComplexNum z) {
+            return constant(z);
+        }
+        if (v instanceof Vector || v instanceof Matrix) {
+            //The rows are the elements of the inputs, a vector or a matrix has no row
+            throw new Unsupported(id);
+        }
+
+        throw new NoSuchIdentifierException(name, false);
+    }
+
+    /**
+     * Translates a sum or product, in the same way as {@link SigmaPiNode#visit(SymbolTable)}.
+     */
+    private Step loop(SigmaPiNode sp) {
+        String name = sp.init.name;
+        boolean topLevel = locals == null;
+        Map<String, Step> scope = topLevel ? globalLoops : locals;
+
+        boolean exists = topLevel
+                ? st.contains(name, false) || inputs.containsKey(name) || globalLoops.containsKey(name)
+                : locals.containsKey(name);
+        if (exists) {
+            throw new IdentifierExistsException(name, false);
+        }
+
+        Step initial = expr(sp.init.defaultVal), upto = expr(sp.upto);
+        if (!(initial instanceof Step.Const i) || !(upto instanceof Step.Const u)) {
+            //Each row would loop a different number of times
+            throw new Unsupported(sp);
+        }
+
+        if (!i.value.isReal() || !u.value.isReal()) {
+            throw new RTException("Sum or product's first two parameters must be real!");
+        }
+
+        int var = slots++;
+        scope.put(name, new Step.Slot(var));
+        Step body = expr(sp.evaluationExpr);
+        scope.remove(name);
+
+        return new Step.Loop(sp.type == SigmaPiNode.Type.SIGMA, var, i.value, u.value, body);
+    }
+
+    /**
+     * Translates a function call, in the same way as {@link FuncCallNode#visit(SymbolTable)}.
+     */
+    private Step call(FuncCallNode call) {
+        if (!(st.get(call.name, true) instanceof Func fn)) {
+            throw new NoSuchIdentifierException(call.name, true);
+        }
+        if (call.args.size() < fn.min) {
+            throw new InvalidArgsException(fn.min, call.args.size(), true);
+        }
+        if (call.args.size() > fn.max) {
+            throw new InvalidArgsException(fn.max, call.args.size(), false);
+        }
+
+        if (fn.isArrayNative()) {
+            throw new Unsupported(call);
+        }
+
+        if (fn.isNative() || fn.isIntrinsic()) {
+            Step first = argument(call, fn, 0);
+            Step second = fn.parameters.size() == 2 ? argument(call, fn, 1) : null;
+
+            if (first instanceof Step.Const a && (second == null || second instanceof Step.Const)) {
+                ComplexNum b = second == null ? null : ((Step.Const) second).value;
+                return constant(fn.callNative(a.value, b));
+            }
+            return new Step.Native(fn, first, second);
+        }
+
+        if (inlining.contains(fn)) {
+            //Recursive, this fails when it is evaluated (unless the call is in a loop which never runs)
+            throw new Unsupported(call);
+        }
+
+        //The arguments (and default values) are evaluated in the scope of the caller
+        Map<String, Step> params = new HashMap<>();
+        List<Step> args = new ArrayList<>();
+        List<Integer> argSlots = new ArrayList<>();
+        for (int i = 0; i < fn.max; i++) {
+            Step arg = argument(call, fn, i);
+            if (arg.fresh()) {
+                Step.Slot slot = new Step.Slot(slots++);
+                args.add(arg);
+                argSlots.add(slot.index);
+                arg = slot;
+            }
+            params.put(fn.parameters.get(i).name, arg);
+        }
+
+        Map<String, Step> outer = locals;
+        locals = params;
+        inlining.add(fn);
+        Step body = expr(fn.body());
+        inlining.remove(fn);
+        locals = outer;
+
+        if (args.isEmpty()) {
+            return body;
+        }
+
+        int[] s = new int[argSlots.size()];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = argSlots.get(i);
+        }
+        return new Step.Call(args.toArray(new Step[0]), s, body);
+    }
+
+    private Step argument(FuncCallNode call, Func fn, int i) {
+        if (i < call.args.size()) {
+            return expr(call.args.get(i));
+        }
+
+        Parameter p = fn.parameters.get(i);
+        return expr(p.defaultVal);
+    }
+
+    private Step constant(ComplexNum z) {
+        return new Step.Const(z);
+    }
+
+    /**
+     * Thrown when a statement can't be evaluated in batch.
+     */
+    static final class Unsupported extends RuntimeException {
+        /**
+         * The part of the statement which can't be evaluated.
+         */
+        final Node node;
+
+        Unsupported(Node node) {
+            super(null, null, false, false);
+            this.node = node;
+        }
+    }
+}
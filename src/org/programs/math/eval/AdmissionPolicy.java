@@ -0,0 +1,252 @@
+package org.programs.math.eval;
+
+import org.programs.math.exceptions.RTException;
+import org.programs.math.exceptions.RejectedException;
+import org.programs.math.nodes.FuncDefNode;
+import org.programs.math.nodes.Node;
+import org.programs.math.nodes.SigmaPiNode;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Func;
+import org.programs.math.types.Value;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Decides, before statements are evaluated, if they are evaluated right away, queued onto a pool of low
+ *    priority threads, or rejected, from their estimated cost (see {@link CostModel}).
+ * <p>The statements which cost at most {@link AdmissionPolicy#allowCost} are evaluated right away, by the
+ *    calling thread. The ones which cost at most {@link AdmissionPolicy#queueCost} are evaluated by the
+ *    threads of the policy while the caller waits, so a few expensive expressions can't take all the cores
+ *    from the cheap ones. The others are rejected with a {@link RejectedException}. The threads of the policy
+ *    are a {@link ForkJoinPool} of their own, so the statements of a queued input which run at the same time
+ *    (see {@link StatementScheduler}) and its forks (see {@link ForkPlanner}) stay on them, rather than going
+ *    to the common pool.
+ * <p>The number of iterations of a sum or product whose range is not made of constants is only guessed.
+ *    Statements with such ranges get at least the decision {@link AdmissionPolicy#unknownRange}, and so do the
+ *    ones which call a function whose body is not parsed yet.
+ */
+public final class AdmissionPolicy {
+    /**
+     * What is done with statements, from the most permissive.
+     */
+    public enum Decision {
+        ALLOW,
+        QUEUE,
+        REJECT
+    }
+
+    /**
+     * Evaluates everything right away, without estimating it.
+     */
+    public static final AdmissionPolicy ALLOW_ALL = new AdmissionPolicy(Long.MAX_VALUE, Long.MAX_VALUE,
+            Decision.ALLOW, 1);
+
+    /**
+     * The longest text of a sum or product in an error message.
+     */
+    private static final int MAX_TEXT = 60;
+
+    /**
+     * The highest cost which is evaluated right away.
+     */
+    public final long allowCost;
+
+    /**
+     * The highest cost which is evaluated at all, on the low priority threads.
+     */
+    public final long queueCost;
+
+    /**
+     * The least decision for statements with a range which is not made of constants, or which call a function
+     * whose body is not parsed yet.
+     */
+    public final Decision unknownRange;
+
+    /**
+     * The number of low priority threads.
+     */
+    public final int threads;
+
+    /**
+     * The low priority threads, started when the first statements are queued.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a policy.
+     * @param allowCost The highest cost evaluated right away.
+     * @param queueCost The highest cost evaluated on the low priority threads.
+     * @param unknownRange The least decision for ranges which are not made of constants.
+     * @param threads The number of low priority threads.
+     */
+    public AdmissionPolicy(long allowCost, long queueCost, Decision unknownRange, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread.");
+        }
+
+        this.allowCost = allowCost;
+        this.queueCost = queueCost;
+        this.unknownRange = unknownRange;
+        this.threads = threads;
+    }
+
+    /**
+     * Estimates the statements and decides what is done with them, without evaluating them.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return The estimate.
+     * @throws org.programs.math.exceptions.BaseException If the body of a called function can't be parsed.
+     */
+    public Estimate estimate(List<Node> nodes, SymbolTable st) {
+        CostModel costs = new CostModel(st);
+        long total = 0;
+        for (Node node : nodes) {
+            //The functions defined by the statements are called by the ones after them
+            if (node instanceof FuncDefNode def) {
+                costs.define(def.fn);
+            }
+
+            long c = costs.cost(node);
+            total = total + c < 0 ? Long.MAX_VALUE : total + c;
+        }
+
+        List<SigmaPiNode> unknown = costs.unknownRanges();
+        List<Func> unparsed = costs.unparsedBodies();
+        Decision d = total <= allowCost ? Decision.ALLOW : total <= queueCost ? Decision.QUEUE : Decision.REJECT;
+        if ((!unknown.isEmpty() || !unparsed.isEmpty()) && unknownRange.compareTo(d) > 0) {
+            d = unknownRange;
+        }
+
+        return new Estimate(total, unknown, unparsed, d);
+    }
+
+    /**
+     * Evaluates the statements as this policy decides, like {@link StatementScheduler#run(List, SymbolTable)}.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return The values of the statements which are not assignments or definitions.
+     * @throws RejectedException If the statements are too expensive.
+     * @throws org.programs.math.exceptions.BaseException If any statement fails.
+     */
+    public List<Value> evaluate(List<Node> nodes, SymbolTable st) {
+        if (this == ALLOW_ALL) {
+            return StatementScheduler.run(nodes, st);
+        }
+
+        return admit(nodes, st).decision == Decision.QUEUE ? queue(nodes, st) : StatementScheduler.run(nodes, st);
+    }
+
+    /**
+     * Estimates the statements, and fails if this policy rejects them.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return The estimate, which is allowed or queued.
+     * @throws RejectedException If the statements are too expensive.
+     */
+    public Estimate admit(List<Node> nodes, SymbolTable st) {
+        Estimate e = estimate(nodes, st);
+        if (e.decision == Decision.REJECT) {
+            throw new RejectedException(e.cost > queueCost
+                    ? "The estimated cost " + e.cost + " is above the limit of " + queueCost + "."
+                    : !e.unknownRanges.isEmpty()
+                    ? "The number of iterations of " + text(e.unknownRanges.get(0)) + " is not known."
+                    : "The cost of " + e.unparsedBodies.get(0).name + " is not known before it is parsed.");
+        }
+        return e;
+    }
+
+    /**
+     * Evaluates the statements on the low priority threads, while the caller waits.
+     * <p>Cancelling the future doesn't stop a task which is already running, so the statements run under the
+     *    caller's budget, or a new one if it has none. When the caller is interrupted, the budget is cancelled,
+     *    and the statements stop at their next step.
+     */
+    private List<Value> queue(List<Node> nodes, SymbolTable st) {
+        Budget caller = Budget.current();
+        Budget budget = caller != null ? caller : Budget.steps(Long.MAX_VALUE);
+
+        Future<List<Value>> f;
+        EvaluationContext outer = caller == null ? budget.enter() : null;
+        try {
+            f = pool().submit(EvaluationContext.bind(() -> StatementScheduler.run(nodes, st)));
+        } finally {
+            if (caller == null) {
+                EvaluationContext.exit(outer);
+            }
+        }
+
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            budget.cancel();
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RTException("Interrupted while waiting for a low priority thread.");
+        }
+    }
+
+    private synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            AtomicInteger count = new AtomicInteger();
+            pool = new ForkJoinPool(threads, p -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("calculator-low-priority-" + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    private static String text(Node node) {
+        String s = node.toString();
+        return s.length() <= MAX_TEXT ? s : s.substring(0, MAX_TEXT - 3) + "...";
+    }
+
+    /**
+     * The estimated cost of statements, and what a policy decided to do with them.
+     */
+    public static final class Estimate {
+        /**
+         * The estimated cost of all the statements.
+         */
+        public final long cost;
+
+        /**
+         * The sums and products whose number of iterations was guessed.
+         */
+        public final List<SigmaPiNode> unknownRanges;
+
+        /**
+         * The called functions whose body is not parsed yet, and whose cost was guessed.
+         */
+        public final List<Func> unparsedBodies;
+
+        public final Decision decision;
+
+        Estimate(long cost, List<SigmaPiNode> unknownRanges, List<Func> unparsedBodies, Decision decision) {
+            this.cost = cost;
+            this.unknownRanges = unknownRanges;
+            this.unparsedBodies = unparsedBodies;
+            this.decision = decision;
+        }
+
+        public String toString() {
+            return decision + ", cost " + cost + (unknownRanges.isEmpty() ? ""
+                    : ", " + unknownRanges.size() + " unknown range" + (unknownRanges.size() == 1 ? "" : "s"))
+                    + (unparsedBodies.isEmpty() ? ""
+                    : ", " + unparsedBodies.size() + " unparsed bod" + (unparsedBodies.size() == 1 ? "y" : "ies"));
+        }
+    }
+}
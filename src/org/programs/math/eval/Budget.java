@@ -0,0 +1,151 @@
+package org.programs.math.eval;
+
+import org.programs.math.exceptions.BudgetExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Bounds an evaluation at runtime, by a number of steps, a deadline, or both, and lets it be cancelled from
+ *    another thread. A step is an iteration of a sum or product, or a call of a function. An evaluation which
+ *    runs out of steps, passes its deadline or is cancelled fails with a {@link BudgetExceededException}.
+ * <p>The budget is checked cooperatively, at the steps, so a thread is never interrupted. The deadline is read
+ *    every {@link Budget#CLOCK_STEPS} steps, and the loops charge their steps in chunks of
+ *    {@link Budget#CHUNK}, so an evaluation may run a little over its budget before it stops. A compiled program
+ *    charges the calls it inlined, so it takes as many steps as the interpreter.
+ * <p>The budget belongs to the thread which entered it, and is carried to the other threads of the evaluation by
+ *    its {@link EvaluationContext}. The steps add up over all the evaluations a budget is used for, and the
+ *    deadline counts from when the budget was created.
+ */
+public final class Budget {
+    /**
+     * The number of steps between two reads of the clock.
+     */
+    public static final int CLOCK_STEPS = 64;
+
+    /**
+     * The number of steps a loop takes before charging them, in the interpreter and in compiled programs.
+     */
+    public static final int CHUNK = 1024;
+
+    /**
+     * The most steps, {@link Long#MAX_VALUE} if they are not limited.
+     */
+    public final long steps;
+
+    /**
+     * The time the evaluations may take, or {@code null} if it is not limited.
+     */
+    public final Duration timeout;
+
+    /**
+     * When the time is up, as given by {@link System#nanoTime()}.
+     */
+    private final long deadline;
+
+    private final AtomicLong used = new AtomicLong();
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a budget. The deadline starts now.
+     * @param steps The most steps, {@link Long#MAX_VALUE} to not limit them.
+     * @param timeout The time the evaluations may take, or {@code null} to not limit it.
+     */
+    public Budget(long steps, Duration timeout) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("The number of steps can't be negative.");
+        }
+
+        this.steps = steps;
+        this.timeout = timeout;
+        deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * Creates a budget with only a number of steps.
+     * @param steps The most steps.
+     * @return The budget.
+     */
+    public static Budget steps(long steps) {
+        return new Budget(steps, null);
+    }
+
+    /**
+     * Creates a budget with only a deadline, which starts now.
+     * @param timeout The time the evaluations may take.
+     * @return The budget.
+     */
+    public static Budget timeout(Duration timeout) {
+        return new Budget(Long.MAX_VALUE, timeout);
+    }
+
+    /**
+     * Cancels the evaluations of this budget. It can be called from any thread, and they fail at their next step.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the steps charged so far.
+     * @return The number of steps.
+     */
+    public long used() {
+        return used.get();
+    }
+
+    /**
+     * Makes this the budget of the current thread, until {@link EvaluationContext#exit(EvaluationContext)}.
+     * @return The context of the thread before, to give to {@link EvaluationContext#exit(EvaluationContext)}.
+     * @throws BudgetExceededException If the budget is already used up, past its deadline or cancelled.
+     */
+    public EvaluationContext enter() {
+        check(used.get(), true);
+        return EvaluationContext.enter(this);
+    }
+
+    /**
+     * Returns the budget of the current thread.
+     * @return The budget, or {@code null} if there is none.
+     */
+    public static Budget current() {
+        return EvaluationContext.budget();
+    }
+
+    /**
+     * Charges a step to the budget of the current thread, if there is one.
+     * @throws BudgetExceededException If the budget is used up, past its deadline or cancelled.
+     */
+    public static void step() {
+        Budget b = current();
+        if (b != null) {
+            b.charge(1);
+        }
+    }
+
+    /**
+     * Charges steps to this budget.
+     * @param n The number of steps.
+     * @throws BudgetExceededException If the budget is used up, past its deadline or cancelled.
+     */
+    public void charge(long n) {
+        long u = used.addAndGet(n);
+        check(u, n > 1 || u % CLOCK_STEPS == 0);
+    }
+
+    private void check(long used, boolean clock) {
+        if (cancelled) {
+            throw new BudgetExceededException("The evaluation was cancelled.");
+        }
+        if (used > steps) {
+            throw new BudgetExceededException("The evaluation took more than " + steps + " steps.");
+        }
+        if (clock && timeout != null && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException("The evaluation took longer than " + timeout.toMillis() + " ms.");
+        }
+    }
+}
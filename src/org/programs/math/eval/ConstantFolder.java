@@ -0,0 +1,96 @@
+package org.programs.math.eval;
+
+import org.programs.math.exceptions.BaseException;
+import org.programs.math.lexer.TokenType;
+import org.programs.math.nodes.*;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>An optimization pass which replaces the operations whose operands are all numbers by their result,
+ *    like {@code 2 * pi / 180} or {@code 3i}.
+ * <p>Operations which fail (like {@code 1 / 0}) are left as they are, so the error is still thrown when the
+ *    statement is evaluated. Factorials of large numbers are not folded either, to keep this pass cheap.
+ * <p>Function bodies are never touched, only the given statement.
+ */
+public final class ConstantFolder {
+    /**
+     * The largest number whose factorial is folded. Above this, the factorial is infinite anyway.
+     */
+    private static final double MAX_FACTORIAL = 170;
+
+    private ConstantFolder() {
+        //private
+    }
+
+    /**
+     * Folds the constant parts of the given statement.
+     * @param node The statement.
+     * @return The folded statement, or the same node if there is nothing to fold.
+     */
+    public static Node fold(Node node) {
+        if (node instanceof BinOpNode bin) {
+            Node l = fold(bin.left), r = fold(bin.right);
+            BinOpNode folded = l == bin.left && r == bin.right ? bin : new BinOpNode(l, bin.op, r);
+            return l instanceof NumberNode && r instanceof NumberNode ? evaluate(folded) : folded;
+        }
+
+        if (node instanceof UnaryOpNode un) {
+            Node n = fold(un.node);
+            UnaryOpNode folded = n == un.node ? un : new UnaryOpNode(un.op, n);
+            if (!(n instanceof NumberNode num)) {
+                return folded;
+            }
+
+            if (un.op.tokenType == TokenType.FACTORIAL && num.num.real > MAX_FACTORIAL) {
+                return folded;
+            }
+            return evaluate(folded);
+        }
+
+        if (node instanceof AssignmentNode as) {
+            Node e = fold(as.expr);
+            return e == as.expr ? as : new AssignmentNode(as.idName, e);
+        }
+
+        if (node instanceof SigmaPiNode sp) {
+            Node i = fold(sp.init.defaultVal), u = fold(sp.upto), e = fold(sp.evaluationExpr);
+            if (i == sp.init.defaultVal && u == sp.upto && e == sp.evaluationExpr) {
+                return sp;
+            }
+
+            return new SigmaPiNode(new Parameter(sp.init.name, i), u, e, sp.type);
+        }
+
+        if (node instanceof FuncCallNode call) {
+            List<Node> args = new ArrayList<>(call.args.size());
+            boolean changed = false;
+            for (Node arg : call.args) {
+                Node a = fold(arg);
+                args.add(a);
+                changed |= a != arg;
+            }
+
+            return changed ? new FuncCallNode(call.name, args) : call;
+        }
+
+        return node;
+    }
+
+    /**
+     * Evaluates an operation on numbers.
+     * @param node The operation.
+     * @return A number node, or the operation itself if it fails.
+     */
+    private static Node evaluate(Node node) {
+        try {
+            ComplexNum value = node.visit(null);
+            return new NumberNode(value);
+        } catch (BaseException e) {
+            return node;
+        }
+    }
+}
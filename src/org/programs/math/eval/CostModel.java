@@ -0,0 +1,339 @@
+package org.programs.math.eval;
+
+import org.programs.math.exceptions.BaseException;
+import org.programs.math.lexer.TokenType;
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Estimates how expensive it is to evaluate a node, in abstract units of roughly one simple node visit.
+ * <p>The cost of a node is its own cost plus the cost of its children, except for:
+ * <p>- {@link SigmaPiNode}: the number of iterations times the cost of the body. If the range is not made of
+ *      constants, {@link CostModel#UNKNOWN_ITERATIONS} is assumed, and the node is kept in
+ *      {@link CostModel#unknownRanges()}.
+ * <p>- {@link FuncCallNode}: the cost of the arguments plus the cost of the function body, as if the body was
+ *      inlined. Recursive calls are only counted once. A body which is not parsed yet (see
+ *      {@link Func#isParsed()}) is not parsed just to estimate it, since a syntax error in it must only be
+ *      reported when the function is called. {@link CostModel#UNPARSED_BODY} is assumed, and the function is
+ *      kept in {@link CostModel#unparsedBodies()}.
+ * <p>Costs saturate at {@link Long#MAX_VALUE}.
+ */
+public final class CostModel {
+    /**
+     * The cost of a simple node, like a number, a variable or an addition.
+     */
+    public static final long NODE = 1;
+
+    /**
+     * The cost of operations which go through {@code exp} and {@code log}, like {@code ^}.
+     */
+    public static final long TRANSCENDENTAL = 20;
+
+    /**
+     * The extra cost of calling a function (the new scope and binding the arguments).
+     */
+    public static final long CALL = 10;
+
+    /**
+     * The cost of the body of a native function.
+     */
+    public static final long NATIVE = 40;
+
+    /**
+     * The cost of the body of an intrinsic, a built-in function with a direct implementation (see
+     * {@link Func#isIntrinsic()}).
+     */
+    public static final long INTRINSIC = 5;
+
+    /**
+     * The number of iterations assumed for a sum or product whose range is not constant.
+     */
+    public static final long UNKNOWN_ITERATIONS = 1000;
+
+    /**
+     * The cost assumed for the body of a function which is not parsed yet.
+     */
+    public static final long UNPARSED_BODY = 1000;
+
+    /**
+     * The global symbol table, used to look up the called functions.
+     */
+    private final SymbolTable st;
+
+    /**
+     * The already estimated nodes.
+     */
+    private final Map<Node, Long> nodes = new IdentityHashMap<>();
+
+    /**
+     * The already estimated function bodies. A {@code null} value means the body is being estimated.
+     */
+    private final Map<Func, Long> bodies = new HashMap<>();
+
+    /**
+     * The functions which are not in the symbol table yet, by name.
+     */
+    private final Map<String, Func> defined = new HashMap<>();
+
+    /**
+     * The sums and products whose number of iterations was assumed.
+     */
+    private final List<SigmaPiNode> unknown = new ArrayList<>();
+
+    /**
+     * The functions whose body was not parsed, so its cost was assumed.
+     */
+    private final List<Func> unparsed = new ArrayList<>();
+
+    /**
+     * Creates a cost model.
+     * @param st The global symbol table.
+     */
+    public CostModel(SymbolTable st) {
+        this.st = st;
+    }
+
+    /**
+     * Estimates the cost of evaluating the given node.
+     * @param node The node.
+     * @return The cost.
+     */
+    public long cost(Node node) {
+        if (node == null) {
+            return 0;
+        }
+
+        Long known = nodes.get(node);
+        if (known != null) {
+            return known;
+        }
+
+        long c = estimate(node);
+        nodes.put(node, c);
+        return c;
+    }
+
+    private long estimate(Node node) {
+        if (node instanceof NumberNode || node instanceof IdentifierNode) {
+            return NODE;
+        }
+
+        if (node instanceof BinOpNode bin) {
+            long own = bin.op.tokenType == TokenType.POW ? TRANSCENDENTAL : NODE;
+            return add(own, add(cost(bin.left), cost(bin.right)));
+        }
+
+        if (node instanceof UnaryOpNode un) {
+            long own = NODE;
+            if (un.op.tokenType == TokenType.FACTORIAL) {
+                ComplexNum n = constant(un.node);
+                //Factorials of whole numbers are read from a table, the others go through gamma
+                own = n != null && n.isInteger() ? NODE : TRANSCENDENTAL;
+            }
+            return add(own, cost(un.node));
+        }
+
+        if (node instanceof AssignmentNode as) {
+            return add(NODE, cost(as.expr));
+        }
+
+        if (node instanceof FuncDefNode) {
+            return NODE;
+        }
+
+        if (node instanceof SigmaPiNode sp) {
+            long n = iterations(sp);
+            if (n < 0) {
+                unknown.add(sp);
+            }
+            long range = add(cost(sp.init.defaultVal), cost(sp.upto));
+            long body = add(cost(sp.evaluationExpr), 2 * NODE);
+            return add(range, multiply(n < 0 ? UNKNOWN_ITERATIONS : n, body));
+        }
+
+        if (node instanceof FuncCallNode call) {
+            long c = CALL;
+            for (Node arg : call.args) {
+                c = add(c, cost(arg));
+            }
+
+            Func fn = function(call.name);
+            if (fn != null) {
+                for (int i = call.args.size(); i < fn.parameters.size(); i++) {
+                    c = add(c, cost(fn.parameters.get(i).defaultVal));
+                }
+                c = add(c, bodyCost(fn));
+            }
+
+            return c;
+        }
+
+        if (node instanceof VectorNode vec) {
+            long c = NODE;
+            for (Node element : vec.elements) {
+                c = add(c, cost(element));
+            }
+            return c;
+        }
+
+        if (node instanceof MatrixNode mat) {
+            long c = NODE;
+            for (List<Node> row : mat.rows) {
+                for (Node element : row) {
+                    c = add(c, cost(element));
+                }
+            }
+            return c;
+        }
+
+        return NODE;
+    }
+
+    /**
+     * Returns the sums and products found by the estimates so far whose range is not made of constants, in the
+     * statements and in the bodies of the functions they call. Their cost is only a guess.
+     * @return The nodes, each once.
+     */
+    public List<SigmaPiNode> unknownRanges() {
+        return Collections.unmodifiableList(unknown);
+    }
+
+    /**
+     * Returns the functions found by the estimates so far whose body is not parsed yet. The cost of their calls
+     * is only a guess.
+     * @return The functions, each once.
+     */
+    public List<Func> unparsedBodies() {
+        return Collections.unmodifiableList(unparsed);
+    }
+
+    /**
+     * Adds a function which is not in the symbol table yet, like one defined by an earlier statement of the
+     * same input. The calls of its name are estimated with it, rather than with the symbol table.
+     * @param fn The function.
+     */
+    public void define(Func fn) {
+        defined.put(fn.name, fn);
+    }
+
+    /**
+     * Looks up the function which a call of the given name goes to.
+     * @param name The name.
+     * @return The function, or {@code null} if there is none.
+     */
+    public Func function(String name) {
+        Func fn = defined.get(name);
+        if (fn != null) {
+            return fn;
+        }
+        return st.get(name, true) instanceof Func f ? f : null;
+    }
+
+    /**
+     * Estimates the cost of the body of a function, excluding its arguments.
+     * @param fn The function.
+     * @return The cost.
+     */
+    public long bodyCost(Func fn) {
+        if (fn.isNative()) {
+            return NATIVE;
+        }
+        if (fn.isIntrinsic()) {
+            return INTRINSIC;
+        }
+
+        if (bodies.containsKey(fn)) {
+            Long known = bodies.get(fn);
+            //Recursive call, the body is already being counted
+            return known == null ? NODE : known;
+        }
+
+        if (!fn.isParsed()) {
+            unparsed.add(fn);
+            bodies.put(fn, UNPARSED_BODY);
+            return UNPARSED_BODY;
+        }
+
+        bodies.put(fn, null);
+        long c = cost(fn.body());
+        bodies.put(fn, c);
+        return c;
+    }
+
+    /**
+     * Returns the number of iterations of a sum or product, if its range is made of constants.
+     * @param sp The node.
+     * @return The number of iterations, or {@code -1} if it is not known before evaluation.
+     */
+    public long iterations(SigmaPiNode sp) {
+        ComplexNum from = constant(sp.init.defaultVal), to = constant(sp.upto);
+        if (from == null || to == null || !from.isReal() || !to.isReal()) {
+            return -1;
+        }
+
+        if (to.real < from.real) {
+            return 0;
+        }
+
+        return add(saturate(Math.floor(to.real - from.real)), 1);
+    }
+
+    /**
+     * Evaluates the given node if it is made of constants only.
+     * @param node The node.
+     * @return The value, or {@code null} if it is not a constant.
+     */
+    public ComplexNum constant(Node node) {
+        if (!isConstant(node)) {
+            return null;
+        }
+
+        try {
+            return node.visit(st);
+        } catch (BaseException e) {
+            return null;
+        }
+    }
+
+    private static boolean isConstant(Node node) {
+        if (node instanceof NumberNode) {
+            return true;
+        }
+
+        if (node instanceof BinOpNode bin) {
+            return isConstant(bin.left) && isConstant(bin.right);
+        }
+
+        if (node instanceof UnaryOpNode un) {
+            //Factorials are not folded, they are too expensive to compute just for an estimate
+            return un.op.tokenType != TokenType.FACTORIAL && isConstant(un.node);
+        }
+
+        return false;
+    }
+
+    private static long saturate(double x) {
+        return x >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) x;
+    }
+
+    private static long add(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+
+    private static long multiply(long a, long b) {
+        if (a != 0 && b > Long.MAX_VALUE / a) {
+            return Long.MAX_VALUE;
+        }
+        return a * b;
+    }
+}
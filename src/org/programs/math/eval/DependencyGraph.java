@@ -0,0 +1,289 @@
+package org.programs.math.eval;
+
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Func;
+import org.programs.math.types.Parameter;
+import org.programs.math.types.Value;
+
+import java.util.*;
+
+/**
+ * <p>The dependency graph of a list of top level statements.
+ * <p>Each statement reads and writes some global names. A statement writes a name when it assigns a
+ *    variable ({@link AssignmentNode}), defines a function ({@link FuncDefNode}) or uses it as the
+ *    variable of a top level sum or product ({@link SigmaPiNode}). It reads a name when it uses a variable
+ *    ({@link IdentifierNode}) or calls a function ({@link FuncCallNode}). Calls are followed into the
+ *    function body, since the body reads the global scope when it is executed. A body which is not parsed yet
+ *    is not parsed to find its names, since a syntax error in it must only be reported when the function is
+ *    called, so a call of such a function conflicts with everything.
+ * <p>A statement depends on every earlier statement it conflicts with, that is, if one of them writes a
+ *    name the other one reads or writes. Statements which do not depend on each other (directly or
+ *    indirectly) can be evaluated in any order, or at the same time.
+ *
+ * @see StatementScheduler
+ */
+public final class DependencyGraph {
+    /**
+     * A name which can never be an identifier, written by statements that conflict with everything.
+     */
+    private static final String ANY = "*";
+
+    /**
+     * The statements, in the original order.
+     */
+    public final List<Node> statements;
+
+    /**
+     * The names read by each statement.
+     */
+    private final List<Set<String>> reads;
+
+    /**
+     * The names written by each statement.
+     */
+    private final List<Set<String>> writes;
+
+    /**
+     * The indices of the earlier statements each statement directly depends on.
+     */
+    private final int[][] dependencies;
+
+    /**
+     * The number of statements on the longest chain of dependencies ending at each statement.
+     */
+    private final int[] depth;
+
+    /**
+     * Builds the dependency graph of the given statements.
+     * @param nodes The statements.
+     * @param st The global symbol table, used to look up functions which were defined before.
+     */
+    public DependencyGraph(List<Node> nodes, SymbolTable st) {
+        statements = nodes;
+        int n = nodes.size();
+        reads = new ArrayList<>(n);
+        writes = new ArrayList<>(n);
+        dependencies = new int[n][];
+        depth = new int[n];
+
+        //Functions defined by the statements processed so far, which shadow the ones in the symbol table
+        Map<String, Func> defined = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            Collector c = new Collector(defined, st);
+            c.collect(nodes.get(i), Collections.emptySet(), true);
+            reads.add(c.r);
+            writes.add(c.w);
+
+            if (nodes.get(i) instanceof FuncDefNode def) {
+                defined.put(def.fn.name, def.fn);
+            }
+
+            int[] deps = new int[i];
+            int count = 0, longest = 0;
+            for (int j = 0; j < i; j++) {
+                if (conflicts(j, i)) {
+                    deps[count++] = j;
+                    longest = Math.max(longest, depth[j]);
+                }
+            }
+
+            dependencies[i] = Arrays.copyOf(deps, count);
+            depth[i] = longest + 1;
+        }
+    }
+
+    /**
+     * Returns the number of statements.
+     * @return The size.
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Returns the earlier statements the given statement directly depends on.
+     * @param i The index of the statement.
+     * @return The indices of the dependencies, in ascending order.
+     */
+    public int[] dependencies(int i) {
+        return dependencies[i];
+    }
+
+    /**
+     * Returns the names of the global variables and functions the given statement reads.
+     * @param i The index of the statement.
+     * @return The names.
+     */
+    public Set<String> reads(int i) {
+        return Collections.unmodifiableSet(reads.get(i));
+    }
+
+    /**
+     * Returns the names the given statement writes to the global scope.
+     * @param i The index of the statement.
+     * @return The names.
+     */
+    public Set<String> writes(int i) {
+        return Collections.unmodifiableSet(writes.get(i));
+    }
+
+    /**
+     * Returns the length of the longest chain of dependent statements.
+     * If it is equal to {@link DependencyGraph#size()}, every statement depends on the one before it.
+     * @return The length of the critical path.
+     */
+    public int criticalPath() {
+        int longest = 0;
+        for (int d : depth) {
+            longest = Math.max(longest, d);
+        }
+        return longest;
+    }
+
+    /**
+     * Checks if two statements conflict with each other.
+     * @param j The index of the first statement.
+     * @param i The index of the second statement.
+     * @return {@code true} if one of them writes a name which the other one reads or writes.
+     */
+    private boolean conflicts(int j, int i) {
+        Set<String> wj = writes.get(j), wi = writes.get(i);
+        if (wj.contains(ANY) || wi.contains(ANY)) {
+            return true;
+        }
+
+        return intersects(wj, reads.get(i)) || intersects(wj, wi) || intersects(reads.get(j), wi);
+    }
+
+    private static boolean intersects(Set<String> a, Set<String> b) {
+        if (a.size() > b.size()) {
+            Set<String> t = a;
+            a = b;
+            b = t;
+        }
+
+        for (String s : a) {
+            if (b.contains(s)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Walks the AST of a single statement and collects the global names it reads and writes.
+     */
+    private static final class Collector {
+        private final Set<String> r = new HashSet<>();
+        private final Set<String> w = new HashSet<>();
+
+        /**
+         * The functions whose bodies were already collected. This also stops recursive functions.
+         */
+        private final Set<Func> visited = new HashSet<>();
+
+        private final Map<String, Func> defined;
+        private final SymbolTable st;
+
+        private Collector(Map<String, Func> defined, SymbolTable st) {
+            this.defined = defined;
+            this.st = st;
+        }
+
+        /**
+         * Collects the names read and written by the given node.
+         * @param node The node.
+         * @param locals The names which are local to the current function body or loop.
+         * @param topLevel Whether the node is evaluated in the global scope, and not in a function body.
+         */
+        private void collect(Node node, Set<String> locals, boolean topLevel) {
+            if (node == null || node instanceof NumberNode) {
+                return;
+            }
+
+            if (node instanceof IdentifierNode id) {
+                if (!locals.contains(id.idName)) {
+                    r.add(id.idName);
+                }
+            } else if (node instanceof BinOpNode bin) {
+                collect(bin.left, locals, topLevel);
+                collect(bin.right, locals, topLevel);
+            } else if (node instanceof UnaryOpNode un) {
+                collect(un.node, locals, topLevel);
+            } else if (node instanceof AssignmentNode as) {
+                w.add(as.idName);
+                collect(as.expr, locals, topLevel);
+            } else if (node instanceof FuncDefNode def) {
+                w.add(def.fn.name);
+            } else if (node instanceof SigmaPiNode sp) {
+                collect(sp.init.defaultVal, locals, topLevel);
+                collect(sp.upto, locals, topLevel);
+
+                if (topLevel) {
+                    //A top level loop stores its variable in the global scope while it runs
+                    w.add(sp.init.name);
+                }
+
+                Set<String> inner = new HashSet<>(locals);
+                inner.add(sp.init.name);
+                collect(sp.evaluationExpr, inner, topLevel);
+            } else if (node instanceof FuncCallNode call) {
+                r.add(call.name);
+                for (Node arg : call.args) {
+                    collect(arg, locals, topLevel);
+                }
+
+                Func fn = resolve(call.name, defined, st);
+                if (fn == null || !visited.add(fn)) {
+                    return;
+                }
+                if (!fn.isParsed()) {
+                    w.add(ANY);
+                    return;
+                }
+
+                Set<String> params = new HashSet<>();
+                for (Parameter p : fn.parameters) {
+                    params.add(p.name);
+                    //Default values are evaluated in the scope of the caller
+                    collect(p.defaultVal, locals, topLevel);
+                }
+
+                collect(fn.body(), params, false);
+            } else if (node instanceof VectorNode vec) {
+                for (Node element : vec.elements) {
+                    collect(element, locals, topLevel);
+                }
+            } else if (node instanceof MatrixNode mat) {
+                for (List<Node> row : mat.rows) {
+                    for (Node element : row) {
+                        collect(element, locals, topLevel);
+                    }
+                }
+            } else {
+                //Unknown kind of node, be safe and make it conflict with everything
+                w.add(ANY);
+            }
+        }
+    }
+
+    /**
+     * Finds the function which a call would execute.
+     * @param name The function name.
+     * @param defined The functions defined by the earlier statements.
+     * @param st The global symbol table.
+     * @return The function, or {@code null} if it does not exist.
+     */
+    private static Func resolve(String name, Map<String, Func> defined, SymbolTable st) {
+        Func fn = defined.get(name);
+        if (fn != null) {
+            return fn;
+        }
+
+        Value v = st.get(name, true);
+        return v instanceof Func f ? f : null;
+    }
+}
@@ -0,0 +1,146 @@
+package org.programs.math.eval;
+
+import org.programs.math.events.Counters;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The state an evaluation carries to every thread it runs on: its {@link Counters} and its {@link Budget}.
+ * <p>The context belongs to the thread which entered it. The tasks an evaluation runs on other threads are bound
+ *    to it with {@link EvaluationContext#bind(Runnable)}, so their work is counted and charged to it too.
+ * <p>Reading the context first reads a count of the contexts entered on all threads, which every enter and exit
+ *    writes. While it is zero, that read is all a step, a call or a counted iteration costs. Otherwise every
+ *    thread also reads its {@link ThreadLocal}, even the ones which have no context.
+ */
+public final class EvaluationContext {
+    /**
+     * The number of contexts entered, in any thread.
+     */
+    private static final AtomicInteger active = new AtomicInteger();
+
+    private static final ThreadLocal<EvaluationContext> current = new ThreadLocal<>();
+
+    /**
+     * The counters of the evaluation, or {@code null}.
+     */
+    public final Counters counters;
+
+    /**
+     * The budget of the evaluation, or {@code null}.
+     */
+    public final Budget budget;
+
+    private EvaluationContext(Counters counters, Budget budget) {
+        this.counters = counters;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the context of the current thread.
+     * @return The context, or {@code null} if there is none.
+     */
+    public static EvaluationContext current() {
+        return active.get() == 0 ? null : current.get();
+    }
+
+    /**
+     * Returns the counters of the current thread.
+     * @return The counters, or {@code null} if there are none.
+     */
+    public static Counters counters() {
+        EvaluationContext c = current();
+        return c == null ? null : c.counters;
+    }
+
+    /**
+     * Returns the budget of the current thread.
+     * @return The budget, or {@code null} if there is none.
+     */
+    public static Budget budget() {
+        EvaluationContext c = current();
+        return c == null ? null : c.budget;
+    }
+
+    /**
+     * Makes these the counters of the current thread, keeping its budget, until
+     * {@link EvaluationContext#exit(EvaluationContext)}.
+     * @param counters The counters.
+     * @return The context of the thread before this one, to give to {@link EvaluationContext#exit(EvaluationContext)}.
+     */
+    public static EvaluationContext enter(Counters counters) {
+        EvaluationContext previous = current.get();
+        return enter(new EvaluationContext(counters, previous == null ? null : previous.budget), previous);
+    }
+
+    /**
+     * Makes this the budget of the current thread, keeping its counters, until
+     * {@link EvaluationContext#exit(EvaluationContext)}.
+     * @param budget The budget.
+     * @return The context of the thread before this one, to give to {@link EvaluationContext#exit(EvaluationContext)}.
+     */
+    public static EvaluationContext enter(Budget budget) {
+        EvaluationContext previous = current.get();
+        return enter(new EvaluationContext(previous == null ? null : previous.counters, budget), previous);
+    }
+
+    private static EvaluationContext enter(EvaluationContext c, EvaluationContext previous) {
+        current.set(c);
+        active.incrementAndGet();
+        return previous;
+    }
+
+    /**
+     * Leaves the context the current thread entered last. This must be called on that thread.
+     * @param previous The context {@code enter} returned.
+     */
+    public static void exit(EvaluationContext previous) {
+        active.decrementAndGet();
+        current.set(previous);
+    }
+
+    /**
+     * Binds a task to the context of the current thread, if there is one, so that it counts and charges its work
+     * to it on any thread. The task enters the context while it runs, so it keeps it even if the thread which
+     * bound it has left it by then.
+     * @param task The task.
+     * @return The bound task.
+     */
+    public static Runnable bind(Runnable task) {
+        EvaluationContext c = current();
+        if (c == null) {
+            return task;
+        }
+
+        return () -> {
+            EvaluationContext outer = enter(c, current.get());
+            try {
+                task.run();
+            } finally {
+                exit(outer);
+            }
+        };
+    }
+
+    /**
+     * Binds a task which gives a value, like {@link EvaluationContext#bind(Runnable)}.
+     * @param task The task.
+     * @param <T> The type of the value.
+     * @return The bound task.
+     */
+    public static <T> Callable<T> bind(Callable<T> task) {
+        EvaluationContext c = current();
+        if (c == null) {
+            return task;
+        }
+
+        return () -> {
+            EvaluationContext outer = enter(c, current.get());
+            try {
+                return task.call();
+            } finally {
+                exit(outer);
+            }
+        };
+    }
+}
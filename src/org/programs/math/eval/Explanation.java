@@ -0,0 +1,337 @@
+package org.programs.math.eval;
+
+import org.programs.math.extra.Result;
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Func;
+import org.programs.math.types.Rational;
+import org.programs.math.vm.BytecodeCompiler;
+import org.programs.math.vm.Program;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>What the calculator would do with statements, found without evaluating them: the tree after each
+ *    optimization pass, the compiled program, the estimated cost (see {@link CostModel}) with the number of
+ *    iterations of each sum and product, the functions which are called, and the tiers the statement is
+ *    evaluated in.
+ * <p>The functions defined by a statement are used to explain the statements after it, but they are not
+ *    stored in the symbol table. A statement which calls one of them is not compiled here, since the compiler
+ *    only knows the functions of the symbol table.
+ */
+public final class Explanation {
+    /**
+     * The longest text of a sum or product in the report.
+     */
+    private static final int MAX_TEXT = 60;
+
+    /**
+     * The statements, in order.
+     */
+    public final List<Statement> statements;
+
+    private Explanation(List<Statement> statements) {
+        this.statements = Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Explains the statements.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return The explanation.
+     * @throws org.programs.math.exceptions.BaseException If the body of a called function can't be parsed.
+     */
+    public static Explanation of(List<Node> nodes, SymbolTable st) {
+        CostModel costs = new CostModel(st);
+        Set<String> defined = new HashSet<>();
+        List<Statement> statements = new ArrayList<>(nodes.size());
+
+        for (Node node : nodes) {
+            //Defined first, so that recursive calls in the body are found
+            if (node instanceof FuncDefNode def) {
+                costs.define(def.fn);
+                defined.add(def.fn.name);
+            }
+            statements.add(new Statement(node, st, costs, defined));
+        }
+
+        return new Explanation(statements);
+    }
+
+    /**
+     * Renders the explanation, one block for each statement.
+     * @return The report.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < statements.size(); i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append("Statement ").append(i + 1).append(": ");
+            statements.get(i).report(sb);
+        }
+        return sb.toString();
+    }
+
+    public String toString() {
+        return report();
+    }
+
+    /**
+     * The explanation of a single statement.
+     */
+    public static final class Statement {
+        /**
+         * The statement, as parsed.
+         */
+        public final Node parsed;
+
+        /**
+         * The statement after {@link ConstantFolder}.
+         */
+        public final Node folded;
+
+        /**
+         * The folded statement after {@link ForkPlanner}.
+         */
+        public final Node forked;
+
+        /**
+         * The compiled program, with the user defined functions inlined, or {@code null} if the statement
+         * can't be compiled, or calls a function defined by the same input.
+         */
+        public final Program program;
+
+        /**
+         * Why the statement can't be compiled, or {@code null}.
+         */
+        public final String notCompiled;
+
+        /**
+         * The function defined by the same input which the statement calls, and has to be defined before the
+         * statement is compiled, or {@code null}.
+         */
+        public final String waitsFor;
+
+        /**
+         * The estimated cost of evaluating the statement, or of each call if it defines a function.
+         */
+        public final long cost;
+
+        /**
+         * The sums and products of the statement and of the user defined functions it calls.
+         */
+        public final List<Loop> loops = new ArrayList<>();
+
+        /**
+         * The kind of each called function, by name, in the order they are first called: {@code native},
+         * {@code intrinsic}, {@code built in}, {@code user defined} or {@code undefined}.
+         */
+        public final Map<String, String> functions = new LinkedHashMap<>();
+
+        private final Set<Func> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        private String pending;
+
+        private Statement(Node node, SymbolTable st, CostModel costs, Set<String> defined) {
+            parsed = node;
+            folded = ConstantFolder.fold(node);
+            forked = ForkPlanner.plan(folded, st);
+
+            if (node instanceof FuncDefNode def) {
+                visited.add(def.fn);
+                walk(def.fn.body(), def.fn.name, costs, defined);
+                cost = costs.bodyCost(def.fn);
+            } else {
+                walk(node, null, costs, defined);
+                cost = costs.cost(node);
+            }
+
+            waitsFor = pending;
+            if (waitsFor != null) {
+                program = null;
+                notCompiled = null;
+            } else {
+                Result<Program, String> res = BytecodeCompiler.tryCompile(folded, st);
+                program = res.result;
+                notCompiled = res.error;
+            }
+        }
+
+        /**
+         * Finds the loops and the calls of a node.
+         * @param in The function whose body the node is in, or {@code null}.
+         */
+        private void walk(Node node, String in, CostModel costs, Set<String> defined) {
+            if (node instanceof SigmaPiNode sp) {
+                loops.add(new Loop(sp, in, costs.iterations(sp), costs.cost(sp)));
+                walk(sp.init.defaultVal, in, costs, defined);
+                walk(sp.upto, in, costs, defined);
+                walk(sp.evaluationExpr, in, costs, defined);
+            } else if (node instanceof BinOpNode bin) {
+                walk(bin.left, in, costs, defined);
+                walk(bin.right, in, costs, defined);
+            } else if (node instanceof UnaryOpNode un) {
+                walk(un.node, in, costs, defined);
+            } else if (node instanceof AssignmentNode as) {
+                walk(as.expr, in, costs, defined);
+            } else if (node instanceof FuncCallNode call) {
+                call(call, costs, defined);
+                for (Node arg : call.args) {
+                    walk(arg, in, costs, defined);
+                }
+            } else if (node instanceof VectorNode vec) {
+                for (Node element : vec.elements) {
+                    walk(element, in, costs, defined);
+                }
+            } else if (node instanceof MatrixNode mat) {
+                for (List<Node> row : mat.rows) {
+                    for (Node element : row) {
+                        walk(element, in, costs, defined);
+                    }
+                }
+            }
+        }
+
+        private void call(FuncCallNode call, CostModel costs, Set<String> defined) {
+            Func fn = costs.function(call.name);
+            if (defined.contains(call.name) && pending == null) {
+                pending = call.name;
+            }
+
+            if (fn == null) {
+                functions.putIfAbsent(call.name, "undefined");
+                return;
+            }
+
+            if (fn.isArrayNative()) {
+                functions.putIfAbsent(call.name, "native, on whole vectors and matrices");
+            } else if (fn.isNative()) {
+                functions.putIfAbsent(call.name, "native");
+            } else if (fn.isIntrinsic()) {
+                functions.putIfAbsent(call.name, "intrinsic");
+            } else {
+                functions.putIfAbsent(call.name, SymbolTable.isBuiltIn(call.name) && !defined.contains(call.name)
+                        ? "built in" : "user defined");
+                //The default values of the parameters are evaluated in the body's scope too
+                if (visited.add(fn)) {
+                    for (int i = 0; i < fn.parameters.size(); i++) {
+                        walk(fn.parameters.get(i).defaultVal, call.name, costs, defined);
+                    }
+                    walk(fn.body(), call.name, costs, defined);
+                }
+            }
+        }
+
+        private void report(StringBuilder sb) {
+            sb.append(parsed).append('\n');
+            boolean definition = parsed instanceof FuncDefNode;
+
+            String[] listing = program == null ? new String[0] : program.toString().split("\n");
+            if (!definition) {
+                line(sb, "folded", folded == parsed ? "unchanged" : folded.toString());
+                line(sb, "forked", forked == folded ? "unchanged" : forked.toString());
+
+                if (program != null) {
+                    line(sb, "compiled", listing.length + " instructions, with the user defined functions inlined");
+                } else if (waitsFor != null) {
+                    line(sb, "compiled", "not known before " + waitsFor + " is defined");
+                } else {
+                    line(sb, "compiled", "no, " + notCompiled);
+                }
+            }
+
+            line(sb, definition ? "cost of a call" : "cost", cost == Long.MAX_VALUE ? "too large to count" : cost + "");
+
+            for (int i = 0; i < loops.size(); i++) {
+                Loop l = loops.get(i);
+                String text = l.node.toString();
+                if (text.length() > MAX_TEXT) {
+                    text = text.substring(0, MAX_TEXT - 3) + "...";
+                }
+
+                String iterations = l.iterations < 0
+                        ? "unknown iterations, " + CostModel.UNKNOWN_ITERATIONS + " assumed"
+                        : l.iterations + " iterations";
+                line(sb, i == 0 ? "loops" : "", text + (l.function == null ? "" : " in " + l.function)
+                        + ": " + iterations + ", cost " + (l.cost == Long.MAX_VALUE ? "too large to count" : l.cost));
+            }
+
+            List<String> calls = new ArrayList<>();
+            functions.forEach((name, kind) -> calls.add(name + " (" + kind + ")"));
+            if (!calls.isEmpty()) {
+                line(sb, "functions", String.join(", ", calls));
+            }
+
+            if (definition) {
+                line(sb, "evaluated", "the function is stored, its body is evaluated by each call");
+                return;
+            }
+
+            if (Rational.isExactMode()) {
+                line(sb, "evaluated", "interpreted, the faster tiers are not used in the exact mode");
+                return;
+            }
+
+            line(sb, "evaluate", forked == folded ? "interpreted" : "interpreted, with the forks above");
+
+            TierPolicy p = TierPolicy.DEFAULT;
+            String prepared = String.format("interpreted, optimized after %d evaluations or %d iterations, ",
+                    p.optimizeInvocations, p.optimizeIterations);
+            if (program != null || waitsFor != null) {
+                prepared += String.format("compiled after %d more or %d iterations",
+                        p.compileInvocations, p.compileIterations);
+            } else {
+                prepared += "and never compiled";
+            }
+            line(sb, "prepared", prepared);
+
+            if (program != null) {
+                sb.append("\n  program:\n");
+                for (String instruction : listing) {
+                    sb.append("    ").append(instruction).append('\n');
+                }
+            }
+        }
+
+        private static void line(StringBuilder sb, String label, String text) {
+            sb.append(String.format("  %-15s %s%n", label.isEmpty() ? "" : label + ":", text));
+        }
+    }
+
+    /**
+     * A sum or product of a statement.
+     */
+    public static final class Loop {
+        public final SigmaPiNode node;
+
+        /**
+         * The name of the function whose body it is in, or {@code null} if it is in the statement.
+         */
+        public final String function;
+
+        /**
+         * The number of iterations, or {@code -1} if the range is not made of constants.
+         */
+        public final long iterations;
+
+        /**
+         * The estimated cost of the whole loop, each time it is evaluated.
+         */
+        public final long cost;
+
+        Loop(SigmaPiNode node, String function, long iterations, long cost) {
+            this.node = node;
+            this.function = function;
+            this.iterations = iterations;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.programs.math.eval;
+
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Rewrites a statement so that its expensive independent parts are evaluated in parallel.
+ * <p>A binary operation whose operands are both more expensive than {@link ForkPlanner#FORK_THRESHOLD}
+ *    (see {@link CostModel}) becomes a {@link ParallelBinOpNode}, and a function call with more than one
+ *    such argument becomes a {@link ParallelFuncCallNode}. Cheap parts are left as they are, since forking
+ *    them would cost more than evaluating them.
+ * <p>Function bodies are not rewritten, so forks never pile up in recursive functions.
+ */
+public final class ForkPlanner {
+    /**
+     * The minimum cost of an operand for it to be forked.
+     */
+    public static final long FORK_THRESHOLD = 50_000;
+
+    private final CostModel costs;
+
+    private ForkPlanner(SymbolTable st) {
+        costs = new CostModel(st);
+    }
+
+    /**
+     * Rewrites the given statement. If there is nothing worth forking, or there is only one thread to
+     * fork onto (see {@link ForkPlanner#pool()}), the statement is returned unchanged.
+     * @param node The statement.
+     * @param st The global symbol table.
+     * @return The statement to evaluate.
+     */
+    public static Node plan(Node node, SymbolTable st) {
+        if (pool().getParallelism() < 2 || node instanceof FuncDefNode) {
+            return node;
+        }
+
+        ForkPlanner planner = new ForkPlanner(st);
+        if (planner.costs.cost(node) < 2 * FORK_THRESHOLD) {
+            return node;
+        }
+
+        return planner.rewrite(node);
+    }
+
+    /**
+     * Returns the pool which the work forked by the current thread goes to: the pool the thread belongs to,
+     * like the low priority threads of an {@link AdmissionPolicy}, or else the common pool.
+     * @return The pool.
+     */
+    static ForkJoinPool pool() {
+        ForkJoinPool p = ForkJoinTask.getPool();
+        return p != null ? p : ForkJoinPool.commonPool();
+    }
+
+    private boolean heavy(Node node) {
+        return costs.cost(node) >= FORK_THRESHOLD;
+    }
+
+    private Node rewrite(Node node) {
+        if (node instanceof BinOpNode bin) {
+            Node l = rewrite(bin.left), r = rewrite(bin.right);
+            if (heavy(bin.left) && heavy(bin.right)) {
+                return new ParallelBinOpNode(l, bin.op, r);
+            }
+
+            return l == bin.left && r == bin.right ? bin : new BinOpNode(l, bin.op, r);
+        }
+
+        if (node instanceof UnaryOpNode un) {
+            Node n = rewrite(un.node);
+            return n == un.node ? un : new UnaryOpNode(un.op, n);
+        }
+
+        if (node instanceof AssignmentNode as) {
+            Node e = rewrite(as.expr);
+            return e == as.expr ? as : new AssignmentNode(as.idName, e);
+        }
+
+        if (node instanceof SigmaPiNode sp) {
+            Node i = rewrite(sp.init.defaultVal), u = rewrite(sp.upto), e = rewrite(sp.evaluationExpr);
+            if (i == sp.init.defaultVal && u == sp.upto && e == sp.evaluationExpr) {
+                return sp;
+            }
+
+            return new SigmaPiNode(new Parameter(sp.init.name, i), u, e, sp.type);
+        }
+
+        if (node instanceof FuncCallNode call) {
+            List<Node> args = new ArrayList<>(call.args.size());
+            boolean[] fork = new boolean[call.args.size()];
+            boolean changed = false;
+            int heavyArgs = 0;
+
+            for (int i = 0; i < fork.length; i++) {
+                Node arg = call.args.get(i);
+                Node a = rewrite(arg);
+                args.add(a);
+                changed |= a != arg;
+
+                if (heavy(arg)) {
+                    fork[i] = true;
+                    heavyArgs++;
+                }
+            }
+
+            if (heavyArgs > 1) {
+                //The last expensive argument is evaluated on the current thread
+                for (int i = fork.length - 1; i >= 0; i--) {
+                    if (fork[i]) {
+                        fork[i] = false;
+                        break;
+                    }
+                }
+                return new ParallelFuncCallNode(call.name, args, fork);
+            }
+
+            return changed ? new FuncCallNode(call.name, args) : call;
+        }
+
+        return node;
+    }
+}
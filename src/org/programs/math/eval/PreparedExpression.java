@@ -0,0 +1,128 @@
+package org.programs.math.eval;
+
+import org.programs.math.events.Counters;
+import org.programs.math.events.EvaluateEvent;
+import org.programs.math.events.Events;
+import org.programs.math.exceptions.BaseException;
+import org.programs.math.extra.Result;
+import org.programs.math.metrics.Metrics;
+import org.programs.math.metrics.MetricsRegistry;
+import org.programs.math.nodes.Node;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>An input which was lexed and parsed once, to be evaluated many times.
+ * <p>Each statement is a {@link TieredStatement}, so the statements which are evaluated often (or run long
+ *    loops) get promoted to faster tiers on their own.
+ */
+public final class PreparedExpression {
+    /**
+     * The parsed statements.
+     */
+    public final List<Node> nodes;
+
+    private static final MetricsRegistry.Timer EVALUATE = Metrics.timer(Metrics.EVALUATE_PREPARED);
+
+    /**
+     * The global symbol table the statements are evaluated with.
+     */
+    public final SymbolTable symbolTable;
+
+    private final List<TieredStatement> statements;
+
+    /**
+     * Creates a prepared expression.
+     * @param nodes The parsed statements.
+     * @param st The global symbol table.
+     * @param policy The tiering policy.
+     */
+    public PreparedExpression(List<Node> nodes, SymbolTable st, TierPolicy policy) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        symbolTable = st;
+
+        List<TieredStatement> ts = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            ts.add(new TieredStatement(node, policy));
+        }
+        statements = Collections.unmodifiableList(ts);
+    }
+
+    /**
+     * Returns the statements, along with their current tiers.
+     * @return The statements.
+     */
+    public List<TieredStatement> statements() {
+        return statements;
+    }
+
+    /**
+     * Evaluates the statements, just like {@link org.programs.math.MathEvaluator#evaluate(String)}.
+     * @return The results, or the error message.
+     */
+    public Result<List<Value>, String> evaluate() {
+        return evaluate(null);
+    }
+
+    /**
+     * Evaluates the statements within a budget, just like
+     * {@link org.programs.math.MathEvaluator#evaluate(String, Budget)}.
+     * @param budget The budget, or {@code null} to not limit the evaluation.
+     * @return The results, or the error message.
+     */
+    public Result<List<Value>, String> evaluate(Budget budget) {
+        EvaluateEvent event = Events.recording() ? new EvaluateEvent() : null;
+        Counters counters = event != null && event.isEnabled() ? Counters.start() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+
+        Result<List<Value>, String> values;
+        try {
+            EvaluationContext outer = budget == null ? null : budget.enter();
+            try {
+                values = Result.success(
+                        StatementScheduler.run(nodes, symbolTable, (i, s) -> statements.get(i).evaluate(s))
+                );
+            } finally {
+                if (budget != null) {
+                    EvaluationContext.exit(outer);
+                }
+            }
+        } catch (BaseException e) {
+            values = Result.failure(e.toString());
+        } finally {
+            if (counters != null) {
+                counters.stop();
+            }
+        }
+
+        EVALUATE.record(System.nanoTime() - start);
+        if (values.isError()) {
+            Metrics.error(Events.errorType(values.error));
+        }
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                //The input was lexed and parsed before, so its length and tokens are left out
+                event.statementCount = nodes.size();
+                event.nodeCount = Events.nodes(nodes);
+                event.resultType = values.isError() ? "none" : Events.type(values.result);
+                event.errorType = values.isError() ? Events.errorType(values.error) : null;
+                //A recording which started during the evaluation has nothing counted
+                if (counters != null) {
+                    event.iterations = counters.iterations();
+                    event.nativeCalls = counters.nativeCalls();
+                }
+                event.commit();
+            }
+        }
+        return values;
+    }
+}
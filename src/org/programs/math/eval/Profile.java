@@ -0,0 +1,173 @@
+package org.programs.math.eval;
+
+import org.programs.math.eval.Profiler.Frame;
+import org.programs.math.eval.Profiler.Site;
+import org.programs.math.types.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>The measurements of a run of {@link Profiler}, and the values of its statements.
+ * <p>{@link Profile#report()} shows the statements and the bodies of the called functions node by node, each
+ *    with its count, its time with and without its children and its allocations, and then the nodes which
+ *    took the most time themselves. {@link Profile#collapsed()} gives the same times by stack, in the format
+ *    read by flame graph tools.
+ */
+public final class Profile {
+    /**
+     * The size of a {@link org.programs.math.types.ComplexNum} on the heap: a 12 byte header and two doubles,
+     * padded to 8 bytes. The allocations are also shown as a number of numbers of this size, which is what
+     * most of them are when the interpreter evaluates something.
+     */
+    private static final int NUMBER_BYTES = 32;
+
+    /**
+     * The longest text of a node in the report.
+     */
+    private static final int MAX_TEXT = 60;
+
+    /**
+     * The number of nodes listed as hot spots.
+     */
+    private static final int HOT_SPOTS = 5;
+
+    /**
+     * The values of the statements which are not assignments or definitions, like
+     * {@link StatementScheduler#run(List, org.programs.math.parser.SymbolTable)} gives.
+     */
+    public final List<Value> values;
+
+    /**
+     * The nanoseconds the whole run took.
+     */
+    public final long nanos;
+
+    private final Profiler profiler;
+
+    Profile(Profiler profiler, List<Value> values, long nanos) {
+        this.profiler = profiler;
+        this.values = values;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Renders the report. Each node is a line, under its parent, with the number of times it was evaluated,
+     * the milliseconds spent in it in total and by itself, the share of the run it took by itself, and the
+     * bytes it allocated by itself.
+     * @return The report.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Profiled in %.3f ms", nanos / 1e6));
+        if (!Profiler.measuresAllocations()) {
+            sb.append(", allocations are not measured by this JVM");
+        }
+        sb.append("\n\n");
+
+        String header = String.format("%10s %10s %10s %6s %10s %10s  %s%n",
+                "calls", "total ms", "self ms", "self%", "alloc", "~numbers", "node");
+        sb.append(header);
+        for (Site s : profiler.statements) {
+            lines(sb, s, 0);
+        }
+
+        List<Site> functions = new ArrayList<>(profiler.functions.values());
+        functions.sort(Comparator.comparingLong((Site s) -> s.total.sum()).reversed());
+        if (!functions.isEmpty()) {
+            sb.append("\nFunctions\n\n").append(header);
+            for (Site s : functions) {
+                lines(sb, s, 0);
+            }
+        }
+
+        List<Site> sites = new ArrayList<>();
+        for (Site s : profiler.statements) {
+            collect(s, sites);
+        }
+        for (Site s : functions) {
+            collect(s, sites);
+        }
+        sites.sort(Comparator.comparingLong((Site s) -> s.self.sum()).reversed());
+
+        sb.append("\nHot spots\n\n");
+        for (Site s : sites.subList(0, Math.min(HOT_SPOTS, sites.size()))) {
+            sb.append(String.format("%6.1f%%  %s%n", share(s.self.sum()), text(s.text)));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Renders the time spent in each stack of nodes, one stack a line, like {@code a;b;c 1234}. The frames are
+     * the texts of the nodes from the statement down, and the number is the nanoseconds spent in the last one
+     * by itself. This is the input of flame graph tools, like {@code flamegraph.pl}.
+     * @return The stacks.
+     */
+    public String collapsed() {
+        StringBuilder sb = new StringBuilder();
+        for (Site s : profiler.statements) {
+            Frame f = profiler.root.children.get(s);
+            if (f != null) {
+                stacks(sb, f, new ArrayList<>());
+            }
+        }
+        return sb.toString();
+    }
+
+    private void lines(StringBuilder sb, Site s, int depth) {
+        long self = s.self.sum(), bytes = s.bytes.sum();
+        sb.append(String.format("%10d %10.3f %10.3f %6.1f %10s %10d  %s%s%n",
+                s.calls.sum(), s.total.sum() / 1e6, self / 1e6, share(self), bytes(bytes),
+                bytes / NUMBER_BYTES, "  ".repeat(depth), text(s.text)));
+
+        for (Site child : s.children) {
+            lines(sb, child, depth + 1);
+        }
+    }
+
+    private void stacks(StringBuilder sb, Frame f, List<String> path) {
+        //The separators of the format can't be in the names of the frames
+        path.add(text(f.site.text).replace(';', ','));
+
+        long self = f.self.sum();
+        if (self > 0) {
+            sb.append(String.join(";", path)).append(' ').append(self).append('\n');
+        }
+
+        for (Frame child : f.children.values()) {
+            stacks(sb, child, path);
+        }
+        path.remove(path.size() - 1);
+    }
+
+    private static void collect(Site s, List<Site> sites) {
+        sites.add(s);
+        for (Site child : s.children) {
+            collect(child, sites);
+        }
+    }
+
+    private double share(long self) {
+        return nanos == 0 ? 0 : 100.0 * self / nanos;
+    }
+
+    private static String bytes(long b) {
+        if (b < 1024) {
+            return b + " B";
+        }
+        if (b < 1024 * 1024) {
+            return String.format("%.1f KB", b / 1024.0);
+        }
+        return String.format("%.1f MB", b / (1024.0 * 1024));
+    }
+
+    private static String text(String s) {
+        return s.length() <= MAX_TEXT ? s : s.substring(0, MAX_TEXT - 3) + "...";
+    }
+
+    public String toString() {
+        return report();
+    }
+}
@@ -0,0 +1,372 @@
+package org.programs.math.eval;
+
+import org.programs.math.exceptions.BaseException;
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+import org.programs.math.types.Parameter;
+import org.programs.math.types.Value;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Evaluates statements while measuring each of their nodes: how many times it is evaluated, the time
+ *    spent in it with and without its children, and the bytes it allocates (see {@link Profile}).
+ * <p>The statements are not changed. They are copied, and each node of the copy is wrapped in a probe which
+ *    measures it. The body of a function is copied the same way when it is first called during the run, and
+ *    the term of a sum or product is measured once for each iteration. Everything is evaluated by the
+ *    interpreter, without the faster tiers and forks, so the nodes are the ones which were written.
+ * <p>Evaluations which are not profiled don't go through probes at all. The only thing they pay for is a
+ *    check in {@link Func}, when it gets the body it evaluates (see {@link Profiler#body(Func)}).
+ * <p>The probes cost some time themselves, which is counted in the nodes above them, so the times are
+ *    best compared to each other, rather than to the time of an evaluation which is not profiled.
+ */
+public final class Profiler {
+    /**
+     * The number of runs going on, in any thread.
+     */
+    private static final AtomicInteger running = new AtomicInteger();
+
+    private static final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(Recorder::new);
+
+    /**
+     * The calls of the run, by the path of nodes which led to them.
+     */
+    final Frame root = new Frame(null, null);
+
+    /**
+     * The sites of the statements, in order.
+     */
+    final List<Site> statements = new ArrayList<>();
+
+    /**
+     * The sites of the bodies of the functions which were called.
+     */
+    final Map<Func, Site> functions = new ConcurrentHashMap<>();
+
+    private final Map<Func, Node> bodies = new ConcurrentHashMap<>();
+
+    private Profiler() {
+        //private
+    }
+
+    /**
+     * Evaluates the statements and measures them.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return The profile, with the values of the statements.
+     * @throws BaseException If any statement fails.
+     */
+    public static Profile run(List<Node> nodes, SymbolTable st) {
+        Profiler profiler = new Profiler();
+        List<Node> probes = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            Probe probe = profiler.instrument(node, "");
+            profiler.statements.add(probe.site);
+            probes.add(probe);
+        }
+
+        //Loads the management classes, so that the first node doesn't pay for it
+        Allocations.bytes();
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            List<Value> values = StatementScheduler.run(nodes, st, (i, s) -> probes.get(i).evaluate(s));
+            return new Profile(profiler, values, System.nanoTime() - start);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the body a function evaluates. While the current thread is evaluating a profiled statement,
+     * it is the copy of the body which is measured, otherwise it is the body itself.
+     * @param fn The function.
+     * @return The body.
+     */
+    public static Node body(Func fn) {
+        if (running.get() == 0) {
+            return fn.body();
+        }
+
+        Profiler profiler = recorder.get().profiler;
+        return profiler == null ? fn.body() : profiler.instrument(fn);
+    }
+
+    private Node instrument(Func fn) {
+        return bodies.computeIfAbsent(fn, f -> {
+            String params = f.parameters.stream().map(p -> p.name).toList().toString();
+            Site site = new Site("fn " + f.name + "(" + params.substring(1, params.length() - 1) + ")");
+            Probe body = instrument(f.body(), "");
+            site.children.add(body.site);
+            functions.put(f, site);
+            return new Probe(this, site, body);
+        });
+    }
+
+    /**
+     * Copies the node and its children, each wrapped in a probe.
+     * @param prefix Put before the text of the node in the report.
+     */
+    private Probe instrument(Node node, String prefix) {
+        Site site = new Site(prefix + node);
+
+        Node copy;
+        if (node instanceof BinOpNode bin) {
+            copy = new BinOpNode(child(site, bin.left), bin.op, child(site, bin.right));
+        } else if (node instanceof UnaryOpNode un) {
+            copy = new UnaryOpNode(un.op, child(site, un.node));
+        } else if (node instanceof AssignmentNode as) {
+            copy = new AssignmentNode(as.idName, child(site, as.expr));
+        } else if (node instanceof SigmaPiNode sp) {
+            Node init = child(site, sp.init.defaultVal), upto = child(site, sp.upto);
+            Probe term = instrument(sp.evaluationExpr, "each term: ");
+            site.children.add(term.site);
+            copy = new SigmaPiNode(new Parameter(sp.init.name, init), upto, term, sp.type);
+        } else if (node instanceof FuncCallNode call) {
+            copy = new FuncCallNode(call.name, children(site, call.args));
+        } else if (node instanceof VectorNode vec) {
+            copy = new VectorNode(children(site, vec.elements));
+        } else if (node instanceof MatrixNode m) {
+            List<List<Node>> rows = new ArrayList<>(m.rows.size());
+            for (List<Node> row : m.rows) {
+                rows.add(children(site, row));
+            }
+            copy = new MatrixNode(rows);
+        } else {
+            //Numbers, identifiers and definitions have no children to measure
+            copy = node;
+        }
+
+        return new Probe(this, site, copy);
+    }
+
+    private Node child(Site parent, Node node) {
+        Probe probe = instrument(node, "");
+        parent.children.add(probe.site);
+        return probe;
+    }
+
+    private List<Node> children(Site parent, List<Node> nodes) {
+        List<Node> probes = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            probes.add(child(parent, node));
+        }
+        return probes;
+    }
+
+    /**
+     * A node of the statements or of a function body, with its totals over the whole run.
+     */
+    static final class Site {
+        /**
+         * The source of the node.
+         */
+        final String text;
+
+        /**
+         * The sites of the children, in the order they are written.
+         */
+        final List<Site> children = new ArrayList<>();
+
+        final LongAdder calls = new LongAdder();
+
+        /**
+         * The nanoseconds spent in the node and its children. The inner calls of a recursive function are
+         * not added again, since their time is already in the outer ones.
+         */
+        final LongAdder total = new LongAdder();
+
+        /**
+         * The nanoseconds spent in the node itself.
+         */
+        final LongAdder self = new LongAdder();
+
+        /**
+         * The bytes allocated by the node itself.
+         */
+        final LongAdder bytes = new LongAdder();
+
+        Site(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * A node reached through a path of other nodes, like a node of a function body called from a statement.
+     * The frames make the stacks of {@link Profile#collapsed()}.
+     */
+    static final class Frame {
+        final Site site;
+        final Frame parent;
+        final Map<Site, Frame> children = new ConcurrentHashMap<>();
+
+        /**
+         * The nanoseconds spent in the node itself, on this path.
+         */
+        final LongAdder self = new LongAdder();
+
+        /**
+         * Whether the same node is already on the path, which happens in recursive functions.
+         */
+        private final boolean recursive;
+
+        Frame(Site site, Frame parent) {
+            this.site = site;
+            this.parent = parent;
+
+            boolean r = false;
+            for (Frame f = parent; f != null && !r; f = f.parent) {
+                r = f.site == site;
+            }
+            recursive = r;
+        }
+
+        Frame child(Site site) {
+            Frame f = children.get(site);
+            return f != null ? f : children.computeIfAbsent(site, s -> new Frame(s, this));
+        }
+    }
+
+    /**
+     * Measures a node.
+     */
+    private static final class Probe implements Node {
+        private final Profiler profiler;
+        private final Site site;
+        private final Node node;
+
+        Probe(Profiler profiler, Site site, Node node) {
+            this.profiler = profiler;
+            this.site = site;
+            this.node = node;
+        }
+
+        @Override
+        public ComplexNum visit(SymbolTable st) {
+            Recorder r = recorder.get();
+            r.enter(profiler, site);
+            try {
+                return node.visit(st);
+            } finally {
+                r.exit();
+            }
+        }
+
+        @Override
+        public Value evaluate(SymbolTable st) {
+            Recorder r = recorder.get();
+            r.enter(profiler, site);
+            try {
+                return node.evaluate(st);
+            } finally {
+                r.exit();
+            }
+        }
+
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    /**
+     * The probes entered by a thread and not exited yet.
+     */
+    private static final class Recorder {
+        /**
+         * The run of the statement the thread is evaluating, or {@code null} if there is none.
+         */
+        Profiler profiler;
+
+        private Frame[] frames = new Frame[16];
+        private long[] start = new long[16], startBytes = new long[16];
+        /**
+         * The time and the bytes of the children of each entered probe.
+         */
+        private long[] inner = new long[16], innerBytes = new long[16];
+        private int depth;
+
+        void enter(Profiler p, Site site) {
+            if (depth == 0) {
+                profiler = p;
+                frames[0] = p.root;
+            }
+
+            if (++depth == frames.length) {
+                int n = depth * 2;
+                frames = Arrays.copyOf(frames, n);
+                start = Arrays.copyOf(start, n);
+                startBytes = Arrays.copyOf(startBytes, n);
+                inner = Arrays.copyOf(inner, n);
+                innerBytes = Arrays.copyOf(innerBytes, n);
+            }
+
+            frames[depth] = frames[depth - 1].child(site);
+            inner[depth] = innerBytes[depth] = 0;
+            startBytes[depth] = Allocations.bytes();
+            start[depth] = System.nanoTime();
+        }
+
+        void exit() {
+            long time = System.nanoTime() - start[depth];
+            long bytes = Allocations.bytes() - startBytes[depth];
+
+            Frame f = frames[depth];
+            Site site = f.site;
+            site.calls.increment();
+            if (!f.recursive) {
+                site.total.add(time);
+            }
+            site.self.add(time - inner[depth]);
+            site.bytes.add(bytes - innerBytes[depth]);
+            f.self.add(time - inner[depth]);
+
+            frames[depth--] = null;
+            inner[depth] += time;
+            innerBytes[depth] += bytes;
+            if (depth == 0) {
+                profiler = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the bytes allocated by the current thread. It is in its own class, so the management classes are
+     * only loaded when something is profiled.
+     */
+    private static final class Allocations {
+        private static final com.sun.management.ThreadMXBean threads = threads();
+
+        static long bytes() {
+            return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+        }
+
+        static boolean supported() {
+            return threads != null;
+        }
+
+        private static com.sun.management.ThreadMXBean threads() {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t
+                    && t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+                return t;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the allocations are measured. They are not on JVMs which can't count the bytes allocated by
+     * each thread.
+     */
+    static boolean measuresAllocations() {
+        return Allocations.supported();
+    }
+}
@@ -0,0 +1,277 @@
+package org.programs.math.eval;
+
+import org.programs.math.events.Events;
+import org.programs.math.events.OptimizeEvent;
+import org.programs.math.exceptions.BaseException;
+import org.programs.math.nodes.AssignmentNode;
+import org.programs.math.nodes.FuncDefNode;
+import org.programs.math.nodes.Node;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Evaluates a list of top level statements, running the independent ones at the same time.
+ * <p>Each statement is started as soon as all the statements it depends on (see {@link DependencyGraph})
+ *    have finished, so a script takes about as long as its longest chain of dependent statements.
+ * <p>The results are the same as evaluating the statements one by one:
+ * <p>- The results are returned in the original order.
+ * <p>- If a statement fails, the error of the first failing statement is thrown, and the changes made to the
+ *      global scope by the statements after it are undone.
+ */
+public final class StatementScheduler {
+
+    /**
+     * Evaluates the statement at an index of the list. This allows evaluating the statements in some other way
+     * than visiting them, for example through {@link TieredStatement}.
+     */
+    @FunctionalInterface
+    public interface Evaluator {
+        /**
+         * Evaluates a statement.
+         * @param index The index of the statement.
+         * @param st The global symbol table.
+         * @return The value.
+         */
+        Value evaluate(int index, SymbolTable st);
+    }
+
+    private StatementScheduler() {
+        //private
+    }
+
+    /**
+     * Evaluates the statements and returns the results of the ones which are not assignments or definitions.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return The results, in the original order.
+     * @throws BaseException If any statement fails.
+     */
+    public static List<Value> run(List<Node> nodes, SymbolTable st) {
+        return run(nodes, st, (i, s) -> evaluate(nodes.get(i), s));
+    }
+
+    /**
+     * Evaluates the statements with the given evaluator, and returns the results of the ones which are not
+     * assignments or definitions.
+     * @param nodes The statements, used to find the dependencies.
+     * @param st The global symbol table.
+     * @param evaluator Evaluates the statement at an index.
+     * @return The results, in the original order.
+     * @throws BaseException If any statement fails.
+     */
+    public static List<Value> run(List<Node> nodes, SymbolTable st, Evaluator evaluator) {
+        Value[] values = new Value[nodes.size()];
+        DependencyGraph graph = worthScheduling(nodes, st) ? new DependencyGraph(nodes, st) : null;
+
+        if (graph == null || graph.criticalPath() == graph.size()) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = evaluator.evaluate(i, st);
+            }
+        } else {
+            new Run(graph, st, evaluator, values).await();
+        }
+
+        List<Value> results = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (!(nodes.get(i) instanceof AssignmentNode) && values[i] != null) {
+                results.add(values[i]);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Evaluates a single statement, forking its expensive parts (see {@link ForkPlanner}).
+     * @param node The statement.
+     * @param st The global symbol table.
+     * @return The value, a number or a vector.
+     */
+    static Value evaluate(Node node, SymbolTable st) {
+        OptimizeEvent event = Events.optimizing();
+        Node planned = ForkPlanner.plan(node, st);
+        Events.optimized(event, Events.FORK, node, planned != node);
+        return planned.evaluate(st);
+    }
+
+    /**
+     * Checks if there are at least two statements which cost more than {@link ForkPlanner#FORK_THRESHOLD}
+     * (see {@link CostModel}). Cheaper statements are evaluated faster by the calling thread than they would
+     * be handed to the pool, and the dependency graph is not built for them.
+     * @param nodes The statements.
+     * @param st The global symbol table.
+     * @return {@code true} if running the statements concurrently may help.
+     */
+    private static boolean worthScheduling(List<Node> nodes, SymbolTable st) {
+        //Most inputs are a single expression, which is not worth estimating
+        int count = 0;
+        for (Node node : nodes) {
+            if (!(node instanceof FuncDefNode)) {
+                count++;
+            }
+        }
+        if (count < 2) {
+            return false;
+        }
+
+        CostModel costs = new CostModel(st);
+        int expensive = 0;
+        for (Node node : nodes) {
+            //The functions defined by the statements are called by the ones after them
+            if (node instanceof FuncDefNode def) {
+                costs.define(def.fn);
+            } else if (costs.cost(node) >= ForkPlanner.FORK_THRESHOLD && ++expensive > 1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A single concurrent run over the statements of a dependency graph.
+     */
+    private static final class Run {
+        private final DependencyGraph graph;
+        private final SymbolTable st;
+        private final Evaluator evaluator;
+        private final Value[] values;
+
+        /**
+         * The values of the written names before each statement was evaluated, used to undo its changes.
+         */
+        private final Value[][] previous;
+
+        /**
+         * Whether each statement was started.
+         */
+        private final boolean[] started;
+
+        /**
+         * The error thrown by each statement, if any.
+         */
+        private final Throwable[] errors;
+
+        /**
+         * The index of the first failed statement so far. Statements after it are not started anymore.
+         */
+        private final AtomicInteger firstFailure;
+
+        private final CompletableFuture<?>[] futures;
+
+        private Run(DependencyGraph graph, SymbolTable st, Evaluator evaluator, Value[] values) {
+            int n = graph.size();
+            this.graph = graph;
+            this.st = st;
+            this.evaluator = evaluator;
+            this.values = values;
+            previous = new Value[n][];
+            started = new boolean[n];
+            errors = new Throwable[n];
+            firstFailure = new AtomicInteger(n);
+            futures = new CompletableFuture<?>[n];
+
+            //The pool of the current thread, so the statements of a queued input stay on the low priority threads
+            ForkJoinPool pool = ForkPlanner.pool();
+            for (int i = 0; i < n; i++) {
+                int index = i;
+                int[] deps = graph.dependencies(i);
+
+                CompletableFuture<?> ready;
+                if (deps.length == 0) {
+                    ready = CompletableFuture.completedFuture(null);
+                } else {
+                    CompletableFuture<?>[] before = new CompletableFuture<?>[deps.length];
+                    for (int j = 0; j < deps.length; j++) {
+                        before[j] = futures[deps[j]];
+                    }
+                    ready = CompletableFuture.allOf(before);
+                }
+
+                futures[i] = ready.thenRunAsync(EvaluationContext.bind(() -> evaluate(index)), pool);
+            }
+        }
+
+        /**
+         * Evaluates a single statement, remembering the previous values of the names it writes.
+         * @param i The index of the statement.
+         */
+        private void evaluate(int i) {
+            if (i > firstFailure.get()) {
+                return;
+            }
+
+            Set<String> names = graph.writes(i);
+            Value[] old = new Value[names.size()];
+            int k = 0;
+            for (String name : names) {
+                old[k++] = st.get(name, false);
+            }
+            previous[i] = old;
+            started[i] = true;
+
+            try {
+                values[i] = evaluator.evaluate(i, st);
+            } catch (RuntimeException | Error e) {
+                errors[i] = e;
+                firstFailure.accumulateAndGet(i, Math::min);
+                throw e;
+            }
+        }
+
+        /**
+         * Waits for all the statements to finish. If any of them failed, the changes of the statements
+         * after the first failed one are undone, and its error is thrown.
+         */
+        private void await() {
+            try {
+                CompletableFuture.allOf(futures).join();
+                return;
+            } catch (CompletionException ignored) {
+                //The failed statements are recorded in errors
+            }
+
+            //Every future has completed at this point, so the fields written by the workers are visible
+            int failed = 0;
+            while (errors[failed] == null) {
+                failed++;
+            }
+
+            for (int i = graph.size() - 1; i > failed; i--) {
+                if (started[i]) {
+                    undo(i);
+                }
+            }
+
+            Throwable e = errors[failed];
+            if (e instanceof Error err) {
+                throw err;
+            }
+            throw (RuntimeException) e;
+        }
+
+        /**
+         * Restores the names written by the given statement to their previous values.
+         * @param i The index of the statement.
+         */
+        private void undo(int i) {
+            int k = 0;
+            for (String name : graph.writes(i)) {
+                Value old = previous[i][k++];
+                if (old == null) {
+                    st.remove(name);
+                } else {
+                    st.set(name, old);
+                }
+            }
+        }
+    }
+}
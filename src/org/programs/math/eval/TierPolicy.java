@@ -0,0 +1,82 @@
+package org.programs.math.eval;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Decides when a {@link TieredStatement} is promoted to a faster tier.
+ * <p>A statement is promoted once it was evaluated a number of times, or once its loops ran a number of
+ *    iterations, whichever comes first. Promotions run on a background thread.
+ */
+public final class TierPolicy {
+    /**
+     * The default policy, used by prepared expressions.
+     */
+    public static final TierPolicy DEFAULT = new TierPolicy(2, 10_000, 20, 1_000_000);
+
+    /**
+     * The single background thread which promotes statements, shared by all policies.
+     */
+    private static final ExecutorService PROMOTER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "calculator-tier-promoter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The number of evaluations after which the optimized tree is used.
+     */
+    public final long optimizeInvocations;
+
+    /**
+     * The number of loop iterations after which the optimized tree is used.
+     */
+    public final long optimizeIterations;
+
+    /**
+     * The number of evaluations after which the compiled program is used.
+     */
+    public final long compileInvocations;
+
+    /**
+     * The number of loop iterations after which the compiled program is used.
+     */
+    public final long compileIterations;
+
+    /**
+     * Creates a policy.
+     * @param oi Evaluations before optimizing.
+     * @param ol Loop iterations before optimizing.
+     * @param ci Evaluations before compiling.
+     * @param cl Loop iterations before compiling.
+     */
+    public TierPolicy(long oi, long ol, long ci, long cl) {
+        optimizeInvocations = oi;
+        optimizeIterations = ol;
+        compileInvocations = ci;
+        compileIterations = cl;
+    }
+
+    /**
+     * Checks if a statement in the given tier is hot enough for the next one.
+     * @param tier The current tier.
+     * @param invocations The number of evaluations in the current tier.
+     * @param iterations The number of loop iterations in the current tier.
+     * @return {@code true} if it should be promoted.
+     */
+    public boolean shouldPromote(TieredStatement.Tier tier, long invocations, long iterations) {
+        return switch (tier) {
+            case INTERPRETED -> invocations >= optimizeInvocations || iterations >= optimizeIterations;
+            case OPTIMIZED -> invocations >= compileInvocations || iterations >= compileIterations;
+            case COMPILED -> false;
+        };
+    }
+
+    /**
+     * Runs a promotion in the background.
+     * @param task The promotion.
+     */
+    void submit(Runnable task) {
+        PROMOTER.execute(task);
+    }
+}
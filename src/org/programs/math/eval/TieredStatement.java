@@ -0,0 +1,239 @@
+package org.programs.math.eval;
+
+import org.programs.math.events.Events;
+import org.programs.math.events.OptimizeEvent;
+import org.programs.math.metrics.Metrics;
+import org.programs.math.metrics.MetricsRegistry;
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
+import org.programs.math.vm.BytecodeCompiler;
+import org.programs.math.vm.Program;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A statement which is evaluated many times, and gets faster as it gets hot.
+ * <p>It starts in the {@link Tier#INTERPRETED} tier, where the parsed nodes are visited. Once the
+ *    {@link TierPolicy} finds it hot enough, it is promoted to the {@link Tier#OPTIMIZED} tier (constants folded
+ *    and expensive parts forked), and then to the {@link Tier#COMPILED} tier (a bytecode {@link Program}).
+ * <p>Promotions are done in the background, the callers keep using the current tier until the next one is
+ *    ready. If a function used by the compiled program is redefined, the statement goes back to the
+ *    optimized tier, and is compiled again once it is hot.
+ */
+public final class TieredStatement {
+
+    /**
+     * The ways of evaluating a statement, from the slowest to the fastest.
+     */
+    public enum Tier {
+        INTERPRETED,
+        OPTIMIZED,
+        COMPILED
+    }
+
+    /**
+     * The statement, as parsed.
+     */
+    public final Node source;
+
+    private static final MetricsRegistry.Counter COMPILED_HITS = Metrics.counter(Metrics.COMPILED_HITS);
+    private static final MetricsRegistry.Counter COMPILED_MISSES = Metrics.counter(Metrics.COMPILED_MISSES);
+
+    private final TierPolicy policy;
+
+    private volatile Tier tier = Tier.INTERPRETED;
+
+    /**
+     * The tree evaluated in the current tier (unless it is compiled).
+     */
+    private volatile Node tree;
+
+    /**
+     * The loops of {@link TieredStatement#tree}, whose iterations make the statement hot.
+     */
+    private volatile List<SigmaPiNode> loops;
+
+    private volatile Program program;
+
+    /**
+     * The evaluations in the current tier.
+     */
+    private final AtomicLong invocations = new AtomicLong();
+
+    /**
+     * The loop iterations done before the current tier, which are not counted for it.
+     */
+    private volatile long iterationsBefore;
+
+    /**
+     * The number of evaluations needed before trying to compile again, after the compiler gave up.
+     */
+    private volatile long retryCompileAt;
+
+    /**
+     * Whether a promotion is running in the background.
+     */
+    private final AtomicBoolean promoting = new AtomicBoolean();
+
+    /**
+     * Creates a tiered statement.
+     * @param node The parsed statement.
+     * @param policy The tiering policy.
+     */
+    public TieredStatement(Node node, TierPolicy policy) {
+        source = node;
+        this.policy = policy;
+        tree = node;
+        loops = loops(node);
+    }
+
+    /**
+     * Returns the tier which is currently used.
+     * @return The tier.
+     */
+    public Tier tier() {
+        return tier;
+    }
+
+    /**
+     * Evaluates the statement in the current tier.
+     * @param st The global symbol table.
+     * @return The value, a number or a vector.
+     */
+    public Value evaluate(SymbolTable st) {
+        if (Rational.isExactMode()) {
+            //The faster tiers work on doubles
+            return StatementScheduler.evaluate(source, st);
+        }
+
+        Program p = program;
+        if (p != null) {
+            if (!p.isStale(st)) {
+                COMPILED_HITS.increment();
+                return p.run(st);
+            }
+            demote();
+        }
+        COMPILED_MISSES.increment();
+
+        Tier current = tier;
+        long calls = invocations.incrementAndGet();
+        try {
+            Node n = tree;
+            return current == Tier.INTERPRETED ? StatementScheduler.evaluate(n, st) : n.evaluate(st);
+        } finally {
+            if (calls >= retryCompileAt && policy.shouldPromote(current, calls, iterations())) {
+                promote(st);
+            }
+        }
+    }
+
+    private long iterations() {
+        long total = 0;
+        for (SigmaPiNode loop : loops) {
+            total += loop.iterations();
+        }
+        return total - iterationsBefore;
+    }
+
+    /**
+     * Starts the promotion to the next tier in the background, unless one is already running.
+     */
+    private void promote(SymbolTable st) {
+        if (!promoting.compareAndSet(false, true)) {
+            return;
+        }
+
+        policy.submit(() -> {
+            try {
+                if (tier == Tier.INTERPRETED) {
+                    OptimizeEvent fold = Events.optimizing();
+                    Node folded = ConstantFolder.fold(source);
+                    Events.optimized(fold, Events.FOLD, source, folded != source);
+
+                    OptimizeEvent fork = Events.optimizing();
+                    Node optimized = ForkPlanner.plan(folded, st);
+                    Events.optimized(fork, Events.FORK, folded, optimized != folded);
+                    enter(Tier.OPTIMIZED, optimized);
+                } else if (tier == Tier.OPTIMIZED) {
+                    OptimizeEvent event = Events.optimizing();
+                    Program compiled = BytecodeCompiler.compile(tree, st);
+                    Events.optimized(event, Events.COMPILE, tree, compiled != null);
+                    if (compiled == null) {
+                        //Try again later, a missing function may be defined by then
+                        retryCompileAt = invocations.get() * 2;
+                    } else {
+                        program = compiled;
+                        tier = Tier.COMPILED;
+                    }
+                }
+            } finally {
+                promoting.set(false);
+            }
+        });
+    }
+
+    private void demote() {
+        program = null;
+        retryCompileAt = 0;
+        enter(Tier.OPTIMIZED, tree);
+    }
+
+    private void enter(Tier t, Node n) {
+        List<SigmaPiNode> l = loops(n);
+        long done = 0;
+        for (SigmaPiNode loop : l) {
+            done += loop.iterations();
+        }
+
+        tree = n;
+        loops = l;
+        iterationsBefore = done;
+        invocations.set(0);
+        tier = t;
+    }
+
+    /**
+     * Finds the loops of a statement, outside of function bodies.
+     */
+    private static List<SigmaPiNode> loops(Node node) {
+        List<SigmaPiNode> found = new ArrayList<>();
+        collect(node, found);
+        return found;
+    }
+
+    private static void collect(Node node, List<SigmaPiNode> found) {
+        if (node instanceof SigmaPiNode sp) {
+            found.add(sp);
+            collect(sp.init.defaultVal, found);
+            collect(sp.upto, found);
+            collect(sp.evaluationExpr, found);
+        } else if (node instanceof BinOpNode bin) {
+            collect(bin.left, found);
+            collect(bin.right, found);
+        } else if (node instanceof UnaryOpNode un) {
+            collect(un.node, found);
+        } else if (node instanceof AssignmentNode as) {
+            collect(as.expr, found);
+        } else if (node instanceof FuncCallNode call) {
+            for (Node arg : call.args) {
+                collect(arg, found);
+            }
+        } else if (node instanceof VectorNode vec) {
+            for (Node element : vec.elements) {
+                collect(element, found);
+            }
+        } else if (node instanceof MatrixNode mat) {
+            for (List<Node> row : mat.rows) {
+                for (Node element : row) {
+                    collect(element, found);
+                }
+            }
+        }
+    }
+}
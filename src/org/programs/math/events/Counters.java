@@ -0,0 +1,71 @@
+package org.programs.math.events;
+
+import org.programs.math.eval.EvaluationContext;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Counts the work done by an evaluation, for {@link EvaluateEvent}: the iterations of the interpreted sums and
+ *    products, and the calls of native and intrinsic functions.
+ * <p>The counters belong to the thread which started them, and are carried to the other threads of the evaluation
+ *    by its {@link EvaluationContext}. Nothing is counted unless the event is enabled.
+ */
+public final class Counters {
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder nativeCalls = new LongAdder();
+
+    /**
+     * The context of the thread before these were started.
+     */
+    private EvaluationContext previous;
+
+    private Counters() {
+        //private
+    }
+
+    /**
+     * Starts counting the work of the current thread, until {@link Counters#stop()}.
+     * @return The counters.
+     */
+    public static Counters start() {
+        Counters c = new Counters();
+        c.previous = EvaluationContext.enter(c);
+        return c;
+    }
+
+    /**
+     * Stops counting. This must be called on the thread which started the counters.
+     */
+    public void stop() {
+        EvaluationContext.exit(previous);
+    }
+
+    public long iterations() {
+        return iterations.sum();
+    }
+
+    public long nativeCalls() {
+        return nativeCalls.sum();
+    }
+
+    /**
+     * Counts iterations of a sum or a product.
+     * @param n The number of iterations.
+     */
+    public static void iterations(long n) {
+        Counters c = EvaluationContext.counters();
+        if (c != null) {
+            c.iterations.add(n);
+        }
+    }
+
+    /**
+     * Counts a call of a native or intrinsic function.
+     */
+    public static void nativeCall() {
+        Counters c = EvaluationContext.counters();
+        if (c != null) {
+            c.nativeCalls.increment();
+        }
+    }
+}
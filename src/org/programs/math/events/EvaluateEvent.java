@@ -0,0 +1,67 @@
+package org.programs.math.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>A Flight Recorder event for a whole evaluation, from the input to the values, like
+ *    {@link org.programs.math.MathEvaluator#evaluate(String)}. The lexing and the parsing are recorded inside
+ *    it by {@link LexEvent} and {@link ParseEvent}.
+ * <p>Only evaluations which take longer than the threshold are recorded, 1 ms unless the recording sets
+ *    another one (like {@code org.programs.math.Evaluate#threshold=20 ms} in its settings).
+ * <p>The iterations and the native calls are only counted while the event is enabled (see {@link Counters}).
+ */
+@Name("org.programs.math.Evaluate")
+@Label("Evaluate")
+@Category("Calculator")
+@Description("Evaluation of an input, from lexing to the values")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class EvaluateEvent extends Event {
+    /**
+     * The number of characters of the input, or 0 if it was parsed before (see
+     * {@link org.programs.math.eval.PreparedExpression}).
+     */
+    @Label("Input Length")
+    public int inputLength;
+
+    /**
+     * The number of tokens of the input, or 0 if it was parsed before.
+     */
+    @Label("Tokens")
+    public int tokenCount;
+
+    @Label("Statements")
+    public int statementCount;
+
+    /**
+     * The number of nodes of the statements, not counting the bodies of the functions they call.
+     */
+    @Label("Nodes")
+    public int nodeCount;
+
+    /**
+     * The type of the last value, like {@code vector}, or {@code none} if there is no value or it failed.
+     */
+    @Label("Result Type")
+    public String resultType;
+
+    /**
+     * The name of the exception it failed with, or {@code null} if it didn't fail.
+     */
+    @Label("Error Type")
+    public String errorType;
+
+    @Label("Sum and Product Iterations")
+    @Description("Iterations of the sums and products which were interpreted")
+    public long iterations;
+
+    @Label("Native Calls")
+    @Description("Calls of the native and intrinsic functions")
+    public long nativeCalls;
+}
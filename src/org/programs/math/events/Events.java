@@ -0,0 +1,167 @@
+package org.programs.math.events;
+
+import jdk.jfr.FlightRecorder;
+import org.programs.math.nodes.*;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
+
+import java.util.List;
+
+/**
+ * Helpers to fill in the fields of the events. They are only called for the events which are committed, so they
+ * can take their time.
+ */
+public final class Events {
+    /**
+     * The pass of {@link org.programs.math.eval.ConstantFolder}.
+     */
+    public static final String FOLD = "fold constants";
+
+    /**
+     * The pass of {@link org.programs.math.eval.ForkPlanner}.
+     */
+    public static final String FORK = "plan forks";
+
+    /**
+     * The pass of {@link org.programs.math.vm.BytecodeCompiler}.
+     */
+    public static final String COMPILE = "compile to bytecode";
+
+    /**
+     * The pass of {@link org.programs.math.batch.Translator}.
+     */
+    public static final String TRANSLATE = "translate to batch steps";
+
+    private Events() {
+        //private
+    }
+
+    /**
+     * Checks if Flight Recorder is running. The events are only created when it is, since loading the first
+     * event class starts parts of Flight Recorder, which takes much longer than starting the calculator.
+     * @return {@code true} if it is running.
+     */
+    public static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Begins the event of an optimization pass.
+     * @return The event, or {@code null} if Flight Recorder is not running.
+     */
+    public static OptimizeEvent optimizing() {
+        if (!recording()) {
+            return null;
+        }
+
+        OptimizeEvent event = new OptimizeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends an optimization pass, and commits its event if it is recorded.
+     * @param event The event from {@link Events#optimizing()}, or {@code null}.
+     * @param pass The pass, like {@link Events#FOLD}.
+     * @param node The statement given to the pass.
+     * @param changed Whether the pass changed the statement (see {@link OptimizeEvent#changed}).
+     */
+    public static void optimized(OptimizeEvent event, String pass, Node node, boolean changed) {
+        if (event == null) {
+            return;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.pass = pass;
+            event.nodeCount = nodes(node);
+            event.changed = changed;
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts the nodes of statements, without the bodies of the functions they call.
+     * @param nodes The statements.
+     * @return The number of nodes.
+     */
+    public static int nodes(List<Node> nodes) {
+        int count = 0;
+        for (Node node : nodes) {
+            count += nodes(node);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the nodes of a statement, without the bodies of the functions it calls.
+     * @param node The statement.
+     * @return The number of nodes.
+     */
+    public static int nodes(Node node) {
+        if (node instanceof BinOpNode bin) {
+            return 1 + nodes(bin.left) + nodes(bin.right);
+        }
+        if (node instanceof UnaryOpNode un) {
+            return 1 + nodes(un.node);
+        }
+        if (node instanceof AssignmentNode as) {
+            return 1 + nodes(as.expr);
+        }
+        if (node instanceof SigmaPiNode sp) {
+            return 1 + nodes(sp.init.defaultVal) + nodes(sp.upto) + nodes(sp.evaluationExpr);
+        }
+        if (node instanceof FuncCallNode call) {
+            return 1 + nodes(call.args);
+        }
+        if (node instanceof VectorNode vec) {
+            return 1 + nodes(vec.elements);
+        }
+        if (node instanceof MatrixNode m) {
+            int count = 1;
+            for (List<Node> row : m.rows) {
+                count += nodes(row);
+            }
+            return count;
+        }
+        return 1;
+    }
+
+    /**
+     * Names the type of the last value.
+     * @param values The values.
+     * @return {@code number}, {@code rational}, {@code vector} or {@code matrix}, or {@code none} if there are
+     *         no values.
+     */
+    public static String type(List<Value> values) {
+        if (values.isEmpty()) {
+            return "none";
+        }
+
+        Value v = values.get(values.size() - 1);
+        if (v instanceof ComplexNum) {
+            return "number";
+        }
+        if (v instanceof Rational) {
+            return "rational";
+        }
+        if (v instanceof Vector) {
+            return "vector";
+        }
+        return v instanceof Matrix ? "matrix" : v.getClass().getSimpleName();
+    }
+
+    /**
+     * Finds the name of the exception in an error message, which starts with it (see
+     * {@link org.programs.math.exceptions.BaseException#toString()}).
+     * @param error The error message.
+     * @return The name of the exception.
+     */
+    public static String errorType(String error) {
+        int colon = error.indexOf(':');
+        return colon < 0 ? error : error.substring(0, colon);
+    }
+}
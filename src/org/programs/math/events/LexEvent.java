@@ -0,0 +1,35 @@
+package org.programs.math.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for lexing an input (see {@link org.programs.math.lexer.Lexer}).
+ */
+@Name("org.programs.math.Lex")
+@Label("Lex")
+@Category("Calculator")
+@Description("Lexing of an input into tokens")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class LexEvent extends Event {
+    @Label("Input Length")
+    public int inputLength;
+
+    /**
+     * The number of tokens, or 0 if it failed.
+     */
+    @Label("Tokens")
+    public int tokenCount;
+
+    /**
+     * The name of the exception it failed with, or {@code null} if it didn't fail.
+     */
+    @Label("Error Type")
+    public String errorType;
+}
@@ -0,0 +1,41 @@
+package org.programs.math.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for an optimization pass over a statement, like folding its constants or compiling
+ * it to bytecode.
+ */
+@Name("org.programs.math.Optimize")
+@Label("Optimize")
+@Category("Calculator")
+@Description("An optimization pass over a statement")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class OptimizeEvent extends Event {
+    /**
+     * The pass, one of {@link Events#FOLD}, {@link Events#FORK}, {@link Events#COMPILE} and
+     * {@link Events#TRANSLATE}.
+     */
+    @Label("Pass")
+    public String pass;
+
+    /**
+     * The number of nodes of the statement given to the pass.
+     */
+    @Label("Nodes")
+    public int nodeCount;
+
+    /**
+     * Whether the pass changed the statement, or made something out of it. A compilation which is not
+     * possible yet doesn't.
+     */
+    @Label("Changed")
+    public boolean changed;
+}
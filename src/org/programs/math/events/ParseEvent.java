@@ -0,0 +1,41 @@
+package org.programs.math.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for parsing the tokens of an input (see {@link org.programs.math.parser.Parser}).
+ */
+@Name("org.programs.math.Parse")
+@Label("Parse")
+@Category("Calculator")
+@Description("Parsing of tokens into statements")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class ParseEvent extends Event {
+    @Label("Tokens")
+    public int tokenCount;
+
+    /**
+     * The number of statements, or 0 if it failed.
+     */
+    @Label("Statements")
+    public int statementCount;
+
+    /**
+     * The number of nodes of the statements. The bodies of functions which are parsed later are not counted.
+     */
+    @Label("Nodes")
+    public int nodeCount;
+
+    /**
+     * The name of the exception it failed with, or {@code null} if it didn't fail.
+     */
+    @Label("Error Type")
+    public String errorType;
+}
@@ -0,0 +1,16 @@
+package org.programs.math.exceptions;
+
+/**
+ * Indicates that an evaluation was stopped before it finished, since it used up its steps, passed its deadline,
+ * or was cancelled (see {@link org.programs.math.eval.Budget}).
+ */
+public class BudgetExceededException extends BaseException {
+
+    /**
+     * Constructs this exception.
+     * @param message The error message.
+     */
+    public BudgetExceededException(String message) {
+        super (message);
+    }
+}
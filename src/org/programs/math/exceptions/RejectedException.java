@@ -0,0 +1,16 @@
+package org.programs.math.exceptions;
+
+/**
+ * Indicates that an expression was not evaluated, since the admission policy estimated it to be too expensive
+ * (see {@link org.programs.math.eval.AdmissionPolicy}).
+ */
+public class RejectedException extends BaseException {
+
+    /**
+     * Constructs this exception.
+     * @param message The error message.
+     */
+    public RejectedException(String message) {
+        super (message);
+    }
+}
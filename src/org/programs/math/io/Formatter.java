@@ -0,0 +1,233 @@
+package org.programs.math.io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Formats numbers as ASCII bytes, straight into a buffer.
+ * <p>Doubles are written with the shortest digits which read back as the same number (see {@link Ryu}),
+ *    in the same layout as {@link Double#toString(double)}: plain between 10^-3 and 10^7, like
+ *    {@code 1.0E-5} otherwise.
+ * <p>Complex numbers are written like {@link org.programs.math.types.ComplexNum#toString()}, which uses
+ *    this formatter too.
+ * <p>A formatter is used by one thread only.
+ */
+public final class Formatter {
+    /**
+     * The most bytes a complex number can take.
+     */
+    public static final int MAX_LENGTH = 64;
+
+    private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INFINITY = "Infinity".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The two digits of the numbers from 0 to 99, so that digits are written two at a time.
+     */
+    private static final byte[] PAIRS = new byte[200];
+
+    private static final long[] POWERS = new long[19];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            PAIRS[2 * i] = (byte) ('0' + i / 10);
+            PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 10;
+        }
+    }
+
+    private final Ryu ryu = new Ryu();
+
+    /**
+     * Formats a complex number into a string.
+     * @param re The real part.
+     * @param im The imaginary part.
+     * @return The text.
+     */
+    public String toString(double re, double im) {
+        byte[] b = new byte[MAX_LENGTH];
+        int n = complex(re, im, b, 0);
+        return new String(b, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes a complex number.
+     * <p>Zero is {@code 0}, whole numbers have no decimal point, and the imaginary unit is {@code i}, like
+     *    {@code 3 - i} or {@code 0.5 + 2i}.
+     * @param re The real part.
+     * @param im The imaginary part.
+     * @param b The buffer, with at least {@link Formatter#MAX_LENGTH} bytes left.
+     * @param at The position to write at.
+     * @return The position after the number.
+     */
+    public int complex(double re, double im, byte[] b, int at) {
+        if (re == 0 && im == 0) {
+            b[at] = '0';
+            return at + 1;
+        }
+        if (im == 0) {
+            return part(re, false, b, at);
+        }
+        if (re == 0) {
+            return part(im, true, b, at);
+        }
+
+        at = part(re, false, b, at);
+        b[at++] = ' ';
+        b[at++] = im < 0 ? (byte) '-' : (byte) '+';
+        b[at++] = ' ';
+        return part(im < 0 ? -im : im, true, b, at);
+    }
+
+    /**
+     * Writes one part of a complex number, without the {@code .0} of whole numbers.
+     */
+    private int part(double x, boolean isIm, byte[] b, int at) {
+        if (x < 0) {
+            b[at++] = '-';
+        }
+
+        double z = Math.abs(x);
+        if (!isIm || z != 1) {
+            at = write(z, true, b, at);
+        }
+
+        if (isIm) {
+            b[at++] = 'i';
+        }
+        return at;
+    }
+
+    /**
+     * Writes a double, exactly like {@link Double#toString(double)} except that the digits are always the
+     * shortest ones.
+     * @param x The number.
+     * @param b The buffer, with at least 24 bytes left.
+     * @param at The position to write at.
+     * @return The position after the number.
+     */
+    public int write(double x, byte[] b, int at) {
+        return write(x, false, b, at);
+    }
+
+    private int write(double x, boolean whole, byte[] b, int at) {
+        if (Double.isNaN(x)) {
+            System.arraycopy(NAN, 0, b, at, NAN.length);
+            return at + NAN.length;
+        }
+
+        long bits = Double.doubleToRawLongBits(x);
+        if (bits < 0) {
+            b[at++] = '-';
+            bits &= Long.MAX_VALUE;
+        }
+
+        if (Double.isInfinite(x)) {
+            System.arraycopy(INFINITY, 0, b, at, INFINITY.length);
+            return at + INFINITY.length;
+        }
+
+        if (bits == 0) {
+            return zero(whole, b, at);
+        }
+
+        ryu.convert(bits);
+        long digits = ryu.digits;
+        int length = length(digits);
+        int sci = ryu.exponent + length - 1;
+
+        if (sci >= -3 && sci < 7) {
+            return plain(digits, length, sci, whole, b, at);
+        }
+
+        //d.dddE-n
+        writeDigits(digits, length, b, at + 1);
+        b[at] = b[at + 1];
+        b[at + 1] = '.';
+        at += length + 1;
+        if (length == 1) {
+            b[at++] = '0';
+        }
+
+        b[at++] = 'E';
+        if (sci < 0) {
+            b[at++] = '-';
+            sci = -sci;
+        }
+        return writeDigits(sci, length(sci), b, at);
+    }
+
+    private static int zero(boolean whole, byte[] b, int at) {
+        b[at++] = '0';
+        if (!whole) {
+            b[at++] = '.';
+            b[at++] = '0';
+        }
+        return at;
+    }
+
+    /**
+     * Writes a number between 10^-3 and 10^7, like {@code 1234.5} or {@code 0.00125}.
+     */
+    private static int plain(long digits, int length, int sci, boolean whole, byte[] b, int at) {
+        if (sci < 0) {
+            b[at++] = '0';
+            b[at++] = '.';
+            for (int i = -1; i > sci; i--) {
+                b[at++] = '0';
+            }
+            return writeDigits(digits, length, b, at);
+        }
+
+        int integer = sci + 1;
+        if (length <= integer) {
+            at = writeDigits(digits, length, b, at);
+            for (int i = length; i < integer; i++) {
+                b[at++] = '0';
+            }
+            if (!whole) {
+                b[at++] = '.';
+                b[at++] = '0';
+            }
+            return at;
+        }
+
+        //Write all the digits one place further, then move the integer part back over the gap
+        writeDigits(digits, length, b, at + 1);
+        System.arraycopy(b, at + 1, b, at, integer);
+        b[at + integer] = '.';
+        return at + length + 1;
+    }
+
+    /**
+     * Writes the given number of decimal digits of a number.
+     * @return The position after the digits.
+     */
+    private static int writeDigits(long v, int length, byte[] b, int at) {
+        int end = at + length, i = end;
+        while (i - at >= 2) {
+            int pair = (int) (v % 100);
+            v /= 100;
+            b[--i] = PAIRS[2 * pair + 1];
+            b[--i] = PAIRS[2 * pair];
+        }
+        if (i > at) {
+            b[--i] = (byte) ('0' + v);
+        }
+        return end;
+    }
+
+    /**
+     * Returns the number of decimal digits of a positive number.
+     */
+    private static int length(long v) {
+        int n = 1;
+        while (n < POWERS.length && v >= POWERS[n]) {
+            n++;
+        }
+        return n;
+    }
+}
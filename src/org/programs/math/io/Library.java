@@ -0,0 +1,414 @@
+package org.programs.math.io;
+
+import org.programs.math.exceptions.RTException;
+import org.programs.math.extra.Result;
+import org.programs.math.lexer.OpToken;
+import org.programs.math.lexer.TokenType;
+import org.programs.math.nodes.*;
+import org.programs.math.types.*;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>A library of functions and variables stored in a binary format, whose values are created one at a time,
+ *    when they are first needed (see {@link Library#load(String)}).
+ * <p>Opening a library only reads its header: the names are looked up in the name index, which is sorted,
+ *    and the strings are decoded when they are first used. So it takes the same time for any size.
+ * <p>The format is written by {@link LibraryWriter}. All the numbers are little endian:
+ * <p>- The header: the magic number, the version (a short), a short which is 0, and a checksum of the source
+ *      the library was made from (see {@link Library#checksum(byte[])}), or 0.
+ * <p>- The strings: their count, the offset of each one and the end of the last one, then their UTF-8 bytes.
+ *      Names and operators refer to them by their index.
+ * <p>- The name index: the count of entries, then the name, the kind (a byte, {@link Library#FUNCTION} or
+ *      {@link Library#VARIABLE}) and the offset of the data of each, sorted by the bytes of the names.
+ * <p>- The data. A function is its number of parameters (a short), the name and the default value of each
+ *      parameter, and its body. A node is a tag byte followed by its fields and children, depth first.
+ *      Missing default values and the bodies of native functions are the tag {@link Library#NONE}.
+ *      A variable is a tag byte followed by the number: the two parts of a complex number, the bytes of
+ *      the numerator and the denominator of a rational number, or the size and the parts of a vector or a
+ *      matrix.
+ */
+public final class Library {
+    /**
+     * The first four bytes of a library, "CLIB".
+     */
+    public static final int MAGIC = 0x42494C43;
+
+    /**
+     * The version of the format. Libraries of other versions can't be read.
+     */
+    public static final short VERSION = 2;
+
+    static final byte FUNCTION = 1, VARIABLE = 2;
+
+    /**
+     * The size of an entry of the name index.
+     */
+    static final int ENTRY = Integer.BYTES + 1 + Integer.BYTES;
+
+    static final byte NONE = 0, NUMBER = 1, IDENTIFIER = 2, BINARY = 3, UNARY = 4, CALL = 5, SUM = 6, PRODUCT = 7,
+            VECTOR = 8, MATRIX = 9;
+
+    static final byte COMPLEX_VALUE = 1, RATIONAL_VALUE = 2, REAL_VECTOR_VALUE = 3, VECTOR_VALUE = 4,
+            MATRIX_VALUE = 5;
+
+    /**
+     * The checksum of the source of the library, or 0.
+     */
+    public final int checksum;
+
+    /**
+     * The whole library. It is only read at absolute positions, so it can be shared between threads.
+     */
+    private final ByteBuffer buffer;
+    private final int stringOffsets, stringBytes, index, size;
+    private final ByteBuffer data;
+
+    /**
+     * The strings which were decoded, by their index.
+     */
+    private final String[] strings;
+
+    private Library(int checksum, ByteBuffer buffer, int stringOffsets, int stringCount, int index, int size) {
+        this.checksum = checksum;
+        this.buffer = buffer;
+        this.stringOffsets = stringOffsets;
+        this.stringBytes = stringOffsets + (stringCount + 1) * Integer.BYTES;
+        this.index = index;
+        this.size = size;
+        this.data = buffer.slice(index + size * ENTRY, buffer.limit() - index - size * ENTRY);
+        this.strings = new String[stringCount];
+    }
+
+    /**
+     * Opens a library file. The file is mapped into memory, so only the parts which are used are read.
+     * <p>The file should not be changed while the library is used.
+     * @param file The file.
+     * @return The library, or the error message if it can't be read.
+     */
+    public static Result<Library, String> open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | IllegalArgumentException e) {
+            return Result.failure("Can't read the library: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the header of a library, and checks that its parts fit in it. Nothing else is read yet.
+     * @param buffer The library. It is not copied, so it should not be changed afterwards.
+     * @return The library, or the error message if it is not one.
+     */
+    public static Result<Library, String> read(ByteBuffer buffer) {
+        ByteBuffer b = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (b.getInt() != MAGIC) {
+                return Result.failure("Not a library.");
+            }
+            short version = b.getShort();
+            if (version != VERSION) {
+                return Result.failure("Unsupported library version: " + version);
+            }
+            b.getShort();
+            int checksum = b.getInt();
+
+            int stringCount = b.getInt();
+            int stringOffsets = b.position();
+            if (stringCount < 0 || stringOffsets + (stringCount + 1L) * Integer.BYTES > b.limit()) {
+                return Result.failure("The library is damaged.");
+            }
+            int end = stringOffsets + (stringCount + 1) * Integer.BYTES;
+            int index = end + b.getInt(stringOffsets + stringCount * Integer.BYTES);
+            int size = b.getInt(index);
+            if (size < 0 || index + Integer.BYTES + (long) size * ENTRY > b.limit()) {
+                return Result.failure("The library is damaged.");
+            }
+            return Result.success(new Library(checksum, b, stringOffsets, stringCount, index + Integer.BYTES, size));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return Result.failure("The library is damaged.");
+        }
+    }
+
+    /**
+     * Computes the checksum of the source of a library, which is stored in it to tell if the library is
+     * older than its source.
+     * @param source The source.
+     * @return The checksum.
+     */
+    public static int checksum(byte[] source) {
+        CRC32 crc = new CRC32();
+        crc.update(source);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the number of functions and variables in the library.
+     * @return The number.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the names in the library, sorted by their UTF-8 bytes. All of them are decoded, so this is
+     * slower than looking up a name.
+     * @return The names.
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            names.add(name(i));
+        }
+        return names;
+    }
+
+    /**
+     * Returns the names of the variables in the library. Only their names are decoded.
+     * @return The names.
+     */
+    public List<String> variables() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (kind(i) == VARIABLE) {
+                names.add(name(i));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Checks if the library has a function or a variable.
+     * @param name The name.
+     * @return {@code true} if it has it.
+     */
+    public boolean contains(String name) {
+        return find(name) >= 0;
+    }
+
+    /**
+     * Checks if a name of the library is a variable, rather than a function.
+     * @param name The name.
+     * @return {@code true} if it is a variable.
+     */
+    public boolean isVariable(String name) {
+        int i = find(name);
+        return i >= 0 && kind(i) == VARIABLE;
+    }
+
+    /**
+     * Creates the value with the given name. Each call creates a new one.
+     * <p>This can be called by many threads at the same time.
+     * @param name The name.
+     * @return The value, or {@code null} if the library doesn't have it.
+     * @throws RTException If the library is damaged.
+     */
+    public Value load(String name) {
+        int i = find(name);
+        if (i < 0) {
+            return null;
+        }
+
+        try {
+            int offset = buffer.getInt(index + i * ENTRY + Integer.BYTES + 1);
+            Reader r = new Reader(data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(offset));
+            return switch (kind(i)) {
+                case FUNCTION -> r.function(name);
+                case VARIABLE -> r.value();
+                default -> throw new IllegalStateException("Unknown kind: " + kind(i));
+            };
+        } catch (RuntimeException e) {
+            throw new RTException("The library is damaged, '" + name + "' can't be read.");
+        }
+    }
+
+    /**
+     * Finds an entry of the name index with a binary search, comparing the bytes of the names in place.
+     * @return The entry, or -1 if there is no such name.
+     */
+    private int find(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(buffer.getInt(index + mid * ENTRY), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int string, byte[] key) {
+        try {
+            int from = stringBytes + buffer.getInt(stringOffsets + string * Integer.BYTES);
+            int length = stringBytes + buffer.getInt(stringOffsets + (string + 1) * Integer.BYTES) - from;
+            int n = Math.min(length, key.length);
+            for (int i = 0; i < n; i++) {
+                int cmp = Byte.compareUnsigned(buffer.get(from + i), key[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return length - key.length;
+        } catch (IndexOutOfBoundsException e) {
+            throw new RTException("The library is damaged.");
+        }
+    }
+
+    private byte kind(int entry) {
+        return buffer.get(index + entry * ENTRY + Integer.BYTES);
+    }
+
+    private String name(int entry) {
+        return string(buffer.getInt(index + entry * ENTRY));
+    }
+
+    /**
+     * Decodes a string, once. Threads which decode the same string at the same time get equal strings.
+     */
+    private String string(int i) {
+        try {
+            String s = strings[i];
+            if (s == null) {
+                int from = stringBytes + buffer.getInt(stringOffsets + i * Integer.BYTES);
+                byte[] bytes = new byte[stringBytes + buffer.getInt(stringOffsets + (i + 1) * Integer.BYTES) - from];
+                buffer.get(from, bytes);
+                s = new String(bytes, StandardCharsets.UTF_8);
+                strings[i] = s;
+            }
+            return s;
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new RTException("The library is damaged.");
+        }
+    }
+
+    /**
+     * Reads the nodes from a position of the data.
+     */
+    private final class Reader {
+        private final ByteBuffer b;
+
+        Reader(ByteBuffer b) {
+            this.b = b;
+        }
+
+        Func function(String name) {
+            int count = b.getShort();
+            List<Parameter> params = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String param = string();
+                params.add(new Parameter(param, optional()));
+            }
+            return new Func(name, params, optional());
+        }
+
+        Value value() {
+            byte tag = b.get();
+            return switch (tag) {
+                case COMPLEX_VALUE -> new ComplexNum(b.getDouble(), b.getDouble());
+                case RATIONAL_VALUE -> {
+                    BigInteger num = new BigInteger(bytes());
+                    yield Rational.of(num, new BigInteger(bytes()));
+                }
+                case REAL_VECTOR_VALUE -> new Vector(doubles(b.getInt()));
+                case VECTOR_VALUE -> {
+                    int length = b.getInt();
+                    double[] re = doubles(length);
+                    yield new Vector(re, doubles(length));
+                }
+                case MATRIX_VALUE -> {
+                    int rows = b.getInt(), cols = b.getInt();
+                    yield new Matrix(rows, cols, doubles(2 * rows * cols));
+                }
+                default -> throw new IllegalStateException("Unknown tag: " + tag);
+            };
+        }
+
+        private double[] doubles(int length) {
+            double[] d = new double[length];
+            b.asDoubleBuffer().get(d);
+            b.position(b.position() + length * Double.BYTES);
+            return d;
+        }
+
+        private byte[] bytes() {
+            byte[] bytes = new byte[b.getInt()];
+            b.get(bytes);
+            return bytes;
+        }
+
+        private Node optional() {
+            byte tag = b.get();
+            return tag == NONE ? null : node(tag);
+        }
+
+        private Node node(byte tag) {
+            return switch (tag) {
+                case NUMBER -> new NumberNode(new ComplexNum(b.getDouble(), b.getDouble()));
+                case IDENTIFIER -> new IdentifierNode(string(), b.get() != 0);
+                case BINARY -> {
+                    OpToken op = op();
+                    Node left = node(b.get());
+                    yield new BinOpNode(left, op, node(b.get()));
+                }
+                case UNARY -> {
+                    OpToken op = op();
+                    yield new UnaryOpNode(op, node(b.get()));
+                }
+                case CALL -> {
+                    String name = string();
+                    yield new FuncCallNode(name, nodes());
+                }
+                case SUM, PRODUCT -> {
+                    String var = string();
+                    Parameter init = new Parameter(var, node(b.get()));
+                    Node upto = node(b.get());
+                    yield new SigmaPiNode(init, upto, node(b.get()),
+                            tag == SUM ? SigmaPiNode.Type.SIGMA : SigmaPiNode.Type.PI);
+                }
+                case VECTOR -> new VectorNode(nodes());
+                case MATRIX -> {
+                    int count = b.getInt();
+                    List<List<Node>> rows = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        rows.add(nodes());
+                    }
+                    yield new MatrixNode(rows);
+                }
+                default -> throw new IllegalStateException("Unknown tag: " + tag);
+            };
+        }
+
+        private List<Node> nodes() {
+            int count = b.getInt();
+            List<Node> nodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                nodes.add(node(b.get()));
+            }
+            return nodes;
+        }
+
+        private OpToken op() {
+            return new OpToken(TokenType.valueOf(string()));
+        }
+
+        private String string() {
+            return Library.this.string(b.getInt());
+        }
+    }
+}
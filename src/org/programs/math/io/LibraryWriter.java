@@ -0,0 +1,246 @@
+package org.programs.math.io;
+
+import org.programs.math.nodes.*;
+import org.programs.math.types.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.programs.math.io.Library.*;
+
+/**
+ * <p>Writes functions and variables in the format read by {@link Library}.
+ * <p>The values are flattened as they are added, so changing them afterwards doesn't change the output.
+ */
+public final class LibraryWriter {
+    /**
+     * The number of doubles of a vector or a matrix which are copied at once.
+     */
+    private static final int CHUNK = 1 << 13;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringList = new ArrayList<>();
+    /**
+     * The kind and the offset of the data of each name. A name which is added again is replaced.
+     */
+    private final Map<String, int[]> entries = new HashMap<>();
+    private final Output data = new Output();
+
+    /**
+     * Adds a function.
+     * @param fn The function.
+     * @throws IllegalArgumentException If the body has a node which can't be written, like an assignment.
+     */
+    public void add(Func fn) {
+        string(fn.name);
+        entries.put(fn.name, new int[] {FUNCTION, data.size()});
+
+        data.writeShort(fn.parameters.size());
+        for (Parameter p : fn.parameters) {
+            data.writeInt(string(p.name));
+            optional(p.defaultVal);
+        }
+        optional(fn.body());
+    }
+
+    /**
+     * Adds a variable.
+     * @param name The name.
+     * @param value The value, which is a number, a vector or a matrix.
+     * @throws IllegalArgumentException If the value is a function.
+     */
+    public void add(String name, Value value) {
+        string(name);
+        entries.put(name, new int[] {VARIABLE, data.size()});
+
+        if (value instanceof ComplexNum z) {
+            data.writeByte(COMPLEX_VALUE);
+            data.writeDouble(z.real);
+            data.writeDouble(z.imaginary);
+        } else if (value instanceof Rational q) {
+            data.writeByte(RATIONAL_VALUE);
+            bytes(q.numerator().toByteArray());
+            bytes(q.denominator().toByteArray());
+        } else if (value instanceof Vector v) {
+            data.writeByte(v.im == null ? REAL_VECTOR_VALUE : VECTOR_VALUE);
+            data.writeInt(v.length());
+            doubles(v.re);
+            if (v.im != null) {
+                doubles(v.im);
+            }
+        } else if (value instanceof Matrix m) {
+            data.writeByte(MATRIX_VALUE);
+            data.writeInt(m.rows);
+            data.writeInt(m.cols);
+            doubles(m.values);
+        } else {
+            throw new IllegalArgumentException("Can't write the value of '" + name + "'.");
+        }
+    }
+
+    /**
+     * Returns the library.
+     * @param checksum A checksum of the source of the functions (see {@link Library#checksum}), or 0.
+     * @return The bytes.
+     */
+    public byte[] toBytes(int checksum) {
+        Output out = new Output();
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(checksum);
+
+        List<byte[]> bytes = new ArrayList<>(stringList.size());
+        for (String s : stringList) {
+            bytes.add(s.getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeInt(bytes.size());
+        int offset = 0;
+        for (byte[] b : bytes) {
+            out.writeInt(offset);
+            offset += b.length;
+        }
+        out.writeInt(offset);
+        for (byte[] b : bytes) {
+            out.write(b, 0, b.length);
+        }
+
+        //Sorted like Library compares them, so that it can find a name with a binary search
+        List<String> names = new ArrayList<>(entries.keySet());
+        names.sort((x, y) -> Arrays.compareUnsigned(bytes.get(strings.get(x)), bytes.get(strings.get(y))));
+        out.writeInt(names.size());
+        for (String name : names) {
+            int[] e = entries.get(name);
+            out.writeInt(strings.get(name));
+            out.writeByte(e[0]);
+            out.writeInt(e[1]);
+        }
+
+        out.write(data.buffer(), 0, data.size());
+        return out.toByteArray();
+    }
+
+    private void optional(Node node) {
+        if (node == null) {
+            data.writeByte(NONE);
+        } else {
+            node(node);
+        }
+    }
+
+    private void node(Node node) {
+        if (node instanceof NumberNode n) {
+            data.writeByte(NUMBER);
+            data.writeDouble(n.num.real);
+            data.writeDouble(n.num.imaginary);
+        } else if (node instanceof IdentifierNode id) {
+            data.writeByte(IDENTIFIER);
+            data.writeInt(string(id.idName));
+            data.writeByte(id.isGlobal ? 1 : 0);
+        } else if (node instanceof BinOpNode bin) {
+            data.writeByte(BINARY);
+            data.writeInt(string(bin.op.tokenType.name()));
+            node(bin.left);
+            node(bin.right);
+        } else if (node instanceof UnaryOpNode un) {
+            data.writeByte(UNARY);
+            data.writeInt(string(un.op.tokenType.name()));
+            node(un.node);
+        } else if (node instanceof FuncCallNode call) {
+            data.writeByte(CALL);
+            data.writeInt(string(call.name));
+            nodes(call.args);
+        } else if (node instanceof SigmaPiNode sp) {
+            data.writeByte(sp.type == SigmaPiNode.Type.SIGMA ? SUM : PRODUCT);
+            data.writeInt(string(sp.init.name));
+            node(sp.init.defaultVal);
+            node(sp.upto);
+            node(sp.evaluationExpr);
+        } else if (node instanceof VectorNode vec) {
+            data.writeByte(VECTOR);
+            nodes(vec.elements);
+        } else if (node instanceof MatrixNode m) {
+            data.writeByte(MATRIX);
+            data.writeInt(m.rows.size());
+            for (List<Node> row : m.rows) {
+                nodes(row);
+            }
+        } else {
+            throw new IllegalArgumentException("Can't write the node: " + node);
+        }
+    }
+
+    private void bytes(byte[] b) {
+        data.writeInt(b.length);
+        data.write(b, 0, b.length);
+    }
+
+    private void doubles(double[] d) {
+        for (int from = 0; from < d.length; from += CHUNK) {
+            data.writeDoubles(d, from, Math.min(CHUNK, d.length - from));
+        }
+    }
+
+    private void nodes(List<Node> nodes) {
+        data.writeInt(nodes.size());
+        for (Node n : nodes) {
+            node(n);
+        }
+    }
+
+    private int string(String s) {
+        Integer index = strings.get(s);
+        if (index == null) {
+            index = stringList.size();
+            strings.put(s, index);
+            stringList.add(s);
+        }
+        return index;
+    }
+
+    /**
+     * A byte stream with little endian numbers.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+        private final ByteBuffer scratch = ByteBuffer.allocate(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        void writeByte(int b) {
+            write(b);
+        }
+
+        void writeShort(int s) {
+            scratch.clear();
+            scratch.putShort((short) s);
+            write(scratch.array(), 0, Short.BYTES);
+        }
+
+        void writeInt(int i) {
+            scratch.clear();
+            scratch.putInt(i);
+            write(scratch.array(), 0, Integer.BYTES);
+        }
+
+        void writeDouble(double d) {
+            scratch.clear();
+            scratch.putDouble(d);
+            write(scratch.array(), 0, Double.BYTES);
+        }
+
+        void writeDoubles(double[] d, int from, int n) {
+            ByteBuffer b = ByteBuffer.allocate(n * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            b.asDoubleBuffer().put(d, from, n);
+            write(b.array(), 0, b.capacity());
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
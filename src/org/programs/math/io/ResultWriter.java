@@ -0,0 +1,162 @@
+package org.programs.math.io;
+
+import org.programs.math.batch.Column;
+import org.programs.math.types.ComplexNum;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * <p>Writes results, one after another, without creating strings.
+ * <p>Results are formatted into a buffer which is reused. If the writer has a channel, the buffer is written
+ *    to it whenever it is full, else it grows and holds all the results (see {@link ResultWriter#bytes()}).
+ * <p>A writer is used by one thread only.
+ */
+public final class ResultWriter implements Closeable {
+    /**
+     * The size of the buffer of a writer with a channel.
+     */
+    public static final int BUFFER = 1 << 16;
+
+    /**
+     * How the results are written.
+     */
+    public enum Format {
+        /**
+         * One result per line, like {@link ComplexNum#toString()}.
+         */
+        TEXT,
+
+        /**
+         * Two little endian doubles per result, the real part and then the imaginary part.
+         */
+        BINARY
+    }
+
+    public final Format format;
+
+    private final WritableByteChannel channel;
+    private final Formatter formatter = new Formatter();
+
+    private byte[] buffer;
+    private ByteBuffer view;
+    private int position;
+
+    /**
+     * Creates a writer which keeps the results in memory.
+     * @param format The format.
+     */
+    public ResultWriter(Format format) {
+        this(format, null);
+    }
+
+    /**
+     * Creates a writer.
+     * @param format The format.
+     * @param channel The channel the results are written to, or {@code null} to keep them in memory.
+     */
+    public ResultWriter(Format format, WritableByteChannel channel) {
+        this.format = format;
+        this.channel = channel;
+        allocate(BUFFER);
+    }
+
+    /**
+     * Writes a result.
+     * @param re The real part.
+     * @param im The imaginary part.
+     * @throws IOException If the channel can't be written.
+     */
+    public void write(double re, double im) throws IOException {
+        if (format == Format.BINARY) {
+            reserve(2 * Double.BYTES);
+            view.putDouble(position, re);
+            view.putDouble(position + Double.BYTES, im);
+            position += 2 * Double.BYTES;
+            return;
+        }
+
+        reserve(Formatter.MAX_LENGTH + 1);
+        position = formatter.complex(re, im, buffer, position);
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * Writes a result.
+     * @param value The result.
+     * @throws IOException If the channel can't be written.
+     */
+    public void write(ComplexNum value) throws IOException {
+        write(value.real, value.imaginary);
+    }
+
+    /**
+     * Writes some results of a column.
+     * @param column The column.
+     * @param from The first row.
+     * @param to The row after the last one.
+     * @throws IOException If the channel can't be written.
+     */
+    public void write(Column column, int from, int to) throws IOException {
+        double[] re = column.re, im = column.im;
+        for (int i = from; i < to; i++) {
+            write(re[i], im == null ? 0 : im[i]);
+        }
+    }
+
+    /**
+     * Returns the results kept in memory, or the ones which weren't flushed yet.
+     * @return A copy of the bytes.
+     */
+    public byte[] bytes() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Writes the buffer to the channel, if there is one.
+     * @throws IOException If the channel can't be written.
+     */
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        ByteBuffer b = ByteBuffer.wrap(buffer, 0, position);
+        while (b.hasRemaining()) {
+            channel.write(b);
+        }
+        position = 0;
+    }
+
+    /**
+     * Flushes the buffer. The channel is not closed.
+     * @throws IOException If the channel can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Makes sure that the buffer has room for the given number of bytes.
+     */
+    private void reserve(int n) throws IOException {
+        if (position + n <= buffer.length) {
+            return;
+        }
+
+        flush();
+        if (position + n > buffer.length) {
+            allocate(Math.max(buffer.length * 2, position + n));
+        }
+    }
+
+    private void allocate(int size) {
+        buffer = buffer == null ? new byte[size] : Arrays.copyOf(buffer, size);
+        view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
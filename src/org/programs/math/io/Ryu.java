@@ -0,0 +1,215 @@
+package org.programs.math.io;
+
+import java.math.BigInteger;
+
+/**
+ * <p>Finds the shortest decimal which reads back as a given {@code double}, using the Ryu algorithm
+ *    (Ulf Adams, "Ryu: fast float-to-string conversion", PLDI 2018).
+ * <p>The 128 bit powers of five it needs are computed once, when the class is loaded.
+ * <p>A converter keeps the result of the last conversion, so it is used by one thread only.
+ */
+final class Ryu {
+    private static final int MANTISSA_BITS = 52;
+    private static final int BIAS = 1023;
+
+    private static final int POW5_BITCOUNT = 125;
+    private static final int POW5_INV_BITCOUNT = 125;
+
+    /**
+     * 5^i, scaled to {@link Ryu#POW5_BITCOUNT} bits, as the low and high 64 bits.
+     */
+    private static final long[] POW5_LO = new long[326], POW5_HI = new long[326];
+
+    /**
+     * 2^k / 5^i rounded up, scaled to {@link Ryu#POW5_INV_BITCOUNT} bits, as the low and high 64 bits.
+     */
+    private static final long[] POW5_INV_LO = new long[342], POW5_INV_HI = new long[342];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        BigInteger pow = BigInteger.ONE, five = BigInteger.valueOf(5);
+
+        for (int i = 0; i < POW5_INV_LO.length; i++, pow = pow.multiply(five)) {
+            int length = pow.bitLength();
+            if (i < POW5_LO.length) {
+                BigInteger v = pow.shiftRight(length - POW5_BITCOUNT);
+                POW5_LO[i] = v.and(mask).longValue();
+                POW5_HI[i] = v.shiftRight(64).longValue();
+            }
+
+            BigInteger inv = BigInteger.ONE.shiftLeft(length - 1 + POW5_INV_BITCOUNT).divide(pow).add(BigInteger.ONE);
+            POW5_INV_LO[i] = inv.and(mask).longValue();
+            POW5_INV_HI[i] = inv.shiftRight(64).longValue();
+        }
+    }
+
+    /**
+     * The digits of the last conversion, and the power of ten they are multiplied by.
+     */
+    long digits;
+    int exponent;
+
+    /**
+     * Converts a finite, positive {@code double}. The result is in {@link Ryu#digits} and {@link Ryu#exponent}.
+     * @param bits The bits of the number.
+     */
+    void convert(long bits) {
+        long ieeeMantissa = bits & ((1L << MANTISSA_BITS) - 1);
+        int ieeeExponent = (int) (bits >>> MANTISSA_BITS) & 0x7ff;
+
+        int e2;
+        long m2;
+        if (ieeeExponent == 0) {
+            e2 = 1 - BIAS - MANTISSA_BITS - 2;
+            m2 = ieeeMantissa;
+        } else {
+            e2 = ieeeExponent - BIAS - MANTISSA_BITS - 2;
+            m2 = (1L << MANTISSA_BITS) | ieeeMantissa;
+        }
+
+        boolean even = (m2 & 1) == 0;
+        long mv = 4 * m2;
+        int mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+
+        //The halfway points to the neighbours (vp and vm) and the number itself (vr), as decimals
+        long vr, vp, vm;
+        int e10;
+        boolean vmIsTrailingZeros = false, vrIsTrailingZeros = false;
+
+        if (e2 >= 0) {
+            int q = log10Pow2(e2) - (e2 > 3 ? 1 : 0);
+            e10 = q;
+            int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+            int i = -e2 + q + k;
+            vr = mulShift(4 * m2, POW5_INV_LO[q], POW5_INV_HI[q], i);
+            vp = mulShift(4 * m2 + 2, POW5_INV_LO[q], POW5_INV_HI[q], i);
+            vm = mulShift(4 * m2 - 1 - mmShift, POW5_INV_LO[q], POW5_INV_HI[q], i);
+
+            if (q <= 21) {
+                if (mv % 5 == 0) {
+                    vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+                } else if (even) {
+                    vmIsTrailingZeros = multipleOfPowerOf5(mv - 1 - mmShift, q);
+                } else if (multipleOfPowerOf5(mv + 2, q)) {
+                    vp--;
+                }
+            }
+        } else {
+            int q = log10Pow5(-e2) - (-e2 > 1 ? 1 : 0);
+            e10 = q + e2;
+            int i = -e2 - q;
+            int k = pow5bits(i) - POW5_BITCOUNT;
+            int j = q - k;
+            vr = mulShift(4 * m2, POW5_LO[i], POW5_HI[i], j);
+            vp = mulShift(4 * m2 + 2, POW5_LO[i], POW5_HI[i], j);
+            vm = mulShift(4 * m2 - 1 - mmShift, POW5_LO[i], POW5_HI[i], j);
+
+            if (q <= 1) {
+                vrIsTrailingZeros = true;
+                if (even) {
+                    vmIsTrailingZeros = mmShift == 1;
+                } else {
+                    vp--;
+                }
+            } else if (q < 63) {
+                vrIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+            }
+        }
+
+        //Remove the digits which are the same in vp and vm
+        int removed = 0;
+        int lastRemovedDigit = 0;
+        long output;
+
+        if (vmIsTrailingZeros || vrIsTrailingZeros) {
+            while (vp / 10 > vm / 10) {
+                vmIsTrailingZeros &= vm % 10 == 0;
+                vrIsTrailingZeros &= lastRemovedDigit == 0;
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+
+            if (vmIsTrailingZeros) {
+                while (vm % 10 == 0) {
+                    vrIsTrailingZeros &= lastRemovedDigit == 0;
+                    lastRemovedDigit = (int) (vr % 10);
+                    vr /= 10;
+                    vp /= 10;
+                    vm /= 10;
+                    removed++;
+                }
+            }
+
+            if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+                //Round to even
+                lastRemovedDigit = 4;
+            }
+
+            boolean up = vr == vm && (!even || !vmIsTrailingZeros) || lastRemovedDigit >= 5;
+            output = vr + (up ? 1 : 0);
+        } else {
+            //The common case, where no trailing zeros have to be tracked
+            boolean roundUp = false;
+            if (vp / 100 > vm / 100) {
+                roundUp = vr % 100 >= 50;
+                vr /= 100;
+                vp /= 100;
+                vm /= 100;
+                removed += 2;
+            }
+
+            while (vp / 10 > vm / 10) {
+                roundUp = vr % 10 >= 5;
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+
+            output = vr + (vr == vm || roundUp ? 1 : 0);
+        }
+
+        digits = output;
+        exponent = e10 + removed;
+    }
+
+    /**
+     * Multiplies a number of at most 55 bits by a 128 bit number, and shifts the product right.
+     */
+    private static long mulShift(long m, long lo, long hi, int shift) {
+        //m is positive, so only the other factor needs the unsigned correction
+        long b0Hi = Math.multiplyHigh(m, lo) + (lo < 0 ? m : 0);
+        long b2Lo = m * hi;
+        long b2Hi = Math.multiplyHigh(m, hi) + (hi < 0 ? m : 0);
+
+        long sumLo = b2Lo + b0Hi;
+        long sumHi = b2Hi + (Long.compareUnsigned(sumLo, b2Lo) < 0 ? 1 : 0);
+
+        int s = shift - 64;
+        return (sumHi << (64 - s)) | (sumLo >>> s);
+    }
+
+    private static int pow5bits(int e) {
+        return (int) (((e * 1217359L) >>> 19) + 1);
+    }
+
+    private static int log10Pow2(int e) {
+        return (int) ((e * 78913L) >>> 18);
+    }
+
+    private static int log10Pow5(int e) {
+        return (int) ((e * 732923L) >>> 20);
+    }
+
+    private static boolean multipleOfPowerOf5(long value, int p) {
+        int count = 0;
+        while (value > 0 && value % 5 == 0) {
+            value /= 5;
+            count++;
+        }
+        return count >= p;
+    }
+}
@@ -47,6 +47,16 @@ public final class Lexer {
      */
     private char current;
 
+    /**
+     * Where each token starts in the input, by the index of the token (see {@link Lexer#start(int)}).
+     */
+    private int[] starts = new int[16];
+
+    /**
+     * The number of tokens made.
+     */
+    private int count;
+
     /**
      * Creates a lexer based on the input.
      * @param input The input string.
@@ -77,6 +87,7 @@ public final class Lexer {
 
         while (notEnded()) {
             try {
+                int start = position;
                 Token<?> token = getToken();
                 advance();
                 if (token == null) {
@@ -84,15 +95,35 @@ public final class Lexer {
                 }
 
                 tokens.add(token);
+                started(start);
             } catch (IllegalCharException e) {
                 return Result.failure(e.toString());
             }
         }
 
         tokens.add(operator(TokenType.EOF));
+        started(length);
         return Result.success(Collections.unmodifiableList(tokens));
     }
 
+    /**
+     * Returns where a token starts in the input. The end of the input is where the last token, which is
+     * {@link TokenType#EOF}, starts.
+     * @param token The index of the token, in the list made by {@link Lexer#lex()}.
+     * @return The index of the first character of the token.
+     */
+    public int start(int token) {
+        Objects.checkIndex(token, count);
+        return starts[token];
+    }
+
+    private void started(int start) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = start;
+    }
+
     /**
      * Tries to convert the current part of the input to a meaningful token.
      * @return The token.
@@ -113,6 +144,8 @@ public final class Lexer {
             case '~' -> operator(TokenType.COMPLEMENT);
             case '(' -> operator(TokenType.LPAREN);
             case ')' -> operator(TokenType.RPAREN);
+            case '[' -> operator(TokenType.LBRACKET);
+            case ']' -> operator(TokenType.RBRACKET);
             case '|' -> operator(TokenType.PIPE);
             case '!' -> operator(TokenType.FACTORIAL);
             case ' ', '\t' -> null;
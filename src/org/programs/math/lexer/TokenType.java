@@ -75,6 +75,16 @@ public enum TokenType {
      */
     RPAREN(")"),
 
+    /**
+     * Left bracket, starts a vector. ( [ )
+     */
+    LBRACKET("["),
+
+    /**
+     * Right bracket, ends a vector. ( ] )
+     */
+    RBRACKET("]"),
+
     /**
      * Pipe operator. Absolute value. (| |)
      */
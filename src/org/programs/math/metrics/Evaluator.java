@@ -0,0 +1,140 @@
+package org.programs.math.metrics;
+
+import org.programs.math.extra.Result;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.programs.math.metrics.Metrics.*;
+
+/**
+ * Reads the metrics of {@link EvaluatorMXBean} from the registry kept in memory. The JMX code is here rather
+ * than in {@link Metrics}, so the management classes are not loaded with it while the calculator starts.
+ */
+final class Evaluator implements EvaluatorMXBean {
+    private final LocalRegistry registry;
+
+    Evaluator(LocalRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers an MBean reading the registry with the platform MBean server, unless one is registered.
+     * @see Metrics#registerMBean()
+     */
+    static Result<ObjectName, String> register(LocalRegistry registry) {
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new Evaluator(registry), name);
+            }
+            return Result.success(name);
+        } catch (JMException e) {
+            return Result.failure("Can't register the MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getEvaluations() {
+        return registry.histogram(EVALUATE).count();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return registry.histogram(EVALUATE).mean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return registry.histogram(EVALUATE).percentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return registry.histogram(EVALUATE).percentile(90) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return registry.histogram(EVALUATE).percentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return registry.histogram(EVALUATE).percentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return registry.histogram(EVALUATE).max() / 1e6;
+    }
+
+    @Override
+    public long getPreparedEvaluations() {
+        return registry.histogram(EVALUATE_PREPARED).count();
+    }
+
+    @Override
+    public double getPreparedMeanMillis() {
+        return registry.histogram(EVALUATE_PREPARED).mean() / 1e6;
+    }
+
+    @Override
+    public double getPreparedP99Millis() {
+        return registry.histogram(EVALUATE_PREPARED).percentile(99) / 1e6;
+    }
+
+    @Override
+    public long getErrors() {
+        return getErrorsByType().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByType() {
+        return registry.counts(ERRORS);
+    }
+
+    @Override
+    public long getSymbols() {
+        return registry.gauge(SYMBOLS);
+    }
+
+    @Override
+    public long getNames() {
+        return registry.gauge(NAMES);
+    }
+
+    @Override
+    public Map<String, Long> getFunctionCalls() {
+        return registry.counts(FUNCTION_CALLS);
+    }
+
+    @Override
+    public double getCompiledHitRatio() {
+        return ratio(registry.count(COMPILED_HITS), registry.count(COMPILED_MISSES));
+    }
+
+    @Override
+    public double getUnparsedBodyRatio() {
+        long deferred = registry.count(BODIES_DEFERRED);
+        return ratio(deferred - registry.count(BODIES_PARSED), registry.count(BODIES_PARSED));
+    }
+
+    @Override
+    public long getLibraryLoads() {
+        return registry.count(LIBRARY_LOADS);
+    }
+
+    @Override
+    public void reset() {
+        registry.reset();
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total <= 0 ? 0 : (double) Math.max(hits, 0) / total;
+    }
+}
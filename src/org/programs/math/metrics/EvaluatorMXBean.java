@@ -0,0 +1,82 @@
+package org.programs.math.metrics;
+
+import java.util.Map;
+
+/**
+ * <p>The metrics of the evaluator, kept since the start or the last {@link EvaluatorMXBean#reset()}. It is
+ *    registered as {@link Metrics#MBEAN_NAME} (see {@link Metrics#registerMBean()}).
+ * <p>The latencies are in milliseconds. The percentiles are known within 1/16 of their value.
+ */
+public interface EvaluatorMXBean {
+    /**
+     * @return The number of inputs evaluated, whether they failed or not.
+     */
+    long getEvaluations();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    /**
+     * @return The number of evaluations of prepared expressions.
+     */
+    long getPreparedEvaluations();
+
+    double getPreparedMeanMillis();
+
+    double getPreparedP99Millis();
+
+    /**
+     * @return The number of failed evaluations, of both kinds.
+     */
+    long getErrors();
+
+    /**
+     * @return The failed evaluations, by the name of the exception, like {@code InvalidSyntaxException}.
+     */
+    Map<String, Long> getErrorsByType();
+
+    /**
+     * @return The number of symbols in the global symbol table.
+     */
+    long getSymbols();
+
+    /**
+     * @return The number of names in the global symbol table, including the ones of libraries which are not
+     *         loaded yet.
+     */
+    long getNames();
+
+    /**
+     * @return The calls of each function made by the interpreter, by its name.
+     */
+    Map<String, Long> getFunctionCalls();
+
+    /**
+     * @return The share of evaluations of prepared statements which ran a compiled program, from 0 to 1.
+     */
+    double getCompiledHitRatio();
+
+    /**
+     * @return The share of deferred function bodies which never had to be parsed, from 0 to 1.
+     */
+    double getUnparsedBodyRatio();
+
+    /**
+     * @return The number of values loaded from libraries, like the built-in functions.
+     */
+    long getLibraryLoads();
+
+    /**
+     * Sets the counters and the latencies back to zero. The gauges are not changed.
+     */
+    void reset();
+}
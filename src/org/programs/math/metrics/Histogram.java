@@ -0,0 +1,103 @@
+package org.programs.math.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A histogram of durations in nanoseconds, which can be recorded into from many threads at once.
+ * <p>The buckets are like the ones of HdrHistogram: the values below {@code 2^BITS} have a bucket each, and
+ *    above that, each power of two is split into {@code 2^(BITS - 1)} buckets. So a value is known within 1/16
+ *    of itself, with a thousand buckets.
+ */
+final class Histogram implements MetricsRegistry.Timer {
+    private static final int BITS = 5;
+    private static final int FULL = 1 << BITS, HALF = FULL >> 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(FULL + (Long.SIZE - BITS) * HALF);
+    private final LongAdder count = new LongAdder(), total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    @Override
+    public void record(long nanos) {
+        long v = Math.max(nanos, 0);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        total.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Returns the duration which the given percentage of the durations are at or below. It is the highest
+     * value of its bucket, but never more than the maximum. The buckets are read one by one while others may
+     * record, so it is approximate for a histogram which is in use.
+     * @param percentile The percentage, from 0 to 100.
+     * @return The duration.
+     */
+    long percentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long n = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    private static int index(long v) {
+        if (v < FULL) {
+            return (int) v;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(v) - (BITS - 1);
+        return FULL + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+    }
+
+    /**
+     * Returns the highest value which falls in a bucket.
+     */
+    private static long highest(int index) {
+        if (index < FULL) {
+            return index;
+        }
+        int shift = (index - FULL) / HALF + 1;
+        long sub = (index - FULL) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
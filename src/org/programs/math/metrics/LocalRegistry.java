@@ -0,0 +1,79 @@
+package org.programs.math.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The registry which keeps the metrics in memory, for {@link EvaluatorMXBean}. It is always registered.
+ */
+final class LocalRegistry implements MetricsRegistry {
+    private final Map<String, Count> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized Counter counter(String name) {
+        Count c = counters.get(name);
+        if (c == null) {
+            c = new Count();
+            counters.put(name, c);
+        }
+        return c;
+    }
+
+    @Override
+    public Timer timer(String name) {
+        return histogram(name);
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    long count(String name) {
+        Count c = counters.get(name);
+        return c == null ? 0 : c.sum();
+    }
+
+    /**
+     * Returns the counters whose names start with the prefix, by the rest of their names.
+     */
+    Map<String, Long> counts(String prefix) {
+        Map<String, Long> found = new TreeMap<>();
+        counters.forEach((name, c) -> {
+            if (name.startsWith(prefix)) {
+                found.put(name.substring(prefix.length()), c.sum());
+            }
+        });
+        return found;
+    }
+
+    synchronized Histogram histogram(String name) {
+        Histogram h = timers.get(name);
+        if (h == null) {
+            h = new Histogram();
+            timers.put(name, h);
+        }
+        return h;
+    }
+
+    long gauge(String name) {
+        LongSupplier g = gauges.get(name);
+        return g == null ? 0 : g.getAsLong();
+    }
+
+    void reset() {
+        counters.values().forEach(LongAdder::reset);
+        timers.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * A counter whose {@code add} and {@code increment} are the ones of {@link LongAdder}.
+     */
+    private static final class Count extends LongAdder implements Counter {
+    }
+}
@@ -0,0 +1,250 @@
+package org.programs.math.metrics;
+
+import org.programs.math.extra.Result;
+
+import javax.management.ObjectName;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>The metrics of the calculator, sent to every {@link MetricsRegistry}: the one kept in memory for
+ *    {@link EvaluatorMXBean}, the ones added with {@link Metrics#register(MetricsRegistry)}, and the ones
+ *    listed as services in {@code META-INF/services}, if the system property {@code calculator.metrics.services}
+ *    is {@code true}. The services are not looked up by default, since searching the class path for them takes
+ *    about a third of the startup.
+ * <p>The calculator asks for each counter and timer once and keeps it, so updating one only goes through the
+ *    registries, without looking up its name. Most of them are asked for while the calculator starts, so this
+ *    package uses no lambdas there, each of which would load a class.
+ * <p>The MBean is registered by {@link Metrics#registerMBean()}, or when the metrics are first used if the
+ *    system property {@code calculator.jmx} is {@code true}. It isn't by default, since loading the
+ *    management classes slows down the startup.
+ */
+public final class Metrics {
+    /**
+     * The timer of {@link org.programs.math.MathEvaluator#evaluate(String)}, and of scripts.
+     */
+    public static final String EVALUATE = "calculator.evaluate";
+
+    /**
+     * The timer of {@link org.programs.math.eval.PreparedExpression#evaluate()}.
+     */
+    public static final String EVALUATE_PREPARED = "calculator.evaluate.prepared";
+
+    /**
+     * The prefix of the counters of errors, followed by the name of the exception, like
+     * {@code calculator.errors.RTException}.
+     */
+    public static final String ERRORS = "calculator.errors.";
+
+    /**
+     * The prefix of the counters of calls of each function, followed by its name. Only the calls made by the
+     * interpreter are counted, the compiled tiers call the native functions directly.
+     */
+    public static final String FUNCTION_CALLS = "calculator.function.calls.";
+
+    /**
+     * The gauge of the number of symbols in the global symbol table.
+     */
+    public static final String SYMBOLS = "calculator.symbols";
+
+    /**
+     * The gauge of the number of names in the global symbol table, including the ones of its libraries which
+     * are not loaded yet.
+     */
+    public static final String NAMES = "calculator.symbols.names";
+
+    /**
+     * The counter of evaluations of prepared statements which ran a compiled program.
+     */
+    public static final String COMPILED_HITS = "calculator.cache.compiled.hits";
+
+    /**
+     * The counter of evaluations of prepared statements which had no compiled program (yet), or whose program
+     * was stale.
+     */
+    public static final String COMPILED_MISSES = "calculator.cache.compiled.misses";
+
+    /**
+     * The counter of functions whose bodies were left to be parsed when they are called.
+     */
+    public static final String BODIES_DEFERRED = "calculator.cache.bodies.deferred";
+
+    /**
+     * The counter of deferred bodies which were parsed.
+     */
+    public static final String BODIES_PARSED = "calculator.cache.bodies.parsed";
+
+    /**
+     * The counter of values loaded from libraries, like the built-in functions, into a symbol table.
+     */
+    public static final String LIBRARY_LOADS = "calculator.cache.library.loads";
+
+    /**
+     * The name the MBean is registered with.
+     */
+    public static final String MBEAN_NAME = "org.programs.math:type=Evaluator";
+
+    static final LocalRegistry local = new LocalRegistry();
+
+    private static final CopyOnWriteArrayList<MetricsRegistry> registries = new CopyOnWriteArrayList<>();
+    private static final Map<String, AllCounters> counters = new ConcurrentHashMap<>();
+    private static final Map<String, AllTimers> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    static {
+        registries.add(local);
+        if (Boolean.getBoolean("calculator.metrics.services")) {
+            try {
+                for (MetricsRegistry r : ServiceLoader.load(MetricsRegistry.class)) {
+                    registries.add(r);
+                }
+            } catch (ServiceConfigurationError e) {
+                //A broken registry must not break the calculator
+                System.err.println("Can't load a metrics registry: " + e.getMessage());
+            }
+        }
+
+        if (Boolean.getBoolean("calculator.jmx")) {
+            Result<ObjectName, String> res = registerMBean();
+            if (res.isError()) {
+                System.err.println(res.error);
+            }
+        }
+    }
+
+    private Metrics() {
+        //private
+    }
+
+    /**
+     * Adds a registry. It gets all the metrics, including the ones which are already used.
+     * @param registry The registry.
+     */
+    public static synchronized void register(MetricsRegistry registry) {
+        registries.add(registry);
+        counters.forEach((name, c) -> c.add(registry.counter(name)));
+        timers.forEach((name, t) -> t.add(registry.timer(name)));
+        gauges.forEach(registry::gauge);
+    }
+
+    /**
+     * Returns a counter which counts into every registry.
+     * @param name The name.
+     * @return The counter.
+     */
+    public static MetricsRegistry.Counter counter(String name) {
+        AllCounters c = counters.get(name);
+        return c != null ? c : create(name);
+    }
+
+    private static synchronized AllCounters create(String name) {
+        AllCounters c = counters.get(name);
+        if (c == null) {
+            c = new AllCounters();
+            for (MetricsRegistry r : registries) {
+                c.add(r.counter(name));
+            }
+            counters.put(name, c);
+        }
+        return c;
+    }
+
+    /**
+     * Returns a timer which records into every registry.
+     * @param name The name.
+     * @return The timer.
+     */
+    public static synchronized MetricsRegistry.Timer timer(String name) {
+        AllTimers t = timers.get(name);
+        if (t == null) {
+            t = new AllTimers();
+            for (MetricsRegistry r : registries) {
+                t.add(r.timer(name));
+            }
+            timers.put(name, t);
+        }
+        return t;
+    }
+
+    /**
+     * Adds a gauge to every registry.
+     * @param name The name.
+     * @param value Reads the value.
+     */
+    public static synchronized void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+        for (MetricsRegistry r : registries) {
+            r.gauge(name, value);
+        }
+    }
+
+    /**
+     * Counts an error.
+     * @param type The name of the exception, like {@code RTException}.
+     */
+    public static void error(String type) {
+        counter(ERRORS + type).increment();
+    }
+
+    /**
+     * Registers the {@link EvaluatorMXBean} with the platform MBean server, as {@link Metrics#MBEAN_NAME}.
+     * Registering it again does nothing.
+     * @return The name, or the error message.
+     */
+    public static synchronized Result<ObjectName, String> registerMBean() {
+        return Evaluator.register(local);
+    }
+
+    /**
+     * Returns the metrics kept in memory, like the MBean shows them, without JMX.
+     * @return The metrics.
+     */
+    public static EvaluatorMXBean snapshot() {
+        return new Evaluator(local);
+    }
+
+    /**
+     * The counters of all the registries for a name.
+     */
+    private static final class AllCounters implements MetricsRegistry.Counter {
+        private volatile MetricsRegistry.Counter[] all = new MetricsRegistry.Counter[0];
+
+        void add(MetricsRegistry.Counter c) {
+            MetricsRegistry.Counter[] a = Arrays.copyOf(all, all.length + 1);
+            a[a.length - 1] = c;
+            all = a;
+        }
+
+        @Override
+        public void add(long n) {
+            for (MetricsRegistry.Counter c : all) {
+                c.add(n);
+            }
+        }
+    }
+
+    /**
+     * The timers of all the registries for a name.
+     */
+    private static final class AllTimers implements MetricsRegistry.Timer {
+        private volatile MetricsRegistry.Timer[] all = new MetricsRegistry.Timer[0];
+
+        void add(MetricsRegistry.Timer t) {
+            MetricsRegistry.Timer[] a = Arrays.copyOf(all, all.length + 1);
+            a[a.length - 1] = t;
+            all = a;
+        }
+
+        @Override
+        public void record(long nanos) {
+            for (MetricsRegistry.Timer t : all) {
+                t.record(nanos);
+            }
+        }
+    }
+}
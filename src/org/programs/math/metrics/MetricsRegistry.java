@@ -0,0 +1,61 @@
+package org.programs.math.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Receives the metrics of the calculator. Implement it to send them to a monitoring system, and either list
+ *    the implementation in {@code META-INF/services/org.programs.math.metrics.MetricsRegistry}, so that it is
+ *    found when the metrics are first used if {@code -Dcalculator.metrics.services=true} is given, or add it
+ *    with {@link Metrics#register(MetricsRegistry)}.
+ * <p>Each metric is asked for once, by its name (see the constants of {@link Metrics}), and the returned
+ *    counter or timer is then updated directly. They are updated from any thread, and often, so they should
+ *    be cheap and thread safe.
+ */
+public interface MetricsRegistry {
+    /**
+     * A count which only goes up.
+     */
+    interface Counter {
+        /**
+         * Adds to the count.
+         * @param n The amount, at least 0.
+         */
+        void add(long n);
+
+        default void increment() {
+            add(1);
+        }
+    }
+
+    /**
+     * A distribution of durations.
+     */
+    interface Timer {
+        /**
+         * Records a duration.
+         * @param nanos The duration in nanoseconds.
+         */
+        void record(long nanos);
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if needed.
+     * @param name The name.
+     * @return The counter.
+     */
+    Counter counter(String name);
+
+    /**
+     * Returns the timer with the given name, creating it if needed.
+     * @param name The name.
+     * @return The timer.
+     */
+    Timer timer(String name);
+
+    /**
+     * Adds a value which is read when it is needed, like the size of something.
+     * @param name The name.
+     * @param value Reads the value. It may be called from any thread.
+     */
+    void gauge(String name, LongSupplier value);
+}
@@ -2,6 +2,7 @@ package org.programs.math.nodes;
 
 import org.programs.math.parser.SymbolTable;
 import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Value;
 
 /**
  * A node which represents assigning values to variables.
@@ -43,6 +44,22 @@ public class AssignmentNode implements Node {
         return num;
     }
 
+    /**
+     * {@inheritDoc}
+     * Evaluates the expression, which may be a vector, and stores this value to the
+     * specified identifier in the global symbol table.
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        SymbolTable.check(idName);
+        Value val = expr.evaluate(st);
+        st.set(idName, val);
+
+        return val;
+    }
+
     public String toString() {
         return idName + " = " + expr;
     }
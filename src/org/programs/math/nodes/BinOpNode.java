@@ -1,8 +1,13 @@
 package org.programs.math.nodes;
 
+import org.programs.math.exceptions.RTException;
 import org.programs.math.types.ComplexNum;
 import org.programs.math.lexer.OpToken;
 import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
 
 /**
  * A Node which represents a binary operation.
@@ -15,6 +20,8 @@ import org.programs.math.parser.SymbolTable;
  * <p><p>{@code //} - Integer Division (Gives the quotient in integer form by truncating the fractional part).
  * <p><p>{@code %} - Modulus (Gives the remainder).
  * <p><p>{@code ^} - Exponentiation.
+ * <p>The operations on vectors are done element by element, see {@link Vector}.
+ * <p>In the exact mode, operations on whole and rational numbers are exact, see {@link Rational}.
  */
 public class BinOpNode implements Node {
     /**
@@ -56,6 +63,99 @@ public class BinOpNode implements Node {
         ComplexNum leftNum = left.visit(st);
         ComplexNum rightNum = right.visit(st);
 
+        return operate(leftNum, rightNum);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns the result after the binary operation, which is a vector if any operand is one.
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        Value leftVal = left.evaluate(st);
+        Value rightVal = right.evaluate(st);
+
+        return operate(leftVal, rightVal);
+    }
+
+    /**
+     * Applies the operator to the already evaluated operands, which may be vectors or matrices.
+     * @param leftVal The left operand.
+     * @param rightVal The right operand.
+     * @return The result.
+     * @throws RuntimeException This should never happen.
+     */
+    protected Value operate(Value leftVal, Value rightVal) {
+        if (leftVal instanceof ComplexNum l && rightVal instanceof ComplexNum r) {
+            return operate(l, r);
+        }
+
+        if (leftVal instanceof Rational || rightVal instanceof Rational) {
+            Value exact = Rational.isExactMode() ? operate(Rational.exact(leftVal), Rational.exact(rightVal)) : null;
+            if (exact != null) {
+                return exact;
+            }
+
+            leftVal = Rational.demote(leftVal);
+            rightVal = Rational.demote(rightVal);
+            if (leftVal instanceof ComplexNum l && rightVal instanceof ComplexNum r) {
+                return operate(l, r);
+            }
+        }
+
+        if (leftVal instanceof Matrix || rightVal instanceof Matrix) {
+            return switch (op.tokenType) {
+                case PLUS -> Matrix.add(leftVal, rightVal);
+                case MINUS -> Matrix.subtract(leftVal, rightVal);
+                case MULTIPLY -> Matrix.multiply(leftVal, rightVal);
+                case DIVIDE -> Matrix.divide(leftVal, rightVal);
+                case INT_DIV -> throw new RTException("Can't use // on matrices.");
+                case POW -> Matrix.pow(leftVal, rightVal);
+                default -> throw new RuntimeException("This should never happen!");
+            };
+        }
+
+        return switch (op.tokenType) {
+            case PLUS -> Vector.add(leftVal, rightVal);
+            case MINUS -> Vector.subtract(leftVal, rightVal);
+            case MULTIPLY -> Vector.multiply(leftVal, rightVal);
+            case DIVIDE -> Vector.divide(leftVal, rightVal);
+            case INT_DIV -> Vector.intDivide(leftVal, rightVal);
+            case POW -> Vector.pow(leftVal, rightVal);
+            default -> throw new RuntimeException("This should never happen!");
+        };
+    }
+
+    /**
+     * Applies the operator to exact operands.
+     * @return The exact result, or {@code null} if an operand is not exact or the result can't be.
+     */
+    private Value operate(Rational l, Rational r) {
+        if (l == null || r == null) {
+            return null;
+        }
+
+        return switch (op.tokenType) {
+            case PLUS -> l.add(r);
+            case MINUS -> l.subtract(r);
+            case MULTIPLY -> l.multiply(r);
+            case DIVIDE -> l.divide(r);
+            case INT_DIV -> l.intDivide(r);
+            case POW -> l.pow(r);
+            default -> throw new RuntimeException("This should never happen!");
+        };
+    }
+
+    /**
+     * Applies the operator to the already evaluated operands.
+     * @param leftNum The left operand.
+     * @param rightNum The right operand.
+     * @return The result.
+     * @throws RuntimeException This should never happen.
+     */
+    protected ComplexNum operate(ComplexNum leftNum, ComplexNum rightNum) {
         return switch (op.tokenType) {
             case PLUS -> leftNum.add(rightNum);
             case MINUS -> leftNum.subtract(rightNum);
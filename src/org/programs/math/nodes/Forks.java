@@ -0,0 +1,66 @@
+package org.programs.math.nodes;
+
+import org.programs.math.eval.EvaluationContext;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Value;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+
+/**
+ * Helper to evaluate some nodes on the {@link java.util.concurrent.ForkJoinPool}, while keeping the same
+ * results and errors as evaluating them one after another.
+ */
+final class Forks {
+
+    private Forks() {
+        //private
+    }
+
+    /**
+     * Evaluates the given nodes. The marked ones are forked, and each of them gets its own copy of the
+     * scope. The others are evaluated on the current thread, in order.
+     * <p>If more than one node fails, the error of the first one (in order) is thrown, just like
+     *    sequential evaluation would.
+     * @param nodes The nodes.
+     * @param fork Which of the nodes should be forked.
+     * @param st The symbol table of this scope.
+     * @param eval How a node is evaluated, {@link Node#visit(SymbolTable)} or {@link Node#evaluate(SymbolTable)}.
+     * @return The evaluated values, in the same order as the nodes.
+     */
+    static Value[] visitAll(Node[] nodes, boolean[] fork, SymbolTable st, BiFunction<Node, SymbolTable, Value> eval) {
+        int n = nodes.length;
+        Value[] values = new Value[n];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ForkJoinTask<Value>[] tasks = new ForkJoinTask[n];
+
+        for (int i = 0; i < n; i++) {
+            if (fork[i]) {
+                Node node = nodes[i];
+                SymbolTable scope = st.copy();
+                tasks[i] = ForkJoinTask.adapt(EvaluationContext.bind(() -> eval.apply(node, scope))).fork();
+            }
+        }
+
+        RuntimeException error = null;
+        for (int i = 0; i < n; i++) {
+            try {
+                if (tasks[i] != null) {
+                    values[i] = tasks[i].join();
+                } else if (error == null) {
+                    values[i] = eval.apply(nodes[i], st);
+                }
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        return values;
+    }
+}
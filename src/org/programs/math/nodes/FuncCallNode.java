@@ -2,10 +2,14 @@ package org.programs.math.nodes;
 
 import org.programs.math.exceptions.InvalidArgsException;
 import org.programs.math.exceptions.NoSuchIdentifierException;
+import org.programs.math.exceptions.RTException;
 import org.programs.math.parser.SymbolTable;
 import org.programs.math.types.ComplexNum;
 import org.programs.math.types.Func;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Rational;
 import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
 
 import java.util.List;
 
@@ -40,9 +44,40 @@ public class FuncCallNode implements Node {
      * @return
      * @throws NoSuchIdentifierException If the function with the name does not exist.
      * @throws InvalidArgsException If the given number of arguments does not match with the function arguments.
+     * @throws RTException If the function gives a vector or a matrix.
      */
     @Override
     public ComplexNum visit(SymbolTable st) {
+        Value v = evaluate(st);
+        if (v instanceof Vector || v instanceof Matrix) {
+            throw new RTException("'" + name + "' gives a " + (v instanceof Vector ? "vector" : "matrix")
+                    + ", but a number is expected here.");
+        }
+
+        return (ComplexNum) Rational.demote(v);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Executes the function with the given arguments, which may be vectors or matrices, and returns the evaluated expression.
+     * @param st The symbol table of this scope.
+     * @return
+     * @throws NoSuchIdentifierException If the function with the name does not exist.
+     * @throws InvalidArgsException If the given number of arguments does not match with the function arguments.
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        return lookup(st).execute(args, st);
+    }
+
+    /**
+     * Finds the function which is being called, and checks the number of arguments.
+     * @param st The symbol table of this scope.
+     * @return The function.
+     * @throws NoSuchIdentifierException If the function with the name does not exist.
+     * @throws InvalidArgsException If the given number of arguments does not match with the function arguments.
+     */
+    protected Func lookup(SymbolTable st) {
         if (!st.contains(name, true)) {
             throw new NoSuchIdentifierException(name, true);
         }
@@ -60,7 +95,7 @@ public class FuncCallNode implements Node {
             throw new InvalidArgsException(fn.max, args.size(), false);
         }
 
-        return fn.execute(args, st);
+        return fn;
     }
 
     public String toString() {
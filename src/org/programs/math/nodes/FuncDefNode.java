@@ -26,6 +26,15 @@ public class FuncDefNode implements Node {
         fn = new Func(name, ps, e);
     }
 
+    /**
+     * Creates a function definition node of a function which is already made, like one whose body is
+     * parsed later.
+     * @param fn The function.
+     */
+    public FuncDefNode(Func fn) {
+        this.fn = fn;
+    }
+
     /**
      * {@inheritDoc}
      * Stores the function in the global symbol table.
@@ -1,9 +1,13 @@
 package org.programs.math.nodes;
 
 import org.programs.math.exceptions.NoSuchIdentifierException;
+import org.programs.math.exceptions.RTException;
 import org.programs.math.parser.SymbolTable;
 import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Rational;
 import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
 
 /**
  * A Node which represents an identifier (or a variable).
@@ -18,7 +22,7 @@ public class IdentifierNode implements Node {
      * Whether the variable should be queried locally or globally.
      * If the variable is not found in local, it fallbacks to global.
      */
-    private final boolean isGlobal;
+    public final boolean isGlobal;
 
     /**
      * Creates an identifier node.
@@ -35,12 +39,31 @@ public class IdentifierNode implements Node {
      * @param st The symbol table of this scope.
      * @return
      * @throws NoSuchIdentifierException If the identifier does not exist.
+     * @throws RTException If the identifier holds a vector or a matrix.
      */
     @Override
     public ComplexNum visit(SymbolTable st) {
+        Value v = evaluate(st);
+        if (v instanceof Vector || v instanceof Matrix) {
+            throw new RTException("'" + idName + "' is a " + (v instanceof Vector ? "vector" : "matrix")
+                    + ", but a number is expected here.");
+        }
+
+        return (ComplexNum) Rational.demote(v);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns the identifier's value from the symbol table, which may be a vector or a matrix.
+     * @param st The symbol table of this scope.
+     * @return
+     * @throws NoSuchIdentifierException If the identifier does not exist.
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
         if (!isGlobal) {
             if (st.contains(idName, false)) {
-                return (ComplexNum) st.get(idName, false);
+                return st.get(idName, false);
             }
         }
 
@@ -48,8 +71,8 @@ public class IdentifierNode implements Node {
 
         Value v = st.get(idName, true);
 
-        if (v instanceof ComplexNum) {
-            return (ComplexNum) v;
+        if (v instanceof ComplexNum || v instanceof Rational || v instanceof Vector || v instanceof Matrix) {
+            return v;
         }
 
         throw new NoSuchIdentifierException(idName, false);
@@ -0,0 +1,69 @@
+package org.programs.math.nodes;
+
+import org.programs.math.exceptions.RTException;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A Node which represents a matrix literal, with rows separated by semicolons, like [1, 2; 3, x]. Vectors in
+ * a row are joined, like in a vector literal.
+ */
+public class MatrixNode implements Node {
+    /**
+     * The rows of elements.
+     */
+    public final List<List<Node>> rows;
+
+    /**
+     * Creates a matrix node.
+     * @param rows The rows of elements.
+     */
+    public MatrixNode(List<List<Node>> rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * {@inheritDoc}
+     * A matrix can't be a number.
+     * @param st The symbol table of this scope.
+     * @return
+     * @throws RTException Always.
+     */
+    @Override
+    public ComplexNum visit(SymbolTable st) {
+        throw new RTException("The matrix " + this + " is used where a number is expected.");
+    }
+
+    /**
+     * {@inheritDoc}
+     * Evaluates the elements, row by row, and returns the matrix.
+     * @param st The symbol table of this scope.
+     * @return
+     * @throws RTException If the rows have different lengths.
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        List<List<Value>> values = new ArrayList<>(rows.size());
+        for (List<Node> row : rows) {
+            List<Value> vs = new ArrayList<>(row.size());
+            for (Node element : row) {
+                vs.add(element.evaluate(st));
+            }
+            values.add(vs);
+        }
+
+        return Matrix.of(values);
+    }
+
+    public String toString() {
+        return rows.stream()
+                .map(row -> row.stream().map(Node::toString).collect(Collectors.joining(", ")))
+                .collect(Collectors.joining("; ", "[", "]"));
+    }
+}
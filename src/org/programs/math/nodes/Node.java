@@ -2,6 +2,7 @@ package org.programs.math.nodes;
 
 import org.programs.math.types.ComplexNum;
 import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Value;
 
 /**
  * <p>A node represents a "leaf" of the AST (Abstract Syntax Tree).
@@ -15,4 +16,15 @@ public interface Node {
      * @return The number evaluated from the nodes.
      */
     ComplexNum visit(SymbolTable st);
+
+    /**
+     * Evaluates the node when its value may be a vector (see {@link org.programs.math.types.Vector}).
+     * <p>{@link Node#visit(SymbolTable)} is the faster path for numbers, and fails on vectors. The nodes which
+     *    can produce vectors override this method, the others are just visited.
+     * @param st The symbol table of this scope.
+     * @return The number or vector evaluated from the nodes.
+     */
+    default Value evaluate(SymbolTable st) {
+        return visit(st);
+    }
 }
@@ -2,6 +2,8 @@ package org.programs.math.nodes;
 
 import org.programs.math.types.ComplexNum;
 import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
 
 /**
  * A Node which holds a number. Yes, nothing else.
@@ -31,6 +33,23 @@ public class NumberNode implements Node {
         return num;
     }
 
+    /**
+     * {@inheritDoc}
+     * In the exact mode, whole numbers are exact (see {@link Rational}).
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        if (Rational.isExactMode()) {
+            Rational q = Rational.exact(num);
+            if (q != null) {
+                return q;
+            }
+        }
+        return num;
+    }
+
     public String toString() {
         return num.toString();
     }
@@ -0,0 +1,60 @@
+package org.programs.math.nodes;
+
+import org.programs.math.lexer.OpToken;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Value;
+
+/**
+ * A binary operation whose operands are both expensive, so the left operand is evaluated on the
+ * {@link java.util.concurrent.ForkJoinPool} while the right one is evaluated on the current thread.
+ * <p>These nodes are not created by the parser, see {@link org.programs.math.eval.ForkPlanner}.
+ */
+public class ParallelBinOpNode extends BinOpNode {
+
+    /**
+     * Creates a parallel binary operation node.
+     * @param l The left node.
+     * @param o The operator token.
+     * @param r The right node.
+     */
+    public ParallelBinOpNode(Node l, OpToken o, Node r) {
+        super(l, o, r);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns the result after the binary operation.
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public ComplexNum visit(SymbolTable st) {
+        Value[] operands = Forks.visitAll(
+                new Node[] {left, right},
+                new boolean[] {true, false},
+                st,
+                Node::visit
+        );
+
+        return operate((ComplexNum) operands[0], (ComplexNum) operands[1]);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns the result after the binary operation, which is a vector if any operand is one.
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        Value[] operands = Forks.visitAll(
+                new Node[] {left, right},
+                new boolean[] {true, false},
+                st,
+                Node::evaluate
+        );
+
+        return operate(operands[0], operands[1]);
+    }
+}
@@ -0,0 +1,44 @@
+package org.programs.math.nodes;
+
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.Func;
+import org.programs.math.types.Value;
+
+import java.util.List;
+
+/**
+ * A function call with more than one expensive argument. The expensive arguments are evaluated on the
+ * {@link java.util.concurrent.ForkJoinPool} before the function is executed.
+ * <p>These nodes are not created by the parser, see {@link org.programs.math.eval.ForkPlanner}.
+ */
+public class ParallelFuncCallNode extends FuncCallNode {
+    /**
+     * Which of the arguments should be forked.
+     */
+    private final boolean[] fork;
+
+    /**
+     * Creates a parallel function call node.
+     * @param name The function name.
+     * @param args The arguments passed to it.
+     * @param fork Which of the arguments should be forked.
+     */
+    public ParallelFuncCallNode(String name, List<Node> args, boolean[] fork) {
+        super(name, args);
+        this.fork = fork;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Evaluates the arguments, then executes the function with their values.
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        Func fn = lookup(st);
+        Value[] values = Forks.visitAll(args.toArray(new Node[0]), fork, st, Node::evaluate);
+
+        return fn.execute(values, st);
+    }
+}
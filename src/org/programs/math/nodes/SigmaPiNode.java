@@ -1,13 +1,17 @@
 package org.programs.math.nodes;
 
+import org.programs.math.eval.Budget;
+import org.programs.math.events.Counters;
 import org.programs.math.exceptions.IdentifierExistsException;
 import org.programs.math.exceptions.RTException;
 import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexAccumulator;
 import org.programs.math.types.ComplexNum;
 import org.programs.math.types.Parameter;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
 
-import static org.programs.math.types.ComplexNum.REAL_UNIT;
-import static org.programs.math.types.ComplexNum.ZERO;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Node which represents summation or product. Eg - sum(x = 1, 10, x)
@@ -45,6 +49,11 @@ public class SigmaPiNode implements Node {
      */
     public final Node evaluationExpr;
 
+    /**
+     * The total number of iterations of this loop, over all its evaluations.
+     */
+    private final AtomicLong iterations = new AtomicLong();
+
     /**
      * Constructs a new node.
      * @param i The initial parameter.
@@ -75,24 +84,151 @@ public class SigmaPiNode implements Node {
 
         ComplexNum initial = init.defaultVal.visit(st);
         ComplexNum upto = this.upto.visit(st);
+        return loop(initial, upto, st);
+    }
 
-        if (!initial.isReal() || !upto.isReal()) {
+    /**
+     * {@inheritDoc}
+     * In the exact mode, the sum or product of whole and rational numbers is exact (see {@link Rational}),
+     * and it goes on in doubles from the first term which is not.
+     * @param st The symbol table of this scope.
+     * @return The sum or product.
+     * @throws RTException If the first and second parameters are non real, or a term is not a number.
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        String name = init.name;
+        if (st.contains(name, false)) {
+            throw new IdentifierExistsException(name, false);
+        }
+
+        Value initial = init.defaultVal.evaluate(st);
+        Value upto = this.upto.evaluate(st);
+
+        Rational from = Rational.exact(initial);
+        if (!Rational.isExactMode() || from == null || !from.isInteger()) {
+            return loop(number(initial), number(upto), st);
+        }
+
+        ComplexNum end = number(upto);
+        if (!end.isReal()) {
             throw new RTException("Sum or product's first two parameters must be real!");
         }
 
-        ComplexNum result = type == Type.SIGMA ? ZERO : REAL_UNIT;
+        Value result = type == Type.SIGMA ? Rational.ZERO : Rational.ONE;
+        ComplexAccumulator approx = null;
+        long count = 0;
+        Budget budget = Budget.current();
+        int ticks = 0;
+
+        try {
+            for (double k = from.toComplexNum().real; k <= end.real; k++) {
+                if (budget != null && ++ticks == Budget.CHUNK) {
+                    budget.charge(ticks);
+                    ticks = 0;
+                }
+                st.set(name, Rational.of((long) k));
+                Value term = evaluationExpr.evaluate(st);
+                count++;
+
+                Rational q = Rational.exact(term);
+                if (approx == null && result instanceof Rational r && q != null) {
+                    result = type == Type.SIGMA ? r.add(q) : r.multiply(q);
+                    continue;
+                }
+
+                if (approx == null) {
+                    approx = new ComplexAccumulator().set(number(result));
+                }
+                if (type == Type.SIGMA) {
+                    approx.addTo(number(term));
+                } else {
+                    approx.mulTo(number(term));
+                }
+            }
+
+            if (ticks > 0) {
+                budget.charge(ticks);
+            }
+        } finally {
+            st.remove(name);
+            iterations.addAndGet(count);
+            Counters.iterations(count);
+        }
+
+        return approx == null ? result : approx.toComplexNum();
+    }
+
+    /**
+     * Returns a value as a double, for the loops which are not exact.
+     */
+    private ComplexNum number(Value v) {
+        if (v instanceof Rational q) {
+            return q.toComplexNum();
+        }
+        if (!(v instanceof ComplexNum z)) {
+            throw new RTException("The parameters and terms of " + type + " must be numbers.");
+        }
+        return z;
+    }
 
-        while (initial.real <= upto.real) {
-            st.set(name, initial);
-            ComplexNum evaluated = evaluationExpr.visit(st);
-            result = type == Type.SIGMA ? result.add(evaluated) : result.multiply(evaluated);
+    /**
+     * Sums or multiplies the terms, in doubles.
+     */
+    private ComplexNum loop(ComplexNum initial, ComplexNum upto, SymbolTable st) {
+        String name = init.name;
+        if (!initial.isReal() || !upto.isReal()) {
+            throw new RTException("Sum or product's first two parameters must be real!");
+        }
 
-            initial = initial.add(REAL_UNIT);
+        //Accumulated in place, so the loop doesn't create a new number for every partial result
+        ComplexAccumulator result = type == Type.SIGMA ? new ComplexAccumulator(0, 0) : new ComplexAccumulator(1, 0);
+        long count = 0;
+        //The iterations are charged to the budget in chunks, like in compiled programs, so the forks of a loop
+        //don't share a counter on every iteration
+        Budget budget = Budget.current();
+        int ticks = 0;
+
+        //The variable is counted in a double, and only made a number to be stored in the symbol table
+        double k = initial.real, end = upto.real;
+
+        try {
+            while (k <= end) {
+                if (budget != null && ++ticks == Budget.CHUNK) {
+                    budget.charge(ticks);
+                    ticks = 0;
+                }
+                st.set(name, count == 0 ? initial : new ComplexNum(k, 0));
+                ComplexNum evaluated = evaluationExpr.visit(st);
+                if (type == Type.SIGMA) {
+                    result.addTo(evaluated);
+                } else {
+                    result.mulTo(evaluated);
+                }
+
+                k++;
+                count++;
+            }
+
+            if (ticks > 0) {
+                budget.charge(ticks);
+            }
+        } finally {
+            //The variable must not outlive the loop, even if the expression fails
+            st.remove(name);
+            iterations.addAndGet(count);
+            Counters.iterations(count);
         }
 
-        st.remove(name);
+        return result.toComplexNum();
+    }
 
-        return result;
+    /**
+     * Returns the total number of iterations of this loop, over all its evaluations so far.
+     * @return The iteration count.
+     */
+    public long iterations() {
+        return iterations.get();
     }
 
     public String toString() {
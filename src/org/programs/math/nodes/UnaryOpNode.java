@@ -1,8 +1,13 @@
 package org.programs.math.nodes;
 
+import org.programs.math.exceptions.RTException;
 import org.programs.math.lexer.OpToken;
 import org.programs.math.parser.SymbolTable;
 import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
 
 /**
  * A Node which represents unary operations.
@@ -13,6 +18,9 @@ import org.programs.math.types.ComplexNum;
  * <p><p>{@code |number|} - Gives the absolute value of a number.
  * <p><p>{@code !} - Gives the factorial of a number.
  * <p><p>{@code ~} - Gives the conjugate of a number.
+ * <p>The operations on vectors are done element by element, see {@link Vector}.
+ * <p>On matrices, {@code -} negates the elements and {@code ~} gives the conjugate transpose, see
+ *    {@link Matrix}.
  */
 public class UnaryOpNode implements Node {
     /**
@@ -43,7 +51,53 @@ public class UnaryOpNode implements Node {
      */
     @Override
     public ComplexNum visit(SymbolTable st) {
-        ComplexNum num = node.visit(st);
+        return operate(node.visit(st));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns the result after the unary operation, which is a vector or a matrix if the operand is one.
+     * @param st The symbol table of this scope.
+     * @return
+     * @throws RTException If the operation can't be used on a matrix.
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        Value val = node.evaluate(st);
+        if (val instanceof Rational q) {
+            if (Rational.isExactMode()) {
+                return switch (op.tokenType) {
+                    case MINUS -> q.negate();
+                    case PIPE -> q.abs();
+                    case FACTORIAL -> q.factorial();
+                    default -> q;
+                };
+            }
+            val = q.toComplexNum();
+        }
+        if (val instanceof Matrix m) {
+            return switch (op.tokenType) {
+                case MINUS -> m.negate();
+                case COMPLEMENT -> m.conjugateTranspose();
+                case PIPE -> throw new RTException("Can't use |x| on a matrix, use det.");
+                case FACTORIAL -> throw new RTException("Can't use ! on a matrix.");
+                default -> m;
+            };
+        }
+        if (!(val instanceof Vector vec)) {
+            return operate((ComplexNum) val);
+        }
+
+        return switch (op.tokenType) {
+            case MINUS -> vec.negate();
+            case PIPE -> vec.modulus();
+            case FACTORIAL -> vec.factorial();
+            case COMPLEMENT -> vec.conjugate();
+            default -> vec;
+        };
+    }
+
+    private ComplexNum operate(ComplexNum num) {
         return switch (op.tokenType) {
             case MINUS -> num.negate();
             case PIPE -> new ComplexNum(num.modulus(), 0);
@@ -0,0 +1,64 @@
+package org.programs.math.nodes;
+
+import org.programs.math.exceptions.RTException;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Node which represents a vector literal, like [1, 2, x + 1]. Vector elements are joined, so [[1, 2], 3]
+ * is [1, 2, 3].
+ */
+public class VectorNode implements Node {
+    /**
+     * The elements.
+     */
+    public final List<Node> elements;
+
+    /**
+     * Creates a vector node.
+     * @param elements The elements.
+     */
+    public VectorNode(List<Node> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * {@inheritDoc}
+     * A vector can't be a number.
+     * @param st The symbol table of this scope.
+     * @return
+     * @throws RTException Always.
+     */
+    @Override
+    public ComplexNum visit(SymbolTable st) {
+        throw new RTException("The vector " + this + " is used where a number is expected.");
+    }
+
+    /**
+     * {@inheritDoc}
+     * Evaluates the elements, in order, and returns the vector.
+     * @param st The symbol table of this scope.
+     * @return
+     */
+    @Override
+    public Value evaluate(SymbolTable st) {
+        List<Value> values = new ArrayList<>(elements.size());
+        for (Node element : elements) {
+            values.add(element.evaluate(st));
+        }
+
+        return Vector.of(values);
+    }
+
+    public String toString() {
+        return elements.stream()
+                .map(Node::toString)
+                .toList()
+                .toString();
+    }
+}
@@ -6,17 +6,21 @@ import org.programs.math.exceptions.InvalidSyntaxException;
 import org.programs.math.exceptions.ReqAfterOptionalException;
 import org.programs.math.extra.Result;
 import org.programs.math.lexer.IdentifierToken;
+import org.programs.math.lexer.Lexer;
 import org.programs.math.lexer.OpToken;
 import org.programs.math.lexer.Token;
 import org.programs.math.lexer.TokenType;
 import org.programs.math.nodes.*;
 import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
 import org.programs.math.types.Parameter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.function.Supplier;
 
 /**
@@ -29,6 +33,10 @@ import java.util.function.Supplier;
  *
  * <p>The tokens are parsed and an AST is returned (Abstract Syntax Tree). To read more about AST, check
  * out {@link Node} class.
+ *
+ * <p>In the lazy mode, only the signatures of the functions are parsed. The text of each body is kept, and
+ * lexed and parsed when the function is first called (see {@link Func#body()}), so a script which defines
+ * many functions but calls a few is parsed quickly, and the functions which are not called stay small.
  */
 public final class Parser {
     //The implicit multiplication triggers.
@@ -65,13 +73,42 @@ public final class Parser {
      */
     private final HashSet<String> varNames;
 
+    /**
+     * The lexer which made the tokens, if the bodies of the functions are parsed when they are first
+     * called. Otherwise, this is {@code null}.
+     */
+    private final Lexer source;
+
+    /**
+     * The global variables which the body of a function can call like functions, as they were when it was
+     * defined. This is {@code null}, unless a body is parsed later, and then it is used instead of
+     * {@link SymbolTable#globalIdentifiers}, so the body is parsed the same way at any time.
+     */
+    private final Set<String> globals;
+
     /**
      * Constructs the parser.
      * @param ts List of tokens.
      */
     public Parser(List<Token<?>> ts) {
+        this(ts, null, null);
+    }
+
+    /**
+     * Constructs the parser in the lazy mode, where the bodies of the functions are parsed when they are
+     * first called.
+     * @param ts List of tokens.
+     * @param source The lexer which made the tokens, whose text is kept for the bodies.
+     */
+    public Parser(List<Token<?>> ts, Lexer source) {
+        this(ts, Objects.requireNonNull(source), null);
+    }
+
+    private Parser(List<Token<?>> ts, Lexer source, Set<String> globals) {
         tokens = ts;
         varNames = new HashSet<>();
+        this.source = source;
+        this.globals = globals;
         position = -1;
         advance();
     }
@@ -110,6 +147,7 @@ public final class Parser {
      * <p>- An expression within parenthesis
      * <p>- An expression within pipe (absolute value {@code |x|})
      * <p>- An identifier or a function call.
+     * <p>- A vector, like {@code [1, 2, x]}
      * @return A node.
      */
     private Node atom() {
@@ -142,10 +180,11 @@ public final class Parser {
                 advance();
                 yield new UnaryOpNode(op, expr);
             }
+            case LBRACKET -> vector();
             case IDENTIFIER -> varOrFnCall();
             case KEYWORD -> exprKeywords();
             default -> throw new InvalidSyntaxException(
-                    "Unexpected end of input. Expected '+', '-', '(', '|', a number or a function call. Found: " + current.tokenType
+                    "Unexpected end of input. Expected '+', '-', '(', '|', '[', a number or a function call. Found: " + current.tokenType
             );
         };
     }
@@ -286,9 +325,7 @@ public final class Parser {
             exprs.add(node);
 
             if (!peek(TokenType.EXPRESSION_END) && !peek(TokenType.EOF)) {
-                throw new InvalidSyntaxException(
-                        "Unexpected end of input. Expected '+', '-', '*', '/', '//' or '^'. Found: " + current.tokenType
-                );
+                throw unexpected();
             }
 
             if (peek(TokenType.EOF)) {
@@ -358,7 +395,8 @@ public final class Parser {
         boolean isGlobal = !varNames.contains(idName);
         advance();
 
-        if (SymbolTable.hasVar(idName, varNames)) {
+        if (globals == null ? SymbolTable.hasVar(idName, varNames)
+                            : globals.contains(idName) || varNames.contains(idName)) {
             //This is an identifier
             return new IdentifierNode(idName, isGlobal);
         }
@@ -369,14 +407,60 @@ public final class Parser {
         if (!peek(TokenType.LPAREN)) {
             return new IdentifierNode(idName, isGlobal);
         }
+        return call(idName);
+    }
+
+    /**
+     * Parses the arguments of a function call, starting at the left parenthesis.
+     * @param idName The name of the function.
+     * @return The resulting node.
+     * @throws InvalidSyntaxException If the syntax is invalid.
+     */
+    private Node call(String idName) {
         advance();
+        return new FuncCallNode(idName, list(')', TokenType.RPAREN));
+    }
+
+    /**
+     * Parses a vector, like {@code [1, 2, x + 1]}, or a matrix, whose rows are separated by semicolons,
+     * like {@code [1, 2; 3, 4]}.
+     * @return The resulting node.
+     * @throws InvalidSyntaxException If the syntax is invalid.
+     */
+    private Node vector() {
+        advance();
+        List<Node> row = list(']', TokenType.RBRACKET, TokenType.EXPRESSION_END);
+        if (!peekBack(TokenType.EXPRESSION_END)) {
+            return new VectorNode(row);
+        }
+
+        List<List<Node>> rows = new ArrayList<>();
+        rows.add(row);
+        while (peekBack(TokenType.EXPRESSION_END)) {
+            rows.add(list(']', TokenType.RBRACKET, TokenType.EXPRESSION_END));
+        }
+
+        if (rows.stream().anyMatch(List::isEmpty)) {
+            throw new InvalidSyntaxException("A matrix can't have an empty row.");
+        }
+
+        return new MatrixNode(rows);
+    }
 
+    /**
+     * Parses a list of expressions separated by commas, and the token which ends it.
+     * @param endChar The character of the main token which ends the list.
+     * @param ends The token types which end the list.
+     * @return The expressions.
+     * @throws InvalidSyntaxException If the syntax is invalid.
+     */
+    private List<Node> list(char endChar, TokenType... ends) {
         List<Node> exprs = new ArrayList<>();
-        while (!peek(TokenType.RPAREN) && !peek(TokenType.EOF)) {
+        while (!peek(ends) && !peek(TokenType.EOF)) {
             Node expr = plusMinus();
             exprs.add(expr);
 
-            if (peek(TokenType.RPAREN) || peek(TokenType.EOF)) continue;
+            if (peek(ends) || peek(TokenType.EOF)) continue;
 
             if (!peek(TokenType.COMMA)) {
                 invalid(',', false);
@@ -386,7 +470,7 @@ public final class Parser {
         }
 
         if (peek(TokenType.EOF)) {
-            invalid(')');
+            invalid(endChar);
         }
 
         if (peekBack(TokenType.COMMA)) {
@@ -396,7 +480,7 @@ public final class Parser {
         }
 
         advance();
-        return new FuncCallNode(idName, exprs);
+        return exprs;
     }
 
     /**
@@ -415,7 +499,8 @@ public final class Parser {
     private Node funcDef() {
         //fn x(a, b, ..., n=expr) ((native) | (-> expr))
         advance(); //fn
-        if (!peek(TokenType.IDENTIFIER)) {
+        //sum and product are also the names of the functions which reduce vectors
+        if (!peek(TokenType.IDENTIFIER) && !matchKeyword("sum", "product")) {
             throw new InvalidSyntaxException(
                     "Identifier name expected. Found: " + current
             );
@@ -495,6 +580,11 @@ public final class Parser {
                 throw new InvalidSyntaxException("Expected '='. Found: " + current.tokenType);
 
             advance();
+            Func fn = source != null ? skipBody(id.value, parameters) : null;
+            if (fn != null) {
+                cleanUp();
+                return new FuncDefNode(fn);
+            }
             bodyExpr = plusMinus();
         }
 
@@ -503,15 +593,94 @@ public final class Parser {
         return new FuncDefNode(id.value, parameters, bodyExpr);
     }
 
+    /**
+     * Skips the body of a function, which ends at the end of the statement, and keeps its text to be
+     * parsed when it is first needed.
+     * <p>A body which doesn't end properly, like one with an unclosed bracket, is parsed now instead, so
+     *    that its error is reported now, and the statements after it are not mistaken for a part of it.
+     * @param name The name of the function.
+     * @param parameters The parameters of the function.
+     * @return The function, or {@code null} if the body has to be parsed now.
+     */
+    private Func skipBody(String name, List<Parameter> parameters) {
+        int from = position, end = position, depth = 0;
+        Set<String> called = new HashSet<>();
+        for (; ; end++) {
+            TokenType tt = tokens.get(end).tokenType;
+            if (tt == TokenType.EOF || depth == 0 && tt == TokenType.EXPRESSION_END) {
+                break;
+            }
+
+            if (tt == TokenType.LPAREN || tt == TokenType.LBRACKET) {
+                depth++;
+            } else if (tt == TokenType.RPAREN || tt == TokenType.RBRACKET) {
+                if (--depth < 0) {
+                    break;
+                }
+            } else if (tt == TokenType.IDENTIFIER && tokens.get(end + 1).tokenType == TokenType.LPAREN) {
+                String id = (String) tokens.get(end).value;
+                if (!varNames.contains(id) && SymbolTable.globalIdentifiers.contains(id)) {
+                    called.add(id);
+                }
+            }
+        }
+
+        if (end == from || depth != 0) {
+            return null;
+        }
+
+        String text = source.text.substring(source.start(from), source.start(end));
+        Token<?> last = tokens.get(end);
+        Set<String> params = Set.copyOf(varNames), globals = Set.copyOf(called);
+        position = end - 1;
+        advance();
+
+        return Func.lazy(name, parameters, () -> {
+            //The text was already lexed once, so this doesn't fail
+            List<Token<?>> body = new ArrayList<>(new Lexer(text).lex().result);
+            //The token which ended the body comes before the EOF, so the errors name it like an eager parse
+            body.add(body.size() - 1, last);
+            return new Parser(body, null, globals).body(name, params);
+        });
+    }
+
+    /**
+     * Parses the body of a function, which is all the tokens but the last two: the token which ended the
+     * body, and the EOF.
+     * @param name The name of the function.
+     * @param params The names of its parameters.
+     * @return A node.
+     */
+    private Node body(String name, Set<String> params) {
+        fnName = name;
+        varNames.addAll(params);
+
+        Node expr = plusMinus();
+        if (position != tokens.size() - 2) {
+            throw unexpected();
+        }
+        return expr;
+    }
+
     /**
      * Parses some predefined keywords as expressions.
      * @return A node.
      */
     private Node exprKeywords() {
-        if (matchKeyword("sum", "\u03A3", "\u03A0", "product")) {
+        if (matchKeyword("\u03A3", "\u03A0") || matchKeyword("sum", "product") && isLoop()) {
             return parseSigmaOrPi();
         }
 
+        if (matchKeyword("sum", "product")) {
+            //sum(v) or product(v) of a vector
+            String name = (String) current.value;
+            advance();
+            if (!peek(TokenType.LPAREN)) {
+                invalid('(', false);
+            }
+            return call(name);
+        }
+
         if (matchKeyword("pi", "\u03C0")) {
             advance();
             return new NumberNode(ComplexNum.PI);
@@ -530,6 +699,19 @@ public final class Parser {
         throw new InvalidSyntaxException("Unexpected keyword: " + current);
     }
 
+    /**
+     * Checks if the current keyword starts a summation or product, like {@code sum(k = 1, ...)}, rather than
+     * a call like {@code sum(v)}.
+     * @return {@code true} if it is a summation or product.
+     */
+    private boolean isLoop() {
+        if (position + 3 >= tokens.size()) return false;
+
+        return tokens.get(position + 1).tokenType == TokenType.LPAREN
+                && tokens.get(position + 2).tokenType == TokenType.IDENTIFIER
+                && tokens.get(position + 3).tokenType == TokenType.EQUAL;
+    }
+
     /**
      * Parses the summation or product.
      * @return A node.
@@ -601,6 +783,16 @@ public final class Parser {
         return new SigmaPiNode(init, upto, rExpr, type);
     }
 
+    /**
+     * Creates the error for a statement which goes on after a complete expression.
+     * @return The error.
+     */
+    private InvalidSyntaxException unexpected() {
+        return new InvalidSyntaxException(
+                "Unexpected end of input. Expected '+', '-', '*', '/', '//' or '^'. Found: " + current.tokenType
+        );
+    }
+
     /**
      * Throws a {@link InvalidSyntaxException} for unexpected end of input.
      * @param expected The character expected, but was not found.
@@ -657,6 +849,18 @@ public final class Parser {
         return current.tokenType == tt;
     }
 
+    /**
+     * Checks if the current token is equal to any of the given ones.
+     * @param tts The token types.
+     * @return {@code true} If the condition satisfies.
+     */
+    private boolean peek(TokenType... tts) {
+        for (TokenType tt : tts) {
+            if (current.tokenType == tt) return true;
+        }
+        return false;
+    }
+
     /**
      * Checks if the next token is equal to the given one.
      * @param tt The token type.
@@ -1,12 +1,23 @@
 package org.programs.math.parser;
 
 import org.programs.math.exceptions.RTException;
+import org.programs.math.io.Library;
+import org.programs.math.metrics.Metrics;
+import org.programs.math.metrics.MetricsRegistry;
 import org.programs.math.types.ComplexNum;
 import org.programs.math.types.Func;
 import org.programs.math.types.Value;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
 /**
  * The symbol table is used to store all the identifier names, mapped by their values with which they are holding.
@@ -16,6 +27,18 @@ public final class SymbolTable {
     public static final HashSet<String> globalIdentifiers;
     private static final HashSet<String> builtIns;
 
+    /**
+     * The built-ins which users may define themselves, since their names were free before they were added.
+     * A definition replaces the built-in instead of failing.
+     */
+    private static final Set<String> replaceable = Set.of("range", "sum", "product", "min", "max", "len",
+            "eye", "transpose", "det", "inv", "solve", "gamma", "lgamma");
+
+    /**
+     * The replaceable built-ins which were defined by users.
+     */
+    private static final Set<String> replaced = ConcurrentHashMap.newKeySet();
+
     static {
         globalIdentifiers = new HashSet<>();
         builtIns = new HashSet<>();
@@ -23,19 +46,31 @@ public final class SymbolTable {
 
     private static SymbolTable global;
 
+    private static final MetricsRegistry.Counter LIBRARY_LOADS = Metrics.counter(Metrics.LIBRARY_LOADS);
+
     /**
      * The symbols this scope has, mapped by their values.
+     * <p>The global scope can be read and written by statements which are evaluated at the same time,
+     *    so it is backed by a concurrent map. Function scopes are never shared between threads.
+     */
+    private final Map<String, Value> symbols;
+
+    /**
+     * The libraries where the symbols which are not in this scope are looked up, the newest first.
+     * A symbol found in one is created on its first lookup, and then kept in this scope
+     * (see {@link SymbolTable#attach(Library, UnaryOperator)}).
      */
-    private final HashMap<String, Value> symbols;
+    private final List<Attached> libraries = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a symbol table.
      */
     public SymbolTable() {
-        symbols = new HashMap<>();
-
         if (global == null) {
+            symbols = new ConcurrentHashMap<>();
             global = this;
+        } else {
+            symbols = new HashMap<>();
         }
     }
 
@@ -55,7 +90,46 @@ public final class SymbolTable {
      * @param st The symbol table, which is a global.
      */
     public static void saveBuiltIns(SymbolTable st) {
-        builtIns.addAll(st.symbols.keySet());
+        builtIns.addAll(st.names());
+    }
+
+    /**
+     * Returns the built-in functions and variables.
+     * @return The identifiers.
+     */
+    public static Set<String> builtIns() {
+        return Collections.unmodifiableSet(builtIns);
+    }
+
+    /**
+     * Checks if an identifier is a built-in function or variable, which was not replaced by the user.
+     * @param id The identifier name.
+     * @return {@code true} if it is built in.
+     */
+    public static boolean isBuiltIn(String id) {
+        return builtIns.contains(id) && !replaced.contains(id);
+    }
+
+    /**
+     * Checks if an identifier is a built-in function or variable which users can't define.
+     * @param id The identifier name.
+     * @return {@code true} if it is reserved.
+     */
+    public static boolean isReserved(String id) {
+        return builtIns.contains(id) && !replaceable.contains(id);
+    }
+
+    /**
+     * Returns the identifiers of this symbol table, including the ones of its libraries which are not
+     * created yet.
+     * @return A copy of the identifiers.
+     */
+    public Set<String> names() {
+        Set<String> names = new HashSet<>(symbols.keySet());
+        for (Attached a : libraries) {
+            names.addAll(a.library.names());
+        }
+        return names;
     }
 
     /**
@@ -64,11 +138,37 @@ public final class SymbolTable {
      * @return The value if present, or {@code null}.
      */
     public Value get(String id, boolean isGlobal) {
-        if (isGlobal) {
-            return global.symbols.get(id);
-        } else {
-            return symbols.get(id);
+        SymbolTable st = isGlobal ? global : this;
+        Value v = st.symbols.get(id);
+        if (v == null && !st.libraries.isEmpty()) {
+            v = st.load(id);
+        }
+        return v;
+    }
+
+    /**
+     * Creates a symbol from the newest library which has it.
+     * <p>If another thread creates or sets it at the same time, its value is kept.
+     */
+    private Value load(String id) {
+        for (Attached a : libraries) {
+            Value v = a.library.load(id);
+            if (v != null) {
+                LIBRARY_LOADS.increment();
+                Value old = symbols.putIfAbsent(id, a.bind.apply(v));
+                return old == null ? symbols.get(id) : old;
+            }
         }
+        return null;
+    }
+
+    /**
+     * Returns the number of symbols in this symbol table, without the ones of its libraries which are not
+     * created yet.
+     * @return The number of symbols.
+     */
+    public int size() {
+        return symbols.size();
     }
 
     /**
@@ -80,29 +180,86 @@ public final class SymbolTable {
         symbols.put(id, x);
     }
 
+    /**
+     * Adds a library to look up the identifiers which are not in this symbol table. Its values are
+     * created when they are first looked up, so attaching a library takes the same time for any size.
+     * <p>The library replaces the identifiers with the same names: the ones in this symbol table are
+     *    removed, and the libraries attached before are looked up after it.
+     * @param library The library.
+     * @param bind Applied to each value created from the library, before it is stored.
+     */
+    public void attach(Library library, UnaryOperator<Value> bind) {
+        for (String id : new ArrayList<>(symbols.keySet())) {
+            if (library.contains(id)) {
+                symbols.remove(id);
+            }
+        }
+        if (this == global) {
+            globalIdentifiers.removeIf(id -> library.contains(id) && !library.isVariable(id));
+            globalIdentifiers.addAll(library.variables());
+        }
+        libraries.add(0, new Attached(library, bind));
+    }
+
     /**
      * Checks if this identifier exists in the symbol table.
      * @param id The identifier name.
      * @return {@code true} if exists, {@code false} otherwise.
      */
     public boolean contains(String id, boolean isGlobal) {
-        return isGlobal && global.symbols.containsKey(id) || symbols.containsKey(id);
+        return isGlobal && global.has(id) || has(id);
+    }
+
+    private boolean has(String id) {
+        if (symbols.containsKey(id)) {
+            return true;
+        }
+        for (Attached a : libraries) {
+            if (a.library.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a new scope holding the same symbols as this one.
+     * <p>This is used when a part of an expression is evaluated on another thread, so that loop
+     *    variables stored by it don't clash with the ones of this scope.
+     * @return The copy.
+     */
+    public SymbolTable copy() {
+        SymbolTable st = new SymbolTable();
+        st.symbols.putAll(symbols);
+        st.libraries.addAll(libraries);
+        return st;
     }
 
     /**
-     * Removes the identifier from the symbol table.
+     * Removes the identifier from the symbol table. If one of its libraries has it, it is looked up
+     * there again.
      * @param id The identifier name.
      */
     public void remove(String id) {
         symbols.remove(id);
     }
 
+    /**
+     * Checks if an identifier can be defined by the user. Defining a replaceable built-in replaces it.
+     * @param x The identifier name.
+     * @throws RTException If it is a reserved built-in.
+     */
     public static void check(String x) {
         if (!builtIns.contains(x)) {
             return;
         }
 
-        Value v = global.symbols.get(x);
+        if (replaceable.contains(x)) {
+            replaced.add(x);
+            return;
+        }
+
+        Value v = global.get(x, true);
         if (v instanceof Func) {
             SymbolTable.globalIdentifiers.remove(x);
         }
@@ -117,4 +274,7 @@ public final class SymbolTable {
     public String toString() {
         return symbols.toString();
     }
+
+    private record Attached(Library library, UnaryOperator<Value> bind) {
+    }
 }
@@ -0,0 +1,232 @@
+package org.programs.math.types;
+
+import org.programs.math.exceptions.RTException;
+
+/**
+ * <p>A mutable complex number, used to accumulate results without creating a new {@link ComplexNum} for
+ *    every operation. Each operation changes this number in place and returns it, so they can be chained:
+ * <blockquote><pre>
+ *     acc.set(z).mulTo(w).addTo(1, 0)
+ * </pre></blockquote>
+ * <p>The operations give exactly the same results as the ones of {@link ComplexNum}, which use them too.
+ * <p>An accumulator is not thread safe, each thread should use its own.
+ */
+public final class ComplexAccumulator {
+    /**
+     * The real part of the number.
+     */
+    public double real;
+
+    /**
+     * The imaginary part of the number.
+     */
+    public double imaginary;
+
+    /**
+     * Constructs an accumulator holding zero.
+     */
+    public ComplexAccumulator() {
+        this(0, 0);
+    }
+
+    /**
+     * Constructs an accumulator.
+     * @param r The real part.
+     * @param i The imaginary part.
+     */
+    public ComplexAccumulator(double r, double i) {
+        real = r;
+        imaginary = i;
+    }
+
+    /**
+     * Sets the value of this number.
+     * @param r The real part.
+     * @param i The imaginary part.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator set(double r, double i) {
+        real = r;
+        imaginary = i;
+        return this;
+    }
+
+    /**
+     * Sets the value of this number.
+     * @param z The value.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator set(ComplexNum z) {
+        return set(z.real, z.imaginary);
+    }
+
+    /**
+     * Adds a number to this one.
+     * @param r The real part of the other number.
+     * @param i The imaginary part of the other number.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator addTo(double r, double i) {
+        real += r;
+        imaginary += i;
+        return this;
+    }
+
+    /**
+     * Adds a number to this one.
+     * @param z The other number.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator addTo(ComplexNum z) {
+        return addTo(z.real, z.imaginary);
+    }
+
+    /**
+     * Subtracts a number from this one.
+     * @param r The real part of the other number.
+     * @param i The imaginary part of the other number.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator subTo(double r, double i) {
+        real -= r;
+        imaginary -= i;
+        return this;
+    }
+
+    /**
+     * Multiplies this number by another one.
+     * <p>(a + bi)(c + di) = (ac - bd) + (ad + bc)i
+     * @param c The real part of the other number.
+     * @param d The imaginary part of the other number.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator mulTo(double c, double d) {
+        double a = real, b = imaginary;
+        real = a * c - b * d;
+        imaginary = a * d + b * c;
+        return this;
+    }
+
+    /**
+     * Multiplies this number by another one.
+     * @param z The other number.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator mulTo(ComplexNum z) {
+        return mulTo(z.real, z.imaginary);
+    }
+
+    /**
+     * Divides this number by another one, using Smith's algorithm. It avoids the overflow and underflow of
+     * computing {@code c^2 + d^2} by scaling with the ratio of the smaller part to the larger one.
+     * <p>If |c| >= |d|: r = d / c, (a + bi) / (c + di) = {(a + br) + (b - ar)i} / (c + dr)
+     * <p>Otherwise: r = c / d, (a + bi) / (c + di) = {(ar + b) + (br - a)i} / (cr + d)
+     * @param c The real part of the divisor.
+     * @param d The imaginary part of the divisor.
+     * @return This accumulator.
+     * @throws RTException If the divisor is zero.
+     */
+    public ComplexAccumulator divTo(double c, double d) {
+        if (c == 0 && d == 0) {
+            throw new RTException("Division by 0!");
+        }
+
+        double a = real, b = imaginary;
+
+        if (d == 0) {
+            real = a / c;
+            imaginary = b / c;
+        } else if (Math.abs(c) >= Math.abs(d)) {
+            double r = d / c, den = c + d * r;
+            real = (a + b * r) / den;
+            imaginary = (b - a * r) / den;
+        } else {
+            double r = c / d, den = c * r + d;
+            real = (a * r + b) / den;
+            imaginary = (b * r - a) / den;
+        }
+
+        return this;
+    }
+
+    /**
+     * Divides this number by another one.
+     * @param z The divisor.
+     * @return This accumulator.
+     * @see ComplexAccumulator#divTo(double, double)
+     */
+    public ComplexAccumulator divTo(ComplexNum z) {
+        return divTo(z.real, z.imaginary);
+    }
+
+    /**
+     * Raises this number to the given power.
+     * <p>a^x = e^(x ln a), and e^(x + iy) = e^x * (cos y + i sin y)
+     * @param c The real part of the power.
+     * @param d The imaginary part of the power.
+     * @return This accumulator.
+     */
+    public ComplexAccumulator powTo(double c, double d) {
+        double x = c, y = d;
+
+        if (real != Math.E || imaginary != 0) {
+            //ln a = ln |a| + i arg(a)
+            double lr = Math.log(Math.sqrt(real * real + imaginary * imaginary)), li = argument(real, imaginary);
+            x = lr * c - li * d;
+            y = lr * d + li * c;
+        }
+
+        double exp = Math.exp(x), cos = Math.cos(y), sin = Math.sin(y);
+        //The full product of (exp, 0) and (cos, sin), to keep the signed zeros and NaNs of e^x * e^(iy)
+        real = exp * cos - 0 * sin;
+        imaginary = exp * sin + 0 * cos;
+        return this;
+    }
+
+    /**
+     * Raises this number to the given power.
+     * @param z The power.
+     * @return This accumulator.
+     * @see ComplexAccumulator#powTo(double, double)
+     */
+    public ComplexAccumulator powTo(ComplexNum z) {
+        return powTo(z.real, z.imaginary);
+    }
+
+    /**
+     * Returns the argument of a complex number.
+     * @param re The real part.
+     * @param im The imaginary part.
+     * @return The argument.
+     * @see ComplexNum#argument()
+     */
+    public static double argument(double re, double im) {
+        if (re == 0) {
+            return Math.signum(im) * Math.PI / 2;
+        }
+
+        if (im == 0 && re < 0) {
+            return Math.PI;
+        }
+
+        double x = Math.atan(im / re);
+
+        if (re > 0) {
+            return x;
+        } else {
+            return Math.signum(im) * Math.PI + x;
+        }
+    }
+
+    /**
+     * Creates an immutable number with the current value.
+     * @return The number.
+     */
+    public ComplexNum toComplexNum() {
+        return new ComplexNum(real, imaginary);
+    }
+
+    public String toString() {
+        return toComplexNum().toString();
+    }
+}
@@ -1,6 +1,8 @@
 package org.programs.math.types;
 
 import org.programs.math.exceptions.RTException;
+import org.programs.math.extra.Gamma;
+import org.programs.math.io.Formatter;
 
 /**
  * <p>Represents a constant complex number, like 6 + 9i or 4.2!
@@ -14,6 +16,17 @@ public final class ComplexNum implements Value {
     public static final ComplexNum REAL_UNIT = create(1, 0);
     public static final ComplexNum ZERO = create(0, 0);
 
+    /**
+     * The permutations and combinations below this are computed exactly, in longs.
+     */
+    private static final double EXACT_LIMIT = 0x1p62;
+
+    /**
+     * The most factors of the permutations and combinations which are multiplied one by one, when they are
+     * too large to be exact.
+     */
+    private static final int MAX_FACTORS = 32;
+
     /**
      * The real part of the number.
      */
@@ -79,26 +92,16 @@ public final class ComplexNum implements Value {
 
     /**
      * Divides two numbers. An exception is thrown if the divisor is zero.
-     * <p>(a + bi) / (c + di) = (a + bi)(1 / c + di)
-     * <p>(a + bi)(c - di) / |c + di|^2
-     * <p>{(ac + bd) + (bc - ad)i} / (c^2 + d^2)
+     * <p>Uses Smith's algorithm, which scales by the ratio of the divisor's parts instead of dividing by
+     * |c + di|^2, so it doesn't overflow or underflow as easily.
      * @param other The other number.
      * @return The quotient.
+     * @see ComplexAccumulator#divTo(double, double)
      */
     public ComplexNum divide(ComplexNum other) {
-        if (other.isZero()) {
-            throw new RTException("Division by 0!");
-        }
-
-        if (other.isReal()) {
-            return create(real / other.real, imaginary / other.real);
-        }
-
-        ComplexNum cOther = other.conjugate();
-        ComplexNum divisor = create(other.modulusSquare(), 0);
-
-        return multiply(cOther)
-                .divide(divisor);
+        return new ComplexAccumulator(real, imaginary)
+                .divTo(other)
+                .toComplexNum();
     }
 
     /**
@@ -131,58 +134,161 @@ public final class ComplexNum implements Value {
      * @return The result.
      */
     public ComplexNum log(ComplexNum base) {
-        ComplexNum naturalLog = create(
-                Math.log(modulus()),
-                argument()
-        );
+        ComplexNum naturalLog = ln();
 
         if (base.equals(E)) {
             return naturalLog;
         }
 
-        ComplexNum naturalBase = base.log(E);
+        ComplexNum naturalBase = base.ln();
 
         return naturalLog.divide(naturalBase);
     }
 
+    /**
+     * Performs the natural logarithm of this number.
+     * <p>ln z = ln |z| + i arg(z)
+     * @return The result.
+     */
+    public ComplexNum ln() {
+        return create(
+                Math.log(modulus()),
+                argument()
+        );
+    }
+
     /**
      * Performs exponentiation of this number to the given number.
      * <p>e^(x + iy) = e^x * e^(iy) = e^x * (cos y + i sin y)
      * <p>a^x = e^(x ln a)
      * @param other The power to raise to.
      * @return The result.
+     * @see ComplexAccumulator#powTo(double, double)
      */
     public ComplexNum pow(ComplexNum other) {
-        if (!E.equals(this)) {
-            return E.pow(
-                    log(E).multiply(other)
-            );
+        return new ComplexAccumulator(real, imaginary)
+                .powTo(other)
+                .toComplexNum();
+    }
+
+    /**
+     * Performs the factorial. Whole numbers are read from a table (see {@link Gamma#factorial(long)}), and
+     * other numbers use the gamma function: {@code x! = gamma(x + 1)}.
+     * @return The result.
+     * @throws RTException If the number is a negative whole number.
+     */
+    public ComplexNum factorial() {
+        if (!isInteger()) {
+            return Gamma.gamma(add(REAL_UNIT));
+        }
+        if (real < 0) {
+            throw new RTException("Can't compute factorial for value: " + this);
+        }
+
+        return create(Gamma.factorial((long) Math.min(real, Gamma.MAX_FACTORIAL + 1)), 0);
+    }
+
+    /**
+     * Computes the number of permutations of {@code r} things out of {@code n}, which is
+     * {@code n! / (n - r)!}.
+     * <p>The size of the result is estimated with the factorial table, or with the log-gamma function above
+     *    it. Results which fit in a long are computed exactly as the falling product
+     *    {@code n (n - 1) ... (n - r + 1)}, and larger ones are the estimate, except that a short falling
+     *    product is used above the table since it is more precise.
+     * @param n The number of things.
+     * @param r The number of things chosen.
+     * @return The result.
+     * @throws RTException If the numbers are not whole, or not {@code 0 <= r <= n}.
+     */
+    public static ComplexNum permutations(ComplexNum n, ComplexNum r) {
+        checkChoice(n, r);
+        double a = n.real, b = r.real;
+
+        double estimate = a <= Gamma.MAX_FACTORIAL ? Gamma.factorial((long) a) / Gamma.factorial((long) (a - b))
+                                                   : Math.exp(Gamma.logFactorial(a) - Gamma.logFactorial(a - b));
+        if (estimate < EXACT_LIMIT) {
+            try {
+                long p = 1;
+                for (long i = (long) a, end = (long) (a - b); i > end; i--) {
+                    p = Math.multiplyExact(p, i);
+                }
+                return create(p, 0);
+            } catch (ArithmeticException e) {
+                //Use the estimate
+            }
         }
 
-        ComplexNum realExp = create(Math.exp(other.real), 0),
-                imExp = create(
-                        Math.cos(other.imaginary),
-                        Math.sin(other.imaginary)
-                );
+        if (a <= Gamma.MAX_FACTORIAL || b > MAX_FACTORS) {
+            return create(estimate, 0);
+        }
 
-        return realExp.multiply(imExp);
+        double p = 1;
+        for (double i = a, end = a - b; i > end; i--) {
+            p *= i;
+        }
+        return create(p, 0);
     }
 
     /**
-     * Performs the factorial. Supported for whole numbers only.
+     * Computes the number of combinations of {@code r} things out of {@code n}, which is
+     * {@code n! / (r! (n - r)!)}.
+     * <p>Like {@link ComplexNum#permutations(ComplexNum, ComplexNum)}, the size of the result is estimated
+     *    first. Results which fit in a long are computed exactly with the multiplicative formula
+     *    {@code C(n, k) = C(n, k - 1) (n - k + 1) / k}, and larger ones are the estimate, or the
+     *    multiplicative formula in doubles when it is short.
+     * @param n The number of things.
+     * @param r The number of things chosen.
      * @return The result.
+     * @throws RTException If the numbers are not whole, or not {@code 0 <= r <= n}.
      */
-    public ComplexNum factorial() {
-        if (!isInteger() || real < 0) {
-            throw new RTException("Can't compute factorial for value: " + this);
+    public static ComplexNum combinations(ComplexNum n, ComplexNum r) {
+        checkChoice(n, r);
+        double a = n.real, k = Math.min(r.real, n.real - r.real);
+
+        double estimate = a <= Gamma.MAX_FACTORIAL
+                ? Gamma.factorial((long) a) / (Gamma.factorial((long) k) * Gamma.factorial((long) (a - k)))
+                : Math.exp(Gamma.logFactorial(a) - Gamma.logFactorial(k) - Gamma.logFactorial(a - k));
+        if (estimate < EXACT_LIMIT) {
+            try {
+                long c = 1;
+                for (long i = 1; i <= k; i++) {
+                    //c (n - k + i) is divisible by i, and c / g and i / g have no common factor
+                    long g = gcd(c, i);
+                    c = Math.multiplyExact(c / g, ((long) a - (long) k + i) / (i / g));
+                }
+                return create(c, 0);
+            } catch (ArithmeticException e) {
+                //Use the estimate
+            }
+        }
+
+        if (a <= Gamma.MAX_FACTORIAL || k > MAX_FACTORS) {
+            return create(estimate, 0);
+        }
+
+        double c = 1;
+        for (double i = 1; i <= k; i++) {
+            c = c * (a - k + i) / i;
         }
+        return create(c, 0);
+    }
 
-        double fact = 1;
-        for (int i = 1; i <= (int) real; i++) {
-            fact *= i;
+    private static void checkChoice(ComplexNum n, ComplexNum r) {
+        if (!n.isInteger() || n.real < 0) {
+            throw new RTException("First parameter of permutation/combination is not valid!");
+        }
+        if (!r.isInteger() || r.real < 0 || r.real > n.real) {
+            throw new RTException("Second parameter of permutation/combination is not valid!");
         }
+    }
 
-        return create(fact, 0);
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
     }
 
     /**
@@ -217,6 +323,43 @@ public final class ComplexNum implements Value {
         return pow(other.reciprocal());
     }
 
+    /**
+     * Performs the principal square root of this number, the one with a non-negative real part.
+     * <p>Unlike {@code z^(1/2)}, this doesn't go through {@code exp} and {@code log}, so the roots of perfect
+     *    squares are exact, and the roots of negative numbers have no real part.
+     * <p>sqrt(x + iy) = t + iy/2t, with t = sqrt((|z| + x) / 2), for x >= 0
+     * @return The result.
+     */
+    public ComplexNum sqrt() {
+        if (isReal()) {
+            return real >= 0 ? create(Math.sqrt(real), 0) : create(0, Math.sqrt(-real));
+        }
+
+        double t = Math.sqrt((Math.hypot(real, imaginary) + Math.abs(real)) / 2);
+        if (real >= 0) {
+            return create(t, imaginary / (2 * t));
+        }
+        return create(Math.abs(imaginary) / (2 * t), Math.copySign(t, imaginary));
+    }
+
+    /**
+     * Performs the principal cube root of this number, which is the same as {@code z^(1/3)}.
+     * <p>The roots of real numbers use {@link Math#cbrt(double)}, so the roots of perfect cubes are exact.
+     *    The principal root of a negative number is {@code cbrt(|x|) (1/2 + i sqrt(3)/2)}.
+     * @return The result.
+     */
+    public ComplexNum cbrt() {
+        if (!isReal()) {
+            return pow(create(1.0 / 3, 0));
+        }
+
+        if (real >= 0) {
+            return create(Math.cbrt(real), 0);
+        }
+        double r = Math.cbrt(-real);
+        return create(r / 2, r * Math.sqrt(3) / 2);
+    }
+
     /**
      * Returns the conjugate of this number.
      * <p>~(x + iy) = x - iy
@@ -256,21 +399,7 @@ public final class ComplexNum implements Value {
      * @return The result.
      */
     public double argument() {
-        if (isImaginary()) {
-            return Math.signum(imaginary) * Math.PI / 2;
-        }
-
-        if (isReal() && real < 0) {
-            return Math.PI;
-        }
-
-        double x = Math.atan(imaginary / real);
-
-        if (real > 0) {
-            return x;
-        } else {
-            return Math.signum(imaginary) * Math.PI + x;
-        }
+        return ComplexAccumulator.argument(real, imaginary);
     }
 
     public boolean isReal() {
@@ -293,25 +422,12 @@ public final class ComplexNum implements Value {
         return real == other.real && imaginary == other.imaginary;
     }
 
-    private String format(double x, boolean isIm) {
-        double z = Math.abs(x);
-        String s = isIm && z == 1 ? "" : "" + z;
-        if (s.endsWith(".0")) {
-            s = s.substring(0, s.length() - 2);
-        }
-        if (x < 0) {
-            s = "-" + s;
-        }
-        return s + (isIm ? "i" : "");
-    }
-
+    /**
+     * Formats the number with the shortest digits of its parts, like {@code 3}, {@code -1.5i} or
+     * {@code 2 - i}.
+     * @see Formatter
+     */
     public String toString() {
-        if (isZero()) return "0";
-        if (isReal()) return format(real, false);
-        if (isImaginary()) return format(imaginary, true);
-
-        if (imaginary < 0) return format(real, false) + " - " + format(-imaginary, true);
-
-        return format(real, false) + " + " + format(imaginary, true);
+        return new Formatter().toString(real, imaginary);
     }
 }
@@ -1,12 +1,20 @@
 package org.programs.math.types;
 
+import org.programs.math.eval.Budget;
+import org.programs.math.eval.Profiler;
+import org.programs.math.events.Counters;
 import org.programs.math.exceptions.RTException;
+import org.programs.math.extra.Gamma;
 import org.programs.math.extra.Trigonometry;
+import org.programs.math.metrics.Metrics;
+import org.programs.math.metrics.MetricsRegistry;
 import org.programs.math.nodes.Node;
 import org.programs.math.parser.SymbolTable;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * <p>Represents a function.
@@ -18,6 +26,26 @@ import java.util.Objects;
  * @see SymbolTable
  */
 public final class Func implements Value {
+    /**
+     * The native functions which make, reduce or transform whole vectors and matrices.
+     */
+    private static final Set<String> ARRAY_NATIVES = Set.of("range", "sum", "product", "min", "max", "len",
+            "eye", "transpose", "det", "inv", "solve");
+
+    /**
+     * The native functions which take matrices.
+     */
+    private static final Set<String> MATRIX_NATIVES = Set.of("transpose", "det", "inv", "solve");
+
+    /**
+     * The built-in functions which are defined in {@code BuiltIns.txt} with a body, but are called through
+     * a direct implementation (see {@link Func#intrinsic()}).
+     */
+    private static final Set<String> INTRINSICS = Set.of("root", "sqrt", "cbrt", "ln", "asec", "acosec",
+            "d2r", "r2d", "g2r", "r2g", "d2g", "g2d", "frac", "Re", "Im");
+
+    private static final MetricsRegistry.Counter BODIES_DEFERRED = Metrics.counter(Metrics.BODIES_DEFERRED);
+    private static final MetricsRegistry.Counter BODIES_PARSED = Metrics.counter(Metrics.BODIES_PARSED);
 
     /**
      * The name of the function.
@@ -25,9 +53,15 @@ public final class Func implements Value {
     public final String name;
 
     /**
-     * The function expression.
+     * The function expression, or {@code null} if the function is native or its body is not parsed yet
+     * (see {@link Func#body()}).
      */
-    public final Node expr;
+    private Node expr;
+
+    /**
+     * Parses the body of the function, or {@code null} once it is parsed.
+     */
+    private volatile Supplier<Node> source;
 
     /**
      * The parameters of the function.
@@ -49,9 +83,21 @@ public final class Func implements Value {
      * This helps to check if the function is being called recursively (kind of).
      * If the {@code callCount} is greater than 100, then this function is being recursively called.
      * Note that this kind of helps, since doing nested calls like f(f(f...)) 100 times may also trigger this.
-     *
+     * <p>The count is kept per thread, since the same function can be called by statements which are
+     * evaluated at the same time.
+     */
+    private final ThreadLocal<int[]> callCount = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Whether this built-in function is called through its direct implementation.
      */
-    private int callCount;
+    private final boolean intrinsic;
+
+    /**
+     * Counts the calls of the functions with this name (see {@link Metrics#FUNCTION_CALLS}), or {@code null}
+     * before the first call.
+     */
+    private MetricsRegistry.Counter calls;
 
     /**
      * Constructs a function object.
@@ -61,7 +107,13 @@ public final class Func implements Value {
      * @param body The function expression.
      */
     public Func(String name, List<Parameter> as, Node body) {
+        this(name, as, body, null, false);
+    }
+
+    private Func(String name, List<Parameter> as, Node body, Supplier<Node> source, boolean intrinsic) {
         this.name = name;
+        this.intrinsic = intrinsic;
+        this.source = source;
         expr = body;
         parameters = as;
 
@@ -80,35 +132,116 @@ public final class Func implements Value {
         }
     }
 
+    /**
+     * Constructs a function whose body is parsed when it is first needed (see {@link Func#body()}).
+     * @param name The name of the function.
+     * @param as The parameters of the function.
+     * @param source Parses the body. It throws the syntax error, if there is one.
+     * @return The function.
+     */
+    public static Func lazy(String name, List<Parameter> as, Supplier<Node> source) {
+        BODIES_DEFERRED.increment();
+        return new Func(name, as, null, Objects.requireNonNull(source), false);
+    }
+
+    /**
+     * Returns the function expression, parsing it first if it is not parsed yet. A body which can't be
+     * parsed throws the same error each time.
+     * @return The expression, or {@code null} if the function is native.
+     * @throws org.programs.math.exceptions.InvalidSyntaxException If the body has a syntax error.
+     */
+    public Node body() {
+        if (source != null) {
+            synchronized (this) {
+                Supplier<Node> s = source;
+                if (s != null) {
+                    expr = s.get();
+                    source = null;
+                    BODIES_PARSED.increment();
+                }
+            }
+        }
+        return expr;
+    }
+
+    /**
+     * Checks if the body of this function is parsed.
+     * @return {@code true} if it is parsed, or the function is native.
+     */
+    public boolean isParsed() {
+        return source == null;
+    }
+
     /**
      * Executes the function expression according to the arguments provided to it, when called.
      * @param args The arguments provided to the function.
      * @param parent The outer symbol table.
-     * @return The number from the function execution.
+     * @return The number or vector from the function execution.
      *
      * @throws RTException If the function recursively calls itself.
      */
-    public ComplexNum execute(List<Node> args, SymbolTable parent) {
-        if (isNative()) {
-            return execNative(args, parent);
+    public Value execute(List<Node> args, SymbolTable parent) {
+        return execute(args, null, parent);
+    }
+
+    /**
+     * Executes the function with already evaluated arguments.
+     * @param args The arguments. The missing ones get the default values of their parameters.
+     * @param parent The outer symbol table, where the default values are evaluated.
+     * @return The number or vector from the function execution.
+     *
+     * @throws RTException If the function recursively calls itself.
+     */
+    public Value execute(Value[] args, SymbolTable parent) {
+        return execute(null, args, parent);
+    }
+
+    /**
+     * Executes the function with either the argument nodes or their values.
+     * <p>User defined functions get vector and matrix arguments as they are, so their operators work on
+     *    them. Native functions are applied to each element of vectors, except the ones which make, reduce
+     *    or transform whole vectors and matrices (see {@link Func#isArrayNative()}).
+     */
+    private Value execute(List<Node> nodes, Value[] values, SymbolTable parent) {
+        MetricsRegistry.Counter c = calls;
+        if (c == null) {
+            calls = c = Metrics.counter(Metrics.FUNCTION_CALLS + name);
         }
+        c.increment();
+        Budget.step();
 
+        if (isNative() || intrinsic) {
+            Value[] args = new Value[parameters.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = getArg(nodes, values, i, parent);
+            }
+            if (isNative() || isPlain(args)) {
+                Counters.nativeCall();
+                return callNative(args);
+            }
+
+            //Matrices and exact numbers go through the body, like other user visible functions
+            nodes = null;
+            values = args;
+        }
+
+        int[] count = callCount.get();
         try {
-            if (++callCount > 100) {
+            if (++count[0] > 100) {
                 throw new RTException("Function '" + name + "' recursively calls itself.");
             }
 
             SymbolTable symbolTable = new SymbolTable();
 
             for (int i = 0; i < max; i++) {
-                ComplexNum val = getArg(args, i, parent);
+                Value val = getArg(nodes, values, i, parent);
                 String paramName = parameters.get(i).name;
                 symbolTable.set(paramName, val);
             }
 
-            return expr.visit(symbolTable);
+            return Profiler.body(this).evaluate(symbolTable);
         } finally {
-            --callCount;
+            --count[0];
         }
     }
 
@@ -117,44 +250,169 @@ public final class Func implements Value {
      * @return {@code true} if the function is native.
      */
     public boolean isNative() {
-        return expr == null;
+        return source == null && expr == null;
+    }
+
+    /**
+     * Checks if this built-in function is called through a direct implementation, instead of its body.
+     * Intrinsics can be called through {@link Func#callNative(ComplexNum, ComplexNum)} like the natives,
+     * which gives the same result as the body, except for rounding.
+     * @return {@code true} if the function is an intrinsic.
+     */
+    public boolean isIntrinsic() {
+        return intrinsic;
+    }
+
+    /**
+     * Returns this built-in function bound to its direct implementation, if it has one. This is called
+     * once for each built-in function, when it is loaded.
+     * <p>The function keeps its body, which is shown to the user and used for the arguments the
+     *    implementation doesn't take (matrices, and numbers of the exact mode).
+     * @return The intrinsic, or this function if it has no direct implementation.
+     */
+    public Func intrinsic() {
+        if (intrinsic || isNative() || !INTRINSICS.contains(name)) {
+            return this;
+        }
+        return new Func(name, parameters, body(), null, true);
+    }
+
+    private static boolean isPlain(Value[] args) {
+        for (Value arg : args) {
+            if (!(arg instanceof ComplexNum) && !(arg instanceof Vector)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if this function is a native one which makes, reduces or transforms whole vectors and
+     * matrices, like {@code range}, {@code sum} and {@code det}. These can't be called through
+     * {@link Func#callNative(ComplexNum, ComplexNum)}.
+     * @return {@code true} if the function is one of them.
+     */
+    public boolean isArrayNative() {
+        return isNative() && ARRAY_NATIVES.contains(name);
     }
 
     /**
      * Gets the argument (if present), else the default value provided to the parameter.
      * This method should not throw a NullPointerException ever.
      * If argument is not present, a default value should always be present since the parameter was optional.
-     * @param args The arguments provided.
+     * @param nodes The arguments provided, or {@code null} if they are already evaluated.
+     * @param values The evaluated arguments, if the nodes are {@code null}.
      * @param index The index of the argument.
-     * @param st The SymbolTable of this function.
+     * @param st The outer symbol table.
      * @return The argument.
      */
-    private ComplexNum getArg(List<Node> args, int index, SymbolTable st) {
-        if (index >= args.size()) {
-            return parameters.get(index).defaultVal.visit(st);
+    private Value getArg(List<Node> nodes, Value[] values, int index, SymbolTable st) {
+        int size = nodes != null ? nodes.size() : values.length;
+        if (index >= size) {
+            return parameters.get(index).defaultVal.evaluate(st);
         }
-        return args.get(index).visit(st);
+        return nodes != null ? nodes.get(index).evaluate(st) : values[index];
     }
 
     /**
      * Executes this native function.
      * <p>This function is not user-defined. Rather, it's implementation is defined in the source code itself.
-     * @param args The arguments.
-     * @param parent The outer symbol table.
+     * @param args The arguments, one for each parameter.
      * @return The result.
      * @throws RTException If the native implementation is not found.
      */
-    private ComplexNum execNative(List<Node> args, SymbolTable parent) {
-        ComplexNum first, second;
+    private Value callNative(Value[] args) {
+        if (!MATRIX_NATIVES.contains(name)) {
+            for (Value arg : args) {
+                if (arg instanceof Matrix) {
+                    throw new RTException("Function '" + name + "' takes numbers or vectors, not matrices.");
+                }
+            }
+        }
+
+        switch (name) {
+            case "range" -> {
+                return Vector.range(number(args[0]), number(args[1]), number(args[2]));
+            }
+            case "sum", "product", "min", "max", "len" -> {
+                Vector v = args[0] instanceof Vector vec ? vec : Vector.of(List.of(args[0]));
+                return switch (name) {
+                    case "sum" -> v.sum();
+                    case "product" -> v.product();
+                    case "min" -> v.min();
+                    case "max" -> v.max();
+                    default -> new ComplexNum(v.length(), 0);
+                };
+            }
+            case "eye" -> {
+                return Matrix.identity(number(args[0]));
+            }
+            case "transpose" -> {
+                return matrix(args[0]).transpose();
+            }
+            case "det" -> {
+                return matrix(args[0]).det();
+            }
+            case "inv" -> {
+                return matrix(args[0]).inverse();
+            }
+            case "solve" -> {
+                return matrix(args[0]).solve(args[1]);
+            }
+            case "P", "C" -> {
+                Rational n = Rational.exact(args[0]), r = Rational.exact(args[1]);
+                if (Rational.isExactMode() && n != null && r != null) {
+                    return name.equals("P") ? Rational.permutations(n, r) : Rational.combinations(n, r);
+                }
+            }
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Rational.demote(args[i]);
+        }
+
         //There is at least one argument for each function
-        first = getArg(args, 0, parent);
-        //For second arg, we need to check
-        if (parameters.size() == 2) {
-            second = getArg(args, 1, parent);
-        } else {
-            second = null;
+        Value first = args[0];
+        Value second = args.length == 2 ? args[1] : null;
+
+        if (second == null) {
+            return first instanceof Vector vec
+                    ? vec.map(z -> callNative(z, null))
+                    : callNative((ComplexNum) first, null);
+        }
+
+        if (first instanceof ComplexNum a && second instanceof ComplexNum b) {
+            return callNative(a, b);
         }
+        return Vector.map(first, second, this::callNative);
+    }
 
+    private ComplexNum number(Value v) {
+        if (v instanceof Rational q) {
+            return q.toComplexNum();
+        }
+        if (!(v instanceof ComplexNum z)) {
+            throw new RTException("Function '" + name + "' takes numbers, not "
+                    + (v instanceof Vector ? "vectors." : "matrices."));
+        }
+        return z;
+    }
+
+    private Matrix matrix(Value v) {
+        if (!(v instanceof Matrix m)) {
+            throw new RTException("Function '" + name + "' takes a matrix.");
+        }
+        return m;
+    }
+
+    /**
+     * Executes this native or intrinsic function with already evaluated arguments.
+     * @param first The first argument.
+     * @param second The second argument, or {@code null} if the function takes only one.
+     * @return The result.
+     * @throws RTException If the native implementation is not found.
+     */
+    public ComplexNum callNative(ComplexNum first, ComplexNum second) {
         return switch (name) {
             case "sin" -> Trigonometry.sin(first);
             case "cos" -> Trigonometry.cos(first);
@@ -167,31 +425,51 @@ public final class Func implements Value {
             case "atan" -> Trigonometry.atan(first);
             case "acot" -> Trigonometry.acot(first);
             case "log" -> first.log(Objects.requireNonNull(second));
+            case "ln" -> first.ln();
+            case "root" -> root(first, Objects.requireNonNull(second));
+            case "sqrt" -> first.sqrt();
+            case "cbrt" -> first.cbrt();
+            case "asec" -> Trigonometry.acos(first.reciprocal());
+            case "acosec" -> Trigonometry.asin(first.reciprocal());
+            case "d2r" -> new ComplexNum(first.real * Math.PI / 180, 0);
+            case "r2d" -> new ComplexNum(first.real * 180 / Math.PI, 0);
+            case "g2r" -> new ComplexNum(first.real * Math.PI / 200, 0);
+            case "r2g" -> new ComplexNum(first.real * 200 / Math.PI, 0);
+            case "d2g" -> new ComplexNum(first.real * 10 / 9, 0);
+            case "g2d" -> new ComplexNum(first.real * 9 / 10, 0);
+            case "frac" -> first.subtract(first.floor());
+            case "Re" -> new ComplexNum(first.real, 0);
+            case "Im" -> new ComplexNum(first.imaginary, 0);
             case "floor" -> first.floor();
             case "ceil" -> first.ceil();
             case "arg" -> new ComplexNum(first.argument(), 0);
-            case "P" -> {
-                Objects.requireNonNull(second);
-                if (second.real < 0 || second.real > first.real) {
-                    throw new RTException("Second parameter of permutation/combination is not valid!");
-                }
-
-                yield first.factorial()
-                        .divide(first.subtract(second).factorial());
-            }
+            case "P" -> ComplexNum.permutations(first, Objects.requireNonNull(second));
+            case "C" -> ComplexNum.combinations(first, Objects.requireNonNull(second));
+            case "gamma" -> Gamma.gamma(first);
+            case "lgamma" -> Gamma.lgamma(first);
             default -> throw new RTException(
                     "Native function implementation not available for function: '" + name + "'."
             );
         };
     }
 
+    private static ComplexNum root(ComplexNum num, ComplexNum index) {
+        if (index.isReal() && index.real == 2) {
+            return num.sqrt();
+        }
+        if (index.isReal() && index.real == 3) {
+            return num.cbrt();
+        }
+        return num.root(index);
+    }
+
     public String toString() {
         String params = parameters.stream()
                 .map(Parameter::toString)
                 .toList()
                 .toString();
 
-        String body = isNative() ? "native" : "= " + expr;
+        String body = isNative() ? "native" : "= " + body();
         return "fn " + name + "(" + params.substring(1, params.length() - 1) + ") " + body;
     }
 }
@@ -0,0 +1,628 @@
+package org.programs.math.types;
+
+import org.programs.math.exceptions.RTException;
+import org.programs.math.io.Formatter;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Represents a matrix of complex numbers, like [1, 2; 3, 4].
+ * <p>The elements are stored row by row in one array, as pairs of the real and imaginary parts.
+ * <p>Products are computed in blocks which fit in the cache, and the row panels of large products are
+ *    computed in parallel. Determinants, inverses and linear systems use an LU decomposition with partial
+ *    pivoting.
+ */
+public final class Matrix implements Value {
+    /**
+     * The size of the blocks of a product, along the inner dimension and the columns.
+     */
+    private static final int BLOCK = 64;
+
+    /**
+     * The number of rows of a panel, which is the unit of work of a parallel product.
+     */
+    private static final int PANEL = 32;
+
+    /**
+     * The number of multiplications from which a product is computed in parallel.
+     */
+    private static final long PARALLEL_WORK = 1 << 18;
+
+    /**
+     * The number of rows and columns.
+     */
+    public final int rows, cols;
+
+    /**
+     * The elements, row by row, as pairs of the real and imaginary parts.
+     */
+    public final double[] values;
+
+    /**
+     * Creates a matrix. The array is not copied.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param values The elements, row by row, as pairs of the real and imaginary parts.
+     */
+    public Matrix(int rows, int cols, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+    }
+
+    /**
+     * Creates a matrix of zeros.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @throws RTException If the matrix would be too large.
+     */
+    public Matrix(int rows, int cols) {
+        this(rows, cols, new double[size(rows, cols)]);
+    }
+
+    private static int size(long rows, long cols) {
+        long n = rows * cols * 2;
+        if (n > Vector.MAX_LENGTH) {
+            throw new RTException("A " + rows + "x" + cols + " matrix is too large.");
+        }
+        return (int) n;
+    }
+
+    /**
+     * Returns an element.
+     * @param r The row.
+     * @param c The column.
+     * @return The element.
+     */
+    public ComplexNum get(int r, int c) {
+        int at = 2 * (r * cols + c);
+        return new ComplexNum(values[at], values[at + 1]);
+    }
+
+    /**
+     * Creates a matrix from its rows. Vectors in a row are joined, like in a vector.
+     * @param rows The rows, made of numbers and vectors.
+     * @return The matrix.
+     * @throws RTException If the rows have different lengths, or hold matrices.
+     */
+    public static Matrix of(List<List<Value>> rows) {
+        Vector[] vs = new Vector[rows.size()];
+        for (int r = 0; r < vs.length; r++) {
+            vs[r] = Vector.of(rows.get(r));
+            if (vs[r].length() != vs[0].length()) {
+                throw new RTException("The rows of the matrix have different lengths: "
+                        + vs[0].length() + " and " + vs[r].length() + ".");
+            }
+        }
+
+        int cols = vs.length == 0 ? 0 : vs[0].length();
+        Matrix m = new Matrix(vs.length, cols);
+        for (int r = 0; r < vs.length; r++) {
+            for (int c = 0; c < cols; c++) {
+                int at = 2 * (r * cols + c);
+                m.values[at] = vs[r].re[c];
+                m.values[at + 1] = vs[r].im == null ? 0 : vs[r].im[c];
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Creates an identity matrix.
+     * @param n The number of rows and columns.
+     * @return The matrix.
+     * @throws RTException If the size is not a whole number, or too large.
+     */
+    public static Matrix identity(ComplexNum n) {
+        if (!n.isInteger() || n.real < 0) {
+            throw new RTException("Can't create an identity matrix of size: " + n);
+        }
+
+        int size = (int) Math.min(n.real, Integer.MAX_VALUE);
+        Matrix m = new Matrix(size, size);
+        for (int i = 0; i < size; i++) {
+            m.values[2 * (i * size + i)] = 1;
+        }
+        return m;
+    }
+
+    /**
+     * Adds two matrices of the same size.
+     * @param l A matrix.
+     * @param r A matrix.
+     * @return The sum.
+     * @throws RTException If an operand is not a matrix, or the sizes are different.
+     */
+    public static Matrix add(Value l, Value r) {
+        Matrix a = operand(l, "add"), b = operand(r, "add");
+        sameSize(a, b, "add");
+
+        Matrix out = new Matrix(a.rows, a.cols);
+        for (int i = 0; i < out.values.length; i++) {
+            out.values[i] = a.values[i] + b.values[i];
+        }
+        return out;
+    }
+
+    /**
+     * Subtracts two matrices of the same size.
+     * @param l A matrix.
+     * @param r A matrix.
+     * @return The difference.
+     * @throws RTException If an operand is not a matrix, or the sizes are different.
+     */
+    public static Matrix subtract(Value l, Value r) {
+        Matrix a = operand(l, "subtract"), b = operand(r, "subtract");
+        sameSize(a, b, "subtract");
+
+        Matrix out = new Matrix(a.rows, a.cols);
+        for (int i = 0; i < out.values.length; i++) {
+            out.values[i] = a.values[i] - b.values[i];
+        }
+        return out;
+    }
+
+    /**
+     * Multiplies a matrix by a matrix, a vector or a number.
+     * <p>A vector on the right is a column, and gives a vector. A vector on the left is a row.
+     * @param l A matrix, a vector or a number.
+     * @param r A matrix, a vector or a number.
+     * @return The product.
+     * @throws RTException If the sizes don't match.
+     */
+    public static Value multiply(Value l, Value r) {
+        if (l instanceof ComplexNum z) {
+            return ((Matrix) r).scale(z);
+        }
+        if (r instanceof ComplexNum z) {
+            return ((Matrix) l).scale(z);
+        }
+
+        if (l instanceof Vector v) {
+            Matrix m = (Matrix) r;
+            return toVector(product(column(v, m.rows, "multiply").transpose(), m));
+        }
+        if (r instanceof Vector v) {
+            Matrix m = (Matrix) l;
+            return toVector(product(m, column(v, m.cols, "multiply")));
+        }
+
+        return product((Matrix) l, (Matrix) r);
+    }
+
+    /**
+     * Divides a matrix by a number.
+     * @param l A matrix.
+     * @param r A number.
+     * @return The quotient.
+     * @throws RTException If the divisor is not a number, or is zero.
+     */
+    public static Matrix divide(Value l, Value r) {
+        if (!(l instanceof Matrix m) || !(r instanceof ComplexNum z)) {
+            throw new RTException("A matrix can only be divided by a number, use solve or inv.");
+        }
+
+        Matrix out = new Matrix(m.rows, m.cols);
+        ComplexAccumulator acc = new ComplexAccumulator();
+        for (int i = 0; i < out.values.length; i += 2) {
+            acc.set(m.values[i], m.values[i + 1]).divTo(z);
+            out.values[i] = acc.real;
+            out.values[i + 1] = acc.imaginary;
+        }
+        return out;
+    }
+
+    /**
+     * Raises a square matrix to a whole power, by repeated squaring. Negative powers are powers of the
+     * inverse.
+     * @param l A matrix.
+     * @param r A whole number.
+     * @return The power.
+     * @throws RTException If the matrix is not square, the power is not a whole number, or the matrix is
+     * singular and the power is negative.
+     */
+    public static Matrix pow(Value l, Value r) {
+        if (!(l instanceof Matrix m) || !(r instanceof ComplexNum n) || !n.isInteger()) {
+            throw new RTException("A matrix can only be raised to a whole power.");
+        }
+        m.checkSquare("raise to a power");
+
+        long e = (long) n.real;
+        Matrix base = e < 0 ? m.inverse() : m;
+        e = Math.abs(e);
+
+        Matrix result = identity(new ComplexNum(m.rows, 0));
+        while (e > 0) {
+            if ((e & 1) == 1) {
+                result = product(result, base);
+            }
+            e >>= 1;
+            if (e > 0) {
+                base = product(base, base);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Negates the elements.
+     * @return The result.
+     */
+    public Matrix negate() {
+        Matrix out = new Matrix(rows, cols);
+        for (int i = 0; i < values.length; i++) {
+            out.values[i] = -values[i];
+        }
+        return out;
+    }
+
+    /**
+     * Returns the transpose, without conjugating the elements.
+     * @return The result.
+     */
+    public Matrix transpose() {
+        Matrix out = new Matrix(cols, rows);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int from = 2 * (r * cols + c), to = 2 * (c * rows + r);
+                out.values[to] = values[from];
+                out.values[to + 1] = values[from + 1];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the conjugate transpose, which is the transpose for real matrices.
+     * @return The result.
+     */
+    public Matrix conjugateTranspose() {
+        Matrix out = transpose();
+        for (int i = 1; i < out.values.length; i += 2) {
+            out.values[i] = -out.values[i];
+        }
+        return out;
+    }
+
+    /**
+     * Multiplies the elements by a number.
+     */
+    private Matrix scale(ComplexNum z) {
+        Matrix out = new Matrix(rows, cols);
+        double c = z.real, d = z.imaginary;
+        for (int i = 0; i < values.length; i += 2) {
+            double a = values[i], b = values[i + 1];
+            out.values[i] = a * c - b * d;
+            out.values[i + 1] = a * d + b * c;
+        }
+        return out;
+    }
+
+    /**
+     * Computes the determinant of a square matrix.
+     * @return The determinant, which is 0 for a singular matrix.
+     * @throws RTException If the matrix is not square.
+     */
+    public ComplexNum det() {
+        checkSquare("compute the determinant of");
+
+        LU lu = new LU(this);
+        if (lu.singular) {
+            return ComplexNum.ZERO;
+        }
+
+        int n = rows;
+        ComplexAccumulator acc = new ComplexAccumulator(lu.sign, 0);
+        for (int i = 0; i < n; i++) {
+            int at = 2 * (i * n + i);
+            acc.mulTo(lu.a[at], lu.a[at + 1]);
+        }
+        return acc.toComplexNum();
+    }
+
+    /**
+     * Computes the inverse of a square matrix.
+     * @return The inverse.
+     * @throws RTException If the matrix is not square, or singular.
+     */
+    public Matrix inverse() {
+        checkSquare("invert");
+        return new LU(this).solve(identity(new ComplexNum(rows, 0)));
+    }
+
+    /**
+     * Solves the linear system {@code A x = b}.
+     * @param b The right side, a vector or a matrix with a column for each system.
+     * @return The solution, a vector if the right side is one.
+     * @throws RTException If the matrix is not square or singular, or the sizes don't match.
+     */
+    public Value solve(Value b) {
+        checkSquare("solve a system of");
+
+        if (b instanceof Vector v) {
+            return toVector(new LU(this).solve(column(v, rows, "solve")));
+        }
+        if (b instanceof Matrix m) {
+            if (m.rows != rows) {
+                throw new RTException("Can't solve a system of a " + size() + " matrix with a " + m.size() + " matrix.");
+            }
+            return new LU(this).solve(m);
+        }
+        throw new RTException("The right side of a linear system must be a vector or a matrix.");
+    }
+
+    /**
+     * The LU decomposition of a square matrix, with partial pivoting: the rows of {@code P A} are the rows of
+     * {@code L U}. {@code L} (below the diagonal, with ones on it) and {@code U} are stored in one matrix.
+     */
+    private static final class LU {
+        private final int n;
+        private final double[] a;
+        private final int[] pivots;
+        private int sign = 1;
+        private boolean singular;
+
+        private LU(Matrix m) {
+            n = m.rows;
+            a = m.values.clone();
+            pivots = new int[n];
+            ComplexAccumulator acc = new ComplexAccumulator();
+
+            for (int k = 0; k < n; k++) {
+                //The row with the largest element in this column is the pivot
+                int p = k;
+                double best = -1;
+                for (int r = k; r < n; r++) {
+                    int at = 2 * (r * n + k);
+                    double mod = Math.hypot(a[at], a[at + 1]);
+                    if (mod > best) {
+                        best = mod;
+                        p = r;
+                    }
+                }
+
+                pivots[k] = p;
+                if (p != k) {
+                    swapRows(p, k);
+                    sign = -sign;
+                }
+
+                int kk = 2 * (k * n + k);
+                double pr = a[kk], pi = a[kk + 1];
+                if (pr == 0 && pi == 0) {
+                    singular = true;
+                    continue;
+                }
+
+                for (int r = k + 1; r < n; r++) {
+                    int rk = 2 * (r * n + k);
+                    acc.set(a[rk], a[rk + 1]).divTo(pr, pi);
+                    double fr = acc.real, fi = acc.imaginary;
+                    a[rk] = fr;
+                    a[rk + 1] = fi;
+
+                    int row = 2 * r * n, pivotRow = 2 * k * n;
+                    for (int c = k + 1; c < n; c++) {
+                        double ur = a[pivotRow + 2 * c], ui = a[pivotRow + 2 * c + 1];
+                        a[row + 2 * c] -= fr * ur - fi * ui;
+                        a[row + 2 * c + 1] -= fr * ui + fi * ur;
+                    }
+                }
+            }
+        }
+
+        private void swapRows(int p, int q) {
+            for (int c = 0; c < 2 * n; c++) {
+                double t = a[2 * p * n + c];
+                a[2 * p * n + c] = a[2 * q * n + c];
+                a[2 * q * n + c] = t;
+            }
+        }
+
+        /**
+         * Solves {@code A X = B} for each column of {@code B}.
+         */
+        private Matrix solve(Matrix b) {
+            if (singular) {
+                throw new RTException("The matrix is singular!");
+            }
+
+            int m = b.cols;
+            double[] x = b.values.clone();
+            ComplexAccumulator acc = new ComplexAccumulator();
+
+            //Apply the row swaps, then solve L Y = P B and U X = Y
+            for (int k = 0; k < n; k++) {
+                int p = pivots[k];
+                if (p != k) {
+                    for (int c = 0; c < 2 * m; c++) {
+                        double t = x[2 * p * m + c];
+                        x[2 * p * m + c] = x[2 * k * m + c];
+                        x[2 * k * m + c] = t;
+                    }
+                }
+            }
+
+            for (int r = 0; r < n; r++) {
+                for (int k = 0; k < r; k++) {
+                    subtractRow(x, m, r, k, a[2 * (r * n + k)], a[2 * (r * n + k) + 1]);
+                }
+            }
+
+            for (int r = n - 1; r >= 0; r--) {
+                for (int k = r + 1; k < n; k++) {
+                    subtractRow(x, m, r, k, a[2 * (r * n + k)], a[2 * (r * n + k) + 1]);
+                }
+
+                int rr = 2 * (r * n + r);
+                for (int c = 0; c < m; c++) {
+                    int at = 2 * (r * m + c);
+                    acc.set(x[at], x[at + 1]).divTo(a[rr], a[rr + 1]);
+                    x[at] = acc.real;
+                    x[at + 1] = acc.imaginary;
+                }
+            }
+
+            return new Matrix(n, m, x);
+        }
+
+        /**
+         * Subtracts a row of {@code X} multiplied by a factor from another row.
+         */
+        private static void subtractRow(double[] x, int m, int r, int k, double fr, double fi) {
+            for (int c = 0; c < m; c++) {
+                int to = 2 * (r * m + c), from = 2 * (k * m + c);
+                double xr = x[from], xi = x[from + 1];
+                x[to] -= fr * xr - fi * xi;
+                x[to + 1] -= fr * xi + fi * xr;
+            }
+        }
+    }
+
+    /**
+     * Multiplies two matrices, in blocks of {@link Matrix#BLOCK} along the inner dimension and the columns,
+     * so that the rows of the right matrix being used stay in the cache.
+     * <p>The zeros of the left matrix are skipped, unless the row of the right matrix they multiply has an
+     *    infinite or NaN element, since {@code 0 * Infinity} is NaN, like with {@link ComplexNum}.
+     */
+    private static Matrix product(Matrix a, Matrix b) {
+        if (a.cols != b.rows) {
+            throw new RTException("Can't multiply a " + a.size() + " matrix by a " + b.size() + " matrix.");
+        }
+
+        Matrix out = new Matrix(a.rows, b.cols);
+        boolean[] finite = finiteRows(b);
+        int panels = (a.rows + PANEL - 1) / PANEL;
+        IntStream stream = IntStream.range(0, panels);
+        if ((long) a.rows * a.cols * b.cols >= PARALLEL_WORK) {
+            stream = stream.parallel();
+        }
+
+        stream.forEach(p -> panel(a, b, finite, out, p * PANEL, Math.min(a.rows, (p + 1) * PANEL)));
+        return out;
+    }
+
+    /**
+     * Finds the rows of a matrix whose elements are all finite.
+     */
+    private static boolean[] finiteRows(Matrix m) {
+        boolean[] finite = new boolean[m.rows];
+        for (int r = 0; r < m.rows; r++) {
+            finite[r] = true;
+            for (int c = 2 * r * m.cols; c < 2 * (r + 1) * m.cols; c++) {
+                if (!Double.isFinite(m.values[c])) {
+                    finite[r] = false;
+                    break;
+                }
+            }
+        }
+        return finite;
+    }
+
+    /**
+     * Computes the rows of a product from one row to another.
+     * @param finite Which rows of {@code b} are all finite, so that zeros multiplying them can be skipped.
+     */
+    private static void panel(Matrix a, Matrix b, boolean[] finite, Matrix out, int from, int to) {
+        int n = a.cols, m = b.cols;
+        double[] av = a.values, bv = b.values, ov = out.values;
+
+        for (int kb = 0; kb < n; kb += BLOCK) {
+            int kEnd = Math.min(n, kb + BLOCK);
+            for (int jb = 0; jb < m; jb += BLOCK) {
+                int jEnd = Math.min(m, jb + BLOCK);
+
+                for (int i = from; i < to; i++) {
+                    int row = 2 * i * m;
+                    for (int k = kb; k < kEnd; k++) {
+                        double ar = av[2 * (i * n + k)], ai = av[2 * (i * n + k) + 1];
+                        if (ar == 0 && ai == 0 && finite[k]) {
+                            continue;
+                        }
+
+                        int bRow = 2 * k * m;
+                        for (int j = jb; j < jEnd; j++) {
+                            double br = bv[bRow + 2 * j], bi = bv[bRow + 2 * j + 1];
+                            ov[row + 2 * j] += ar * br - ai * bi;
+                            ov[row + 2 * j + 1] += ar * bi + ai * br;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Matrix operand(Value v, String op) {
+        if (v instanceof Matrix m) {
+            return m;
+        }
+        throw new RTException("Can't " + op + " a matrix and " + (v instanceof Vector ? "a vector." : "a number."));
+    }
+
+    private static void sameSize(Matrix a, Matrix b, String op) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new RTException("Can't " + op + " a " + a.size() + " matrix and a " + b.size() + " matrix.");
+        }
+    }
+
+    private void checkSquare(String op) {
+        if (rows != cols) {
+            throw new RTException("Can't " + op + " a " + size() + " matrix, it is not square.");
+        }
+    }
+
+    /**
+     * Turns a vector into a column.
+     */
+    private static Matrix column(Vector v, int length, String op) {
+        if (v.length() != length) {
+            throw new RTException("Can't " + op + " a matrix and a vector of length " + v.length()
+                    + ", the length should be " + length + ".");
+        }
+
+        Matrix m = new Matrix(length, 1);
+        for (int i = 0; i < length; i++) {
+            m.values[2 * i] = v.re[i];
+            m.values[2 * i + 1] = v.im == null ? 0 : v.im[i];
+        }
+        return m;
+    }
+
+    /**
+     * Turns a row or a column into a vector.
+     */
+    private static Vector toVector(Matrix m) {
+        int n = m.values.length / 2;
+        double[] re = new double[n], im = new double[n];
+        boolean real = true;
+        for (int i = 0; i < n; i++) {
+            re[i] = m.values[2 * i];
+            im[i] = m.values[2 * i + 1];
+            real &= im[i] == 0;
+        }
+        return new Vector(re, real ? null : im);
+    }
+
+    private String size() {
+        return rows + "x" + cols;
+    }
+
+    public String toString() {
+        Formatter f = new Formatter();
+        StringBuilder sb = new StringBuilder("[");
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                sb.append("; ");
+            }
+            for (int c = 0; c < cols; c++) {
+                if (c > 0) {
+                    sb.append(", ");
+                }
+                int at = 2 * (r * cols + c);
+                sb.append(f.toString(values[at], values[at + 1]));
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
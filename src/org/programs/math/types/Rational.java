@@ -0,0 +1,655 @@
+package org.programs.math.types;
+
+import org.programs.math.exceptions.RTException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * <p>Represents an exact rational number, like 120 or 1/3. These are only made in the exact mode (see
+ *    {@link Rational#setExactMode(boolean)}), where whole number literals, factorials, permutations,
+ *    combinations and integer sums and products keep all their digits.
+ * <p>The numerator and denominator are kept in {@code long}s, and the arithmetic checks for overflow with
+ *    {@link Math#multiplyExact(long, long)} and friends. Only the numbers which don't fit are promoted to
+ *    {@link BigInteger}s, and they are demoted back to {@code long}s when they fit again.
+ * <p>Operations with numbers which are not whole (or not real) give a {@link ComplexNum}, as do results
+ *    with more than {@link Rational#MAX_BITS} bits.
+ */
+public final class Rational implements Value {
+    /**
+     * The most bits of the numerator or the denominator. Larger results are demoted to doubles.
+     */
+    public static final int MAX_BITS = 1 << 20;
+
+    /**
+     * The largest whole double which is promoted. All whole numbers up to it are exact doubles.
+     */
+    private static final double MAX_SAFE = 0x1p53;
+
+    /**
+     * The largest {@code n} whose combinations are computed from prime factors.
+     */
+    private static final long SIEVE_LIMIT = 1 << 22;
+
+    /**
+     * The most numbers multiplied one after another, before splitting a product in halves.
+     */
+    private static final int LEAF = 32;
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    public static final Rational ZERO = new Rational(0, 1);
+    public static final Rational ONE = new Rational(1, 1);
+
+    private static volatile boolean exactMode;
+
+    /**
+     * The numerator and the denominator, if they fit in longs. The denominator is positive, and they have
+     * no common factor.
+     */
+    private final long num, den;
+
+    /**
+     * The numerator and the denominator if they don't fit in longs, else {@code null}.
+     */
+    private final BigInteger bigNum, bigDen;
+
+    private Rational(long num, long den) {
+        this.num = num;
+        this.den = den;
+        bigNum = bigDen = null;
+    }
+
+    private Rational(BigInteger num, BigInteger den) {
+        this.num = this.den = 0;
+        bigNum = num;
+        bigDen = den;
+    }
+
+    /**
+     * Checks if the exact mode is on.
+     * @return {@code true} if whole numbers are kept exact.
+     */
+    public static boolean isExactMode() {
+        return exactMode;
+    }
+
+    /**
+     * Turns the exact mode on or off. It is off by default, and all numbers are doubles.
+     * <p>In the exact mode, statements are always interpreted, since the bytecode and batch evaluators work
+     *    on doubles only.
+     * @param on {@code true} to keep whole numbers exact.
+     */
+    public static void setExactMode(boolean on) {
+        exactMode = on;
+    }
+
+    /**
+     * Creates a whole number.
+     * @param n The number.
+     * @return The rational number.
+     */
+    public static Rational of(long n) {
+        return n == 0 ? ZERO : n == 1 ? ONE : new Rational(n, 1);
+    }
+
+    /**
+     * Converts a value to a rational number, if it is one exactly.
+     * @param v The value.
+     * @return The rational number, or {@code null} if the value is not a whole real number up to 2^53 or a
+     * rational number.
+     */
+    public static Rational exact(Value v) {
+        if (v instanceof Rational q) {
+            return q;
+        }
+        if (v instanceof ComplexNum z && z.isInteger() && Math.abs(z.real) <= MAX_SAFE) {
+            return of((long) z.real);
+        }
+        return null;
+    }
+
+    /**
+     * Converts a rational number to a double, and leaves other values as they are.
+     * @param v The value.
+     * @return The value, with no rational number.
+     */
+    public static Value demote(Value v) {
+        return v instanceof Rational q ? q.toComplexNum() : v;
+    }
+
+    /**
+     * Creates a rational number from a fraction, which is reduced.
+     * @param n The numerator.
+     * @param d The denominator.
+     * @return The number, or the nearest double if it has too many bits.
+     * @throws RTException If the denominator is 0.
+     */
+    public static Value of(BigInteger n, BigInteger d) {
+        Rational q = big(n, d);
+        return q != null ? q : new ComplexNum(new BigDecimal(n).divide(new BigDecimal(d), MathContext.DECIMAL64)
+                .doubleValue(), 0);
+    }
+
+    /**
+     * Creates a rational number from a fraction, which is reduced.
+     */
+    private static Rational of(long n, long d) {
+        if (d == 0) {
+            throw new RTException("Division by 0!");
+        }
+        if (n == Long.MIN_VALUE || d == Long.MIN_VALUE) {
+            return big(BigInteger.valueOf(n), BigInteger.valueOf(d));
+        }
+
+        if (d < 0) {
+            n = -n;
+            d = -d;
+        }
+        long g = gcd(Math.abs(n), d);
+        return d == g ? of(n / g) : new Rational(n / g, d / g);
+    }
+
+    /**
+     * Creates a rational number from a fraction of big integers, which is reduced and demoted to longs if
+     * it fits.
+     * @return The rational number, or {@code null} if it has too many bits.
+     */
+    private static Rational big(BigInteger n, BigInteger d) {
+        if (d.signum() == 0) {
+            throw new RTException("Division by 0!");
+        }
+        if (d.signum() < 0) {
+            n = n.negate();
+            d = d.negate();
+        }
+
+        BigInteger g = n.gcd(d);
+        if (!g.equals(BigInteger.ONE)) {
+            n = n.divide(g);
+            d = d.divide(g);
+        }
+
+        if (n.bitLength() > MAX_BITS || d.bitLength() > MAX_BITS) {
+            return null;
+        }
+        if (fits(n) && fits(d) && d.longValue() != Long.MIN_VALUE) {
+            return d.equals(BigInteger.ONE) ? of(n.longValue()) : new Rational(n.longValue(), d.longValue());
+        }
+        return new Rational(n, d);
+    }
+
+    private static boolean fits(BigInteger n) {
+        return n.compareTo(LONG_MIN) >= 0 && n.compareTo(LONG_MAX) <= 0;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a == 0 ? 1 : a;
+    }
+
+    private boolean isBig() {
+        return bigNum != null;
+    }
+
+    /**
+     * Returns the numerator, which has the sign of the number.
+     * @return The numerator.
+     */
+    public BigInteger numerator() {
+        return isBig() ? bigNum : BigInteger.valueOf(num);
+    }
+
+    /**
+     * Returns the denominator, which is positive.
+     * @return The denominator.
+     */
+    public BigInteger denominator() {
+        return isBig() ? bigDen : BigInteger.valueOf(den);
+    }
+
+    /**
+     * Returns the result, or the double result if it has too many bits.
+     */
+    private Value settle(Rational q, Rational other, char op) {
+        if (q != null) {
+            return q;
+        }
+
+        ComplexNum a = toComplexNum(), b = other.toComplexNum();
+        return switch (op) {
+            case '+' -> a.add(b);
+            case '-' -> a.subtract(b);
+            case '*' -> a.multiply(b);
+            default -> a.divide(b);
+        };
+    }
+
+    /**
+     * Adds two rational numbers.
+     * @param other The other number.
+     * @return The sum.
+     */
+    public Value add(Rational other) {
+        if (!isBig() && !other.isBig()) {
+            try {
+                if (den == 1 && other.den == 1) {
+                    return of(Math.addExact(num, other.num));
+                }
+                return of(Math.addExact(Math.multiplyExact(num, other.den), Math.multiplyExact(other.num, den)),
+                        Math.multiplyExact(den, other.den));
+            } catch (ArithmeticException e) {
+                //Promoted below
+            }
+        }
+
+        BigInteger n = numerator().multiply(other.denominator()).add(other.numerator().multiply(denominator()));
+        return settle(big(n, denominator().multiply(other.denominator())), other, '+');
+    }
+
+    /**
+     * Subtracts two rational numbers.
+     * @param other The other number.
+     * @return The difference.
+     */
+    public Value subtract(Rational other) {
+        if (!isBig() && !other.isBig()) {
+            try {
+                if (den == 1 && other.den == 1) {
+                    return of(Math.subtractExact(num, other.num));
+                }
+                return of(Math.subtractExact(Math.multiplyExact(num, other.den), Math.multiplyExact(other.num, den)),
+                        Math.multiplyExact(den, other.den));
+            } catch (ArithmeticException e) {
+                //Promoted below
+            }
+        }
+
+        BigInteger n = numerator().multiply(other.denominator()).subtract(other.numerator().multiply(denominator()));
+        return settle(big(n, denominator().multiply(other.denominator())), other, '-');
+    }
+
+    /**
+     * Multiplies two rational numbers.
+     * @param other The other number.
+     * @return The product.
+     */
+    public Value multiply(Rational other) {
+        if (!isBig() && !other.isBig()) {
+            try {
+                if (den == 1 && other.den == 1) {
+                    return of(Math.multiplyExact(num, other.num));
+                }
+                return of(Math.multiplyExact(num, other.num), Math.multiplyExact(den, other.den));
+            } catch (ArithmeticException e) {
+                //Promoted below
+            }
+        }
+
+        return settle(big(numerator().multiply(other.numerator()), denominator().multiply(other.denominator())),
+                other, '*');
+    }
+
+    /**
+     * Divides two rational numbers.
+     * @param other The divisor.
+     * @return The quotient.
+     * @throws RTException If the divisor is zero.
+     */
+    public Value divide(Rational other) {
+        if (other.signum() == 0) {
+            throw new RTException("Division by 0!");
+        }
+
+        if (!isBig() && !other.isBig()) {
+            try {
+                return of(Math.multiplyExact(num, other.den), Math.multiplyExact(den, other.num));
+            } catch (ArithmeticException e) {
+                //Promoted below
+            }
+        }
+
+        return settle(big(numerator().multiply(other.denominator()), denominator().multiply(other.numerator())),
+                other, '/');
+    }
+
+    /**
+     * Divides two rational numbers, and truncates the quotient like {@link ComplexNum#intDivide(ComplexNum)}.
+     * @param other The divisor.
+     * @return The truncated quotient, or {@code null} if it has too many bits.
+     * @throws RTException If the divisor is zero.
+     */
+    public Rational intDivide(Rational other) {
+        if (other.signum() == 0) {
+            throw new RTException("Division by 0!");
+        }
+
+        if (!isBig() && !other.isBig() && den == 1 && other.den == 1 && !(num == Long.MIN_VALUE && other.num == -1)) {
+            return of(num / other.num);
+        }
+
+        BigInteger n = numerator().multiply(other.denominator());
+        BigInteger d = denominator().multiply(other.numerator());
+        return big(n.divide(d), BigInteger.ONE);
+    }
+
+    /**
+     * Raises this number to a whole power.
+     * @param other The power.
+     * @return The power, or {@code null} if the power is not whole or the result has too many bits.
+     * @throws RTException If zero is raised to a negative power.
+     */
+    public Rational pow(Rational other) {
+        if (!other.isInteger() || other.isBig()) {
+            return null;
+        }
+
+        long e = other.num;
+        if (e < 0) {
+            if (signum() == 0) {
+                throw new RTException("Division by 0!");
+            }
+            return e == Long.MIN_VALUE ? null : reciprocal().pow(of(-e));
+        }
+
+        if (!isBig()) {
+            try {
+                return of(pow(num, e), pow(den, e));
+            } catch (ArithmeticException ex) {
+                //Promoted below
+            }
+        }
+
+        BigInteger n = numerator(), d = denominator();
+        if (n.abs().compareTo(BigInteger.ONE) <= 0 && d.equals(BigInteger.ONE)) {
+            //0, 1 and -1 stay small whatever the power
+            return n.signum() == 0 ? (e == 0 ? ONE : ZERO) : of(n.signum() < 0 && (e & 1) == 1 ? -1 : 1);
+        }
+
+        long bits = Math.max(n.bitLength(), d.bitLength());
+        if (e > MAX_BITS || bits * e > MAX_BITS) {
+            return null;
+        }
+        return big(n.pow((int) e), d.pow((int) e));
+    }
+
+    /**
+     * Raises a long to a power by repeated squaring.
+     * @throws ArithmeticException If the result overflows.
+     */
+    private static long pow(long base, long e) {
+        long result = 1;
+        while (true) {
+            if ((e & 1) == 1) {
+                result = Math.multiplyExact(result, base);
+            }
+            e >>= 1;
+            if (e == 0) {
+                return result;
+            }
+            base = Math.multiplyExact(base, base);
+        }
+    }
+
+    /**
+     * Negates this number.
+     * @return The result.
+     */
+    public Rational negate() {
+        if (!isBig() && num != Long.MIN_VALUE) {
+            return new Rational(-num, den);
+        }
+        return big(numerator().negate(), denominator());
+    }
+
+    /**
+     * Returns the absolute value of this number.
+     * @return The result.
+     */
+    public Rational abs() {
+        return signum() < 0 ? negate() : this;
+    }
+
+    private Rational reciprocal() {
+        if (!isBig()) {
+            return of(den, num);
+        }
+        return big(bigDen, bigNum);
+    }
+
+    /**
+     * Performs the factorial, with all its digits. Numbers which are not whole use the gamma function, in
+     * doubles (see {@link ComplexNum#factorial()}).
+     * @return The result, or the double result if it has too many bits.
+     * @throws RTException If this is a negative whole number.
+     */
+    public Value factorial() {
+        if (isInteger() && signum() < 0) {
+            throw new RTException("Can't compute factorial for value: " + this);
+        }
+        if (!isInteger() || isBig() || num > MAX_BITS) {
+            return toComplexNum().factorial();
+        }
+
+        return fallingProduct(num, num, true);
+    }
+
+    /**
+     * Computes the number of permutations of {@code r} things out of {@code n}, which is the falling
+     * product {@code n (n - 1) ... (n - r + 1)}.
+     * @param n The number of things.
+     * @param r The number of things chosen.
+     * @return The result, or the double result if it has too many bits.
+     * @throws RTException If the numbers are not whole, or not {@code 0 <= r <= n}.
+     */
+    public static Value permutations(Rational n, Rational r) {
+        checkChoice(n, r);
+        return fallingProduct(n.num, r.num, false);
+    }
+
+    /**
+     * Computes the number of combinations of {@code r} things out of {@code n}, which is
+     * {@code n! / (r! (n - r)!)}.
+     * <p>It is computed with the multiplicative formula in longs while the result fits, and as a falling
+     *    product divided by a factorial otherwise, never as a ratio of full factorials.
+     * @param n The number of things.
+     * @param r The number of things chosen.
+     * @return The result, or the double result if it has too many bits.
+     * @throws RTException If the numbers are not whole, or not {@code 0 <= r <= n}.
+     */
+    public static Value combinations(Rational n, Rational r) {
+        checkChoice(n, r);
+        long k = Math.min(r.num, n.num - r.num);
+
+        long c = 1;
+        long i = 1;
+        try {
+            for (; i <= k; i++) {
+                //c (n - k + i) is divisible by i, and c / g and i / g have no common factor
+                long g = gcd(c, i);
+                c = Math.multiplyExact(c / g, (n.num - k + i) / (i / g));
+            }
+            return of(c);
+        } catch (ArithmeticException e) {
+            //Promoted below
+        }
+
+        if (bits(n.num - k + 1, n.num) > MAX_BITS) {
+            return ComplexNum.combinations(n.toComplexNum(), of(k).toComplexNum());
+        }
+
+        BigInteger exact = n.num <= SIEVE_LIMIT ? primeProduct(n.num, k)
+                                                : product(n.num - k + 1, n.num).divide(product(1, k));
+        Rational q = big(exact, BigInteger.ONE);
+        return q != null ? q : ComplexNum.combinations(n.toComplexNum(), of(k).toComplexNum());
+    }
+
+    /**
+     * Computes {@code C(n, k)} from its prime factors. The exponent of a prime {@code p} is the number of
+     * carries when adding {@code k} and {@code n - k} in base {@code p} (Kummer's theorem), so each power
+     * {@code p^e} is at most {@code n}, and there is no division.
+     */
+    private static BigInteger primeProduct(long n, long k) {
+        int size = (int) n;
+        boolean[] composite = new boolean[size + 1];
+        long[] factors = new long[size];
+        int count = 0;
+
+        for (int p = 2; p <= size; p++) {
+            if (composite[p]) {
+                continue;
+            }
+            for (long m = (long) p * p; m <= size; m += p) {
+                composite[(int) m] = true;
+            }
+
+            long power = 1;
+            for (long q = p; q <= n; q *= p) {
+                if (n / q - k / q - (n - k) / q == 1) {
+                    power *= p;
+                }
+                if (q > n / p) {
+                    break;
+                }
+            }
+            if (power > 1) {
+                factors[count++] = power;
+            }
+        }
+
+        return product(factors, 0, count);
+    }
+
+    private static void checkChoice(Rational n, Rational r) {
+        if (!n.isInteger() || n.isBig() || n.num < 0) {
+            throw new RTException("First parameter of permutation/combination is not valid!");
+        }
+        if (!r.isInteger() || r.isBig() || r.num < 0 || r.num > n.num) {
+            throw new RTException("Second parameter of permutation/combination is not valid!");
+        }
+    }
+
+    /**
+     * Computes {@code n (n - 1) ... (n - r + 1)}, in longs while it fits.
+     */
+    private static Value fallingProduct(long n, long r, boolean factorial) {
+        long p = 1;
+        long i = n, end = n - r;
+        try {
+            for (; i > end; i--) {
+                p = Math.multiplyExact(p, i);
+            }
+            return of(p);
+        } catch (ArithmeticException e) {
+            //Promoted below
+        }
+
+        if (bits(end + 1, i) > MAX_BITS) {
+            ComplexNum z = new ComplexNum(n, 0);
+            return factorial ? z.factorial() : ComplexNum.permutations(z, new ComplexNum(r, 0));
+        }
+        return big(BigInteger.valueOf(p).multiply(product(end + 1, i)), BigInteger.ONE);
+    }
+
+    /**
+     * Estimates the number of bits of the product of the numbers from one number to another.
+     */
+    private static double bits(long from, long to) {
+        double bits = 0;
+        if (to - from > MAX_BITS) {
+            return Double.POSITIVE_INFINITY;
+        }
+        for (long i = Math.max(from, 2); i <= to; i++) {
+            bits += Math.log(i);
+        }
+        return bits / Math.log(2);
+    }
+
+    /**
+     * Multiplies the numbers from one number to another, by splitting the range in halves so that the
+     * big integers multiplied have similar sizes.
+     */
+    private static BigInteger product(long from, long to) {
+        if (to - from < LEAF) {
+            long[] xs = new long[(int) (to - from + 1)];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = from + i;
+            }
+            return product(xs, 0, xs.length);
+        }
+
+        long mid = (from + to) >>> 1;
+        return product(from, mid).multiply(product(mid + 1, to));
+    }
+
+    /**
+     * Multiplies some positive numbers of an array, in the same way. The numbers are first multiplied in a
+     * long while it doesn't overflow.
+     */
+    private static BigInteger product(long[] xs, int from, int to) {
+        if (to - from > LEAF) {
+            int mid = (from + to) >>> 1;
+            return product(xs, from, mid).multiply(product(xs, mid, to));
+        }
+
+        BigInteger p = BigInteger.ONE;
+        long small = 1;
+        for (int i = from; i < to; i++) {
+            long x = xs[i];
+            if (Math.multiplyHigh(small, x) == 0 && small * x > 0) {
+                small *= x;
+            } else {
+                p = p.multiply(BigInteger.valueOf(small));
+                small = x;
+            }
+        }
+        return p.multiply(BigInteger.valueOf(small));
+    }
+
+    /**
+     * Checks if this is a whole number.
+     * @return {@code true} if the denominator is 1.
+     */
+    public boolean isInteger() {
+        return isBig() ? bigDen.equals(BigInteger.ONE) : den == 1;
+    }
+
+    /**
+     * Returns the sign of this number.
+     * @return -1, 0 or 1.
+     */
+    public int signum() {
+        return isBig() ? bigNum.signum() : Long.signum(num);
+    }
+
+    /**
+     * Converts this number to the nearest double.
+     * @return The number.
+     */
+    public ComplexNum toComplexNum() {
+        if (!isBig()) {
+            return new ComplexNum(den == 1 ? num : (double) num / den, 0);
+        }
+        if (bigDen.equals(BigInteger.ONE)) {
+            return new ComplexNum(bigNum.doubleValue(), 0);
+        }
+        return new ComplexNum(new BigDecimal(bigNum).divide(new BigDecimal(bigDen), MathContext.DECIMAL64)
+                .doubleValue(), 0);
+    }
+
+    /**
+     * Formats the number with all its digits, like {@code 120}, {@code -7/2}.
+     */
+    public String toString() {
+        if (!isBig()) {
+            return den == 1 ? Long.toString(num) : num + "/" + den;
+        }
+        return bigDen.equals(BigInteger.ONE) ? bigNum.toString() : bigNum + "/" + bigDen;
+    }
+}
@@ -1,11 +1,14 @@
 package org.programs.math.types;
 
 /**
- * <p>An interface which represents some kind of value, like a function or a number.
+ * <p>An interface which represents some kind of value, like a function, a number, an exact number, a vector or a matrix.
  * <p>This class is just for designing purposes, and nothing else really.
  *
  * @see ComplexNum
  * @see Func
+ * @see Matrix
+ * @see Rational
+ * @see Vector
  */
 public interface Value {
     //does nothing
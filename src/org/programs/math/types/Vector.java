@@ -0,0 +1,529 @@
+package org.programs.math.types;
+
+import org.programs.math.exceptions.RTException;
+import org.programs.math.io.Formatter;
+
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>Represents a list of complex numbers, like [1, 2, 3 + i] or range(0, 1, 0.001).
+ * <p>The parts are stored in primitive arrays, and the imaginary parts are left out while all of them are
+ *    zero. The operators work on vectors element by element, so a formula over a whole vector is evaluated
+ *    in one pass per operator, instead of once per element.
+ * <p>A number used with a vector is broadcast to all of its elements, so {@code 2 * [1, 2]} is
+ *    {@code [2, 4]}. Two vectors must have the same length.
+ * <p>Each operation gives the same elements as the same operation on {@link ComplexNum}s.
+ */
+public final class Vector implements Value {
+    /**
+     * The longest vector that can be created.
+     */
+    public static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * The real parts of the elements.
+     */
+    public final double[] re;
+
+    /**
+     * The imaginary parts of the elements, or {@code null} if they are all zero.
+     */
+    public final double[] im;
+
+    /**
+     * Creates a vector. The arrays are not copied.
+     * @param re The real parts.
+     * @param im The imaginary parts, or {@code null} if they are all zero.
+     */
+    public Vector(double[] re, double[] im) {
+        this.re = re;
+        this.im = im;
+    }
+
+    /**
+     * Creates a vector of real numbers. The array is not copied.
+     * @param re The numbers.
+     */
+    public Vector(double[] re) {
+        this(re, null);
+    }
+
+    /**
+     * Returns the number of elements.
+     * @return The length.
+     */
+    public int length() {
+        return re.length;
+    }
+
+    /**
+     * Checks if all the elements are real.
+     * @return {@code true} if there are no imaginary parts.
+     */
+    public boolean isReal() {
+        return im == null;
+    }
+
+    /**
+     * Returns an element.
+     * @param i The index of the element.
+     * @return The element.
+     */
+    public ComplexNum get(int i) {
+        return new ComplexNum(re[i], im == null ? 0 : im[i]);
+    }
+
+    /**
+     * Creates a vector from numbers and vectors, which are joined one after another.
+     * @param values The numbers and vectors.
+     * @return The vector.
+     * @throws RTException If the vector would be too long, or a value is a matrix.
+     */
+    public static Vector of(List<Value> values) {
+        long n = 0;
+        boolean real = true;
+        for (Value v : values) {
+            if (v instanceof Vector vec) {
+                n += vec.length();
+                real &= vec.isReal();
+            } else if (v instanceof Matrix) {
+                throw new RTException("A vector can't hold a matrix.");
+            } else {
+                n++;
+                real &= ((ComplexNum) Rational.demote(v)).isReal();
+            }
+        }
+        checkLength(n);
+
+        double[] re = new double[(int) n], im = real ? null : new double[(int) n];
+        int at = 0;
+        for (Value v : values) {
+            if (v instanceof Vector vec) {
+                System.arraycopy(vec.re, 0, re, at, vec.length());
+                if (im != null && vec.im != null) {
+                    System.arraycopy(vec.im, 0, im, at, vec.length());
+                }
+                at += vec.length();
+            } else {
+                ComplexNum z = (ComplexNum) Rational.demote(v);
+                re[at] = z.real;
+                if (im != null) {
+                    im[at] = z.imaginary;
+                }
+                at++;
+            }
+        }
+
+        return new Vector(re, im);
+    }
+
+    /**
+     * Creates the evenly spaced numbers from a number up to (but not including) another one.
+     * <p>The elements are computed as {@code from + i * step}, so the error doesn't add up along the vector.
+     * @param from The first number.
+     * @param to The end of the range.
+     * @param step The difference between two elements.
+     * @return The vector.
+     * @throws RTException If the numbers are not real, or the step doesn't go from the start to the end.
+     */
+    public static Vector range(ComplexNum from, ComplexNum to, ComplexNum step) {
+        if (!from.isReal() || !to.isReal() || !step.isReal()) {
+            throw new RTException("Range's parameters must be real!");
+        }
+
+        double a = from.real, b = to.real, s = step.real;
+        if (s == 0 || !Double.isFinite(a) || !Double.isFinite(b) || !Double.isFinite(s)) {
+            throw new RTException("Range's step must be a finite number other than 0!");
+        }
+
+        double count = Math.ceil((b - a) / s);
+        long n = count > 0 ? (long) count : 0;
+        checkLength(n);
+
+        double[] re = new double[(int) n];
+        for (int i = 0; i < re.length; i++) {
+            re[i] = a + i * s;
+        }
+        return new Vector(re);
+    }
+
+    private static void checkLength(long n) {
+        if (n > MAX_LENGTH) {
+            throw new RTException("The vector would have " + n + " elements, the most is " + MAX_LENGTH + ".");
+        }
+    }
+
+    /**
+     * An operation applied to an accumulator with the parts of another number.
+     */
+    @FunctionalInterface
+    private interface Kernel {
+        void apply(ComplexAccumulator acc, double c, double d);
+    }
+
+    /**
+     * Adds element by element.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @return The sums.
+     * @throws RTException If the vectors have different lengths.
+     */
+    public static Vector add(Value l, Value r) {
+        int n = length(l, r);
+        double[] ar = re(l), ai = im(l), br = re(r), bi = im(r);
+        int sa = step(l), sb = step(r);
+
+        double[] or = new double[n];
+        for (int i = 0; i < n; i++) {
+            or[i] = ar[i * sa] + br[i * sb];
+        }
+        if (ai == null && bi == null) {
+            return new Vector(or);
+        }
+
+        double[] oi = new double[n];
+        for (int i = 0; i < n; i++) {
+            oi[i] = part(ai, i * sa) + part(bi, i * sb);
+        }
+        return settle(or, oi);
+    }
+
+    /**
+     * Subtracts element by element.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @return The differences.
+     * @throws RTException If the vectors have different lengths.
+     */
+    public static Vector subtract(Value l, Value r) {
+        int n = length(l, r);
+        double[] ar = re(l), ai = im(l), br = re(r), bi = im(r);
+        int sa = step(l), sb = step(r);
+
+        double[] or = new double[n];
+        for (int i = 0; i < n; i++) {
+            or[i] = ar[i * sa] - br[i * sb];
+        }
+        if (ai == null && bi == null) {
+            return new Vector(or);
+        }
+
+        double[] oi = new double[n];
+        for (int i = 0; i < n; i++) {
+            oi[i] = part(ai, i * sa) - part(bi, i * sb);
+        }
+        return settle(or, oi);
+    }
+
+    /**
+     * Multiplies element by element.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @return The products.
+     * @throws RTException If the vectors have different lengths.
+     */
+    public static Vector multiply(Value l, Value r) {
+        //Real numbers multiply as doubles, unless an infinity would make the imaginary part NaN
+        if (im(l) == null && im(r) == null && finite(re(l)) && finite(re(r))) {
+            int n = length(l, r);
+            double[] ar = re(l), br = re(r), or = new double[n];
+            int sa = step(l), sb = step(r);
+            for (int i = 0; i < n; i++) {
+                or[i] = ar[i * sa] * br[i * sb];
+            }
+            return new Vector(or);
+        }
+
+        return zip(l, r, ComplexAccumulator::mulTo);
+    }
+
+    /**
+     * Divides element by element.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @return The quotients.
+     * @throws RTException If the vectors have different lengths, or a divisor is zero.
+     */
+    public static Vector divide(Value l, Value r) {
+        if (im(l) == null && im(r) == null && divisible(re(r))) {
+            int n = length(l, r);
+            double[] ar = re(l), br = re(r), or = new double[n];
+            int sa = step(l), sb = step(r);
+            for (int i = 0; i < n; i++) {
+                or[i] = ar[i * sa] / br[i * sb];
+            }
+            return new Vector(or);
+        }
+
+        return zip(l, r, ComplexAccumulator::divTo);
+    }
+
+    /**
+     * Divides element by element, and truncates the quotients.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @return The truncated quotients.
+     * @throws RTException If the vectors have different lengths, or a divisor is zero.
+     */
+    public static Vector intDivide(Value l, Value r) {
+        return zip(l, r, (acc, c, d) -> {
+            acc.divTo(c, d);
+            acc.set((long) acc.real, (long) acc.imaginary);
+        });
+    }
+
+    /**
+     * Raises to powers element by element.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @return The powers.
+     * @throws RTException If the vectors have different lengths.
+     */
+    public static Vector pow(Value l, Value r) {
+        return zip(l, r, ComplexAccumulator::powTo);
+    }
+
+    /**
+     * Applies a function of two numbers element by element.
+     * @param l A number or a vector.
+     * @param r A number or a vector.
+     * @param f The function.
+     * @return The results.
+     * @throws RTException If the vectors have different lengths.
+     */
+    public static Vector map(Value l, Value r, BinaryOperator<ComplexNum> f) {
+        int n = length(l, r);
+        double[] or = new double[n], oi = new double[n];
+        for (int i = 0; i < n; i++) {
+            ComplexNum z = f.apply(element(l, i), element(r, i));
+            or[i] = z.real;
+            oi[i] = z.imaginary;
+        }
+        return settle(or, oi);
+    }
+
+    /**
+     * Applies a function element by element.
+     * @param f The function.
+     * @return The results.
+     */
+    public Vector map(UnaryOperator<ComplexNum> f) {
+        int n = length();
+        double[] or = new double[n], oi = new double[n];
+        for (int i = 0; i < n; i++) {
+            ComplexNum z = f.apply(get(i));
+            or[i] = z.real;
+            oi[i] = z.imaginary;
+        }
+        return settle(or, oi);
+    }
+
+    /**
+     * Negates the elements.
+     * @return The result.
+     */
+    public Vector negate() {
+        return new Vector(negate(re), im == null ? null : negate(im));
+    }
+
+    /**
+     * Returns the conjugates of the elements.
+     * @return The result.
+     */
+    public Vector conjugate() {
+        return im == null ? this : new Vector(re, negate(im));
+    }
+
+    /**
+     * Returns the moduli of the elements.
+     * @return The result.
+     */
+    public Vector modulus() {
+        double[] out = new double[length()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = im == null ? Math.sqrt(re[i] * re[i]) : Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+        }
+        return new Vector(out);
+    }
+
+    /**
+     * Returns the factorials of the elements.
+     * @return The result.
+     * @throws RTException If an element is not a whole number.
+     */
+    public Vector factorial() {
+        return map(ComplexNum::factorial);
+    }
+
+    /**
+     * Adds up the elements.
+     * @return The sum, which is 0 for an empty vector.
+     */
+    public ComplexNum sum() {
+        double r = 0, i = 0;
+        for (int k = 0; k < re.length; k++) {
+            r += re[k];
+            i += part(im, k);
+        }
+        return new ComplexNum(r, i);
+    }
+
+    /**
+     * Multiplies the elements.
+     * @return The product, which is 1 for an empty vector.
+     */
+    public ComplexNum product() {
+        ComplexAccumulator acc = new ComplexAccumulator(1, 0);
+        for (int k = 0; k < re.length; k++) {
+            acc.mulTo(re[k], part(im, k));
+        }
+        return acc.toComplexNum();
+    }
+
+    /**
+     * Returns the greatest element. NaN if any element is NaN.
+     * @return The element.
+     * @throws RTException If the vector is empty, or not real.
+     */
+    public ComplexNum max() {
+        checkComparable("max");
+        double m = re[0];
+        for (double x : re) {
+            m = Math.max(m, x);
+        }
+        return new ComplexNum(m, 0);
+    }
+
+    /**
+     * Returns the least element. NaN if any element is NaN.
+     * @return The element.
+     * @throws RTException If the vector is empty, or not real.
+     */
+    public ComplexNum min() {
+        checkComparable("min");
+        double m = re[0];
+        for (double x : re) {
+            m = Math.min(m, x);
+        }
+        return new ComplexNum(m, 0);
+    }
+
+    private void checkComparable(String fn) {
+        if (re.length == 0) {
+            throw new RTException("Can't compute " + fn + " of an empty vector.");
+        }
+        if (im != null) {
+            throw new RTException("Can't compute " + fn + " of complex numbers.");
+        }
+    }
+
+    /**
+     * Applies an operation on two numbers element by element, through an accumulator.
+     */
+    private static Vector zip(Value l, Value r, Kernel kernel) {
+        int n = length(l, r);
+        double[] ar = re(l), ai = im(l), br = re(r), bi = im(r);
+        int sa = step(l), sb = step(r);
+
+        double[] or = new double[n], oi = new double[n];
+        ComplexAccumulator acc = new ComplexAccumulator();
+        for (int i = 0; i < n; i++) {
+            int a = i * sa, b = i * sb;
+            acc.set(ar[a], part(ai, a));
+            kernel.apply(acc, br[b], part(bi, b));
+            or[i] = acc.real;
+            oi[i] = acc.imaginary;
+        }
+        return settle(or, oi);
+    }
+
+    /**
+     * Returns the length of the result of an operation on two values, at least one of them a vector.
+     */
+    private static int length(Value l, Value r) {
+        if (l instanceof Vector a && r instanceof Vector b && a.length() != b.length()) {
+            throw new RTException("The vectors have different lengths: " + a.length() + " and " + b.length() + ".");
+        }
+        return l instanceof Vector a ? a.length() : ((Vector) r).length();
+    }
+
+    /**
+     * The real parts of a value. A number is an array of one element, read with a step of 0.
+     */
+    private static double[] re(Value v) {
+        return v instanceof Vector vec ? vec.re : new double[] {((ComplexNum) v).real};
+    }
+
+    private static double[] im(Value v) {
+        if (v instanceof Vector vec) {
+            return vec.im;
+        }
+
+        ComplexNum z = (ComplexNum) v;
+        return z.isReal() ? null : new double[] {z.imaginary};
+    }
+
+    private static int step(Value v) {
+        return v instanceof Vector ? 1 : 0;
+    }
+
+    private static ComplexNum element(Value v, int i) {
+        return v instanceof Vector vec ? vec.get(i) : (ComplexNum) v;
+    }
+
+    private static double part(double[] parts, int i) {
+        return parts == null ? 0 : parts[i];
+    }
+
+    /**
+     * Creates a vector, leaving out the imaginary parts if they are all zero.
+     */
+    private static Vector settle(double[] re, double[] im) {
+        for (double x : im) {
+            if (x != 0) {
+                return new Vector(re, im);
+            }
+        }
+        return new Vector(re);
+    }
+
+    private static double[] negate(double[] a) {
+        double[] out = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            out[i] = -a[i];
+        }
+        return out;
+    }
+
+    private static boolean finite(double[] a) {
+        for (double x : a) {
+            if (!Double.isFinite(x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean divisible(double[] a) {
+        for (double x : a) {
+            if (x == 0 || Double.isNaN(x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toString() {
+        Formatter f = new Formatter();
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < re.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(f.toString(re[i], part(im, i)));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,409 @@
+package org.programs.math.vm;
+
+import org.programs.math.extra.Result;
+import org.programs.math.nodes.*;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Parameter;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
+
+import java.util.*;
+
+import static org.programs.math.vm.OpCode.*;
+
+/**
+ * <p>Compiles a statement into a {@link Program}.
+ * <p>User defined functions are inlined at each call, with their parameters in slots. Native functions and
+ *    intrinsics are called through {@link Func#callNative(ComplexNum, ComplexNum)}. Global variables are
+ *    read once when the program starts, since a statement can't change them while it is evaluated (except
+ *    for the variables of top level loops, which get their own slots).
+ * <p>Statements which can't be compiled return {@code null}, and should be evaluated by visiting the nodes.
+ *    These are function definitions, chained assignments, calls of undefined or recursive functions, and
+ *    calls with a wrong number of arguments. Most of them fail anyway, and the tree walker reports the error.
+ *    Statements on vectors and matrices are not compiled either, the program works on numbers only.
+ * <p>Since every call is inlined, a chain of functions which each call the next one twice doubles the code at
+ *    each step. Statements whose program would be longer than {@link BytecodeCompiler#MAX_CODE} words or use
+ *    more than {@link BytecodeCompiler#MAX_SLOTS} slots are not compiled.
+ */
+public final class BytecodeCompiler {
+    /**
+     * The deepest nesting of calls of one function, same as the limit of {@link Func#execute}.
+     */
+    private static final int MAX_NESTING = 100;
+
+    /**
+     * The most words of code in a program.
+     */
+    private static final int MAX_CODE = 1 << 16;
+
+    /**
+     * The most slots of a program.
+     */
+    private static final int MAX_SLOTS = 1 << 14;
+
+    private final SymbolTable st;
+
+    private int[] code = new int[64];
+    private int length;
+
+    private final Map<ComplexNum, Integer> constantIndices = new IdentityHashMap<>();
+    private final List<ComplexNum> constants = new ArrayList<>();
+
+    /**
+     * The name of each slot, or {@code null}.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Whether each slot holds a global variable.
+     */
+    private final List<Boolean> globals = new ArrayList<>();
+
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+
+    private final Map<Func, Integer> nativeIndices = new IdentityHashMap<>();
+    private final List<Func> natives = new ArrayList<>();
+
+    /**
+     * The functions called by the statement, by name.
+     */
+    private final Map<String, Func> functions = new HashMap<>();
+
+    /**
+     * The variables of the top level loops being compiled. They live in the global scope while the loop runs.
+     */
+    private final Map<String, Integer> globalLoops = new HashMap<>();
+
+    /**
+     * The parameters and loop variables of the function being inlined, or {@code null} at top level.
+     */
+    private Map<String, Integer> locals;
+
+    /**
+     * The number of unfinished calls of each function, at the current point of the statement.
+     */
+    private final Map<Func, Integer> nesting = new IdentityHashMap<>();
+
+    /**
+     * The functions whose body is being inlined.
+     */
+    private final Set<Func> inlining = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int depth, maxDepth;
+
+    /**
+     * The budget steps of the calls compiled so far in the current loop body, or outside of any loop. Nested
+     * loops count their own.
+     */
+    private int steps;
+
+    private BytecodeCompiler(SymbolTable st) {
+        this.st = st;
+    }
+
+    /**
+     * Compiles a statement.
+     * @param node The statement.
+     * @param st The global symbol table, used to look up the called functions.
+     * @return The program, or {@code null} if the statement can't be compiled.
+     */
+    public static Program compile(Node node, SymbolTable st) {
+        Result<Program, String> res = tryCompile(node, st);
+        return res.isError() ? null : res.result;
+    }
+
+    /**
+     * Compiles a statement, or tells why it can't be compiled.
+     * @param node The statement.
+     * @param st The global symbol table, used to look up the called functions.
+     * @return The program, or the reason, like {@code "f is recursive"}.
+     */
+    public static Result<Program, String> tryCompile(Node node, SymbolTable st) {
+        String target = null;
+        if (node instanceof AssignmentNode as) {
+            target = as.idName;
+            node = as.expr;
+        }
+
+        BytecodeCompiler c = new BytecodeCompiler(st);
+        try {
+            c.expr(node);
+            c.emit(RETURN, c.steps);
+        } catch (Unsupported e) {
+            return Result.failure(e.getMessage());
+        }
+
+        return Result.success(c.build(target));
+    }
+
+    private Program build(String target) {
+        double[] pool = new double[constants.size() * 2];
+        for (int i = 0; i < constants.size(); i++) {
+            pool[2 * i] = constants.get(i).real;
+            pool[2 * i + 1] = constants.get(i).imaginary;
+        }
+
+        boolean[] g = new boolean[globals.size()];
+        for (int i = 0; i < g.length; i++) {
+            g[i] = globals.get(i);
+        }
+
+        return new Program(
+                Arrays.copyOf(code, length),
+                pool,
+                names.toArray(new String[0]),
+                g,
+                natives.toArray(new Func[0]),
+                Math.max(1, maxDepth),
+                Map.copyOf(functions),
+                target
+        );
+    }
+
+    private void expr(Node node) {
+        if (node instanceof NumberNode num) {
+            emit(CONST, constant(num.num));
+            push(1);
+        } else if (node instanceof IdentifierNode id) {
+            identifier(id);
+        } else if (node instanceof BinOpNode bin) {
+            expr(bin.left);
+            expr(bin.right);
+            emit(switch (bin.op.tokenType) {
+                case PLUS -> ADD;
+                case MINUS -> SUB;
+                case MULTIPLY -> MUL;
+                case DIVIDE -> DIV;
+                case INT_DIV -> INT_DIV;
+                case POW -> POW;
+                default -> throw new Unsupported("it uses the operator " + bin.op.tokenType);
+            });
+            pop(1);
+        } else if (node instanceof UnaryOpNode un) {
+            expr(un.node);
+            switch (un.op.tokenType) {
+                case MINUS -> emit(NEG);
+                case PIPE -> emit(ABS);
+                case FACTORIAL -> emit(FACT);
+                case COMPLEMENT -> emit(CONJ);
+                default -> {
+                    //+x is x
+                }
+            }
+        } else if (node instanceof SigmaPiNode sp) {
+            loop(sp);
+        } else if (node instanceof FuncCallNode call) {
+            call(call);
+        } else if (node instanceof FuncDefNode) {
+            throw new Unsupported("it defines a function");
+        } else if (node instanceof AssignmentNode) {
+            throw new Unsupported("it assigns more than one variable");
+        } else if (node instanceof VectorNode || node instanceof MatrixNode) {
+            throw new Unsupported("it makes a vector or a matrix");
+        } else {
+            throw new Unsupported("it has a " + node.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Resolves a variable in the same way as {@link IdentifierNode#visit(SymbolTable)}.
+     */
+    private void identifier(IdentifierNode id) {
+        String name = id.idName;
+        Integer slot = null;
+
+        if (!id.isGlobal) {
+            slot = locals != null ? locals.get(name) : globalLoops.get(name);
+        }
+
+        //Fallback to global
+        if (slot == null) {
+            slot = globalLoops.get(name);
+        }
+
+        if (slot != null) {
+            emit(LOAD, slot);
+        } else {
+            emit(LOAD_GLOBAL, globalSlot(name));
+        }
+        push(1);
+    }
+
+    /**
+     * Compiles a sum or product into a loop, in the same way as {@link SigmaPiNode#visit(SymbolTable)}.
+     */
+    private void loop(SigmaPiNode sp) {
+        String name = sp.init.name;
+        boolean topLevel = locals == null;
+        Map<String, Integer> scope = topLevel ? globalLoops : locals;
+
+        int var = slot(topLevel ? name : null, false);
+        if (topLevel) {
+            emit(CHECK_NAME, var);
+        } else if (locals.containsKey(name)) {
+            throw new Unsupported("the variable of a loop has the name of a parameter: " + name);
+        }
+
+        expr(sp.init.defaultVal);
+        expr(sp.upto);
+
+        int type = sp.type == SigmaPiNode.Type.SIGMA ? SUM : PRODUCT;
+        int acc = slot(null, false), end = slot(null, false);
+        emit(LOOP, type, var, acc, end, -1);
+        int exitOperand = length - 1;
+        pop(2);
+
+        int body = length;
+        int outerSteps = steps;
+        steps = 0;
+        scope.put(name, var);
+        expr(sp.evaluationExpr);
+        scope.remove(name);
+
+        //The iteration is a step, and so is every call in the body, like in SigmaPiNode and Func#execute
+        emit(NEXT, type, var, acc, end, body, 1 + steps);
+        steps = outerSteps;
+        pop(1);
+
+        code[exitOperand] = length;
+        emit(LOAD, acc);
+        push(1);
+    }
+
+    /**
+     * Compiles a function call, in the same way as {@link FuncCallNode#visit(SymbolTable)}.
+     */
+    private void call(FuncCallNode call) {
+        Value v = st.get(call.name, true);
+        if (!(v instanceof Func fn)) {
+            throw new Unsupported(call.name + " is not a function");
+        }
+        if (call.args.size() < fn.min || call.args.size() > fn.max) {
+            throw new Unsupported(call.name + " is called with a wrong number of arguments");
+        }
+        if (fn.isArrayNative()) {
+            throw new Unsupported(call.name + " works on vectors and matrices");
+        }
+        functions.put(call.name, fn);
+        steps++;
+
+        if (fn.isNative() || fn.isIntrinsic()) {
+            int argc = fn.parameters.size() == 2 ? 2 : 1;
+            for (int i = 0; i < argc; i++) {
+                argument(call, fn, i);
+            }
+
+            Integer index = nativeIndices.get(fn);
+            if (index == null) {
+                index = natives.size();
+                natives.add(fn);
+                nativeIndices.put(fn, index);
+            }
+
+            emit(NATIVE, index, argc);
+            pop(argc - 1);
+            return;
+        }
+
+        int calls = nesting.getOrDefault(fn, 0) + 1;
+        if (calls > MAX_NESTING || inlining.contains(fn)) {
+            //Recursive, this always fails when it is evaluated
+            throw new Unsupported(call.name + " is recursive");
+        }
+        nesting.put(fn, calls);
+
+        //The arguments (and default values) are evaluated in the scope of the caller
+        Map<String, Integer> params = new HashMap<>();
+        for (int i = 0; i < fn.max; i++) {
+            argument(call, fn, i);
+            int slot = slot(null, false);
+            emit(STORE, slot);
+            pop(1);
+            params.put(fn.parameters.get(i).name, slot);
+        }
+
+        Map<String, Integer> outer = locals;
+        locals = params;
+        inlining.add(fn);
+        expr(fn.body());
+        inlining.remove(fn);
+        locals = outer;
+
+        nesting.put(fn, calls - 1);
+    }
+
+    private void argument(FuncCallNode call, Func fn, int i) {
+        if (i < call.args.size()) {
+            expr(call.args.get(i));
+        } else {
+            Parameter p = fn.parameters.get(i);
+            expr(p.defaultVal);
+        }
+    }
+
+    private int constant(ComplexNum z) {
+        Integer index = constantIndices.get(z);
+        if (index == null) {
+            index = constants.size();
+            constants.add(z);
+            constantIndices.put(z, index);
+        }
+        return index;
+    }
+
+    private int globalSlot(String name) {
+        Value v = st.get(name, true);
+        if (v instanceof Vector || v instanceof Matrix) {
+            throw new Unsupported(name + " is a vector or a matrix");
+        }
+
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            slot = slot(name, true);
+            globalSlots.put(name, slot);
+        }
+        return slot;
+    }
+
+    private int slot(String name, boolean global) {
+        if (names.size() == MAX_SLOTS) {
+            throw new Unsupported("it would use more than " + MAX_SLOTS + " slots");
+        }
+        names.add(name);
+        globals.add(global);
+        return names.size() - 1;
+    }
+
+    private void emit(int ... words) {
+        if (length + words.length > MAX_CODE) {
+            throw new Unsupported("it would be longer than " + MAX_CODE + " words of code");
+        }
+        if (length + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + words.length));
+        }
+
+        System.arraycopy(words, 0, code, length, words.length);
+        length += words.length;
+    }
+
+    private void push(int n) {
+        depth += n;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void pop(int n) {
+        depth -= n;
+    }
+
+    /**
+     * Thrown internally when a statement can't be compiled, with the reason.
+     */
+    private static final class Unsupported extends RuntimeException {
+        private Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.programs.math.vm;
+
+/**
+ * <p>The instructions of the {@link Program} interpreter.
+ * <p>Each instruction is one {@code int} in the code array, followed by its operands (if any).
+ *    Values on the stack and in the slots are complex numbers, stored as a real and an imaginary part.
+ */
+public final class OpCode {
+    /**
+     * {@code CONST index} - Pushes a constant from the constant pool.
+     */
+    public static final int CONST = 0;
+
+    /**
+     * {@code LOAD slot} - Pushes the value of a slot (a parameter or a loop variable).
+     */
+    public static final int LOAD = 1;
+
+    /**
+     * {@code LOAD_GLOBAL slot} - Pushes the value of a global variable, which was bound to the slot before
+     * the program started. Fails if the variable does not exist.
+     */
+    public static final int LOAD_GLOBAL = 2;
+
+    /**
+     * {@code STORE slot} - Pops a value into a slot.
+     */
+    public static final int STORE = 3;
+
+    /**
+     * {@code ADD} - Pops two values and pushes their sum.
+     */
+    public static final int ADD = 4;
+
+    /**
+     * {@code SUB} - Pops two values and pushes their difference.
+     */
+    public static final int SUB = 5;
+
+    /**
+     * {@code MUL} - Pops two values and pushes their product.
+     */
+    public static final int MUL = 6;
+
+    /**
+     * {@code DIV} - Pops two values and pushes their quotient.
+     */
+    public static final int DIV = 7;
+
+    /**
+     * {@code INT_DIV} - Pops two values and pushes their truncated quotient.
+     */
+    public static final int INT_DIV = 8;
+
+    /**
+     * {@code POW} - Pops two values and pushes the first one raised to the second one.
+     */
+    public static final int POW = 9;
+
+    /**
+     * {@code NEG} - Negates the top of the stack.
+     */
+    public static final int NEG = 10;
+
+    /**
+     * {@code CONJ} - Replaces the top of the stack by its conjugate.
+     */
+    public static final int CONJ = 11;
+
+    /**
+     * {@code ABS} - Replaces the top of the stack by its modulus.
+     */
+    public static final int ABS = 12;
+
+    /**
+     * {@code FACT} - Replaces the top of the stack by its factorial.
+     */
+    public static final int FACT = 13;
+
+    /**
+     * {@code NATIVE index argc} - Pops {@code argc} values and pushes the result of a native function.
+     */
+    public static final int NATIVE = 14;
+
+    /**
+     * {@code CHECK_NAME slot} - Fails if the name of the slot already exists in the global scope.
+     * Used before the loops of top level statements, whose variable would be stored in the global scope.
+     */
+    public static final int CHECK_NAME = 15;
+
+    /**
+     * {@code LOOP type var acc end exit} - Pops the range of a sum or product, and starts the loop.
+     * The loop variable goes to slot {@code var}, the result to {@code acc} and the upper bound to {@code end}.
+     * Jumps to {@code exit} if the range is empty.
+     */
+    public static final int LOOP = 16;
+
+    /**
+     * {@code NEXT type var acc end body steps} - Pops the value of the loop expression into the result, advances
+     * the loop variable, and jumps back to {@code body} while the variable is within the range. {@code steps} is
+     * charged to the budget for the iteration: one, plus the calls in the body outside of nested loops.
+     */
+    public static final int NEXT = 17;
+
+    /**
+     * {@code RETURN steps} - Stops the program, the top of the stack is the result. {@code steps} is charged to
+     * the budget for the calls outside of loops.
+     */
+    public static final int RETURN = 18;
+
+    /**
+     * The mnemonics of the instructions, indexed by their code.
+     */
+    static final String[] NAMES = {
+            "CONST", "LOAD", "LOAD_GLOBAL", "STORE", "ADD", "SUB", "MUL", "DIV", "INT_DIV", "POW",
+            "NEG", "CONJ", "ABS", "FACT", "NATIVE", "CHECK_NAME", "LOOP", "NEXT", "RETURN"
+    };
+
+    /**
+     * The number of operands of each instruction, indexed by their code.
+     */
+    static final int[] OPERANDS = {
+            1, 1, 1, 1, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 2, 1, 5, 6, 1
+    };
+
+    /**
+     * Loop type operand for sums.
+     */
+    public static final int SUM = 0;
+
+    /**
+     * Loop type operand for products.
+     */
+    public static final int PRODUCT = 1;
+
+    private OpCode() {
+        //private
+    }
+}
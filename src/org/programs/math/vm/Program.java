@@ -0,0 +1,334 @@
+package org.programs.math.vm;
+
+import org.programs.math.eval.Budget;
+import org.programs.math.events.Counters;
+import org.programs.math.exceptions.IdentifierExistsException;
+import org.programs.math.exceptions.NoSuchIdentifierException;
+import org.programs.math.exceptions.RTException;
+import org.programs.math.extra.Gamma;
+import org.programs.math.parser.SymbolTable;
+import org.programs.math.types.ComplexAccumulator;
+import org.programs.math.types.ComplexNum;
+import org.programs.math.types.Func;
+import org.programs.math.types.Matrix;
+import org.programs.math.types.Rational;
+import org.programs.math.types.Value;
+import org.programs.math.types.Vector;
+
+import java.util.Map;
+
+import static org.programs.math.vm.OpCode.*;
+
+/**
+ * <p>A statement compiled by the {@link BytecodeCompiler} into a compact instruction stream (see {@link OpCode}).
+ * <p>The interpreter works on primitive arrays holding the real and imaginary parts of the stack and
+ *    the slots, so no {@link ComplexNum} is created while evaluating, except for the arguments of native
+ *    functions and the final result. The arithmetic is done by a {@link ComplexAccumulator}, so it gives
+ *    exactly the same results as {@link ComplexNum}.
+ * <p>A program is immutable, and can be run by many threads at the same time.
+ */
+public final class Program {
+    private final int[] code;
+
+    /**
+     * The constants, as pairs of real and imaginary parts.
+     */
+    private final double[] constants;
+
+    /**
+     * The names of the slots. Only the slots of global variables and of top level loop variables have a name.
+     */
+    private final String[] names;
+
+    /**
+     * Which slots hold global variables. These are bound before the program starts.
+     */
+    private final boolean[] globals;
+
+    private final Func[] natives;
+    private final int maxStack;
+
+    /**
+     * The functions which were inlined or called, by name. If any of them is redefined, the program is stale.
+     */
+    private final Map<String, Func> functions;
+
+    /**
+     * The variable this statement is assigned to, or {@code null} if it is a plain expression.
+     */
+    public final String target;
+
+    Program(int[] code, double[] constants, String[] names, boolean[] globals, Func[] natives,
+            int maxStack, Map<String, Func> functions, String target) {
+        this.code = code;
+        this.constants = constants;
+        this.names = names;
+        this.globals = globals;
+        this.natives = natives;
+        this.maxStack = maxStack;
+        this.functions = functions;
+        this.target = target;
+    }
+
+    /**
+     * Checks if a function this program depends on was redefined since it was compiled, or if a global
+     * variable it reads now holds a vector.
+     * @param st The global symbol table.
+     * @return {@code true} if the program must be compiled again.
+     */
+    public boolean isStale(SymbolTable st) {
+        for (Map.Entry<String, Func> e : functions.entrySet()) {
+            if (st.get(e.getKey(), true) != e.getValue()) {
+                return true;
+            }
+        }
+
+        for (int s = 0; s < globals.length; s++) {
+            if (globals[s]) {
+                Value v = st.get(names[s], true);
+                if (v instanceof Vector || v instanceof Matrix) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of instructions and operands.
+     * @return The code length.
+     */
+    public int length() {
+        return code.length;
+    }
+
+    /**
+     * Runs the program, just like visiting the statement.
+     * @param st The global symbol table.
+     * @return The value of the statement.
+     */
+    public ComplexNum run(SymbolTable st) {
+        if (target != null) {
+            SymbolTable.check(target);
+        }
+
+        int slots = globals.length;
+        double[] vr = new double[slots], vi = new double[slots];
+        boolean[] bound = new boolean[slots];
+
+        for (int s = 0; s < slots; s++) {
+            if (globals[s] && Rational.demote(st.get(names[s], true)) instanceof ComplexNum z) {
+                vr[s] = z.real;
+                vi[s] = z.imaginary;
+                bound[s] = true;
+            }
+        }
+
+        double[] sr = new double[maxStack], si = new double[maxStack];
+        ComplexAccumulator acc = new ComplexAccumulator();
+        int sp = -1;
+        int pc = 0;
+
+        //The steps are charged to the budget in chunks, so the loops don't share a counter on every iteration
+        Budget budget = Budget.current();
+        int ticks = 0;
+
+        while (true) {
+            switch (code[pc++]) {
+                case CONST -> {
+                    int c = code[pc++] << 1;
+                    sp++;
+                    sr[sp] = constants[c];
+                    si[sp] = constants[c + 1];
+                }
+                case LOAD -> {
+                    int s = code[pc++];
+                    sp++;
+                    sr[sp] = vr[s];
+                    si[sp] = vi[s];
+                }
+                case LOAD_GLOBAL -> {
+                    int s = code[pc++];
+                    if (!bound[s]) {
+                        throw new NoSuchIdentifierException(names[s], false);
+                    }
+                    sp++;
+                    sr[sp] = vr[s];
+                    si[sp] = vi[s];
+                }
+                case STORE -> {
+                    int s = code[pc++];
+                    vr[s] = sr[sp];
+                    vi[s] = si[sp];
+                    sp--;
+                }
+                case ADD -> {
+                    sp--;
+                    sr[sp] += sr[sp + 1];
+                    si[sp] += si[sp + 1];
+                }
+                case SUB -> {
+                    sp--;
+                    sr[sp] -= sr[sp + 1];
+                    si[sp] -= si[sp + 1];
+                }
+                case MUL -> {
+                    sp--;
+                    acc.set(sr[sp], si[sp]).mulTo(sr[sp + 1], si[sp + 1]);
+                    sr[sp] = acc.real;
+                    si[sp] = acc.imaginary;
+                }
+                case DIV -> {
+                    sp--;
+                    acc.set(sr[sp], si[sp]).divTo(sr[sp + 1], si[sp + 1]);
+                    sr[sp] = acc.real;
+                    si[sp] = acc.imaginary;
+                }
+                case INT_DIV -> {
+                    sp--;
+                    acc.set(sr[sp], si[sp]).divTo(sr[sp + 1], si[sp + 1]);
+                    sr[sp] = (long) acc.real;
+                    si[sp] = (long) acc.imaginary;
+                }
+                case POW -> {
+                    sp--;
+                    acc.set(sr[sp], si[sp]).powTo(sr[sp + 1], si[sp + 1]);
+                    sr[sp] = acc.real;
+                    si[sp] = acc.imaginary;
+                }
+                case NEG -> {
+                    sr[sp] = -sr[sp];
+                    si[sp] = -si[sp];
+                }
+                case CONJ -> si[sp] = -si[sp];
+                case ABS -> {
+                    sr[sp] = Math.sqrt(sr[sp] * sr[sp] + si[sp] * si[sp]);
+                    si[sp] = 0;
+                }
+                case FACT -> factorial(sr, si, sp);
+                case NATIVE -> {
+                    Func fn = natives[code[pc++]];
+                    int argc = code[pc++];
+                    sp -= argc - 1;
+                    ComplexNum first = new ComplexNum(sr[sp], si[sp]);
+                    ComplexNum second = argc == 2 ? new ComplexNum(sr[sp + 1], si[sp + 1]) : null;
+                    Counters.nativeCall();
+                    ComplexNum z = fn.callNative(first, second);
+                    sr[sp] = z.real;
+                    si[sp] = z.imaginary;
+                }
+                case CHECK_NAME -> {
+                    String name = names[code[pc++]];
+                    if (st.contains(name, false)) {
+                        throw new IdentifierExistsException(name, false);
+                    }
+                }
+                case LOOP -> {
+                    boolean sum = code[pc++] == SUM;
+                    int var = code[pc++], result = code[pc++], end = code[pc++], exit = code[pc++];
+                    sp -= 2;
+                    if (si[sp + 1] != 0 || si[sp + 2] != 0) {
+                        throw new RTException("Sum or product's first two parameters must be real!");
+                    }
+
+                    vr[var] = sr[sp + 1];
+                    vi[var] = 0;
+                    vr[end] = sr[sp + 2];
+                    vr[result] = sum ? 0 : 1;
+                    vi[result] = 0;
+
+                    if (!(vr[var] <= vr[end])) {
+                        pc = exit;
+                    } else {
+                        //Counted once for the whole loop, NEXT adds 1 until the end is passed
+                        Counters.iterations((long) Math.floor(vr[end] - vr[var]) + 1);
+                    }
+                }
+                case NEXT -> {
+                    boolean sum = code[pc++] == SUM;
+                    int var = code[pc++], result = code[pc++], end = code[pc++], body = code[pc++];
+                    int steps = code[pc++];
+                    if (sum) {
+                        vr[result] += sr[sp];
+                        vi[result] += si[sp];
+                    } else {
+                        acc.set(vr[result], vi[result]).mulTo(sr[sp], si[sp]);
+                        vr[result] = acc.real;
+                        vi[result] = acc.imaginary;
+                    }
+                    sp--;
+
+                    vr[var] += 1;
+                    if (vr[var] <= vr[end]) {
+                        pc = body;
+                    }
+
+                    if (budget != null && (ticks += steps) >= Budget.CHUNK) {
+                        budget.charge(ticks);
+                        ticks = 0;
+                    }
+                }
+                case RETURN -> {
+                    ticks += code[pc];
+                    if (budget != null && ticks > 0) {
+                        budget.charge(ticks);
+                    }
+                    ComplexNum z = new ComplexNum(sr[sp], si[sp]);
+                    if (target != null) {
+                        st.set(target, z);
+                    }
+                    return z;
+                }
+                default -> throw new IllegalStateException("Invalid instruction at " + (pc - 1));
+            }
+        }
+    }
+
+    /**
+     * Replaces the value at the given index by its factorial.
+     * @see ComplexNum#factorial()
+     */
+    static void factorial(double[] r, double[] i, int at) {
+        double n = r[at];
+        if (i[at] == 0 && n == (long) n && n >= 0) {
+            r[at] = Gamma.factorial((long) Math.min(n, Gamma.MAX_FACTORIAL + 1));
+            return;
+        }
+
+        ComplexNum z = new ComplexNum(n, i[at]).factorial();
+        r[at] = z.real;
+        i[at] = z.imaginary;
+    }
+
+    /**
+     * Returns a readable listing of the instructions.
+     * @return The disassembly.
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            int op = code[pc];
+            sb.append(pc).append(": ").append(OpCode.NAMES[op]);
+
+            for (int k = 1; k <= OpCode.OPERANDS[op]; k++) {
+                sb.append(' ').append(code[pc + k]);
+            }
+
+            if (op == CONST) {
+                int c = code[pc + 1] << 1;
+                sb.append(" ; ").append(new ComplexNum(constants[c], constants[c + 1]));
+            } else if (op == LOAD_GLOBAL || op == CHECK_NAME) {
+                sb.append(" ; ").append(names[code[pc + 1]]);
+            } else if (op == NATIVE) {
+                sb.append(" ; ").append(natives[code[pc + 1]].name);
+            }
+
+            sb.append('\n');
+            pc += 1 + OpCode.OPERANDS[op];
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package org.programs.math.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatterTest {
+    private final Formatter formatter = new Formatter();
+
+    private String write(double x) {
+        byte[] b = new byte[32];
+        int n = formatter.write(x, b, 0);
+        return new String(b, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the significant digits of a number written by {@link Double#toString(double)} or the formatter.
+     */
+    private static String digits(String s) {
+        int e = s.indexOf('E');
+        String mantissa = (e < 0 ? s : s.substring(0, e)).replace("-", "").replace(".", "");
+        mantissa = mantissa.replaceFirst("^0+", "").replaceFirst("0+$", "");
+        return mantissa.isEmpty() ? "0" : mantissa;
+    }
+
+    private void assertShortestRoundTrip(double x) {
+        String s = write(x);
+        assertEquals(Double.doubleToRawLongBits(x), Double.doubleToRawLongBits(Double.parseDouble(s)),
+                () -> s + " doesn't read back as " + Double.toString(x));
+
+        String jdk = Double.toString(x);
+        assertTrue(digits(s).length() <= digits(jdk).length(), () -> s + " is longer than " + jdk);
+        assertEquals(jdk.contains("E"), s.contains("E"), () -> s + " isn't laid out like " + jdk);
+    }
+
+    @Test
+    void layout() {
+        assertEquals("1.0", write(1));
+        assertEquals("100.0", write(100));
+        assertEquals("-12.5", write(-12.5));
+        assertEquals("123.456", write(123.456));
+        assertEquals("0.001", write(0.001));
+        assertEquals("1.0E-4", write(1e-4));
+        assertEquals("9999999.0", write(9999999));
+        assertEquals("1.0E7", write(1e7));
+        assertEquals("0.30000000000000004", write(0.1 + 0.2));
+        assertEquals("1.7976931348623157E308", write(Double.MAX_VALUE));
+        assertEquals("2.2250738585072014E-308", write(Double.MIN_NORMAL));
+    }
+
+    @Test
+    void specialValues() {
+        assertEquals("0.0", write(0.0));
+        assertEquals("-0.0", write(-0.0));
+        assertEquals("NaN", write(Double.NaN));
+        assertEquals("Infinity", write(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", write(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    void shorterThanDoubleToString() {
+        //Double.toString gives 4.9E-324 and 9.999999999999999E22, which have more digits than needed
+        assertEquals("5.0E-324", write(Double.MIN_VALUE));
+        assertEquals("1.0E23", write(1e23));
+        assertShortestRoundTrip(Double.MIN_VALUE);
+        assertShortestRoundTrip(1e23);
+    }
+
+    @Test
+    void powersOfTwoAndTen() {
+        for (int e = -1074; e <= 1023; e++) {
+            assertShortestRoundTrip(Math.scalb(1.0, e));
+        }
+        for (int e = -323; e <= 308; e++) {
+            double x = Double.parseDouble("1e" + e);
+            assertShortestRoundTrip(x);
+            assertShortestRoundTrip(Math.nextUp(x));
+            assertShortestRoundTrip(Math.nextDown(x));
+        }
+    }
+
+    @Test
+    void randomDoubles() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 200_000; i++) {
+            double x = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isNaN(x)) {
+                assertShortestRoundTrip(x);
+            }
+        }
+    }
+
+    @Test
+    void randomDecimals() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 100_000; i++) {
+            double x = random.nextInt(1_000_000) / Math.pow(10, random.nextInt(12));
+            assertShortestRoundTrip(x);
+            assertEquals(Double.toString(x), write(x));
+        }
+    }
+
+    @Test
+    void complexNumbers() {
+        assertEquals("0", formatter.toString(0, 0));
+        assertEquals("2", formatter.toString(2, 0));
+        assertEquals("-i", formatter.toString(0, -1));
+        assertEquals("3 - i", formatter.toString(3, -1));
+        assertEquals("-1 + i", formatter.toString(-1, 1));
+        assertEquals("0.5 + 2i", formatter.toString(0.5, 2));
+        assertEquals("1.5E10", formatter.toString(1.5e10, 0));
+        assertEquals("1.0E-5 - 2.5i", formatter.toString(1e-5, -2.5));
+    }
+}
@@ -0,0 +1,162 @@
+package org.programs.math.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.programs.math.MathEvaluator;
+import org.programs.math.exceptions.RTException;
+import org.programs.math.extra.Result;
+import org.programs.math.lexer.Lexer;
+import org.programs.math.nodes.FuncDefNode;
+import org.programs.math.parser.Parser;
+import org.programs.math.types.*;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryTest {
+    @TempDir
+    Path dir;
+
+    private static Func function(String definition) {
+        return ((FuncDefNode) new Parser(new Lexer(definition).lex().result).parse().result.get(0)).fn;
+    }
+
+    /**
+     * Returns the functions and variables written by {@link LibraryTest#bytes()}, by name.
+     */
+    private static Map<String, Value> values() {
+        Map<String, Value> values = new TreeMap<>();
+        values.put("f", function("fn f(x, y=2) = x * y + sum(k = 1, x, k)"));
+        values.put("g", function("fn g(z) = |z| - ~z^2 + [z, 1]"));
+        values.put("h", function("fn h(a) native"));
+        values.put("c", new ComplexNum(3, -2.5));
+        values.put("q", Rational.of(BigInteger.TEN.pow(30), BigInteger.valueOf(7)));
+        values.put("v", new Vector(new double[] {1, 2, 3}));
+        values.put("w", new Vector(new double[] {1, 0}, new double[] {0, -1}));
+        values.put("m", new Matrix(2, 2, new double[] {1, 0, 2, 0, 3, 1, 4, 0}));
+        return values;
+    }
+
+    private static byte[] bytes() {
+        LibraryWriter writer = new LibraryWriter();
+        values().forEach((name, v) -> {
+            if (v instanceof Func fn) {
+                writer.add(fn);
+            } else {
+                writer.add(name, v);
+            }
+        });
+        return writer.toBytes(1234);
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        Path file = dir.resolve("lib.bin");
+        Files.write(file, bytes());
+
+        Result<Library, String> res = Library.open(file);
+        assertFalse(res.isError(), res::toString);
+        Library library = res.result;
+
+        Map<String, Value> values = values();
+        assertEquals(1234, library.checksum);
+        assertEquals(values.size(), library.size());
+        assertEquals(List.copyOf(values.keySet()), library.names());
+        assertEquals(List.of("c", "m", "q", "v", "w"), library.variables());
+
+        for (Map.Entry<String, Value> e : values.entrySet()) {
+            assertTrue(library.contains(e.getKey()));
+            assertEquals(!(e.getValue() instanceof Func), library.isVariable(e.getKey()));
+            assertEquals(e.getValue().toString(), library.load(e.getKey()).toString());
+        }
+
+        assertFalse(library.contains("x"));
+        assertNull(library.load("x"));
+    }
+
+    @Test
+    void exportAndImport() {
+        assertFalse(MathEvaluator.evaluate("fn libraryTestF(x, y=2) = x * y + sum(k = 1, x, k)").isError());
+        assertFalse(MathEvaluator.evaluate("libraryTestV = 3 + 2i").isError());
+
+        Path file = dir.resolve("export.bin");
+        Result<Integer, String> exported = MathEvaluator.exportLibrary(file);
+        assertFalse(exported.isError(), exported::toString);
+
+        MathEvaluator.evaluate("fn libraryTestF(x) = 0; libraryTestV = 0");
+        assertEquals("[0]", MathEvaluator.evaluate("libraryTestF(3) + libraryTestV").toString());
+
+        Result<Integer, String> imported = MathEvaluator.importLibrary(file);
+        assertFalse(imported.isError(), imported::toString);
+        assertEquals(exported.result, imported.result);
+        assertEquals("[12, 3 + 2i]", MathEvaluator.evaluate("libraryTestF(3); libraryTestV").toString());
+    }
+
+    @Test
+    void notALibrary() throws IOException {
+        byte[] b = bytes();
+        b[0] ^= 1;
+        assertEquals("Not a library.", Library.read(ByteBuffer.wrap(b)).error);
+
+        b = bytes();
+        b[4] = 3;
+        assertEquals("Unsupported library version: 3", Library.read(ByteBuffer.wrap(b)).error);
+
+        Path empty = Files.createFile(dir.resolve("empty.bin"));
+        assertEquals("The library is damaged.", Library.open(empty).error);
+    }
+
+    @Test
+    void truncated() throws IOException {
+        byte[] b = bytes();
+        for (int length = 0; length < b.length; length++) {
+            Result<Library, String> res = Library.read(ByteBuffer.wrap(b, 0, length));
+            //The data is at the end, so a library which opens fails to load something
+            assertTrue(res.isError() || !loadsAll(res.result), "Truncated to " + length + " bytes");
+        }
+
+        Path file = dir.resolve("truncated.bin");
+        Files.write(file, Arrays.copyOf(b, 20));
+        assertEquals("The library is damaged.", Library.open(file).error);
+    }
+
+    @Test
+    void damaged() {
+        byte[] original = bytes();
+        for (int i = 0; i < original.length; i++) {
+            byte[] b = original.clone();
+            b[i] ^= (byte) 0xA5;
+            Result<Library, String> res = Library.read(ByteBuffer.wrap(b));
+            if (!res.isError()) {
+                int at = i;
+                assertDoesNotThrow(() -> loadsAll(res.result), () -> "Byte " + at + " changed");
+            }
+        }
+    }
+
+    /**
+     * Loads every name of the original library.
+     * @return {@code false} if the library is found damaged, which is the only way it may fail.
+     */
+    private static boolean loadsAll(Library library) {
+        try {
+            for (String name : values().keySet()) {
+                if (library.load(name) == null) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (RTException e) {
+            return false;
+        }
+    }
+}